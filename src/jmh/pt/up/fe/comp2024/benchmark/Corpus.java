@@ -0,0 +1,112 @@
+package pt.up.fe.comp2024.benchmark;
+
+import pt.up.fe.comp2024.BatchCompiler;
+import pt.up.fe.comp2024.JmmCompiler;
+import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
+import pt.up.fe.comp2024.backend.JasminBackendImpl;
+import pt.up.fe.comp2024.optimization.JmmOptimizationImpl;
+import pt.up.fe.comp2024.parser.JmmParserImpl;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Java-- programs the benchmarks compile, split by size.
+ * <p>
+ * By default, these are the .jmm files in the test and library directories, which can be replaced by setting the
+ * system property {@value #INPUTS_PROPERTY} to a comma-separated list of files, directories or globs, relative to the
+ * working directory. Only the programs that go through every stage without errors are kept, since the pipeline stops
+ * at the first stage that reports one.
+ */
+public class Corpus {
+
+    public static final String INPUTS_PROPERTY = "jmm.benchmark.inputs";
+    private static final String DEFAULT_INPUTS = "test/pt/up/fe/comp/cpf,libs-jmm";
+
+    /**
+     * A program of the corpus.
+     *
+     * @param file the file it was read from
+     * @param code its source code
+     */
+    public record Program(File file, String code) {
+    }
+
+    /**
+     * Size classes, each with about a third of the programs, by length of the source code.
+     */
+    public enum Size {
+        SMALL, MEDIUM, LARGE
+    }
+
+    private static List<Program> programs;
+
+    /**
+     * @return the programs of the given size class, from the shortest to the longest
+     */
+    public static List<Program> get(Size size) {
+        var all = getAll();
+        int from = all.size() * size.ordinal() / Size.values().length;
+        int to = all.size() * (size.ordinal() + 1) / Size.values().length;
+        return all.subList(from, to);
+    }
+
+    private static synchronized List<Program> getAll() {
+        if (programs == null) {
+            programs = load();
+        }
+        return programs;
+    }
+
+    private static List<Program> load() {
+        var inputs = System.getProperty(INPUTS_PROPERTY, DEFAULT_INPUTS);
+        var workingDir = new File(System.getProperty("user.dir"));
+
+        var compiled = new ArrayList<Program>();
+        for (var file : BatchCompiler.collectInputs(inputs, workingDir)) {
+            var program = new Program(file, SpecsIo.read(file));
+            if (compiles(program)) {
+                compiled.add(program);
+            }
+        }
+
+        if (compiled.size() < Size.values().length) {
+            throw new RuntimeException("Expected at least " + Size.values().length + " programs that compile in '"
+                    + inputs + "', found " + compiled.size());
+        }
+
+        compiled.sort(Comparator.comparingInt((Program program) -> program.code().length())
+                .thenComparing(Program::file));
+        return List.copyOf(compiled);
+    }
+
+    private static boolean compiles(Program program) {
+        Map<String, String> config = Map.of("optimize", "true");
+
+        try {
+            var parserResult = new JmmParserImpl().parse(program.code(), config);
+            if (JmmCompiler.hasErrors(parserResult.getReports())) {
+                return false;
+            }
+
+            var semanticsResult = new JmmAnalysisImpl().semanticAnalysis(parserResult);
+            if (JmmCompiler.hasErrors(semanticsResult.getReports())) {
+                return false;
+            }
+
+            var optimization = new JmmOptimizationImpl();
+            var ollirResult = optimization.optimize(optimization.toOllir(optimization.optimize(semanticsResult)));
+            if (JmmCompiler.hasErrors(ollirResult.getReports())) {
+                return false;
+            }
+
+            return !JmmCompiler.hasErrors(new JasminBackendImpl().toJasmin(ollirResult).getReports());
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+}
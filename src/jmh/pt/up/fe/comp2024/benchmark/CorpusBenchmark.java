@@ -0,0 +1,21 @@
+package pt.up.fe.comp2024.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.List;
+
+/**
+ * The stages over the programs of one size class of the {@link Corpus}.
+ */
+public class CorpusBenchmark extends StageBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    private Corpus.Size size;
+
+    @Override
+    protected List<String> loadPrograms() {
+        return Corpus.get(size).stream()
+                .map(Corpus.Program::code)
+                .toList();
+    }
+}
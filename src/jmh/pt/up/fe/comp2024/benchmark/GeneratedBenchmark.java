@@ -0,0 +1,33 @@
+package pt.up.fe.comp2024.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+import pt.up.fe.comp2024.utils.ProgramGenerator;
+
+import java.util.List;
+
+/**
+ * The stages over a program from the {@link ProgramGenerator}, to see how their time grows with the size of the input.
+ * <p>
+ * The number of methods grows the program with methods of the same size, which stages that work on one method at a
+ * time should handle in linear time, while the number of statements grows each method. A time that grows faster than
+ * the parameter, e.g. four times when it doubles, points to a stage that is superlinear in that dimension.
+ */
+public class GeneratedBenchmark extends StageBenchmark {
+
+    private static final long SEED = 2024;
+
+    @Param({"8", "32", "128"})
+    private int methods;
+
+    @Param({"16", "64", "256"})
+    private int statements;
+
+    @Override
+    protected List<String> loadPrograms() {
+        var generator = new ProgramGenerator(SEED)
+                .methods(methods)
+                .statements(statements);
+
+        return List.of(generator.generate("Generated"));
+    }
+}
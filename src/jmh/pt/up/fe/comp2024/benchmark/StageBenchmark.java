@@ -0,0 +1,154 @@
+package pt.up.fe.comp2024.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
+import pt.up.fe.comp2024.backend.JasminBackendImpl;
+import pt.up.fe.comp2024.optimization.JmmOptimizationImpl;
+import pt.up.fe.comp2024.parser.JmmParserImpl;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTableBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each stage of the compiler in isolation, and the whole pipeline, over a list of programs that subclasses
+ * choose.
+ * <p>
+ * One operation runs the stage over every program of the list, so the throughput is in lists per second. The input of
+ * each stage is the output of the previous ones, computed once before the measurements, except for the OLLIR
+ * optimizations, which change their input and get a new one before each operation. Run with "-prof gc" to also get
+ * the memory allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class StageBenchmark {
+
+    protected static final Map<String, String> CONFIG = Map.of("optimize", "true");
+
+    private final JmmParserImpl parser = new JmmParserImpl();
+    private final JmmAnalysisImpl analysis = new JmmAnalysisImpl();
+    private final JmmOptimizationImpl optimization = new JmmOptimizationImpl();
+    private final JasminBackendImpl backend = new JasminBackendImpl();
+
+    private List<String> programs;
+    private List<JmmParserResult> parserResults;
+    private List<JmmSemanticsResult> semanticsResults;
+    private List<OllirResult> optimizedResults;
+
+    /**
+     * The unoptimized OLLIR of the programs, shared with {@link UnoptimizedOllir}, which cannot depend on this class
+     * since it is abstract. A fork only runs one benchmark at a time.
+     */
+    private static volatile List<String> ollirCodes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        programs = loadPrograms();
+        parserResults = new ArrayList<>();
+        semanticsResults = new ArrayList<>();
+        var codes = new ArrayList<String>();
+        optimizedResults = new ArrayList<>();
+
+        for (var program : programs) {
+            var parserResult = parser.parse(program, CONFIG);
+            var semanticsResult = analysis.semanticAnalysis(parserResult);
+            var ollirResult = optimization.toOllir(semanticsResult);
+
+            parserResults.add(parserResult);
+            semanticsResults.add(semanticsResult);
+            codes.add(ollirResult.getOllirCode());
+            optimizedResults.add(optimization.optimize(new OllirResult(ollirResult.getOllirCode(), CONFIG)));
+        }
+
+        ollirCodes = codes;
+    }
+
+    /**
+     * @return the source code of the programs each operation compiles, which must compile without errors
+     */
+    protected abstract List<String> loadPrograms();
+
+    /**
+     * Unoptimized OLLIR classes for the optimizations, parsed again before each operation.
+     */
+    @State(Scope.Thread)
+    public static class UnoptimizedOllir {
+
+        private List<OllirResult> ollirResults;
+
+        @Setup(Level.Invocation)
+        public void setup() {
+            ollirResults = ollirCodes.stream()
+                    .map(code -> new OllirResult(code, CONFIG))
+                    .toList();
+        }
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        for (var program : programs) {
+            blackhole.consume(parser.parse(program, CONFIG));
+        }
+    }
+
+    @Benchmark
+    public void symbolTable(Blackhole blackhole) {
+        for (var parserResult : parserResults) {
+            blackhole.consume(JmmSymbolTableBuilder.build(parserResult.getRootNode()));
+        }
+    }
+
+    @Benchmark
+    public void semanticAnalysis(Blackhole blackhole) {
+        for (var parserResult : parserResults) {
+            blackhole.consume(analysis.semanticAnalysis(parserResult));
+        }
+    }
+
+    /**
+     * Includes parsing the generated OLLIR code, which {@link OllirResult} does when it is created.
+     */
+    @Benchmark
+    public void toOllir(Blackhole blackhole) {
+        for (var semanticsResult : semanticsResults) {
+            blackhole.consume(optimization.toOllir(semanticsResult));
+        }
+    }
+
+    @Benchmark
+    public void optimize(UnoptimizedOllir unoptimized, Blackhole blackhole) {
+        for (var ollirResult : unoptimized.ollirResults) {
+            blackhole.consume(optimization.optimize(ollirResult));
+        }
+    }
+
+    @Benchmark
+    public void toJasmin(Blackhole blackhole) {
+        for (var ollirResult : optimizedResults) {
+            blackhole.consume(backend.toJasmin(ollirResult));
+        }
+    }
+
+    /**
+     * Every stage, from the source code to Jasmin, with the AST and OLLIR optimizations.
+     */
+    @Benchmark
+    public void pipeline(Blackhole blackhole) {
+        for (var program : programs) {
+            var parserResult = parser.parse(program, CONFIG);
+            var semanticsResult = optimization.optimize(analysis.semanticAnalysis(parserResult));
+            var ollirResult = optimization.optimize(optimization.toOllir(semanticsResult));
+            blackhole.consume(backend.toJasmin(ollirResult));
+        }
+    }
+}
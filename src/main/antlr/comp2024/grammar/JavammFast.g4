@@ -0,0 +1,29 @@
+grammar JavammFast;
+
+// the tokens, the other rules and the package of the header all come from Javamm
+import Javamm;
+
+// A subset of Javamm, with the same trees: it accepts every program that the later stages can compile. It drops the
+// alternative that made calls the slowest decision to predict: "expr LPAREN expr RPAREN #MemberCall" let "a.foo(b)"
+// also be read as "a.foo" applied to "(b)", so every call with one argument was an ambiguity that SLL prediction
+// handed over to full LL. Programs that apply an expression to an argument, such as "f(x);", are rejected here, while
+// Javamm parses them into MemberCall nodes that no later stage handles.
+expr
+    : LPAREN expr RPAREN #Paren //
+    | LSQPAREN (expr (COMMA expr)*)? RSQPAREN #ArrayInit //
+    | expr LSQPAREN expr RSQPAREN #ArrayAccess //
+    | expr MEMBERCALL LENGTH #Length //
+    | expr MEMBERCALL name= ID (LPAREN (expr (COMMA expr)*)? RPAREN)? #FunctionCall //
+    | value= THIS #Object //
+    | value= NOT expr #Negation //
+    | NEW INT LSQPAREN expr RSQPAREN #NewArray //
+    | NEW name= ID LPAREN RPAREN #NewClass //
+    | expr op= (MUL | DIV) expr #BinaryOp //
+    | expr op= (ADD | SUB) expr #BinaryOp //
+    | expr op= (LESS | GREATER) expr #BinaryOp //
+    | expr op= AND expr #BinaryOp //
+    | expr op= OR expr #BinaryOp //
+    | value= INTEGER #IntegerLiteral //
+    | value= (TRUE | FALSE) #BooleanLiteral //
+    | (name= ID | name= LENGTH | name= MAIN) #VarRefExpr //
+    ;
@@ -0,0 +1,213 @@
+package pt.up.fe.comp2024;
+
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.utils.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Compiles many files in parallel, each one with its own pipeline, on a work-stealing pool.
+ * <p>
+ * Files are compiled in any order, but they are always listed, and their reports printed, sorted by path. Class files
+ * are written once every file is compiled, in the same order, so when two files declare the same class, the first one
+ * keeps the class file and the other one gets an error.
+ */
+public class BatchCompiler {
+
+    private static final String JMM_EXTENSION = ".jmm";
+
+    private final Map<String, String> config;
+    private final File outputDir;
+    private final Map<File, Metrics> metrics;
+    private final Map<File, ClassFile> classFiles;
+
+    /**
+     * A class file that is not written yet.
+     */
+    private record ClassFile(String className, byte[] bytes) {
+    }
+
+    public BatchCompiler(Map<String, String> config, File outputDir) {
+        this.config = config;
+        this.outputDir = outputDir;
+        this.metrics = new ConcurrentHashMap<>();
+        this.classFiles = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Expands the comma-separated input specification, where each element is a file, a directory (every .jmm file
+     * inside it, recursively) or a glob such as 'tests/**&#47;*.jmm'.
+     *
+     * @return the input files, sorted by path
+     */
+    public static List<File> collectInputs(String inputs, File workingDir) {
+        var files = new TreeSet<Path>();
+
+        for (var input : inputs.split(",")) {
+            if (input.isBlank()) {
+                continue;
+            }
+
+            var path = workingDir.toPath().resolve(input.strip()).normalize();
+            if (Files.isDirectory(path)) {
+                files.addAll(walk(path, file -> file.toString().endsWith(JMM_EXTENSION)));
+            } else if (Files.isRegularFile(path)) {
+                files.add(path);
+            } else {
+                files.addAll(glob(workingDir.toPath(), input.strip()));
+            }
+        }
+
+        return files.stream().map(Path::toFile).toList();
+    }
+
+    private static List<Path> glob(Path workingDir, String pattern) {
+        var absolute = workingDir.resolve(pattern).normalize().toString();
+
+        // Only walk the part of the path before the first wildcard
+        int firstWildcard = indexOfWildcard(absolute);
+        if (firstWildcard < 0) {
+            throw new RuntimeException("Could not find input '" + pattern + "'");
+        }
+        var root = Path.of(absolute.substring(0, absolute.lastIndexOf(File.separatorChar, firstWildcard) + 1));
+
+        var matcher = FileSystems.getDefault().getPathMatcher("glob:" + absolute);
+        return walk(root, matcher::matches);
+    }
+
+    private static int indexOfWildcard(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if ("*?[{".indexOf(pattern.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static List<Path> walk(Path root, Predicate<Path> filter) {
+        if (!Files.isDirectory(root)) {
+            return List.of();
+        }
+
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile).filter(filter).toList();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not list the files of '" + root + "'", e);
+        }
+    }
+
+    /**
+     * Compiles every file, using the given number of threads.
+     * <p>
+     * If instrumentation is enabled, the metrics of every file are written to the configured file, in the same order
+     * as the files.
+     *
+     * @return the reports of each file, in the same order as the files, including the error of a file whose class
+     * file is not written because an earlier file declares the same class
+     */
+    public Map<File, List<Report>> compile(List<File> inputs, int threads) {
+        var pool = new ForkJoinPool(threads);
+
+        try {
+            var tasks = new ArrayList<ForkJoinTask<List<Report>>>();
+            for (var input : inputs) {
+                tasks.add(pool.submit(() -> compile(input)));
+            }
+
+            var results = new LinkedHashMap<File, List<Report>>();
+            for (int i = 0; i < inputs.size(); i++) {
+                results.put(inputs.get(i), tasks.get(i).join());
+            }
+
+            writeClassFiles(results);
+
+            var metricsFile = CompilerConfig.getMetrics(config);
+            if (metricsFile.isPresent()) {
+                var orderedMetrics = new LinkedHashMap<File, Metrics>();
+                for (var input : inputs) {
+                    orderedMetrics.put(input, metrics.get(input));
+                }
+                Metrics.write(orderedMetrics, JmmCompiler.resolve(outputDir, metricsFile.get()));
+            }
+
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void writeClassFiles(Map<File, List<Report>> results) {
+        var writtenBy = new HashMap<String, File>();
+
+        for (var result : results.entrySet()) {
+            var classFile = classFiles.get(result.getKey());
+            if (classFile == null) {
+                continue;
+            }
+
+            var previous = writtenBy.putIfAbsent(classFile.className(), result.getKey());
+            if (previous != null) {
+                var reports = new ArrayList<>(result.getValue());
+                reports.add(Report.newError(Stage.OTHER, -1, -1, "Class '" + classFile.className()
+                        + "' is also declared in '" + previous + "', whose class file is kept", null));
+                result.setValue(reports);
+                continue;
+            }
+
+            JmmCompiler.writeClassFile(outputDir, classFile.className(), classFile.bytes());
+        }
+    }
+
+    private List<Report> compile(File input) {
+        var fileConfig = CompilerConfig.setInputFile(config, input);
+        var fileMetrics = CompilerConfig.getMetrics(config).isPresent() ? new Metrics() : Metrics.DISABLED;
+        metrics.put(input, fileMetrics);
+
+        try {
+            return new JmmCompiler().compile(fileConfig, fileMetrics,
+                    (className, bytes) -> classFiles.put(input, new ClassFile(className, bytes)));
+        } catch (RuntimeException | StackOverflowError e) {
+            // One broken file must not stop the whole batch
+            return List.of(Report.newError(Stage.OTHER, -1, -1, "Exception while compiling: " + e, null));
+        }
+    }
+
+    /**
+     * Prints the errors and warnings of each file, followed by a summary.
+     *
+     * @return the number of files that failed to compile
+     */
+    public static int printReports(Map<File, List<Report>> results, Consumer<String> out) {
+        int failed = 0;
+
+        for (var result : results.entrySet()) {
+            boolean hasErrors = false;
+            for (var report : result.getValue()) {
+                if (report.getType() == ReportType.ERROR || report.getType() == ReportType.WARNING) {
+                    out.accept(result.getKey() + ": " + report);
+                }
+                hasErrors |= report.getType() == ReportType.ERROR;
+            }
+
+            if (hasErrors) {
+                failed++;
+            }
+        }
+
+        out.accept("Compiled " + results.size() + " file(s), " + failed + " failed");
+        return failed;
+    }
+}
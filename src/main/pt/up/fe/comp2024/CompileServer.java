@@ -0,0 +1,155 @@
+package pt.up.fe.comp2024;
+
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.specs.util.SpecsIo;
+import pt.up.fe.specs.util.utilities.StringLines;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Long-lived compiler that keeps the same {@link JmmCompiler} warmed up between compilations.
+ * <p>
+ * Each request is a single line with the working directory of the client followed by the command-line arguments, all
+ * separated by tabs. The answer is any number of message lines followed by "EXIT &lt;status&gt;", where a status of 0
+ * means the compilation succeeded.
+ * <p>
+ * Requests are read either from stdin or from connections to a port of the loopback interface, and are compiled one at
+ * a time. Any local process can connect to the port, so the working directory, the input files and the files written
+ * must all be inside the directory the server was started in.
+ */
+public class CompileServer {
+
+    public static final String EXIT = "EXIT ";
+
+    private final JmmCompiler compiler;
+    private final Path root;
+
+    public CompileServer() {
+        this(SpecsIo.getWorkingDir());
+    }
+
+    /**
+     * @param root the directory that holds every file the requests can read or write
+     */
+    public CompileServer(File root) {
+        this.compiler = new JmmCompiler();
+        this.root = canonical(root);
+    }
+
+    /**
+     * Accepts connections on the given port of the loopback interface, until the process is killed.
+     */
+    public void listen(int port) throws IOException {
+        try (var serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            while (true) {
+                try (var socket = serverSocket.accept()) {
+                    serve(socket.getInputStream(), socket.getOutputStream());
+                } catch (IOException e) {
+                    System.err.println("Lost connection to client: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers the requests read from the input, until it is closed.
+     */
+    public void serve(InputStream input, OutputStream output) throws IOException {
+        var in = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        var out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+
+        String request;
+        while ((request = in.readLine()) != null) {
+            if (request.isBlank()) {
+                continue;
+            }
+
+            int status = handle(request, out);
+            out.println(EXIT + status);
+            out.flush();
+        }
+    }
+
+    private int handle(String request, PrintWriter out) {
+        var fields = request.split("\t");
+        var args = Arrays.copyOfRange(fields, 1, fields.length);
+
+        try {
+            var workingDir = checkInsideRoot(JmmCompiler.resolve(root.toFile(), fields[0]), "Working directory");
+            var config = CompilerConfig.parseArgs(resolveInputFile(args, workingDir));
+            if (CompilerConfig.getServer(config).isPresent()) {
+                throw new RuntimeException("A compile server cannot start another one");
+            }
+
+            // class files are written to the working directory, which is already checked
+            CompilerConfig.getMetrics(config)
+                    .ifPresent(metrics -> checkInsideRoot(JmmCompiler.resolve(workingDir, metrics), "Metrics file"));
+
+            var batch = CompilerConfig.getBatch(config);
+            if (batch.isPresent()) {
+                var inputs = BatchCompiler.collectInputs(batch.get(), workingDir);
+                inputs.forEach(input -> checkInsideRoot(input, "Input file"));
+                var results = new BatchCompiler(config, workingDir).compile(inputs, CompilerConfig.getJobs(config));
+                return BatchCompiler.printReports(results, out::println) == 0 ? 0 : 1;
+            }
+
+            checkInsideRoot(CompilerConfig.getInputFile(config).orElseThrow(), "Input file");
+            var reports = compiler.compile(config, workingDir);
+            var errors = reports.stream()
+                    .filter(report -> report.getType() == ReportType.ERROR)
+                    .toList();
+
+            errors.forEach(out::println);
+            return errors.isEmpty() ? 0 : 1;
+        } catch (RuntimeException e) {
+            var message = e.getMessage() != null ? e.getMessage() : e.toString();
+            StringLines.getLines(message).forEach(out::println);
+            return 1;
+        }
+    }
+
+    /**
+     * Paths are compared after resolving '..' and symbolic links, so neither can be used to leave the root.
+     *
+     * @return the file, as a canonical path
+     */
+    private File checkInsideRoot(File file, String description) {
+        var path = canonical(file);
+        if (!path.startsWith(root)) {
+            throw new RuntimeException(description + " '" + file + "' is outside of the directory of the server, '"
+                    + root + "'");
+        }
+        return path.toFile();
+    }
+
+    private static Path canonical(File file) {
+        try {
+            return file.getCanonicalFile().toPath();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not resolve path '" + file + "'", e);
+        }
+    }
+
+    /**
+     * Relative input paths are relative to the working directory of the client, not of the server.
+     */
+    private static String[] resolveInputFile(String[] args, File workingDir) {
+        var resolved = args.clone();
+        for (int i = 0; i < resolved.length; i++) {
+            if (!resolved[i].startsWith("-i=")) {
+                continue;
+            }
+
+            var inputFile = new File(resolved[i].substring(3));
+            if (!inputFile.isAbsolute()) {
+                resolved[i] = "-i=" + new File(workingDir, inputFile.getPath()).getPath();
+            }
+        }
+        return resolved;
+    }
+}
@@ -10,6 +10,15 @@ public class CompilerConfig {
     private static final String INPUT_FILE = "inputFile";
     private static final String OPTIMIZE = "optimize";
     private static final String REGISTER = "registerAllocation";
+    private static final String CLASS_FILE = "classFile";
+    private static final String SERVER = "server";
+    private static final String BATCH = "batch";
+    private static final String JOBS = "jobs";
+    private static final String ALL_REPORTS = "allReports";
+    private static final String METRICS = "metrics";
+    private static final String INLINE = "inline";
+    private static final String PROFILE_PARSER = "profileParser";
+    private static final String FAST_GRAMMAR = "fastGrammar";
 
 
     static Map<String, String> shortToLong = new HashMap<>();
@@ -18,6 +27,15 @@ public class CompilerConfig {
         shortToLong.put("i", CompilerConfig.INPUT_FILE);
         shortToLong.put("o", CompilerConfig.OPTIMIZE);
         shortToLong.put("r", CompilerConfig.REGISTER);
+        shortToLong.put("c", CompilerConfig.CLASS_FILE);
+        shortToLong.put("s", CompilerConfig.SERVER);
+        shortToLong.put("b", CompilerConfig.BATCH);
+        shortToLong.put("j", CompilerConfig.JOBS);
+        shortToLong.put("a", CompilerConfig.ALL_REPORTS);
+        shortToLong.put("m", CompilerConfig.METRICS);
+        shortToLong.put("n", CompilerConfig.INLINE);
+        shortToLong.put("p", CompilerConfig.PROFILE_PARSER);
+        shortToLong.put("f", CompilerConfig.FAST_GRAMMAR);
     }
 
 
@@ -32,14 +50,99 @@ public class CompilerConfig {
         return Optional.of(new File(inputFile));
     }
 
+    /**
+     * @return a copy of the configuration that compiles the given file
+     */
+    public static Map<String, String> setInputFile(Map<String, String> config, File inputFile) {
+        var fileConfig = new HashMap<>(config);
+        fileConfig.put(INPUT_FILE, inputFile.getAbsolutePath());
+        return fileConfig;
+    }
+
     public static boolean getOptimize(Map<String, String> config) {
         return Boolean.parseBoolean(config.getOrDefault(OPTIMIZE, "false"));
     }
 
+    /**
+     * @return the largest number of OLLIR instructions of a method whose calls are inlined when optimizing, where 0
+     * disables inlining
+     */
+    public static int getInline(Map<String, String> config) {
+        return Integer.parseInt(config.getOrDefault(INLINE, "8"));
+    }
+
     public static int getRegisterAllocation(Map<String, String> config) {
         return Integer.parseInt(config.getOrDefault(REGISTER, "-1"));
     }
 
+    /**
+     * If true, the class file is written directly instead of generating Jasmin code.
+     */
+    public static boolean getClassFile(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(CLASS_FILE, "false"));
+    }
+
+    /**
+     * If true, the semantic analysis reports the problems found by every pass, instead of stopping at the first pass
+     * that finds any.
+     */
+    public static boolean getAllReports(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(ALL_REPORTS, "false"));
+    }
+
+    /**
+     * If true, the parser records how long each decision of the grammar takes to predict, and adds a table of the
+     * slowest ones to its reports as a log.
+     */
+    public static boolean getProfileParser(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(PROFILE_PARSER, "false"));
+    }
+
+    /**
+     * If true, the parser uses the JavammFast grammar, which gives the same trees as Javamm to the programs the
+     * compiler accepts and does not need full LL prediction for calls.
+     */
+    public static boolean getFastGrammar(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(FAST_GRAMMAR, "false"));
+    }
+
+    /**
+     * @return the file where the time and memory used by each phase are written, as CSV if its name ends with ".csv"
+     * and as JSON otherwise, if instrumentation is enabled
+     */
+    public static Optional<String> getMetrics(Map<String, String> config) {
+        return Optional.ofNullable(config.get(METRICS));
+    }
+
+    /**
+     * @return empty if the compiler should not run as a compile server, "true" to read requests from stdin, or the
+     * port where requests are accepted
+     */
+    public static Optional<String> getServer(Map<String, String> config) {
+        return Optional.ofNullable(config.get(SERVER));
+    }
+
+    /**
+     * @return the comma-separated files, directories or globs to compile in batch mode, if any
+     */
+    public static Optional<String> getBatch(Map<String, String> config) {
+        return Optional.ofNullable(config.get(BATCH));
+    }
+
+    /**
+     * @return how many files are compiled at the same time in batch mode
+     */
+    public static int getJobs(Map<String, String> config) {
+        var jobs = config.get(JOBS);
+        return jobs != null ? Integer.parseInt(jobs) : Runtime.getRuntime().availableProcessors();
+    }
+
+    public static Optional<Integer> getServerPort(Map<String, String> config) {
+        return getServer(config)
+                .filter(server -> !server.equals("true"))
+                .map(Integer::parseInt);
+    }
+
 
     public static Map<String, String> getDefault() {
 
@@ -47,6 +150,7 @@ public class CompilerConfig {
 
         config.put(CompilerConfig.OPTIMIZE, "false");
         config.put(CompilerConfig.REGISTER, "-1");
+        config.put(CompilerConfig.CLASS_FILE, "false");
 
         return config;
     }
@@ -89,6 +193,21 @@ public class CompilerConfig {
             config.put(getLongOpt(shortOption), value);
         }
 
+        // a compile server receives the input files with each request
+        if (config.containsKey(SERVER)) {
+            getServerPort(config);
+            return config;
+        }
+
+        // in batch mode, the input files are given by the batch option instead
+        if (config.containsKey(BATCH)) {
+            getOptimize(config);
+            getInline(config);
+            getRegisterAllocation(config);
+            getJobs(config);
+            return config;
+        }
+
         if (!config.containsKey(INPUT_FILE)) {
 
             throw new RuntimeException("Expected an input file, use '-i=<PATH_TO_FILE>'");
@@ -105,7 +224,9 @@ public class CompilerConfig {
 
         // Verify if values are valid
         getOptimize(config);
+        getInline(config);
         getRegisterAllocation(config);
+        getClassFile(config);
 
         return config;
     }
@@ -0,0 +1,170 @@
+package pt.up.fe.comp2024;
+
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
+import pt.up.fe.comp2024.backend.ClassFileGenerator;
+import pt.up.fe.comp2024.backend.JasminBackendImpl;
+import pt.up.fe.comp2024.optimization.JmmOptimizationImpl;
+import pt.up.fe.comp2024.parser.JmmParserImpl;
+import pt.up.fe.comp2024.utils.Metrics;
+import pt.up.fe.specs.util.SpecsCollections;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs every stage of the compiler over a single file.
+ * <p>
+ * The stages are created once, so the same instance can compile many files without paying their initialization again.
+ */
+public class JmmCompiler {
+
+    private final JmmParserImpl parser;
+    private final JmmAnalysisImpl sema;
+    private final JmmOptimizationImpl ollirGen;
+    private final JasminBackendImpl jasminGen;
+
+    public JmmCompiler() {
+        this.parser = new JmmParserImpl();
+        this.sema = new JmmAnalysisImpl();
+        this.ollirGen = new JmmOptimizationImpl();
+        this.jasminGen = new JasminBackendImpl();
+    }
+
+    /**
+     * Compiles the input file of the configuration, stopping after the first stage that reports an error.
+     * <p>
+     * If instrumentation is enabled, the metrics of the compilation are written to the configured file, relative to
+     * the output directory.
+     *
+     * @param outputDir where the class file is written, when the class file backend is selected
+     * @return the reports of every stage that ran
+     */
+    public List<Report> compile(Map<String, String> config, File outputDir) {
+        var metricsFile = CompilerConfig.getMetrics(config);
+        if (metricsFile.isEmpty()) {
+            return compile(config, outputDir, Metrics.DISABLED);
+        }
+
+        var metrics = new Metrics();
+        var reports = compile(config, outputDir, metrics);
+
+        var inputFile = CompilerConfig.getInputFile(config).orElseThrow();
+        Metrics.write(Map.of(inputFile, metrics), resolve(outputDir, metricsFile.get()));
+
+        return reports;
+    }
+
+    /**
+     * Same as {@link #compile(Map, File)}, but the time and memory used by each phase are recorded in the given metrics
+     * instead of being written to a file.
+     */
+    public List<Report> compile(Map<String, String> config, File outputDir, Metrics metrics) {
+        return compile(config, metrics, (className, classFile) -> writeClassFile(outputDir, className, classFile));
+    }
+
+    /**
+     * Same as {@link #compile(Map, File, Metrics)}, but the class file is given to the writer, with the name of its
+     * class, instead of being written to the output directory.
+     */
+    public List<Report> compile(Map<String, String> config, Metrics metrics,
+                                BiConsumer<String, byte[]> classFileWriter) {
+        var inputFile = CompilerConfig.getInputFile(config).orElseThrow();
+        if (!inputFile.isFile()) {
+            throw new RuntimeException("Option '-i' expects a path to an existing input file, got '" + inputFile + "'.");
+        }
+        String code = SpecsIo.read(inputFile);
+
+        sema.setMetrics(metrics);
+        ollirGen.setMetrics(metrics);
+
+        // Parsing stage
+        JmmParserResult parserResult = metrics.measure("parsing", () -> parser.parse(code, config));
+        if (hasErrors(parserResult.getReports())) {
+            return parserResult.getReports();
+        }
+
+        if (metrics.isEnabled()) {
+            metrics.addCount("astNodes", parserResult.getRootNode().getDescendants().size() + 1);
+        }
+
+        // Print AST
+        //System.out.println(parserResult.getRootNode().toTree());
+
+        // Semantic Analysis stage
+        JmmSemanticsResult semanticsResult = metrics.measure("analysis", () -> sema.semanticAnalysis(parserResult));
+        if (hasErrors(semanticsResult.getReports())) {
+            return semanticsResult.getReports();
+        }
+
+
+        // Optimization stage
+        var optimizedSemantics = metrics.measure("optimization/ast", () -> ollirGen.optimize(semanticsResult));
+        OllirResult generatedOllir = metrics.measure("ollirGeneration", () -> ollirGen.toOllir(optimizedSemantics));
+        OllirResult ollirResult = metrics.measure("optimization/ollir", () -> ollirGen.optimize(generatedOllir));
+        if (hasErrors(ollirResult.getReports())) {
+            return ollirResult.getReports();
+        }
+
+        if (metrics.isEnabled()) {
+            metrics.addCount("ollirInstructions", ollirResult.getOllirClass().getMethods().stream()
+                    .mapToLong(method -> method.getInstructions().size())
+                    .sum());
+        }
+
+        // Print OLLIR code
+        //System.out.println(ollirResult.getOllirCode());
+
+        // Code generation stage
+        if (CompilerConfig.getClassFile(config)) {
+            ClassFileGenerator classFileGen = new ClassFileGenerator(ollirResult);
+            byte[] classFile = metrics.measure("classFile", classFileGen::build);
+
+            var reports = SpecsCollections.concat(ollirResult.getReports(), classFileGen.getReports());
+            if (hasErrors(reports)) {
+                return reports;
+            }
+
+            classFileWriter.accept(ollirResult.getOllirClass().getClassName(), classFile);
+            return reports;
+        }
+
+        JasminResult jasminResult = metrics.measure("jasmin", () -> jasminGen.toJasmin(ollirResult));
+
+        // Print Jasmin code
+        //System.out.println(jasminResult.getJasminCode());
+
+        return jasminResult.getReports();
+    }
+
+    static void writeClassFile(File outputDir, String className, byte[] classFile) {
+        var outputFile = new File(outputDir, className + ".class");
+        try {
+            Files.write(outputFile.toPath(), classFile);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write class file '" + outputFile + "'", e);
+        }
+    }
+
+    /**
+     * Relative paths are relative to the given directory.
+     */
+    static File resolve(File directory, String path) {
+        var file = new File(path);
+        return file.isAbsolute() ? file : new File(directory, path);
+    }
+
+    public static boolean hasErrors(List<Report> reports) {
+        return reports.stream().anyMatch(report -> report.getType() == ReportType.ERROR);
+    }
+}
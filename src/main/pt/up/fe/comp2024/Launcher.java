@@ -1,17 +1,12 @@
 package pt.up.fe.comp2024;
 
 import pt.up.fe.comp.TestUtils;
-import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
-import pt.up.fe.comp.jmm.jasmin.JasminResult;
-import pt.up.fe.comp.jmm.ollir.OllirResult;
-import pt.up.fe.comp.jmm.parser.JmmParserResult;
-import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
-import pt.up.fe.comp2024.backend.JasminBackendImpl;
-import pt.up.fe.comp2024.optimization.JmmOptimizationImpl;
-import pt.up.fe.comp2024.parser.JmmParserImpl;
-import pt.up.fe.specs.util.SpecsIo;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.specs.util.SpecsSystem;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Map;
 
 public class Launcher {
@@ -21,41 +16,44 @@ public class Launcher {
 
         Map<String, String> config = CompilerConfig.parseArgs(args);
 
-        var inputFile = CompilerConfig.getInputFile(config).orElseThrow();
-        if (!inputFile.isFile()) {
-            throw new RuntimeException("Option '-i' expects a path to an existing input file, got '" + args[0] + "'.");
+        // Compile server mode, requests are handled until the process is killed or stdin is closed
+        if (CompilerConfig.getServer(config).isPresent()) {
+            var server = new CompileServer();
+            var port = CompilerConfig.getServerPort(config);
+            try {
+                if (port.isPresent())
+                    server.listen(port.get());
+                else
+                    server.serve(System.in, System.out);
+            } catch (IOException e) {
+                throw new RuntimeException("Compile server stopped", e);
+            }
+            return;
         }
-        String code = SpecsIo.read(inputFile);
 
-        // Parsing stage
-        JmmParserImpl parser = new JmmParserImpl();
-        JmmParserResult parserResult = parser.parse(code, config);
-        TestUtils.noErrors(parserResult.getReports());
-
-        // Print AST
-        //System.out.println(parserResult.getRootNode().toTree());
-
-        // Semantic Analysis stage
-        JmmAnalysisImpl sema = new JmmAnalysisImpl();
-        JmmSemanticsResult semanticsResult = sema.semanticAnalysis(parserResult);
-        TestUtils.noErrors(semanticsResult.getReports());
-
-
-        // Optimization stage
-        JmmOptimizationImpl ollirGen = new JmmOptimizationImpl();
-        OllirResult ollirResult = ollirGen.toOllir(semanticsResult);
-        TestUtils.noErrors(ollirResult.getReports());
+        // Batch mode, every file is compiled by its own pipeline
+        var batch = CompilerConfig.getBatch(config);
+        if (batch.isPresent()) {
+            var workingDir = new File(".");
+            var inputs = BatchCompiler.collectInputs(batch.get(), workingDir);
+            var results = new BatchCompiler(config, workingDir).compile(inputs, CompilerConfig.getJobs(config));
+
+            int failed = BatchCompiler.printReports(results, System.out::println);
+            if (failed > 0) {
+                throw new RuntimeException(failed + " file(s) failed to compile");
+            }
+            return;
+        }
 
-        // Print OLLIR code
-        //System.out.println(ollirResult.getOllirCode());
+        var reports = new JmmCompiler().compile(config, new File("."));
 
-        // Code generation stage
-        JasminBackendImpl jasminGen = new JasminBackendImpl();
-        JasminResult jasminResult = jasminGen.toJasmin(ollirResult);
-        TestUtils.noErrors(jasminResult.getReports());
+        if (CompilerConfig.getProfileParser(config)) {
+            reports.stream()
+                    .filter(report -> report.getType() == ReportType.LOG && report.getStage() == Stage.SYNTATIC)
+                    .forEach(report -> System.out.println(report.getMessage()));
+        }
 
-        // Print Jasmin code
-        //System.out.println(jasminResult.getJasminCode());
+        TestUtils.noErrors(reports);
     }
 
 }
@@ -0,0 +1,112 @@
+package pt.up.fe.comp2024.analysis;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.utils.Metrics;
+
+import java.util.*;
+
+/**
+ * Runs several analysis passes in a single preorder traversal of the AST.
+ * <p>
+ * Each node is only given to the passes that have a visit for its kind, and each pass sees its nodes in the same order
+ * as if it visited the AST on its own.
+ */
+public class AnalysisEngine {
+
+    private final List<AnalysisVisitor> passes;
+    private final Map<String, List<AnalysisVisitor>> passesByKind;
+    private final Map<AnalysisVisitor, Exception> failedPasses;
+    private final Metrics metrics;
+    private final Map<AnalysisVisitor, String> phaseNames;
+
+    public AnalysisEngine(List<AnalysisVisitor> passes, Metrics metrics) {
+        this.passes = passes;
+        this.passesByKind = new HashMap<>();
+        this.failedPasses = new IdentityHashMap<>();
+        this.metrics = metrics;
+
+        this.phaseNames = new IdentityHashMap<>();
+        for (var pass : passes) {
+            phaseNames.put(pass, "analysis/" + pass.getClass().getSimpleName());
+        }
+    }
+
+    public AnalysisEngine(List<AnalysisVisitor> passes) {
+        this(passes, Metrics.DISABLED);
+    }
+
+    /**
+     * Analyses the AST with every pass.
+     *
+     * @param collectAll if false, only the reports up to the first pass that reported something are returned,
+     *                   following the order of the passes
+     * @return the reports of the passes, in the order of the passes
+     */
+    public List<Report> analyze(JmmNode root, SymbolTable table, boolean collectAll) {
+        var stack = new ArrayDeque<JmmNode>();
+        stack.push(root);
+
+        while (!stack.isEmpty()) {
+            var node = stack.pop();
+
+            for (var pass : getPasses(node)) {
+                visit(pass, node, table);
+            }
+
+            var children = node.getChildren();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+        }
+
+        List<Report> reports = new ArrayList<>();
+        for (var pass : passes) {
+            var exception = failedPasses.get(pass);
+            if (exception != null) {
+                reports.add(Report.newError(Stage.SEMANTIC,
+                        -1,
+                        -1,
+                        "Problem while executing analysis pass '" + pass.getClass() + "'",
+                        exception)
+                );
+                continue;
+            }
+
+            reports.addAll(pass.getReports());
+            if (!collectAll && !pass.getReports().isEmpty()) {
+                break;
+            }
+        }
+
+        return reports;
+    }
+
+    private void visit(AnalysisVisitor pass, JmmNode node, SymbolTable table) {
+        // A pass that failed does not visit any more nodes
+        if (failedPasses.containsKey(pass)) {
+            return;
+        }
+
+        // Each pass is measured apart, even though they share the traversal
+        var start = metrics.start();
+        try {
+            pass.visitNode(node, table);
+        } catch (Exception e) {
+            failedPasses.put(pass, e);
+        } finally {
+            metrics.stop(phaseNames.get(pass), start);
+        }
+    }
+
+    /**
+     * @return the passes that have a visit for the kind of the node, or for one of its super kinds
+     */
+    private List<AnalysisVisitor> getPasses(JmmNode node) {
+        return passesByKind.computeIfAbsent(node.getKind(), kind -> passes.stream()
+                .filter(pass -> node.getHierarchy().stream().anyMatch(pass.getVisitedKinds()::contains))
+                .toList());
+    }
+}
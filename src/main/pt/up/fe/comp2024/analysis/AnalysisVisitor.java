@@ -4,22 +4,78 @@ import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.ast.PreorderJmmVisitor;
 import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.ast.TypeUtils;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
+import pt.up.fe.comp2024.symboltable.ResolvedSymbol.Scope;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.BiFunction;
 
 /**
- *
+ * Analysis pass that visits the AST in preorder, either on its own or together with other passes in an
+ * {@link AnalysisEngine}.
  */
 public abstract class AnalysisVisitor extends PreorderJmmVisitor<SymbolTable, Void> implements AnalysisPass {
 
     private List<Report> reports;
+    private SymbolTable table;
+
+    // Filled by buildVisitor(), which runs in the super constructor, before the fields of this class are initialized
+    private Set<String> visitedKinds;
 
     public AnalysisVisitor() {
         reports = new ArrayList<>();
         setDefaultValue(() -> null);
     }
 
+    @Override
+    public void addVisit(String kind, BiFunction<JmmNode, SymbolTable, Void> method) {
+        super.addVisit(kind, method);
+
+        if (visitedKinds == null) {
+            visitedKinds = new HashSet<>();
+        }
+        visitedKinds.add(kind);
+    }
+
+    /**
+     * @return the kinds of node this pass has a visit for
+     */
+    protected Set<String> getVisitedKinds() {
+        return visitedKinds != null ? visitedKinds : Set.of();
+    }
+
+    /**
+     * Applies the visit of this pass to the given node only, without visiting its children.
+     */
+    protected void visitNode(JmmNode node, SymbolTable table) {
+        this.table = table;
+        getVisit(node).apply(node, table);
+    }
+
+    /**
+     * @return the type node of the declaration of the variable, if it is a parameter or local variable of the given
+     * method, or the reference itself otherwise
+     */
+    protected JmmNode getActualTypeVarRef(JmmNode varRefExpr, String methodName) {
+        return JmmSymbolTable.of(table).resolve(methodName, varRefExpr.get("name"))
+                .filter(symbol -> symbol.getScope() == Scope.LOCAL || symbol.getScope() == Scope.PARAMETER)
+                .flatMap(symbol -> symbol.getDeclaration())
+                .map(declaration -> declaration.getChild(0))
+                .orElse(varRefExpr);
+    }
+
+    /**
+     * @return the type node of the declaration of the variable, which can also be a field, or the reference itself if
+     * it is not declared
+     */
+    protected JmmNode getActualTypeVarRef(JmmNode varRefExpr) {
+        return TypeUtils.getDeclaredType(varRefExpr, table);
+    }
+
     protected void addReport(Report report) {
         reports.add(report);
     }
@@ -31,6 +87,8 @@ public abstract class AnalysisVisitor extends PreorderJmmVisitor<SymbolTable, Vo
 
     @Override
     public List<Report> analyze(JmmNode root, SymbolTable table) {
+        this.table = table;
+
         // Visit the node
         visit(root, table);
 
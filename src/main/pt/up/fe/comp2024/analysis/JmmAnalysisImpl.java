@@ -6,25 +6,36 @@ import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp.jmm.report.Report;
-import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.CompilerConfig;
 import pt.up.fe.comp2024.analysis.passes.*;
 import pt.up.fe.comp2024.symboltable.JmmSymbolTableBuilder;
+import pt.up.fe.comp2024.utils.Metrics;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 public class JmmAnalysisImpl implements JmmAnalysis {
 
 
-    private final List<AnalysisPass> analysisPasses;
+    // Passes keep state between visits, so each analysis creates its own
+    private final List<Supplier<AnalysisVisitor>> analysisPasses;
+    private Metrics metrics;
 
     public JmmAnalysisImpl() {
 
-        this.analysisPasses = List.of(new UndeclaredVariable(), new DifferentTypeOp(), new ArrayIndexNotInt(),
-                new ArrayAccessOnInt(), new AssignIntToBool(), new ObjectAssignment(), new ArrayInitWrong(),
-                new IntInIfCondition(), new ArrayInWhileCondition(), new CallToUndeclaredMethod(), new VarArgs(),
-                new MemberAccessOnInt(), new IncompatibleReturn(), new IncompatibleArguments(), new FieldInStaticInvalid(), new MissDuplicated(),
-                new LengthHandle());
+        this.analysisPasses = List.of(UndeclaredVariable::new, DifferentTypeOp::new, ArrayIndexNotInt::new,
+                ArrayAccessOnInt::new, AssignIntToBool::new, ObjectAssignment::new, ArrayInitWrong::new,
+                IntInIfCondition::new, ArrayInWhileCondition::new, CallToUndeclaredMethod::new, VarArgs::new,
+                MemberAccessOnInt::new, IncompatibleReturn::new, IncompatibleArguments::new, FieldInStaticInvalid::new, MissDuplicated::new,
+                LengthHandle::new);
+        this.metrics = Metrics.DISABLED;
+    }
+
+    /**
+     * Sets where the time of building the symbol table and of each pass is recorded.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
     }
 
     @Override
@@ -32,27 +43,14 @@ public class JmmAnalysisImpl implements JmmAnalysis {
 
         JmmNode rootNode = parserResult.getRootNode();
 
-        SymbolTable table = JmmSymbolTableBuilder.build(rootNode);
-
-        List<Report> reports = new ArrayList<>();
-
-        // Visit all nodes in the AST
-        for (var analysisPass : analysisPasses) {
-            try {
-                var passReports = analysisPass.analyze(rootNode, table);
-                reports.addAll(passReports);
+        SymbolTable table = metrics.measure("analysis/symbolTable", () -> JmmSymbolTableBuilder.build(rootNode));
 
-                if(!passReports.isEmpty()) {break;}
-            } catch (Exception e) {
-                reports.add(Report.newError(Stage.SEMANTIC,
-                        -1,
-                        -1,
-                        "Problem while executing analysis pass '" + analysisPass.getClass() + "'",
-                        e)
-                );
-            }
+        // Types are computed once, for the passes and code generation
+        metrics.measure("analysis/types", () -> TypeAnnotator.annotate(rootNode, table));
 
-        }
+        // Visit all nodes in the AST once, with every pass
+        var engine = new AnalysisEngine(analysisPasses.stream().map(Supplier::get).toList(), metrics);
+        List<Report> reports = engine.analyze(rootNode, table, CompilerConfig.getAllReports(parserResult.getConfig()));
 
         return new JmmSemanticsResult(parserResult, table, reports);
     }
@@ -0,0 +1,68 @@
+package pt.up.fe.comp2024.analysis;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.TypeUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static pt.up.fe.comp2024.ast.Kind.*;
+
+/**
+ * Computes the type of every expression once, bottom-up, and stores it in the node, so that
+ * {@link TypeUtils#getExprType(JmmNode, SymbolTable)} does not compute it again on each call.
+ */
+public class TypeAnnotator {
+
+    private static final Set<String> TYPED_KINDS = Set.of(BINARY_EXPR.getNodeName(), BINARY_OP.getNodeName(),
+            VAR_REF_EXPR.getNodeName(), INTEGER_LITERAL.getNodeName(), NEW_CLASS.getNodeName(),
+            FUNCTION_CALL.getNodeName(), NEW_ARRAY.getNodeName(), NEGATION.getNodeName(), ARRAY_INIT.getNodeName(),
+            ARRAY_ACCESS.getNodeName());
+
+    private final SymbolTable table;
+    private final Map<String, JmmNode> methods;
+
+    private TypeAnnotator(SymbolTable table) {
+        this.table = table;
+        this.methods = new HashMap<>();
+    }
+
+    public static void annotate(JmmNode root, SymbolTable table) {
+        var annotator = new TypeAnnotator(table);
+
+        // Calls are typed by the method they call, so methods are indexed before visiting any call
+        for (var classDecl : root.getChildren(CLASS_DECL)) {
+            for (var methodDecl : classDecl.getChildren(METHOD_DECL)) {
+                annotator.methods.put(methodDecl.get("name"), methodDecl);
+            }
+        }
+
+        annotator.visit(root);
+    }
+
+    private void visit(JmmNode node) {
+        for (var child : node.getChildren()) {
+            visit(child);
+        }
+
+        if (!TYPED_KINDS.contains(node.getKind())) {
+            return;
+        }
+
+        Type type;
+        try {
+            type = Kind.FUNCTION_CALL.check(node)
+                    ? TypeUtils.getReturnType(methods.get(node.get("name")))
+                    : TypeUtils.computeExprType(node, table);
+        } catch (RuntimeException e) {
+            // Left untyped, getExprType will report the problem if the type is ever needed
+            return;
+        }
+
+        TypeUtils.setExprType(node, type);
+    }
+}
@@ -156,28 +156,4 @@ public class ArrayAccessOnInt extends AnalysisVisitor{
 
         return null;
     }
-
-    private JmmNode getActualTypeVarRef(JmmNode varRefExpr, String methodName){
-        JmmNode ret = varRefExpr;
-        JmmNode classDecl = varRefExpr;
-        while (!Objects.equals(classDecl.getKind(), "ClassDecl")) {
-            classDecl = classDecl.getParent();
-        }
-
-        for(JmmNode node1 : classDecl.getChildren()) {
-            if(node1.get("name").equals(methodName)) {
-                for (JmmNode node : node1.getDescendants()) {
-                    if (Objects.equals(node.getKind(), "Param") || Objects.equals(node.getKind(), "VarDecl")) {
-                        if (Objects.equals(node.get("name"), varRefExpr.get("name"))) {
-                            ret = node.getChild(0);
-                            break;
-                        }
-                    }
-                }
-            }
-        }
-
-
-        return ret;
-    }
 }
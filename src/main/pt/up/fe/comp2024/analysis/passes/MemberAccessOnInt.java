@@ -7,6 +7,8 @@ import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
 import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
+import pt.up.fe.comp2024.symboltable.ResolvedSymbol;
 import pt.up.fe.specs.util.SpecsCheck;
 
 import java.util.Objects;
@@ -34,28 +36,19 @@ public class MemberAccessOnInt extends  AnalysisVisitor{
 
         String variable = methodAccess.getChild(0).get("name");
 
-        JmmNode classDecl = methodAccess;
-        while (!Objects.equals(classDecl.getKind(), "ClassDecl")) {
-            classDecl = classDecl.getParent();
-        }
-
-        for(JmmNode methodDecl : classDecl.getChildren()) {
-            if(Objects.equals(methodDecl.get("name"), currentMethod)) {
-                for (JmmNode node : methodDecl.getChildren()) {
-                    if (Objects.equals(node.getKind(), "VarDecl") && Objects.equals(node.get("name"), variable)) {
-                        if (Objects.equals(node.getChild(0).getKind(), "IntegerType") && node.getChild(0).getNumChildren() < 1) {
-                            var message = "Trying to do a member access on an int.";
-                            addReport(Report.newError(
-                                    Stage.SEMANTIC,
-                                    NodeUtils.getLine(methodAccess),
-                                    NodeUtils.getColumn(methodAccess),
-                                    message,
-                                    null)
-                            );
-                        }
-                    }
-                }
-            }
+        var local = JmmSymbolTable.of(table).resolve(currentMethod, variable)
+                .filter(symbol -> symbol.getScope() == ResolvedSymbol.Scope.LOCAL)
+                .map(symbol -> symbol.getSymbol().getType());
+
+        if (local.isPresent() && local.get().getName().equals("int") && !local.get().isArray()) {
+            var message = "Trying to do a member access on an int.";
+            addReport(Report.newError(
+                    Stage.SEMANTIC,
+                    NodeUtils.getLine(methodAccess),
+                    NodeUtils.getColumn(methodAccess),
+                    message,
+                    null)
+            );
         }
 
         return null;
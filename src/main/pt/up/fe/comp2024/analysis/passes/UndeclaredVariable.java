@@ -7,12 +7,9 @@ import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
 import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
 import pt.up.fe.specs.util.SpecsCheck;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
-
 /**
  * Checks if the type of the expression in a return statement is compatible with the method return type.
  *
@@ -39,40 +36,11 @@ public class UndeclaredVariable extends AnalysisVisitor {
         // Check if exists a parameter or variable declaration with the same name as the variable reference
         var varRefName = varRefExpr.get("name");
 
-        // Var is a field, return
-        if (table.getFields().stream()
-                .anyMatch(param -> param.getName().equals(varRefName))) {
-            return null;
-        }
-
-        // Var is a parameter, return
-        if (table.getParameters(currentMethod).stream()
-                .anyMatch(param -> param.getName().equals(varRefName))) {
-            return null;
-        }
-
-        // Var is a declared variable, return
-        if (table.getLocalVariables(currentMethod).stream()
-                .anyMatch(varDecl -> varDecl.getName().equals(varRefName))) {
+        // Var is a local variable, parameter, field or imported class, return
+        if (JmmSymbolTable.of(table).resolve(currentMethod, varRefName).isPresent()) {
             return null;
         }
 
-        List<String> imports = table.getImports();
-        List<String> modifiedImports = new ArrayList<>();
-
-        for (String importString : imports) {
-            String[] elements = importString.substring(1, importString.length() - 1).split(",");
-            for (String element : elements) {
-                modifiedImports.add(element.trim());
-            }
-        }
-
-        for(String modifiedImport : modifiedImports) {
-            if(Objects.equals(modifiedImport,varRefName))
-                return null;
-        }
-
-
         // Create error report
         var message = String.format("Variable '%s' does not exist.", varRefName);
         addReport(Report.newError(
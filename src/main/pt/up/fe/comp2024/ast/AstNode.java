@@ -0,0 +1,402 @@
+package pt.up.fe.comp2024.ast;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.NodePosition;
+import pt.up.fe.specs.util.SpecsCheck;
+import pt.up.fe.specs.util.SpecsSystem;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A node of the AST built by the parser, which keeps its kind as a {@link Kind}, its position as ints, the value of an
+ * integer literal as an int, and its attributes in two arrays, where the names are shared by all the nodes built from
+ * the same grammar rule.
+ * <p>
+ * It is also a {@link JmmNode}, with the same kind, hierarchy, attributes and string form as the nodes of the ANTLR
+ * converter, so the stages and tests that work on JmmNodes work on it unchanged. The arrays of children are replaced,
+ * never modified, so {@link #getChildren()} returns a view instead of a copy, and children can be read by index
+ * without building a list.
+ */
+public class AstNode implements JmmNode {
+
+    private static final JmmNode[] NO_CHILDREN = new JmmNode[0];
+
+    /**
+     * Stands for the int value in the attribute "value" of an integer literal that fits in an int.
+     */
+    private static final Object INT_VALUE = new Object();
+    private static final String VALUE = "value";
+
+    private final Kind kind;
+    private final List<String> hierarchy;
+
+    private int lineStart;
+    private int colStart;
+    private int lineEnd;
+    private int colEnd;
+
+    private String[] names;
+    private Object[] values;
+    private int intValue;
+
+    private JmmNode[] children = NO_CHILDREN;
+    private JmmNode parent;
+
+    /**
+     * @param hierarchy the kind and the kinds it is an instance of, as in {@link #getHierarchy()}
+     * @param names     the names of the attributes, which the node does not change, so it can be shared
+     * @param values    the values of the attributes, with null for those the node does not have
+     */
+    public AstNode(Kind kind, List<String> hierarchy, int lineStart, int colStart, int lineEnd, int colEnd,
+                   String[] names, Object[] values) {
+        this.kind = kind;
+        this.hierarchy = hierarchy;
+        this.lineStart = lineStart;
+        this.colStart = colStart;
+        this.lineEnd = lineEnd;
+        this.colEnd = colEnd;
+        this.names = names;
+        this.values = values;
+
+        for (int i = 0; i < names.length; i++) {
+            if (values[i] != null) {
+                store(i, values[i]);
+            }
+        }
+    }
+
+    public Kind getNodeKind() {
+        return kind;
+    }
+
+    public int getLineStart() {
+        return lineStart;
+    }
+
+    public int getColStart() {
+        return colStart;
+    }
+
+    public int getLineEnd() {
+        return lineEnd;
+    }
+
+    public int getColEnd() {
+        return colEnd;
+    }
+
+    /**
+     * @return the value of an integer literal, or empty if the node is not one or the value does not fit in an int
+     */
+    public Optional<Integer> getIntValue() {
+        int index = indexOf(VALUE);
+        if (kind != Kind.INTEGER_LITERAL || index < 0 || values[index] != INT_VALUE) {
+            return Optional.empty();
+        }
+        return Optional.of(intValue);
+    }
+
+    @Override
+    public String getKind() {
+        return kind.getNodeName();
+    }
+
+    @Override
+    public Collection<String> getHierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * @return the names of the attributes, in the order of the HashMap of the ANTLR converter, which
+     * {@link #toString()} follows
+     */
+    @Override
+    public Collection<String> getAttributes() {
+        var attributes = new HashMap<String, Object>();
+        attributes.put(NodePosition.LINE_START.getKey(), lineStart);
+        attributes.put(NodePosition.COL_START.getKey(), colStart);
+        attributes.put(NodePosition.LINE_END.getKey(), lineEnd);
+        attributes.put(NodePosition.COL_END.getKey(), colEnd);
+        for (int i = 0; i < names.length; i++) {
+            if (values[i] != null) {
+                attributes.put(names[i], values[i]);
+            }
+        }
+        return attributes.keySet();
+    }
+
+    @Override
+    public boolean hasAttribute(String attribute) {
+        if (isPosition(attribute)) {
+            return true;
+        }
+        int index = indexOf(attribute);
+        return index >= 0 && values[index] != null;
+    }
+
+    @Override
+    public Object getObject(String attribute) {
+        var value = switch (attribute) {
+            case "lineStart" -> Integer.toString(lineStart);
+            case "colStart" -> Integer.toString(colStart);
+            case "lineEnd" -> Integer.toString(lineEnd);
+            case "colEnd" -> Integer.toString(colEnd);
+            default -> {
+                int index = indexOf(attribute);
+                yield index >= 0 ? valueAt(index) : null;
+            }
+        };
+
+        SpecsCheck.checkNotNull(value, () -> "Node " + getKind() + " does not contain attribute '" + attribute + "'");
+
+        return value;
+    }
+
+    @Override
+    public Optional<Object> getOptionalObject(String attribute) {
+        return hasAttribute(attribute) ? Optional.of(getObject(attribute)) : Optional.empty();
+    }
+
+    @Override
+    public Object putObject(String attribute, Object value) {
+        if (isPosition(attribute)) {
+            var previous = getObject(attribute);
+            int position = Integer.parseInt(value.toString());
+            switch (attribute) {
+                case "lineStart" -> lineStart = position;
+                case "colStart" -> colStart = position;
+                case "lineEnd" -> lineEnd = position;
+                default -> colEnd = position;
+            }
+            return previous;
+        }
+
+        int index = indexOf(attribute);
+        if (index < 0) {
+            // the names may be shared with other nodes, so a new attribute gets new arrays
+            index = names.length;
+            names = Arrays.copyOf(names, index + 1);
+            names[index] = attribute;
+            values = Arrays.copyOf(values, index + 1);
+        }
+
+        var previous = valueAt(index);
+        store(index, value);
+        return previous;
+    }
+
+    private int indexOf(String attribute) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(attribute)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Object valueAt(int index) {
+        var value = values[index];
+        return value == INT_VALUE ? Integer.toString(intValue) : value;
+    }
+
+    private void store(int index, Object value) {
+        if (kind == Kind.INTEGER_LITERAL && names[index].equals(VALUE) && value instanceof String literal) {
+            try {
+                intValue = Integer.parseInt(literal);
+                values[index] = INT_VALUE;
+                return;
+            } catch (NumberFormatException e) {
+                // out of range, so the literal keeps its text
+            }
+        }
+        values[index] = value;
+    }
+
+    private static boolean isPosition(String attribute) {
+        return switch (attribute) {
+            case "lineStart", "colStart", "lineEnd", "colEnd" -> true;
+            default -> false;
+        };
+    }
+
+    @Deprecated
+    @Override
+    public JmmNode getJmmParent() {
+        return parent;
+    }
+
+    @Override
+    public void setParent(JmmNode parent) {
+        this.parent = parent;
+    }
+
+    @Override
+    public void removeParent() {
+        this.parent = null;
+    }
+
+    @Override
+    public List<JmmNode> getChildren() {
+        return Collections.unmodifiableList(Arrays.asList(children));
+    }
+
+    @Override
+    public Stream<JmmNode> getChildrenStream() {
+        return Arrays.stream(children);
+    }
+
+    @Override
+    public int getNumChildren() {
+        return children.length;
+    }
+
+    @Override
+    public JmmNode getJmmChild(int index) {
+        return children[index];
+    }
+
+    @Override
+    public JmmNode getChild(int index) {
+        return children[index];
+    }
+
+    /**
+     * Sets the children of a node that has none, without copying them, for the parser.
+     */
+    public void initChildren(JmmNode[] children) {
+        SpecsCheck.checkArgument(this.children.length == 0, () -> "Node " + this + " already has children");
+        this.children = children;
+        for (var child : children) {
+            child.setParent(this);
+        }
+    }
+
+    @Override
+    public void add(JmmNode child, int index) {
+        var newChildren = new JmmNode[children.length + 1];
+        System.arraycopy(children, 0, newChildren, 0, index);
+        newChildren[index] = child;
+        System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+        children = newChildren;
+        child.setParent(this);
+    }
+
+    private void set(int index, JmmNode child) {
+        var newChildren = children.clone();
+        newChildren[index] = child;
+        children = newChildren;
+    }
+
+    /**
+     * Same as {@link pt.up.fe.comp.jmm.ast.JmmNodeImpl#setChild(JmmNode, int)}: if the new node has a parent, the
+     * current child takes its place there.
+     */
+    @Override
+    public void setChild(JmmNode newNode, int index) {
+        var currentChild = children[index];
+
+        JmmNode newNodeParent = newNode.getParent();
+        int newNodeCurrentIndex = -1;
+
+        if (newNodeParent != null) {
+            newNodeCurrentIndex = newNode.getIndexOfSelf();
+            newNode.removeParent();
+        }
+
+        set(index, newNode);
+        newNode.setParent(this);
+
+        currentChild.removeParent();
+
+        if (newNodeParent instanceof AstNode astParent) {
+            astParent.set(newNodeCurrentIndex, currentChild);
+            currentChild.setParent(astParent);
+        } else if (newNodeParent != null) {
+            newNodeParent.removeChild(newNodeCurrentIndex);
+            newNodeParent.add(currentChild, newNodeCurrentIndex);
+        }
+    }
+
+    @Override
+    public JmmNode removeJmmChild(int index) {
+        if (index >= children.length) {
+            System.out.println("[WARNING] Tried to remove child at index " + index + ", but node only has "
+                    + children.length + " children");
+            return null;
+        }
+
+        var removedChild = children[index];
+        var newChildren = new JmmNode[children.length - 1];
+        System.arraycopy(children, 0, newChildren, 0, index);
+        System.arraycopy(children, index + 1, newChildren, index, newChildren.length - index);
+        children = newChildren;
+
+        removedChild.removeParent();
+        return removedChild;
+    }
+
+    @Deprecated
+    @Override
+    public int removeJmmChild(JmmNode node) {
+        for (int i = 0; i < children.length; i++) {
+            if (children[i] == node) {
+                removeJmmChild(i);
+                return i;
+            }
+        }
+
+        System.out.println("[WARNING] Tried to remove child from node, but could not find it.\nChild:" + node
+                + "\nParent:" + this);
+        return -1;
+    }
+
+    @Override
+    public JmmNode detach() {
+        if (parent == null) {
+            System.out.println("[WARNING] Tried to remove itself from the tree, but node has no parent");
+            return this;
+        }
+
+        parent.removeChild(this);
+        return this;
+    }
+
+    @Override
+    public JmmNode copyNode() {
+        var copy = new AstNode(kind, hierarchy, lineStart, colStart, lineEnd, colEnd, names, values.clone());
+        copy.intValue = intValue;
+        return copy;
+    }
+
+    /**
+     * Same as {@link pt.up.fe.comp.jmm.ast.JmmNodeImpl#toString()}, so that {@link #toTree()} gives the same text.
+     */
+    @Override
+    public String toString() {
+        var string = new StringBuilder(getKind());
+
+        var attributes = getAttributes().stream()
+                .filter(attribute -> !isPosition(attribute))
+                .toList();
+
+        if (!attributes.isEmpty()) {
+            string.append(attributes.stream()
+                    .map(attribute -> attribute + ": " + get(attribute))
+                    .collect(Collectors.joining(", ", " (", ")")));
+        }
+
+        if (SpecsSystem.isDebug()) {
+            string.append(" ").append(lineStart).append(":").append(colStart)
+                    .append("->").append(lineEnd).append(":").append(colEnd);
+        }
+
+        return string.toString();
+    }
+}
@@ -4,6 +4,8 @@ import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.specs.util.SpecsStrings;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 public enum Kind {
@@ -28,12 +30,30 @@ public enum Kind {
 
     NEW_ARRAY,
     NEGATION,
+    PAREN,
     VOID,
     INTEGER,
     ARRAY_INIT,
     BOOLEAN,
     IMPORT_DECL,
-    VAR_REF_EXPR;
+    VAR_REF_EXPR,
+
+    // the remaining kinds of the grammar, so that every node of the AST has one
+    RETURN_TYPE,
+    ARRAY,
+    ELLIPSIS_TYPE,
+    BOOLEAN_TYPE,
+    INTEGER_TYPE,
+    STRING_TYPE,
+    CLASS_TYPE,
+    EXPR_STMT,
+    STMT_SCOPE,
+    IF_ELSE_STMT,
+    WHILE_STMT,
+    ARRAY_ASSIGN,
+    LENGTH,
+    MEMBER_CALL,
+    OBJECT;
 
 
 
@@ -41,6 +61,14 @@ public enum Kind {
     private static final Set<Kind> STATEMENTS = Set.of(ASSIGN_STMT, RETURN_STMT);
     private static final Set<Kind> EXPRESSIONS = Set.of(BINARY_EXPR, INTEGER_LITERAL, VAR_REF_EXPR);
 
+    private static final Map<String, Kind> BY_NODE_NAME = new HashMap<>();
+
+    static {
+        for (Kind k : Kind.values()) {
+            BY_NODE_NAME.put(k.getNodeName(), k);
+        }
+    }
+
     private final String name;
 
     private Kind(String name) {
@@ -48,17 +76,26 @@ public enum Kind {
     }
 
     private Kind() {
-        this.name = SpecsStrings.toCamelCase(name(), "_", true);
+        // interned, so that comparing the kind of a node with a literal finds the same instance
+        this.name = SpecsStrings.toCamelCase(name(), "_", true).intern();
     }
 
     public static Kind fromString(String kind) {
+        var k = BY_NODE_NAME.get(kind);
+        if (k == null) {
+            throw new RuntimeException("Could not convert string '" + kind + "' to a Kind");
+        }
+        return k;
+    }
 
-        for (Kind k : Kind.values()) {
-            if (k.getNodeName().equals(kind)) {
-                return k;
-            }
+    /**
+     * @return the kind of the node, without looking it up by name if the node is an {@link AstNode}
+     */
+    public static Kind of(JmmNode node) {
+        if (node instanceof AstNode astNode) {
+            return astNode.getNodeKind();
         }
-        throw new RuntimeException("Could not convert string '" + kind + "' to a Kind");
+        return fromString(node.getKind());
     }
 
     public String getNodeName() {
@@ -91,6 +128,9 @@ public enum Kind {
      * @return
      */
     public boolean check(JmmNode node) {
+        if (node instanceof AstNode astNode) {
+            return astNode.getNodeKind() == this;
+        }
         return node.getKind().equals(getNodeName());
     }
 
@@ -3,6 +3,8 @@ package pt.up.fe.comp2024.ast;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
+import pt.up.fe.comp2024.symboltable.ResolvedSymbol;
 
 import java.util.Objects;
 
@@ -17,6 +19,8 @@ public class TypeUtils {
 
     private static final String IMPORT_TYPE_NAME = "import ";
 
+    private static final String TYPE_ATTRIBUTE = "type";
+
 
 
 
@@ -45,13 +49,35 @@ public class TypeUtils {
      */
     public static Type getExprType(JmmNode expr, SymbolTable table) {
 
-        var kind = Kind.fromString(expr.getKind());
+        // Expressions annotated by TypeAnnotator already have their type
+        var cachedType = expr.getOptionalObject(TYPE_ATTRIBUTE);
+        if (cachedType.isPresent()) {
+            return (Type) cachedType.get();
+        }
+
+        return computeExprType(expr, table);
+    }
+
+    /**
+     * Stores the type of the expression in the node, to be returned by {@link #getExprType(JmmNode, SymbolTable)}.
+     */
+    public static void setExprType(JmmNode expr, Type type) {
+        expr.putObject(TYPE_ATTRIBUTE, type);
+    }
+
+    /**
+     * Computes the type of the expression, without looking at the type stored in the node.
+     */
+    public static Type computeExprType(JmmNode expr, SymbolTable table) {
+
+        var kind = Kind.of(expr);
 
         Type type = switch (kind) {
             case BINARY_EXPR -> getBinExprType(expr);
             case BINARY_OP -> getBinExprType(expr);
             case VAR_REF_EXPR -> getVarExprType(expr, table);
             case INTEGER_LITERAL -> new Type(INT_TYPE_NAME, false);
+            case BOOLEAN_LITERAL -> new Type(BOOL_TYPE_NAME, false);
             case NEW_CLASS -> new Type(expr.get("name"), false);
             case FUNCTION_CALL -> getFuncCallType(expr);
             case NEW_ARRAY -> new Type(expr.getChild(0).getKind(),true);
@@ -91,18 +117,42 @@ public class TypeUtils {
         while (!Objects.equals(classDecl.getKind(), "ClassDecl")) {
             classDecl = classDecl.getParent();
         }
-        String retType = null;
+        JmmNode methodDecl = null;
         for(JmmNode method : classDecl.getChildren()){
             if(Objects.equals(method.get("name"), methodName)){
-                retType = method.getChild(0).getChild(0).getKind();
+                methodDecl = method;
             }
         }
 
 
+        return getReturnType(methodDecl);
+    }
+
+    /**
+     * @param methodDecl the called method, or null if it is not declared in the class
+     * @return the type of a call to the method
+     */
+    public static Type getReturnType(JmmNode methodDecl) {
+        String retType = methodDecl != null ? methodDecl.getChild(0).getChild(0).getKind() : null;
+
         return new Type(retType, false);
     }
 
 
+    /**
+     * Finds the declaration of the variable referenced by the node, as seen from the method where it is used.
+     *
+     * @return the type node of the declaration, or the given node if it does not refer to a declared variable
+     */
+    public static JmmNode getDeclaredType(JmmNode varRefExpr, SymbolTable table) {
+        var methodName = varRefExpr.getAncestor(Kind.METHOD_DECL).map(method -> method.get("name")).orElse(null);
+
+        return JmmSymbolTable.of(table).resolve(methodName, varRefExpr.get("name"))
+                .flatMap(ResolvedSymbol::getDeclaration)
+                .map(declaration -> declaration.getChild(0))
+                .orElse(varRefExpr);
+    }
+
     /**
      * @param sourceType
      * @param destinationType
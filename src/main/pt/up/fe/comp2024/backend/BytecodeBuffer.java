@@ -0,0 +1,150 @@
+package pt.up.fe.comp2024.backend;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accumulates the bytecode of a method. Branches may refer to labels that are only defined later, their offsets are
+ * patched once every label is known.
+ * <p>
+ * Branches have 16-bit offsets, unless they are written as long branches, which jump with goto_w and its 32-bit
+ * offset, for targets that are further away in methods larger than 32KB.
+ */
+public class BytecodeBuffer {
+
+    private static final int GOTO = 0xa7;
+    private static final int GOTO_W = 0xc8;
+    private static final int IFNULL = 0xc6;
+    private static final int IFNONNULL = 0xc7;
+
+    // the length of a conditional branch that jumps over the goto_w after it
+    private static final int SKIP_GOTO_W = 8;
+
+    private final ByteArrayOutputStream code;
+    private final Map<String, Integer> labels;
+    private final List<Fixup> fixups;
+
+    public BytecodeBuffer() {
+        this.code = new ByteArrayOutputStream();
+        this.labels = new HashMap<>();
+        this.fixups = new ArrayList<>();
+    }
+
+    public int size() {
+        return code.size();
+    }
+
+    public void writeByte(int value) {
+        code.write(value);
+    }
+
+    public void writeShort(int value) {
+        code.write(value >>> 8);
+        code.write(value);
+    }
+
+    public void writeInt(int value) {
+        writeShort(value >>> 16);
+        writeShort(value);
+    }
+
+    public void markLabel(String label) {
+        if (labels.put(label, size()) != null) {
+            throw new RuntimeException("Label '" + label + "' is defined more than once");
+        }
+    }
+
+    /**
+     * Writes a branch instruction whose 16-bit offset is filled in by {@link #toByteArray()}.
+     */
+    public void writeBranch(int opcode, String label) {
+        fixups.add(new Fixup(size(), label, false));
+        writeByte(opcode);
+        writeShort(0);
+    }
+
+    /**
+     * Writes a branch with a 32-bit offset. A conditional branch becomes the opposite branch over a goto_w to the
+     * label, since only goto has a form with a 32-bit offset.
+     */
+    public void writeLongBranch(int opcode, String label) {
+        if (opcode != GOTO) {
+            writeByte(invert(opcode));
+            writeShort(SKIP_GOTO_W);
+        }
+
+        fixups.add(new Fixup(size(), label, true));
+        writeByte(GOTO_W);
+        writeInt(0);
+    }
+
+    /**
+     * @return the branch that is taken when the given one is not, which is the other opcode of its pair
+     */
+    private static int invert(int opcode) {
+        if (opcode == IFNULL || opcode == IFNONNULL) {
+            return opcode ^ 1;
+        }
+        if (opcode < 0x99 || opcode > 0xa6) {
+            throw new RuntimeException("Opcode " + opcode + " is not a conditional branch");
+        }
+
+        // from ifeq and ifne to if_acmpeq and if_acmpne, the opposite branches are pairs of consecutive opcodes
+        return 0x99 + ((opcode - 0x99) ^ 1);
+    }
+
+    /**
+     * @return true if the target of every branch with a 16-bit offset is within its reach
+     */
+    public boolean fitsShortBranches() {
+        for (var fixup : fixups) {
+            var target = labels.get(fixup.label());
+            if (!fixup.wide() && target != null && !isShort(target - fixup.position())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isShort(int offset) {
+        return offset >= Short.MIN_VALUE && offset <= Short.MAX_VALUE;
+    }
+
+    public byte[] toByteArray() {
+        var bytes = code.toByteArray();
+
+        for (var fixup : fixups) {
+            var target = labels.get(fixup.label());
+            if (target == null) {
+                throw new RuntimeException("Branch to undefined label '" + fixup.label() + "'");
+            }
+
+            int offset = target - fixup.position();
+            if (fixup.wide()) {
+                bytes[fixup.position() + 1] = (byte) (offset >>> 24);
+                bytes[fixup.position() + 2] = (byte) (offset >>> 16);
+                bytes[fixup.position() + 3] = (byte) (offset >>> 8);
+                bytes[fixup.position() + 4] = (byte) offset;
+                continue;
+            }
+
+            if (!isShort(offset)) {
+                throw new RuntimeException("Branch to label '" + fixup.label() + "' is too far");
+            }
+
+            bytes[fixup.position() + 1] = (byte) (offset >>> 8);
+            bytes[fixup.position() + 2] = (byte) offset;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * @param wide whether the branch is a goto_w, with a 32-bit offset
+     */
+    private record Fixup(int position, String label, boolean wide) {
+    }
+}
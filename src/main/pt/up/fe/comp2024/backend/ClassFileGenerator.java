@@ -0,0 +1,408 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.specs.util.exceptions.NotImplementedException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Generates the bytes of a JVM class file from an OllirResult, without going through the Jasmin assembler.
+ * <p>
+ * Instructions are selected by {@link JasminGenerator}, as the same lists of instructions it writes as text, so both
+ * backends produce the same code.
+ * <p>
+ * One ClassFileGenerator instance per OllirResult.
+ */
+public class ClassFileGenerator {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    // Java 5 class files do not need stack map frames
+    private static final int MAJOR_VERSION = 49;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_PROTECTED = 0x0004;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final Map<String, Integer> OPCODES = new HashMap<>();
+
+    static {
+        var simple = List.of("nop", "aconst_null", "iconst_m1", "iconst_0", "iconst_1", "iconst_2", "iconst_3",
+                "iconst_4", "iconst_5");
+        for (int i = 0; i < simple.size(); i++) {
+            OPCODES.put(simple.get(i), i);
+        }
+        for (int reg = 0; reg < 4; reg++) {
+            OPCODES.put("iload_" + reg, 0x1a + reg);
+            OPCODES.put("aload_" + reg, 0x2a + reg);
+            OPCODES.put("istore_" + reg, 0x3b + reg);
+            OPCODES.put("astore_" + reg, 0x4b + reg);
+        }
+
+        OPCODES.put("bipush", 0x10);
+        OPCODES.put("sipush", 0x11);
+        OPCODES.put("ldc", 0x12);
+        OPCODES.put("iload", 0x15);
+        OPCODES.put("aload", 0x19);
+        OPCODES.put("iaload", 0x2e);
+        OPCODES.put("aaload", 0x32);
+        OPCODES.put("istore", 0x36);
+        OPCODES.put("astore", 0x3a);
+        OPCODES.put("iastore", 0x4f);
+        OPCODES.put("aastore", 0x53);
+        OPCODES.put("pop", 0x57);
+        OPCODES.put("pop2", 0x58);
+        OPCODES.put("dup", 0x59);
+        OPCODES.put("dup_x1", 0x5a);
+        OPCODES.put("dup_x2", 0x5b);
+        OPCODES.put("dup2", 0x5c);
+        OPCODES.put("swap", 0x5f);
+        OPCODES.put("iadd", 0x60);
+        OPCODES.put("isub", 0x64);
+        OPCODES.put("imul", 0x68);
+        OPCODES.put("idiv", 0x6c);
+        OPCODES.put("irem", 0x70);
+        OPCODES.put("ineg", 0x74);
+        OPCODES.put("ishl", 0x78);
+        OPCODES.put("ishr", 0x7a);
+        OPCODES.put("iushr", 0x7c);
+        OPCODES.put("iand", 0x7e);
+        OPCODES.put("ior", 0x80);
+        OPCODES.put("ixor", 0x82);
+        OPCODES.put("iinc", 0x84);
+
+        var branches = List.of("ifeq", "ifne", "iflt", "ifge", "ifgt", "ifle", "if_icmpeq", "if_icmpne",
+                "if_icmplt", "if_icmpge", "if_icmpgt", "if_icmple", "if_acmpeq", "if_acmpne", "goto");
+        for (int i = 0; i < branches.size(); i++) {
+            OPCODES.put(branches.get(i), 0x99 + i);
+        }
+        OPCODES.put("ifnull", 0xc6);
+        OPCODES.put("ifnonnull", 0xc7);
+
+        OPCODES.put("ireturn", 0xac);
+        OPCODES.put("areturn", 0xb0);
+        OPCODES.put("return", 0xb1);
+        OPCODES.put("getstatic", 0xb2);
+        OPCODES.put("putstatic", 0xb3);
+        OPCODES.put("getfield", 0xb4);
+        OPCODES.put("putfield", 0xb5);
+        OPCODES.put("invokevirtual", 0xb6);
+        OPCODES.put("invokespecial", 0xb7);
+        OPCODES.put("invokestatic", 0xb8);
+        OPCODES.put("new", 0xbb);
+        OPCODES.put("newarray", 0xbc);
+        OPCODES.put("anewarray", 0xbd);
+        OPCODES.put("arraylength", 0xbe);
+        OPCODES.put("athrow", 0xbf);
+        OPCODES.put("checkcast", 0xc0);
+        OPCODES.put("instanceof", 0xc1);
+    }
+
+    private static final int WIDE = 0xc4;
+    private static final int LDC_W = 0x13;
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    private final OllirResult ollirResult;
+    private final JasminGenerator instructionSelector;
+    private final ConstantPool constantPool;
+    private final List<Report> reports;
+
+    private byte[] bytes;
+
+    public ClassFileGenerator(OllirResult ollirResult) {
+        this.ollirResult = ollirResult;
+        this.instructionSelector = new JasminGenerator(ollirResult);
+        this.constantPool = new ConstantPool();
+        this.reports = new ArrayList<>();
+        this.bytes = null;
+    }
+
+    public List<Report> getReports() {
+        return reports;
+    }
+
+    public byte[] build() {
+
+        // This way, build is idempotent
+        if (bytes == null) {
+            try {
+                bytes = generateClassFile(ollirResult.getOllirClass());
+            } catch (IOException e) {
+                throw new RuntimeException("Could not generate class file", e);
+            }
+        }
+
+        return bytes;
+    }
+
+    private byte[] generateClassFile(ClassUnit classUnit) throws IOException {
+        var className = classUnit.getClassName();
+        var superName = getSuperClassName(classUnit);
+
+        // The constant pool comes first in the file, so the class body is written to a separate buffer
+        var body = new ByteArrayOutputStream();
+        var out = new DataOutputStream(body);
+
+        out.writeShort(ACC_PUBLIC | ACC_SUPER);
+        out.writeShort(constantPool.addClass(className));
+        out.writeShort(constantPool.addClass(superName));
+        out.writeShort(0); // interfaces
+
+        out.writeShort(classUnit.getNumFields());
+        for (var field : classUnit.getFields()) {
+            generateField(field, out);
+        }
+
+        var methods = classUnit.getMethods().stream()
+                .filter(method -> !method.isConstructMethod())
+                .toList();
+
+        // A single constructor is always generated, as in the Jasmin backend
+        out.writeShort(methods.size() + 1);
+        generateConstructor(superName, out);
+        for (var method : methods) {
+            generateMethod(method, out);
+        }
+
+        out.writeShort(0); // class attributes
+
+        var classFile = new ByteArrayOutputStream();
+        var header = new DataOutputStream(classFile);
+        header.writeInt(MAGIC);
+        header.writeShort(0);
+        header.writeShort(MAJOR_VERSION);
+        constantPool.write(header);
+        header.write(body.toByteArray());
+
+        return classFile.toByteArray();
+    }
+
+    private String getSuperClassName(ClassUnit classUnit) {
+        var superClass = classUnit.getSuperClass();
+        if (superClass == null || superClass.isEmpty() || Objects.equals(superClass, "Object")) {
+            return "java/lang/Object";
+        }
+
+        return instructionSelector.getQualifiedImports(superClass);
+    }
+
+    private void generateField(Field field, DataOutputStream out) throws IOException {
+        int flags = getAccessFlags(field.getFieldAccessModifier());
+        if (field.isStaticField())
+            flags |= ACC_STATIC;
+        if (field.isFinalField())
+            flags |= ACC_FINAL;
+
+        out.writeShort(flags);
+        out.writeShort(constantPool.addUtf8(field.getFieldName()));
+        out.writeShort(constantPool.addUtf8(instructionSelector.getJasminType(field.getFieldType())));
+
+        if (field.isInitialized() && field.isStaticField()) {
+            out.writeShort(1);
+            out.writeShort(constantPool.addUtf8("ConstantValue"));
+            out.writeInt(2);
+            out.writeShort(constantPool.addInteger(field.getInitialValue()));
+        } else {
+            out.writeShort(0);
+        }
+    }
+
+    private void generateConstructor(String superName, DataOutputStream out) throws IOException {
+        var instructions = List.of(
+                JasminInstruction.newInstruction("aload_0"),
+                JasminInstruction.newInstruction("invokespecial", superName + "/<init>()V"),
+                JasminInstruction.newInstruction("return")
+        );
+
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(constantPool.addUtf8("<init>"));
+        out.writeShort(constantPool.addUtf8("()V"));
+        generateCode(instructions, 1, out);
+    }
+
+    private void generateMethod(Method method, DataOutputStream out) throws IOException {
+        int flags = getAccessFlags(method.getMethodAccessModifier());
+        if (method.isStaticMethod())
+            flags |= ACC_STATIC;
+        if (method.isFinalMethod())
+            flags |= ACC_FINAL;
+
+        out.writeShort(flags);
+        out.writeShort(constantPool.addUtf8(method.getMethodName()));
+        out.writeShort(constantPool.addUtf8(instructionSelector.getMethodDescriptor(method)));
+
+        var instructions = instructionSelector.generateInstructions(method);
+        generateCode(instructions, instructionSelector.getLocalsLimit(method), out);
+    }
+
+    private static int getAccessFlags(AccessModifier modifier) {
+        return switch (modifier) {
+            case PUBLIC -> ACC_PUBLIC;
+            case PRIVATE -> ACC_PRIVATE;
+            case PROTECTED -> ACC_PROTECTED;
+            case DEFAULT -> 0;
+        };
+    }
+
+    /**
+     * Writes the method attributes, which only consist of the Code attribute.
+     */
+    private void generateCode(List<JasminInstruction> instructions, int maxLocals, DataOutputStream out)
+            throws IOException {
+        var buffer = encode(instructions, false);
+
+        // branches only need 32-bit offsets in methods larger than 32KB, so they are only used when one is too far
+        if (!buffer.fitsShortBranches()) {
+            buffer = encode(instructions, true);
+        }
+
+        var code = buffer.toByteArray();
+        if (code.length > MAX_CODE_LENGTH) {
+            throw new RuntimeException("Method has " + code.length + " bytes of code, more than the "
+                    + MAX_CODE_LENGTH + " a class file allows");
+        }
+
+        out.writeShort(1);
+        out.writeShort(constantPool.addUtf8("Code"));
+        out.writeInt(12 + code.length);
+        out.writeShort(StackCalculator.getMaxStack(instructions));
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // code attributes
+    }
+
+    private BytecodeBuffer encode(List<JasminInstruction> instructions, boolean longBranches) {
+        var buffer = new BytecodeBuffer();
+        for (var inst : instructions) {
+            encode(inst, buffer, longBranches);
+        }
+        return buffer;
+    }
+
+    private void encode(JasminInstruction inst, BytecodeBuffer buffer, boolean longBranches) {
+        if (inst.isLabel()) {
+            buffer.markLabel(inst.getLabel());
+            return;
+        }
+
+        var mnemonic = inst.getOpcode();
+        var opcode = OPCODES.get(mnemonic);
+        if (opcode == null) {
+            throw new NotImplementedException("Instruction '" + inst + "' in class file backend");
+        }
+
+        switch (mnemonic) {
+            case "bipush" -> {
+                buffer.writeByte(opcode);
+                buffer.writeByte(getIntArgument(inst, 0));
+            }
+            case "sipush" -> {
+                buffer.writeByte(opcode);
+                buffer.writeShort(getIntArgument(inst, 0));
+            }
+            case "ldc" -> {
+                var argument = inst.getArguments().get(0);
+                int index = argument.startsWith("\"")
+                        ? constantPool.addString(argument.substring(1, argument.length() - 1))
+                        : constantPool.addInteger(Integer.parseInt(argument));
+
+                if (index > 0xff) {
+                    buffer.writeByte(LDC_W);
+                    buffer.writeShort(index);
+                } else {
+                    buffer.writeByte(opcode);
+                    buffer.writeByte(index);
+                }
+            }
+            case "iload", "aload", "istore", "astore" -> {
+                int reg = getIntArgument(inst, 0);
+                if (reg > 0xff) {
+                    buffer.writeByte(WIDE);
+                    buffer.writeByte(opcode);
+                    buffer.writeShort(reg);
+                } else {
+                    buffer.writeByte(opcode);
+                    buffer.writeByte(reg);
+                }
+            }
+            case "iinc" -> {
+                int reg = getIntArgument(inst, 0);
+                int increment = getIntArgument(inst, 1);
+                if (reg > 0xff || increment < Byte.MIN_VALUE || increment > Byte.MAX_VALUE) {
+                    buffer.writeByte(WIDE);
+                    buffer.writeByte(opcode);
+                    buffer.writeShort(reg);
+                    buffer.writeShort(increment);
+                } else {
+                    buffer.writeByte(opcode);
+                    buffer.writeByte(reg);
+                    buffer.writeByte(increment);
+                }
+            }
+            case "getstatic", "putstatic", "getfield", "putfield" -> {
+                // e.g. getfield Foo/bar I
+                var member = inst.getArguments().get(0);
+                int slash = member.lastIndexOf('/');
+                buffer.writeByte(opcode);
+                buffer.writeShort(constantPool.addFieldref(member.substring(0, slash), member.substring(slash + 1),
+                        inst.getArguments().get(1)));
+            }
+            case "invokevirtual", "invokespecial", "invokestatic" -> {
+                // e.g. invokevirtual Foo/bar(I)I
+                var signature = String.join("", inst.getArguments());
+                int open = signature.indexOf('(');
+                int slash = signature.lastIndexOf('/', open);
+                buffer.writeByte(opcode);
+                buffer.writeShort(constantPool.addMethodref(signature.substring(0, slash),
+                        signature.substring(slash + 1, open), signature.substring(open)));
+            }
+            case "new", "anewarray", "checkcast", "instanceof" -> {
+                buffer.writeByte(opcode);
+                buffer.writeShort(constantPool.addClass(inst.getArguments().get(0)));
+            }
+            case "newarray" -> {
+                buffer.writeByte(opcode);
+                buffer.writeByte(getArrayType(inst.getArguments().get(0)));
+            }
+            default -> {
+                if (inst.isGoto() || inst.isConditionalBranch()) {
+                    if (longBranches) {
+                        buffer.writeLongBranch(opcode, inst.getLastArgument());
+                    } else {
+                        buffer.writeBranch(opcode, inst.getLastArgument());
+                    }
+                } else {
+                    buffer.writeByte(opcode);
+                }
+            }
+        }
+    }
+
+    private static int getIntArgument(JasminInstruction inst, int index) {
+        return Integer.parseInt(inst.getArguments().get(index));
+    }
+
+    private static int getArrayType(String type) {
+        return switch (type) {
+            case "boolean" -> 4;
+            case "char" -> 5;
+            case "byte" -> 8;
+            case "short" -> 9;
+            case "int" -> 10;
+            default -> throw new NotImplementedException("Array type '" + type + "' in class file backend");
+        };
+    }
+}
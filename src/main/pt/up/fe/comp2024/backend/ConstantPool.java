@@ -0,0 +1,121 @@
+package pt.up.fe.comp2024.backend;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the constant pool of a class file, reusing entries that were already added.
+ */
+public class ConstantPool {
+
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELDREF = 9;
+    private static final int METHODREF = 10;
+    private static final int NAME_AND_TYPE = 12;
+
+    private final Map<String, Integer> indexes;
+    private final ByteArrayOutputStream bytes;
+    private final DataOutputStream entries;
+    private int size;
+
+    public ConstantPool() {
+        this.indexes = new HashMap<>();
+        this.bytes = new ByteArrayOutputStream();
+        this.entries = new DataOutputStream(bytes);
+        this.size = 0;
+    }
+
+    public int addUtf8(String value) {
+        return add(UTF8 + ":" + value, () -> {
+            entries.writeByte(UTF8);
+            entries.writeUTF(value);
+        });
+    }
+
+    public int addInteger(int value) {
+        return add(INTEGER + ":" + value, () -> {
+            entries.writeByte(INTEGER);
+            entries.writeInt(value);
+        });
+    }
+
+    public int addClass(String internalName) {
+        int name = addUtf8(internalName);
+        return add(CLASS + ":" + internalName, () -> {
+            entries.writeByte(CLASS);
+            entries.writeShort(name);
+        });
+    }
+
+    public int addString(String value) {
+        int utf8 = addUtf8(value);
+        return add(STRING + ":" + value, () -> {
+            entries.writeByte(STRING);
+            entries.writeShort(utf8);
+        });
+    }
+
+    public int addNameAndType(String name, String descriptor) {
+        int nameIndex = addUtf8(name);
+        int descriptorIndex = addUtf8(descriptor);
+        return add(NAME_AND_TYPE + ":" + name + ":" + descriptor, () -> {
+            entries.writeByte(NAME_AND_TYPE);
+            entries.writeShort(nameIndex);
+            entries.writeShort(descriptorIndex);
+        });
+    }
+
+    public int addFieldref(String owner, String name, String descriptor) {
+        return addMemberRef(FIELDREF, owner, name, descriptor);
+    }
+
+    public int addMethodref(String owner, String name, String descriptor) {
+        return addMemberRef(METHODREF, owner, name, descriptor);
+    }
+
+    private int addMemberRef(int tag, String owner, String name, String descriptor) {
+        int classIndex = addClass(owner);
+        int nameAndType = addNameAndType(name, descriptor);
+        return add(tag + ":" + owner + "." + name + ":" + descriptor, () -> {
+            entries.writeByte(tag);
+            entries.writeShort(classIndex);
+            entries.writeShort(nameAndType);
+        });
+    }
+
+    private int add(String key, EntryWriter writer) {
+        var index = indexes.get(key);
+        if (index != null) {
+            return index;
+        }
+
+        try {
+            writer.write();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not add constant '" + key + "' to the constant pool", e);
+        }
+
+        // Constant pool indexes start at 1
+        size++;
+        indexes.put(key, size);
+        return size;
+    }
+
+    /**
+     * Writes the constant pool count followed by every entry.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeShort(size + 1);
+        out.write(bytes.toByteArray());
+    }
+
+    private interface EntryWriter {
+        void write() throws IOException;
+    }
+}
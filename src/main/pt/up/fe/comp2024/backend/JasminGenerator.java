@@ -4,12 +4,11 @@ import org.specs.comp.ollir.*;
 import org.specs.comp.ollir.tree.TreeNode;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.specs.util.classmap.BiConsumerClassMap;
 import pt.up.fe.specs.util.classmap.FunctionClassMap;
 import pt.up.fe.specs.util.exceptions.NotImplementedException;
-import pt.up.fe.specs.util.utilities.StringLines;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Generates Jasmin code from an OllirResult.
@@ -20,7 +19,6 @@ public class JasminGenerator {
 
     private static final String NL = "\n";
     private static final String TAB = "   ";
-    private static final String STACK_PLACEHOLDER = "STACK_LIMIT_PLACEHOLDER";
 
     private final OllirResult ollirResult;
 
@@ -30,11 +28,13 @@ public class JasminGenerator {
 
     Method currentMethod;
 
-    int invokes = 0;
-
     Field field;
     ClassUnit classUnit;
     private final FunctionClassMap<TreeNode, String> generators;
+    private final BiConsumerClassMap<TreeNode, List<JasminInstruction>> emitters;
+
+    // number of labels created for comparisons in the current method
+    private int comparisons;
 
     public JasminGenerator(OllirResult ollirResult) {
         this.ollirResult = ollirResult;
@@ -47,18 +47,21 @@ public class JasminGenerator {
         generators.put(ClassUnit.class, this::generateClassUnit);
         generators.put(Method.class, this::generateMethod);
         generators.put(Field.class, this::generateField);
-        generators.put(AssignInstruction.class, this::generateAssign);
-        generators.put(PutFieldInstruction.class, this::generatePutFieldInstruction);
-        generators.put(GetFieldInstruction.class, this::generateGetFieldInstruction);
-        generators.put(CallInstruction.class, this::generateCall);
-        generators.put(SingleOpInstruction.class, this::generateSingleOp);
-        generators.put(LiteralElement.class, this::generateLiteral);
-        generators.put(Operand.class, this::generateOperand);
-        generators.put(BinaryOpInstruction.class, this::generateBinaryOp);
-        generators.put(UnaryOpInstruction.class, this::generateUnaryOp);
-        generators.put(ReturnInstruction.class, this::generateReturn);
-        generators.put(CondBranchInstruction.class, this::generateBranch);
-        generators.put(GotoInstruction.class, this::generateGoto);
+
+        // instructions are emitted as lists, which the peephole optimizer rewrites before they become text
+        this.emitters = new BiConsumerClassMap<>();
+        emitters.put(AssignInstruction.class, this::emitAssign);
+        emitters.put(PutFieldInstruction.class, this::emitPutFieldInstruction);
+        emitters.put(GetFieldInstruction.class, this::emitGetFieldInstruction);
+        emitters.put(CallInstruction.class, this::emitCall);
+        emitters.put(SingleOpInstruction.class, this::emitSingleOp);
+        emitters.put(LiteralElement.class, this::emitLiteral);
+        emitters.put(Operand.class, this::emitOperand);
+        emitters.put(BinaryOpInstruction.class, this::emitBinaryOp);
+        emitters.put(UnaryOpInstruction.class, this::emitUnaryOp);
+        emitters.put(ReturnInstruction.class, this::emitReturn);
+        emitters.put(CondBranchInstruction.class, this::emitBranch);
+        emitters.put(GotoInstruction.class, this::emitGoto);
     }
     public List<Report> getReports() {
         return reports;
@@ -146,7 +149,7 @@ public class JasminGenerator {
                 continue;
             }
 
-            code.append(generators.apply(method));
+            appendMethod(code, method);
         }
         this.classUnit = null;
         return code.toString();
@@ -188,7 +191,7 @@ public class JasminGenerator {
         return code.toString();
     }
 
-    private String getJasminType(Type type){
+    String getJasminType(Type type){
         var code = new StringBuilder();
         ElementType elementType = type.getTypeOfElement();
 
@@ -209,11 +212,16 @@ public class JasminGenerator {
 
 
     private String generateMethod(Method method) {
-
-        // set method
-        currentMethod = method;
-
         var code = new StringBuilder();
+        appendMethod(code, method);
+        return code.toString();
+    }
+
+    /**
+     * Appends the code of the method to the given buffer, so that the methods of a class are emitted into a single
+     * buffer.
+     */
+    private void appendMethod(StringBuilder code, Method method) {
 
         // calculate modifier
         var modifier = method.getMethodAccessModifier() != AccessModifier.DEFAULT ?
@@ -230,9 +238,25 @@ public class JasminGenerator {
         else if(method.isStaticMethod())
             code.append("static ");
 
-        code.append(methodName).append("(");
+        code.append(methodName).append(getMethodDescriptor(method)).append(NL);
 
-        if (methodName.equals("main"))
+        var instructions = generateInstructions(method);
+
+        // follow every path of the emitted instructions to find the deepest stack
+        code.append(TAB).append(".limit stack ").append(StackCalculator.getMaxStack(instructions)).append(NL);
+        code.append(TAB).append(".limit locals ").append(getLocalsLimit(method)).append(NL);
+
+        for (var inst : instructions) {
+            code.append(inst.isLabel() ? "" : TAB).append(inst).append(NL);
+        }
+
+        code.append(".end method\n");
+    }
+
+    String getMethodDescriptor(Method method) {
+        var code = new StringBuilder("(");
+
+        if (method.getMethodName().equals("main"))
             code.append("[Ljava/lang/String;");
 
         else
@@ -241,126 +265,111 @@ public class JasminGenerator {
 
         code.append(")");
 
-        code.append(getJasminType(method.getReturnType())).append(NL);
+        return code.append(getJasminType(method.getReturnType())).toString();
+    }
 
-        // calculate locals
-        Set<Integer> vRegs = new TreeSet<>();
-        vRegs.add(0);
+    int getLocalsLimit(Method method) {
+        // registers may be shared after register allocation
+        int locals = (method.isStaticMethod() ? 0 : 1) + method.getParams().size();
 
         for(Descriptor var : method.getVarTable().values())
-            vRegs.add(var.getVirtualReg());
+            locals = Math.max(locals, var.getVirtualReg() + 1);
 
+        return locals;
+    }
 
-        code.append(TAB).append(".limit stack ").append(STACK_PLACEHOLDER).append(NL);
-        code.append(TAB).append(".limit locals ").append(vRegs.size()).append(NL);
-
-        this.invokes = 0;
-
-        for (var inst : method.getInstructions()) {
-            for(Map.Entry<String,Instruction> label : method.getLabels().entrySet()){
-                if(label.getValue().equals(inst)) code.append(label.getKey()).append(":\n");
-            }
-            var instCode = StringLines.getLines(generators.apply(inst)).stream()
-                    .collect(Collectors.joining(NL + TAB, TAB, NL));
-
-            code.append(instCode);
+    /**
+     * Selects the instructions of the method, which are shared by the Jasmin and the class file backends, and runs
+     * the peephole optimizer over them.
+     */
+    List<JasminInstruction> generateInstructions(Method method) {
+        var body = new ArrayList<JasminInstruction>();
+        emitBody(body, method);
+        return PeepholeOptimizer.optimize(body, getTemporaryRegisters(method));
+    }
 
-            if (inst.getInstType() == InstructionType.CALL && ((CallInstruction) inst).getReturnType().getTypeOfElement() != ElementType.VOID) {
-                code.append(TAB).append("pop").append(NL);
+    /**
+     * @return the registers that only hold temporaries of the OLLIR generator, which are named "tmp" and a number
+     */
+    private static Set<Integer> getTemporaryRegisters(Method method) {
+        var temporaries = new HashSet<Integer>();
+        var variables = new HashSet<Integer>();
 
-            }
+        for (var var : method.getVarTable().entrySet()) {
+            var registers = var.getKey().matches("tmp\\d+") ? temporaries : variables;
+            registers.add(var.getValue().getVirtualReg());
         }
 
-        code.append(".end method\n");
+        // registers may be shared after register allocation
+        temporaries.removeAll(variables);
+        return temporaries;
+    }
 
-        String tryStackCalc = code.toString();
-
-        String[] parts = tryStackCalc.split("[\t\n ]");
-
-        int stacks = 2;
-        for(String part: parts){
-            if(part.startsWith("iconst") || part.startsWith("bipush") || part.startsWith("ldc") || part.startsWith("sipush"))
-                stacks++;
-            else if(part.startsWith("istore") || part.startsWith("astore") || part.startsWith("iaload"))
-                stacks--;
-            else if(part.startsWith("iload") || part.startsWith("aload") || part.startsWith("dup"))
-                stacks++;
-            else if(part.startsWith("iadd") || part.startsWith("isub") || part.startsWith("idiv") || part.startsWith("imul"))
-                stacks--;
-            else if(part.startsWith("ixor"))
-                stacks++;
-            else if(part.startsWith("if_icmplt") || part.startsWith("if_icmpge"))
-                stacks-=2;
-            else if(part.startsWith("ifgt") || part.startsWith("ifle") || part.startsWith("ifge") || part.startsWith("ifne"))
-                stacks--;
-            else if(part.equals("new"))
-                stacks++;
-            else if(part.equals("pop"))
-                stacks--;
-//            else if(part.equals("iastore"))
-//                stacks -=2;
-        }
-        stacks += this.invokes;
+    private void emitBody(List<JasminInstruction> body, Method method) {
 
+        // set method
+        currentMethod = method;
+        comparisons = 0;
 
-        String finalCode = code.toString().replace(STACK_PLACEHOLDER, String.valueOf(stacks));
+        // labels of each instruction, in the order they are declared
+        var labels = new HashMap<Instruction, List<String>>();
+        for (var label : method.getLabels().entrySet()) {
+            labels.computeIfAbsent(label.getValue(), inst -> new ArrayList<>()).add(label.getKey());
+        }
 
-        // unset method
-        currentMethod = null;
+        for (var inst : method.getInstructions()) {
+            for (var label : labels.getOrDefault(inst, Collections.emptyList())) {
+                body.add(JasminInstruction.newLabel(label));
+            }
 
-        return finalCode;
-    }
+            emitters.accept(inst, body);
 
-    private String generateAssign(AssignInstruction assign) {
-        var code = new StringBuilder();
-        String extracode = "";
-        if(assign.getDest() instanceof ArrayOperand op){
-            code.append("aload");
-
-            if(Objects.equals(op.getName(), "this"))
-                code.append("_0").append(NL);
-            else{
-                var reg = currentMethod.getVarTable().get(op.getName()).getVirtualReg();
-                if(reg < 4)
-                    code.append("_");
-                else
-                    code.append(" ");
-                code.append(reg).append(NL);
+            if (inst.getInstType() == InstructionType.CALL && ((CallInstruction) inst).getReturnType().getTypeOfElement() != ElementType.VOID) {
+                emit(body, "pop");
             }
-
-            code.append(generators.apply(op.getIndexOperands().get(0)));
         }
 
-        boolean flag2 = true;
+        // unset method
+        currentMethod = null;
+    }
 
-        if(assign.getRhs() instanceof SingleOpInstruction){
-            var l = ((SingleOpInstruction) assign.getRhs()).getSingleOperand();
+    private static void emit(List<JasminInstruction> body, String opcode, String... arguments) {
+        body.add(JasminInstruction.newInstruction(opcode, arguments));
+    }
 
-            if(l instanceof ArrayOperand op){ //Array Access
-                code.append("aload");
+    /**
+     * Emits a load or store of a register, with the short form of the instruction for the first four registers.
+     */
+    private static void emitRegister(List<JasminInstruction> body, String opcode, int reg) {
+        if (reg < 4)
+            emit(body, opcode + "_" + reg);
+        else
+            emit(body, opcode, String.valueOf(reg));
+    }
 
-                if(Objects.equals(op.getName(), "this"))
-                    code.append("_0").append(NL);
-                else{
-                    var reg = currentMethod.getVarTable().get(op.getName()).getVirtualReg();
-                    if(reg < 4)
-                        code.append("_");
-                    else
-                        code.append(" ");
-                    code.append(reg).append(NL);
-                }
+    /**
+     * Emits the array and the index of an array element, for a load or a store.
+     */
+    private void emitArrayElement(ArrayOperand op, List<JasminInstruction> body) {
+        if(Objects.equals(op.getName(), "this"))
+            emit(body, "aload_0");
+        else
+            emitRegister(body, "aload", currentMethod.getVarTable().get(op.getName()).getVirtualReg());
 
-                code.append(generators.apply(((ArrayOperand) l).getIndexOperands().get(0)));
+        emitters.accept(op.getIndexOperands().get(0), body);
+    }
 
-                code.append("iaload ").append(NL);
-                flag2 = false;
-            }
+    private void emitAssign(AssignInstruction assign, List<JasminInstruction> body) {
+        if(assign.getDest() instanceof ArrayOperand op)
+            emitArrayElement(op, body);
 
+        if(assign.getRhs() instanceof SingleOpInstruction singleOp
+                && singleOp.getSingleOperand() instanceof ArrayOperand op){ //Array Access
+            emitArrayElement(op, body);
+            emit(body, "iaload");
         }
-
-        code.append(extracode);
-        if(flag2)
-            code.append(generators.apply(assign.getRhs()));
+        else
+            emitters.accept(assign.getRhs(), body);
 
 
         var lhs = assign.getDest();
@@ -371,7 +380,8 @@ public class JasminGenerator {
         }
 
         if(operand instanceof ArrayOperand){
-            return code.append("iastore").append(NL).toString();
+            emit(body, "iastore");
+            return;
         }
 
 
@@ -380,149 +390,73 @@ public class JasminGenerator {
 
         ElementType elemType = operand.getType().getTypeOfElement();
 
-        if(elemType == ElementType.INT32 || elemType == ElementType.BOOLEAN){
-            if(reg < 4)
-                code.append("istore_");
-            else
-                code.append("istore ");
-            return code.append(reg).append(NL).toString();
-        }
-        else if (elemType == ElementType.OBJECTREF || elemType == ElementType.ARRAYREF || elemType == ElementType.STRING || elemType == ElementType.THIS){
-            if(reg < 4)
-                code.append("astore").append("_");
-            else
-                code.append("astore ");
-            return code.append(reg).append(NL).toString();
-        }
+        if(elemType == ElementType.INT32 || elemType == ElementType.BOOLEAN)
+            emitRegister(body, "istore", reg);
+
+        else if (elemType == ElementType.OBJECTREF || elemType == ElementType.ARRAYREF || elemType == ElementType.STRING || elemType == ElementType.THIS)
+            emitRegister(body, "astore", reg);
+
         else
-            return "Error in generate assign!";
+            throw new NotImplementedException(elemType);
 
     }
 
-    private String generatePutFieldInstruction(PutFieldInstruction putFieldInstruction) {
-        var code = new StringBuilder();
-
+    private void emitPutFieldInstruction(PutFieldInstruction putFieldInstruction, List<JasminInstruction> body) {
         Element op1 = putFieldInstruction.getOperands().get(0);
         Element op2 = putFieldInstruction.getOperands().get(1);
         Element op3 = putFieldInstruction.getOperands().get(2);
 
-        code.append(generators.apply(op1));
-        code.append(generators.apply(op3));
+        emitters.accept(op1, body);
+        emitters.accept(op3, body);
 
-        code.append("\tputfield ");
-        code.append(getQualifiedImports(ollirResult.getOllirClass().getClassName())).append("/");
-        code.append(((Operand) op2).getName()).append(" ").append(getJasminType(op2.getType())).append(NL);
-
-        return code.toString();
+        emit(body, "putfield", getQualifiedImports(ollirResult.getOllirClass().getClassName()) + "/" + ((Operand) op2).getName(),
+                getJasminType(op2.getType()));
     }
 
-    private String generateGetFieldInstruction(GetFieldInstruction getFieldInstruction) {
-        var code = new StringBuilder();
-
+    private void emitGetFieldInstruction(GetFieldInstruction getFieldInstruction, List<JasminInstruction> body) {
         Element op1 = getFieldInstruction.getOperands().get(0);
         Element aux = getFieldInstruction.getOperands().get(1);
 
-        code.append(generators.apply(op1));
-        code.append("\tgetfield ");
-
-        String className = getQualifiedImports(getFieldInstruction.getObject().getName());
+        emitters.accept(op1, body);
 
-        code.append(className).append("/");
-        code.append(((Operand) aux).getName()).append(" ").append(getJasminType(aux.getType())).append(NL);
+        // fields are only accessed in objects of this class, which may be other than "this" after inlining
+        String className = getQualifiedImports(ollirResult.getOllirClass().getClassName());
 
-        return code.toString();
+        emit(body, "getfield", className + "/" + ((Operand) aux).getName(), getJasminType(aux.getType()));
     }
 
 
-    private String generateCall(CallInstruction callInstruction){
+    private void emitCall(CallInstruction callInstruction, List<JasminInstruction> body){
         CallType type = callInstruction.getInvocationType();
-        boolean flag = true;
-        String result = "";
 
         if (type == CallType.invokevirtual) {
             var className = getQualifiedImports(((ClassType) callInstruction.getCaller().getType()).getName());
-            var code = new StringBuilder();
-            code.append(generators.apply(callInstruction.getOperands().get(0)));
-
-            if(!(callInstruction.getReturnType().getTypeOfElement() == ElementType.VOID))
-               this.invokes++;
-
-            this.invokes -= callInstruction.getArguments().size();
+            emitters.accept(callInstruction.getOperands().get(0), body);
 
             for (var argument : callInstruction.getArguments())
-                code.append(generators.apply(argument));
-
-
-            code.append("invokevirtual ");
+                emitters.accept(argument, body);
 
             var firstOp = (Operand) callInstruction.getOperands().get(0);
             var name = ((ClassType) firstOp.getType()).getName();
 
-
-            if(name.equals("this"))
-                code.append(className);
-
-            else {
-                for (var importClass : ollirResult.getOllirClass().getImports()) {
-                    if (importClass.endsWith(className)) {
-                        name.replace(".", "/");
-                    }
-                }
-            }
-
-            code.append(name).append("/");
-            result = getString(callInstruction, code);
+            var owner = name.equals("this") ? className : name;
+            emit(body, "invokevirtual", owner + "/" + getCallDescriptor(callInstruction));
 
 
         } else if (type == CallType.invokespecial) {
-            var code = new StringBuilder();
-            String className;
-
-            if(!(callInstruction.getReturnType().getTypeOfElement() == ElementType.VOID))
-                this.invokes++;
-
-            this.invokes -= callInstruction.getArguments().size();
-
-            if (callInstruction.getCaller().getType().getTypeOfElement() == ElementType.THIS)
-                className = ((ClassType) callInstruction.getCaller().getType()).getName();
-
-            else
-                className = getQualifiedImports(((ClassType) callInstruction.getCaller().getType()).getName());
-
-            code.append(generators.apply(callInstruction.getOperands().get(0))).append("invokespecial ");
-
-            if (callInstruction.getArguments().isEmpty() || callInstruction.getArguments().get(0).getType().getTypeOfElement().equals(ElementType.THIS))
-                code.append(getQualifiedImports(className));
-
-            else {
-                for (var importClass : ollirResult.getOllirClass().getImports()) {
-                    if (importClass.endsWith(className)) {
-                        className.replace(".", "/");
-                    }
-                }
-                code.append(getQualifiedImports(className));
-            }
+            var className = getQualifiedImports(((ClassType) callInstruction.getCaller().getType()).getName());
 
-            code.append("/<init>(");
-            for (var argument :callInstruction.getArguments()){
-                code.append(generators.apply(argument));
-            }
+            emitters.accept(callInstruction.getOperands().get(0), body);
 
-            code.append(")");
-            var retType = getJasminType(callInstruction.getReturnType());
-            code.append(retType).append(NL);
+            var descriptor = new StringBuilder("/<init>(");
+            for (var argument : callInstruction.getArguments())
+                descriptor.append(getJasminType(argument.getType()));
+            descriptor.append(")").append(getJasminType(callInstruction.getReturnType()));
 
-            result = code.toString();
+            emit(body, "invokespecial", className + descriptor);
         }
 
         else if (type == CallType.invokestatic) {
-            var code = new StringBuilder();
-
-            if(!(callInstruction.getReturnType().getTypeOfElement() == ElementType.VOID))
-                this.invokes++;
-
-            this.invokes -= callInstruction.getArguments().size();
-
             String className;
 
             if (callInstruction.getCaller().getType().getTypeOfElement() == ElementType.THIS)
@@ -533,71 +467,42 @@ public class JasminGenerator {
 
 
             for (var argument : callInstruction.getArguments())
-                code.append(generators.apply(argument));
+                emitters.accept(argument, body);
 
-
-            code.append("invokestatic ");
-            var firstOp = (Operand) callInstruction.getOperands().get(0);
-            var name = firstOp.getName();
-
-
-            if (name.equals("this"))
-                code.append(getQualifiedImports(className));
-
-            else {
-                for (var importClass : ollirResult.getOllirClass().getImports()) {
-                    if (importClass.endsWith(name)) {
-                        name.replace(".", "/");
-                    }
-                }
-                code.append(getQualifiedImports(className));
-            }
-
-            code.append("/");
-            result = getString(callInstruction, code);
+            emit(body, "invokestatic", getQualifiedImports(className) + "/" + getCallDescriptor(callInstruction));
 
         }
 
         else if (type == CallType.NEW) {
-            var code = new StringBuilder();
-            String className = "";
-
-            if (callInstruction.getCaller().getType().getTypeOfElement() == ElementType.THIS)
-                className = ((ClassType) callInstruction.getCaller().getType()).getName();
-
-            else if(callInstruction.getCaller().getType().getTypeOfElement() == ElementType.ARRAYREF){
-                for (var argument : callInstruction.getArguments())
-                    code.append(generators.apply(argument));
+            for (var argument : callInstruction.getArguments())
+                emitters.accept(argument, body);
 
-                code.append("newarray int\n");
-                flag = false;
-            }
+            var callerType = callInstruction.getCaller().getType();
 
-            else
-                className = getQualifiedImports(((ClassType) callInstruction.getCaller().getType()).getName());
+            if(callerType.getTypeOfElement() == ElementType.ARRAYREF)
+                emit(body, "newarray", "int");
 
-            if(flag){
-                for (var argument : callInstruction.getArguments())
-                    code.append(generators.apply(argument));
-            }
+            else if (callInstruction.getReturnType().getTypeOfElement() == ElementType.OBJECTREF){
+                String className = callerType.getTypeOfElement() == ElementType.THIS
+                        ? ((ClassType) callerType).getName()
+                        : getQualifiedImports(((ClassType) callerType).getName());
 
-            if (Objects.equals(callInstruction.getReturnType().getTypeOfElement().name(), "OBJECTREF")){
-                code.append("new ").append(getQualifiedImports(className)).append(NL).append("dup").append(NL);
+                emit(body, "new", getQualifiedImports(className));
+                emit(body, "dup");
             }
-
-
-            result = code.toString();
         }
 
-        else if(Objects.equals(type.toString(), "arraylength")){
-            result = generators.apply(callInstruction.getOperands().get(0)) + "arraylength" + NL;
+        else if(type == CallType.arraylength){
+            emitters.accept(callInstruction.getOperands().get(0), body);
+            emit(body, "arraylength");
         }
-
-
-        return result;
     }
 
-    private String getString(CallInstruction callInstruction, StringBuilder code) {
+    /**
+     * @return the name of the called method followed by its descriptor
+     */
+    private String getCallDescriptor(CallInstruction callInstruction) {
+        var code = new StringBuilder();
         var methodName = ((LiteralElement) callInstruction.getMethodName()).getLiteral().replace("\"", "");
         code.append(methodName);
         code.append("(");
@@ -607,178 +512,145 @@ public class JasminGenerator {
         }
 
         code.append(")");
-        var retType = getJasminType(callInstruction.getReturnType());
-        code.append(retType).append(NL);
-
-        return code.toString();
+        return code.append(getJasminType(callInstruction.getReturnType())).toString();
     }
 
 
-    private String generateSingleOp(SingleOpInstruction singleOp) {
-        return generators.apply(singleOp.getSingleOperand());
+    private void emitSingleOp(SingleOpInstruction singleOp, List<JasminInstruction> body) {
+        emitters.accept(singleOp.getSingleOperand(), body);
     }
 
-    private String generateLiteral(LiteralElement literal) {
-        var code = new StringBuilder();
-        if (literal.getType().getTypeOfElement() != ElementType.INT32 && literal.getType().getTypeOfElement() != ElementType.BOOLEAN)
-            return "ldc " + literal.getLiteral() + NL;
-
-        else {
-            var value = Integer.parseInt(literal.getLiteral());
-
-            if (value >= -1 && value <= 5)
-                code.append("iconst_"); // already treated on the end of the method
-
-            else if (value >= -128 && value <= 127)
-                code.append("bipush "); // already treated on the end of the method
-
-            else if (value >= -32768 && value <= 32767)
-                code.append("sipush "); // already treated on the end of the method
-
-            else code.append("ldc "); // already treated on the end of the method
+    private void emitLiteral(LiteralElement literal, List<JasminInstruction> body) {
+        if (literal.getType().getTypeOfElement() != ElementType.INT32 && literal.getType().getTypeOfElement() != ElementType.BOOLEAN) {
+            emit(body, "ldc", literal.getLiteral());
+            return;
+        }
 
+        var value = Integer.parseInt(literal.getLiteral());
 
+        if (value == -1)
+            emit(body, "iconst_m1");
 
-            if (value == -1)
-                code.append("m1"); // already treated on the end of the method
+        else if (value >= 0 && value <= 5)
+            emit(body, "iconst_" + value);
 
-            else
-                code.append(value);
+        else if (value >= -128 && value <= 127)
+            emit(body, "bipush", String.valueOf(value));
 
-            code.append(NL);
+        else if (value >= -32768 && value <= 32767)
+            emit(body, "sipush", String.valueOf(value));
 
-        }
-        return code.toString();
+        else emit(body, "ldc", String.valueOf(value));
     }
 
-    private String generateOperand(Operand operand) {
+    private void emitOperand(Operand operand, List<JasminInstruction> body) {
         var reg = currentMethod.getVarTable().get(operand.getName()).getVirtualReg();
+        var elemType = operand.getType().getTypeOfElement();
 
-        if(operand.getType().getTypeOfElement() == ElementType.INT32 || operand.getType().getTypeOfElement() == ElementType.BOOLEAN){
-            String temp = " ";
-            if(reg < 4)
-                temp = "_";
-            return "iload" + temp + reg + NL;
-        }
+        if(elemType == ElementType.INT32 || elemType == ElementType.BOOLEAN)
+            emitRegister(body, "iload", reg);
 
-        else if(operand.getType().getTypeOfElement() == ElementType.OBJECTREF || operand.getType().getTypeOfElement() == ElementType.ARRAYREF || operand.getType().getTypeOfElement() == ElementType.STRING || operand.getType().getTypeOfElement() == ElementType.CLASS){
-            String temp = " ";
-            if(reg < 4)
-                temp = "_";
-            return "aload" + temp + reg + NL;
-        }
+        else if(elemType == ElementType.OBJECTREF || elemType == ElementType.ARRAYREF || elemType == ElementType.STRING || elemType == ElementType.CLASS)
+            emitRegister(body, "aload", reg);
 
-        else if (operand.getType().getTypeOfElement() == ElementType.THIS){
-            return "aload_" + reg + NL;
-        }
+        else if (elemType == ElementType.THIS)
+            emit(body, "aload_" + reg);
 
         else
-            return "Error generate operand!";
-    }
-
-    private String generateBinaryOp(BinaryOpInstruction binaryOp) {
-        var code = new StringBuilder();
-
-        // load values on the left and on the right
-        code.append(generators.apply(binaryOp.getLeftOperand()));
-        code.append(generators.apply(binaryOp.getRightOperand()));
-
-        var op = switch (binaryOp.getOperation().getOpType()) {
-            case ADD -> "iadd\n"; //treated
-            case MUL -> "imul\n"; // treated
-            case DIV -> "idiv\n"; // treated
-            case SUB -> "isub\n"; // treated
-            case LTH -> helperBinaryOpLTH(binaryOp); // treated
-            case GTE -> helperGTE(binaryOp); // treated
-            case ANDB -> helperAndB(binaryOp); // treated
-            default -> throw new NotImplementedException(binaryOp.getOperation().getOpType());
-        };
-
-        code.append(op);
-        return code.toString();
+            throw new NotImplementedException(elemType);
     }
 
-    public String generateUnaryOp(UnaryOpInstruction unaryOp){
-        var code = new StringBuilder();
-        code.append(generators.apply(unaryOp.getOperand()));
-        code.append("iconst_1\n");
-        if(unaryOp.getOperation().getOpType() == OperationType.NOT || unaryOp.getOperation().getOpType() == OperationType.NOTB) {
-            code.append("ixor\n");
-        }
-        return code.toString();
+    /**
+     * @return the instruction that jumps when the comparison holds for the two ints on the stack, if the operation is
+     * a comparison
+     */
+    private static Optional<String> getComparisonBranch(OperationType opType) {
+        return Optional.ofNullable(switch (opType) {
+            case LTH -> "if_icmplt";
+            case GTE -> "if_icmpge";
+            case GTH -> "if_icmpgt";
+            case LTE -> "if_icmple";
+            default -> null;
+        });
     }
 
+    private void emitBinaryOp(BinaryOpInstruction binaryOp, List<JasminInstruction> body) {
 
-    private String helperGTE(BinaryOpInstruction binaryOp) {
-        var code = new StringBuilder();
-
-        if(binaryOp.getLeftOperand().isLiteral() && binaryOp.getRightOperand().isLiteral()){
-            code.append("if_icmpge ");
-        }
-        else if(binaryOp.getLeftOperand().isLiteral()){
-            code.append("ifle ");
-        }
-        else if(binaryOp.getRightOperand().isLiteral()){
-            code.append("ifge ");
-        }
-        else if(!binaryOp.getLeftOperand().isLiteral() && !binaryOp.getRightOperand().isLiteral()){
-            code.append("if_icmpge ");
+        // load values on the left and on the right
+        emitters.accept(binaryOp.getLeftOperand(), body);
+        emitters.accept(binaryOp.getRightOperand(), body);
+
+        var opType = binaryOp.getOperation().getOpType();
+
+        // a comparison whose value is stored, not branched on, pushes 1 or 0
+        var branch = getComparisonBranch(opType);
+        if (branch.isPresent()) {
+            var trueLabel = newComparisonLabel();
+            var endLabel = newComparisonLabel();
+            emit(body, branch.get(), trueLabel);
+            emit(body, "iconst_0");
+            emit(body, "goto", endLabel);
+            body.add(JasminInstruction.newLabel(trueLabel));
+            emit(body, "iconst_1");
+            body.add(JasminInstruction.newLabel(endLabel));
+            return;
         }
 
-        return code.toString();
-    }
-
-    private String helperAndB(BinaryOpInstruction binaryOp){
-        var code = new StringBuilder();
-        code.append("ifne");
-        code.append(generators.apply(binaryOp));
+        var op = switch (opType) {
+            case ADD -> "iadd";
+            case MUL -> "imul";
+            case DIV -> "idiv";
+            case SUB -> "isub";
+            case SHL -> "ishl";
+            case SHR -> "ishr";
+            case SHRR -> "iushr";
+            case ANDB -> "iand";
+            default -> throw new NotImplementedException(opType);
+        };
 
-        return code.toString();
+        emit(body, op);
     }
-    private String helperBinaryOpLTH(BinaryOpInstruction binaryOp){
-        var code = new StringBuilder();
-
 
+    /**
+     * @return a label that is not one of the labels of the method
+     */
+    private String newComparisonLabel() {
+        String label;
+        do {
+            label = "cmp_" + comparisons++;
+        } while (currentMethod.getLabels().containsKey(label));
+        return label;
+    }
 
-        if(binaryOp.getLeftOperand().isLiteral() && binaryOp.getRightOperand().isLiteral()){
-            code.append("if_icmplt ");
-        }
-        else if(binaryOp.getLeftOperand().isLiteral()){
-            code.append("ifgt ");
-        }
-        else if(binaryOp.getRightOperand().isLiteral()){
-            code.append("if_icmplt ");
-        }
-        else if(!binaryOp.getLeftOperand().isLiteral() && !binaryOp.getRightOperand().isLiteral()){
-            code.append("if_icmplt ");
+    private void emitUnaryOp(UnaryOpInstruction unaryOp, List<JasminInstruction> body){
+        emitters.accept(unaryOp.getOperand(), body);
+        emit(body, "iconst_1");
+        if(unaryOp.getOperation().getOpType() == OperationType.NOT || unaryOp.getOperation().getOpType() == OperationType.NOTB) {
+            emit(body, "ixor");
         }
-
-
-
-        return code.toString();
     }
 
-    private String generateReturn(ReturnInstruction returnInst) {
-        var code = new StringBuilder();
-
-        if(returnInst.getReturnType().getTypeOfElement() == ElementType.VOID)
-            return code.append("return").append(NL).toString();
+    private void emitReturn(ReturnInstruction returnInst, List<JasminInstruction> body) {
+        ElementType elemType = returnInst.getReturnType().getTypeOfElement();
 
-        code.append(generators.apply(returnInst.getOperand()));
+        if(elemType == ElementType.VOID) {
+            emit(body, "return");
+            return;
+        }
 
-        ElementType elemType = returnInst.getReturnType().getTypeOfElement();
+        emitters.accept(returnInst.getOperand(), body);
 
         if(elemType == ElementType.INT32 || elemType == ElementType.BOOLEAN)
-            return code.append("ireturn").append(NL).toString();
+            emit(body, "ireturn");
 
-        else if(elemType == ElementType.OBJECTREF)
-            return code.append("areturn").append(NL).toString();
+        else if(elemType == ElementType.OBJECTREF || elemType == ElementType.ARRAYREF || elemType == ElementType.STRING)
+            emit(body, "areturn");
 
         else
-            return "Error generate return!";
+            throw new NotImplementedException(elemType);
     }
 
-    private String getQualifiedImports(String className){
+    String getQualifiedImports(String className){
 
         if(Objects.equals(className, "this"))
             return ollirResult.getOllirClass().getClassName();
@@ -790,44 +662,42 @@ public class JasminGenerator {
         return className;
     }
 
-    private String generateGoto(GotoInstruction gotoInstruction){
-        var code = new StringBuilder();
-
-        code.append("goto ").append(gotoInstruction.getLabel()).append("\n");
-
-        return code.toString();
+    private void emitGoto(GotoInstruction gotoInstruction, List<JasminInstruction> body){
+        emit(body, "goto", gotoInstruction.getLabel());
     }
-    private String generateBranch(CondBranchInstruction condBranchInstruction){
-        var code = new StringBuilder();
-        if(condBranchInstruction instanceof OpCondInstruction instruction) code.append(generateOpCond(instruction));
-        if(condBranchInstruction instanceof SingleOpCondInstruction instruction) code.append(generateSingleOpCond(instruction));
 
-
-
-        return code.toString();
+    private void emitBranch(CondBranchInstruction condBranchInstruction, List<JasminInstruction> body){
+        if(condBranchInstruction instanceof OpCondInstruction instruction) emitOpCond(instruction, body);
+        if(condBranchInstruction instanceof SingleOpCondInstruction instruction) emitSingleOpCond(instruction, body);
     }
 
-    private String generateOpCond(OpCondInstruction OpCond) {
-        var code = new StringBuilder();
-
-        InstructionType opType = OpCond.getCondition().getInstType();
-        String label = OpCond.getLabel(); // label penso q é preciso pq debug
-
-        if (opType == InstructionType.BINARYOPER) code.append(generateBinaryOp((BinaryOpInstruction) OpCond.getCondition()));
-        else if (opType == InstructionType.UNARYOPER)code.append(generateUnaryOp((UnaryOpInstruction) OpCond.getCondition()));
-        else {
-            code.append("ifne").append(generators.apply(OpCond.getCondition()));
+    private void emitOpCond(OpCondInstruction OpCond, List<JasminInstruction> body) {
+        var condition = OpCond.getCondition();
+        String label = OpCond.getLabel();
+
+        if (condition instanceof BinaryOpInstruction binaryOp) {
+            var branch = getComparisonBranch(binaryOp.getOperation().getOpType());
+            if (branch.isPresent()) {
+                emitters.accept(binaryOp.getLeftOperand(), body);
+                emitters.accept(binaryOp.getRightOperand(), body);
+                emit(body, branch.get(), label);
+                return;
+            }
+        }
+        else if (condition instanceof UnaryOpInstruction unaryOp) {
+            // the branch of a negation is taken when its operand is false
+            emitters.accept(unaryOp.getOperand(), body);
+            emit(body, "ifeq", label);
+            return;
         }
 
-        code.append(label).append("\n");
-        return code.toString();
+        emitters.accept(condition, body);
+        emit(body, "ifne", label);
     }
-    private String generateSingleOpCond(SingleOpCondInstruction singleOpCond){
-        var code = new StringBuilder();
-        code.append(generators.apply(singleOpCond.getCondition())).append("ifne ").append(singleOpCond.getLabel());
-
 
-        return code.toString();
+    private void emitSingleOpCond(SingleOpCondInstruction singleOpCond, List<JasminInstruction> body){
+        emitters.accept(singleOpCond.getCondition(), body);
+        emit(body, "ifne", singleOpCond.getLabel());
     }
 
 }
@@ -0,0 +1,73 @@
+package pt.up.fe.comp2024.backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A single line of the body of a Jasmin method: either a label or an instruction with its arguments.
+ */
+public class JasminInstruction {
+
+    private final String label;
+    private final String opcode;
+    private final List<String> arguments;
+
+    private JasminInstruction(String label, String opcode, List<String> arguments) {
+        this.label = label;
+        this.opcode = opcode;
+        this.arguments = arguments;
+    }
+
+    public static JasminInstruction newLabel(String label) {
+        return new JasminInstruction(label, null, List.of());
+    }
+
+    public static JasminInstruction newInstruction(String opcode, String... arguments) {
+        return new JasminInstruction(null, opcode, new ArrayList<>(Arrays.asList(arguments)));
+    }
+
+    public boolean isLabel() {
+        return label != null;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public String getOpcode() {
+        return opcode;
+    }
+
+    public List<String> getArguments() {
+        return arguments;
+    }
+
+    /**
+     * @return the last argument, which for branches is the target label
+     */
+    public String getLastArgument() {
+        return arguments.get(arguments.size() - 1);
+    }
+
+    public boolean isGoto() {
+        return "goto".equals(opcode);
+    }
+
+    public boolean isConditionalBranch() {
+        return opcode != null && opcode.startsWith("if");
+    }
+
+    public boolean isReturn() {
+        return opcode != null && (opcode.endsWith("return") || opcode.equals("athrow"));
+    }
+
+    @Override
+    public String toString() {
+        if (isLabel()) {
+            return label + ":";
+        }
+
+        return arguments.isEmpty() ? opcode : opcode + " " + String.join(" ", arguments);
+    }
+}
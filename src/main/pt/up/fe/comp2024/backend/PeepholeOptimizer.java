@@ -0,0 +1,426 @@
+package pt.up.fe.comp2024.backend;
+
+import java.util.*;
+
+/**
+ * Rewrites short sequences of the instructions selected for a method into cheaper ones.
+ * <p>
+ * Each sweep copies the instructions into a new list, trying every rule of {@link #RULES} at each position, and sweeps
+ * are repeated until no rule applies. Labels are never part of a rewritten sequence, so the targets of branches are
+ * kept.
+ */
+public class PeepholeOptimizer {
+
+    /**
+     * A rewrite pattern over the instructions of a method body.
+     */
+    @FunctionalInterface
+    interface Rule {
+        /**
+         * Tries to match the instructions that start at the given index, adding their replacement to the output.
+         *
+         * @return how many instructions were replaced, or 0 if the rule does not match
+         */
+        int apply(Body body, int index, List<JasminInstruction> output);
+    }
+
+    /**
+     * The rules, in the order they are tried at each position.
+     */
+    static final Map<String, Rule> RULES = new LinkedHashMap<>();
+
+    static {
+        RULES.put("storeLoad", PeepholeOptimizer::storeLoad);
+        RULES.put("branchToNext", PeepholeOptimizer::branchToNext);
+        RULES.put("branchOverGoto", PeepholeOptimizer::branchOverGoto);
+        RULES.put("branchChaining", PeepholeOptimizer::branchChaining);
+        RULES.put("iinc", PeepholeOptimizer::iinc);
+        RULES.put("compareWithZero", PeepholeOptimizer::compareWithZero);
+        RULES.put("dupPop", PeepholeOptimizer::dupPop);
+    }
+
+    private static final Map<String, String> SWAPPED_COMPARISONS = Map.of(
+            "eq", "eq", "ne", "ne", "lt", "gt", "gt", "lt", "le", "ge", "ge", "le");
+
+    private static final Map<String, String> NEGATED_BRANCHES = new HashMap<>();
+
+    static {
+        var negated = Map.of("eq", "ne", "lt", "ge", "gt", "le");
+        for (var condition : negated.entrySet()) {
+            for (var prefix : List.of("if", "if_icmp")) {
+                NEGATED_BRANCHES.put(prefix + condition.getKey(), prefix + condition.getValue());
+                NEGATED_BRANCHES.put(prefix + condition.getValue(), prefix + condition.getKey());
+            }
+        }
+        NEGATED_BRANCHES.put("if_acmpeq", "if_acmpne");
+        NEGATED_BRANCHES.put("if_acmpne", "if_acmpeq");
+        NEGATED_BRANCHES.put("ifnull", "ifnonnull");
+        NEGATED_BRANCHES.put("ifnonnull", "ifnull");
+    }
+
+    /**
+     * @param temporaries the registers that only hold temporaries, whose stores may be removed
+     * @return the optimized instructions, or the given list itself if no rule applies
+     */
+    public static List<JasminInstruction> optimize(List<JasminInstruction> instructions, Set<Integer> temporaries) {
+        var current = instructions;
+
+        while (true) {
+            var body = new Body(current, temporaries);
+            var output = new ArrayList<JasminInstruction>(current.size());
+            boolean changed = false;
+
+            int index = 0;
+            while (index < current.size()) {
+                int replaced = 0;
+                for (var rule : RULES.values()) {
+                    replaced = rule.apply(body, index, output);
+                    if (replaced > 0) {
+                        break;
+                    }
+                }
+
+                if (replaced > 0) {
+                    changed = true;
+                    index += replaced;
+                } else {
+                    output.add(current.get(index));
+                    index++;
+                }
+            }
+
+            if (!changed) {
+                return current;
+            }
+            current = output;
+        }
+    }
+
+    /**
+     * The instructions of a sweep, with the position of each label and how many times each register is read.
+     * <p>
+     * Rewrites never add reads of a register, so the counts of the previous sweep never miss a read.
+     */
+    static class Body {
+        private final List<JasminInstruction> instructions;
+        private final Map<String, Integer> labels;
+        private final Map<Integer, Integer> reads;
+        private final Set<Integer> temporaries;
+
+        Body(List<JasminInstruction> instructions, Set<Integer> temporaries) {
+            this.instructions = instructions;
+            this.temporaries = temporaries;
+            this.labels = new HashMap<>();
+            this.reads = new HashMap<>();
+
+            for (int i = 0; i < instructions.size(); i++) {
+                var inst = instructions.get(i);
+                if (inst.isLabel()) {
+                    labels.put(inst.getLabel(), i);
+                } else if (isLoad(inst) || inst.getOpcode().equals("iinc")) {
+                    reads.merge(getRegister(inst), 1, Integer::sum);
+                }
+            }
+        }
+
+        /**
+         * @return the instruction at the index, or null if it is out of the body
+         */
+        JasminInstruction get(int index) {
+            return index >= 0 && index < instructions.size() ? instructions.get(index) : null;
+        }
+
+        /**
+         * @return the opcode of the instruction at the index, or null if it is a label or out of the body
+         */
+        String getOpcode(int index) {
+            var inst = get(index);
+            return inst != null ? inst.getOpcode() : null;
+        }
+
+        int getReads(int register) {
+            return reads.getOrDefault(register, 0);
+        }
+
+        boolean isTemporary(int register) {
+            return temporaries.contains(register);
+        }
+
+        /**
+         * @return the index of the first instruction after the label, skipping other labels
+         */
+        int getTarget(String label) {
+            var position = labels.get(label);
+            if (position == null) {
+                return -1;
+            }
+
+            int index = position;
+            while (index < instructions.size() && instructions.get(index).isLabel()) {
+                index++;
+            }
+            return index;
+        }
+
+        /**
+         * @return whether the label is declared right after the instruction at the index, with no instruction between
+         */
+        boolean isNextLabel(int index, String label) {
+            for (int i = index + 1; i < instructions.size() && instructions.get(i).isLabel(); i++) {
+                if (instructions.get(i).getLabel().equals(label)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * "xstore r; xload r" is removed when r is a temporary that is not read anywhere else, and "xload r; xstore r" is
+     * always removed.
+     */
+    private static int storeLoad(Body body, int index, List<JasminInstruction> output) {
+        var first = body.get(index);
+        var second = body.get(index + 1);
+        if (first == null || second == null || first.isLabel() || second.isLabel()) {
+            return 0;
+        }
+
+        if (isStore(first) && isLoad(second) && sameRegister(first, second)
+                && body.isTemporary(getRegister(second)) && body.getReads(getRegister(second)) == 1) {
+            return 2;
+        }
+
+        if (isLoad(first) && isStore(second) && sameRegister(first, second)) {
+            return 2;
+        }
+
+        return 0;
+    }
+
+    /**
+     * A branch to the label that follows it is removed, popping the operands of conditional branches.
+     */
+    private static int branchToNext(Body body, int index, List<JasminInstruction> output) {
+        var inst = body.get(index);
+        if (inst == null || !(inst.isGoto() || inst.isConditionalBranch())
+                || !body.isNextLabel(index, inst.getLastArgument())) {
+            return 0;
+        }
+
+        if (inst.isConditionalBranch()) {
+            output.add(JasminInstruction.newInstruction(StackCalculator.getStackEffect(inst) == -2 ? "pop2" : "pop"));
+        }
+        return 1;
+    }
+
+    /**
+     * "ifXX L1; goto L2; L1:" becomes "if<not XX> L2; L1:".
+     */
+    private static int branchOverGoto(Body body, int index, List<JasminInstruction> output) {
+        var branch = body.get(index);
+        var jump = body.get(index + 1);
+        if (branch == null || jump == null || !branch.isConditionalBranch() || !jump.isGoto()
+                || !NEGATED_BRANCHES.containsKey(branch.getOpcode())
+                || !body.isNextLabel(index + 1, branch.getLastArgument())) {
+            return 0;
+        }
+
+        output.add(JasminInstruction.newInstruction(NEGATED_BRANCHES.get(branch.getOpcode()), jump.getLastArgument()));
+        return 2;
+    }
+
+    /**
+     * A branch to a "goto" jumps directly to the target of that "goto".
+     */
+    private static int branchChaining(Body body, int index, List<JasminInstruction> output) {
+        var inst = body.get(index);
+        if (inst == null || !(inst.isGoto() || inst.isConditionalBranch())) {
+            return 0;
+        }
+
+        var label = inst.getLastArgument();
+        var target = label;
+        var visited = new HashSet<String>();
+        while (visited.add(target)) {
+            var next = body.get(body.getTarget(target));
+            if (next == null || !next.isGoto()) {
+                break;
+            }
+            target = next.getLastArgument();
+        }
+
+        if (target.equals(label)) {
+            return 0;
+        }
+
+        var arguments = new ArrayList<>(inst.getArguments());
+        arguments.set(arguments.size() - 1, target);
+        output.add(JasminInstruction.newInstruction(inst.getOpcode(), arguments.toArray(String[]::new)));
+        return 1;
+    }
+
+    /**
+     * "iload r; push c; iadd; istore r" and its variants become "iinc r c".
+     */
+    private static int iinc(Body body, int index, List<JasminInstruction> output) {
+        var first = body.get(index);
+        var second = body.get(index + 1);
+        var operation = body.getOpcode(index + 2);
+        var store = body.get(index + 3);
+        if (first == null || second == null || operation == null || store == null || first.isLabel()
+                || second.isLabel() || store.isLabel() || !store.getOpcode().startsWith("istore")) {
+            return 0;
+        }
+
+        JasminInstruction load;
+        Integer constant;
+        if (operation.equals("iadd")) {
+            // the addition may have the constant on either side
+            load = isLoad(first) ? first : second;
+            constant = getIntConstant(isLoad(first) ? second : first);
+        } else if (operation.equals("isub")) {
+            load = first;
+            var subtracted = getIntConstant(second);
+            constant = subtracted != null ? -subtracted : null;
+        } else {
+            return 0;
+        }
+
+        if (constant == null || !load.getOpcode().startsWith("iload")
+                || !sameRegister(load, store) || constant < Byte.MIN_VALUE || constant > Byte.MAX_VALUE) {
+            return 0;
+        }
+
+        output.add(JasminInstruction.newInstruction("iinc", String.valueOf(getRegister(store)),
+                String.valueOf(constant)));
+        return 4;
+    }
+
+    /**
+     * Comparisons with 0 use the single operand branches, and so do branches on a negated boolean.
+     */
+    private static int compareWithZero(Body body, int index, List<JasminInstruction> output) {
+        var first = body.get(index);
+        if (first == null || first.isLabel()) {
+            return 0;
+        }
+
+        // iconst_0; if_icmpXX L -> ifXX L
+        var branch = body.get(index + 1);
+        if (first.getOpcode().equals("iconst_0") && isIntComparison(branch)) {
+            output.add(JasminInstruction.newInstruction("if" + branch.getOpcode().substring(7),
+                    branch.getLastArgument()));
+            return 2;
+        }
+
+        // iconst_0; push x; if_icmpXX L -> push x; if<swapped XX> L
+        var push = body.get(index + 1);
+        branch = body.get(index + 2);
+        if (first.getOpcode().equals("iconst_0") && isIntPush(push) && isIntComparison(branch)) {
+            output.add(push);
+            output.add(JasminInstruction.newInstruction(
+                    "if" + SWAPPED_COMPARISONS.get(branch.getOpcode().substring(7)), branch.getLastArgument()));
+            return 3;
+        }
+
+        // iconst_1; ixor; ifeq L -> ifne L
+        branch = body.get(index + 2);
+        if (first.getOpcode().equals("iconst_1") && "ixor".equals(body.getOpcode(index + 1)) && branch != null
+                && ("ifeq".equals(branch.getOpcode()) || "ifne".equals(branch.getOpcode()))) {
+            output.add(JasminInstruction.newInstruction(branch.getOpcode().equals("ifeq") ? "ifne" : "ifeq",
+                    branch.getLastArgument()));
+            return 3;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Values that are pushed without side effects and then popped are never pushed.
+     */
+    private static int dupPop(Body body, int index, List<JasminInstruction> output) {
+        var first = body.get(index);
+        if (!isPurePush(first)) {
+            return 0;
+        }
+
+        if ("pop".equals(body.getOpcode(index + 1))) {
+            return 2;
+        }
+
+        if (isPurePush(body.get(index + 1)) && "pop2".equals(body.getOpcode(index + 2))) {
+            return 3;
+        }
+
+        return 0;
+    }
+
+    private static boolean isLoad(JasminInstruction inst) {
+        var opcode = inst.getOpcode();
+        return opcode.startsWith("iload") || opcode.startsWith("aload");
+    }
+
+    private static boolean isStore(JasminInstruction inst) {
+        var opcode = inst.getOpcode();
+        return opcode.startsWith("istore") || opcode.startsWith("astore");
+    }
+
+    /**
+     * @return whether the instruction only pushes a single value, with no other effect
+     */
+    private static boolean isPurePush(JasminInstruction inst) {
+        if (inst == null || inst.isLabel()) {
+            return false;
+        }
+
+        var opcode = inst.getOpcode();
+        return opcode.equals("dup") || opcode.equals("ldc") || opcode.equals("aconst_null") || isLoad(inst)
+                || getIntConstant(inst) != null;
+    }
+
+    private static boolean isIntComparison(JasminInstruction inst) {
+        return inst != null && !inst.isLabel() && inst.getOpcode().startsWith("if_icmp");
+    }
+
+    private static boolean isIntPush(JasminInstruction inst) {
+        return inst != null && !inst.isLabel()
+                && (inst.getOpcode().startsWith("iload") || getIntConstant(inst) != null);
+    }
+
+    /**
+     * Loads and stores of the same kind and register, e.g. "istore_1" and "iload_1".
+     */
+    private static boolean sameRegister(JasminInstruction first, JasminInstruction second) {
+        return first.getOpcode().charAt(0) == second.getOpcode().charAt(0)
+                && getRegister(first) == getRegister(second);
+    }
+
+    /**
+     * @return the register of a load, store or iinc, which is either in the opcode or its first argument
+     */
+    private static int getRegister(JasminInstruction inst) {
+        var opcode = inst.getOpcode();
+        int underscore = opcode.indexOf('_');
+        return underscore >= 0
+                ? Integer.parseInt(opcode.substring(underscore + 1))
+                : Integer.parseInt(inst.getArguments().get(0));
+    }
+
+    /**
+     * @return the value pushed by iconst, bipush or sipush, or null for any other instruction
+     */
+    private static Integer getIntConstant(JasminInstruction inst) {
+        if (inst.isLabel()) {
+            return null;
+        }
+
+        return switch (inst.getOpcode()) {
+            case "iconst_m1" -> -1;
+            case "iconst_0", "iconst_1", "iconst_2", "iconst_3", "iconst_4", "iconst_5" ->
+                    inst.getOpcode().charAt(7) - '0';
+            case "bipush", "sipush" -> Integer.parseInt(inst.getArguments().get(0));
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,153 @@
+package pt.up.fe.comp2024.backend;
+
+import pt.up.fe.specs.util.exceptions.NotImplementedException;
+
+import java.util.*;
+
+/**
+ * Computes the maximum operand stack depth of a Jasmin method body by following every path through its branches.
+ */
+public class StackCalculator {
+
+    private static final Map<String, Integer> STACK_EFFECTS = new HashMap<>();
+
+    static {
+        for (var opcode : List.of("iconst_m1", "iconst_0", "iconst_1", "iconst_2", "iconst_3", "iconst_4", "iconst_5",
+                "bipush", "sipush", "ldc", "ldc_w", "aconst_null", "new", "dup", "dup_x1", "dup_x2", "getstatic")) {
+            STACK_EFFECTS.put(opcode, 1);
+        }
+        for (var opcode : List.of("iadd", "isub", "imul", "idiv", "irem", "iand", "ior", "ixor", "ishl", "ishr",
+                "iushr", "iaload", "aaload", "baload", "pop", "ireturn", "areturn", "athrow", "putstatic",
+                "ifeq", "ifne", "iflt", "ifge", "ifgt", "ifle", "ifnull", "ifnonnull", "monitorenter", "monitorexit")) {
+            STACK_EFFECTS.put(opcode, -1);
+        }
+        for (var opcode : List.of("if_icmpeq", "if_icmpne", "if_icmplt", "if_icmpge", "if_icmpgt", "if_icmple",
+                "if_acmpeq", "if_acmpne", "putfield", "pop2")) {
+            STACK_EFFECTS.put(opcode, -2);
+        }
+        for (var opcode : List.of("iastore", "aastore", "bastore")) {
+            STACK_EFFECTS.put(opcode, -3);
+        }
+        for (var opcode : List.of("nop", "ineg", "iinc", "goto", "return", "getfield", "newarray", "anewarray",
+                "arraylength", "checkcast", "instanceof", "swap")) {
+            STACK_EFFECTS.put(opcode, 0);
+        }
+        STACK_EFFECTS.put("dup2", 2);
+    }
+
+    /**
+     * @return how many values the instruction leaves on the stack, minus how many it consumes
+     */
+    public static int getStackEffect(JasminInstruction inst) {
+        if (inst.isLabel()) {
+            return 0;
+        }
+
+        var opcode = inst.getOpcode();
+        if (opcode.startsWith("invoke")) {
+            return getInvokeEffect(inst);
+        }
+
+        // Loads and stores may use the short form, e.g. iload_1, the only opcodes whose suffix is a register
+        var baseOpcode = opcode.matches("[ia](load|store)_[0-3]") ? opcode.substring(0, opcode.indexOf('_')) : opcode;
+
+        return switch (baseOpcode) {
+            case "iload", "aload" -> 1;
+            case "istore", "astore" -> -1;
+            default -> {
+                var effect = STACK_EFFECTS.get(baseOpcode);
+                if (effect == null) {
+                    throw new NotImplementedException("Stack effect of opcode '" + opcode + "'");
+                }
+                yield effect;
+            }
+        };
+    }
+
+    private static int getInvokeEffect(JasminInstruction inst) {
+        // e.g. invokevirtual Foo/bar(I[I)I
+        var signature = String.join("", inst.getArguments());
+        int open = signature.indexOf('(');
+        int close = signature.lastIndexOf(')');
+        if (open < 0 || close < open) {
+            throw new RuntimeException("Instruction '" + inst + "' has no method descriptor");
+        }
+
+        int effect = -countArguments(signature.substring(open + 1, close));
+        if (!inst.getOpcode().equals("invokestatic")) {
+            effect--;
+        }
+        if (!signature.substring(close + 1).startsWith("V")) {
+            effect++;
+        }
+
+        return effect;
+    }
+
+    private static int countArguments(String descriptors) {
+        int count = 0;
+        int i = 0;
+        while (i < descriptors.length()) {
+            var c = descriptors.charAt(i);
+            if (c == '[') {
+                i++;
+                continue;
+            }
+
+            i = c == 'L' ? descriptors.indexOf(';', i) + 1 : i + 1;
+            if (i == 0) {
+                break;
+            }
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the maximum stack depth reached along any path of the method body
+     */
+    public static int getMaxStack(List<JasminInstruction> body) {
+        var labels = new HashMap<String, Integer>();
+        for (int i = 0; i < body.size(); i++) {
+            if (body.get(i).isLabel()) {
+                labels.put(body.get(i).getLabel(), i);
+            }
+        }
+
+        var depthAt = new Integer[body.size()];
+        var worklist = new ArrayDeque<Integer>();
+        int max = 0;
+
+        if (!body.isEmpty()) {
+            depthAt[0] = 0;
+            worklist.push(0);
+        }
+
+        while (!worklist.isEmpty()) {
+            int index = worklist.pop();
+            var inst = body.get(index);
+
+            int depth = depthAt[index] + getStackEffect(inst);
+            max = Math.max(max, depth);
+
+            var successors = new ArrayList<Integer>(2);
+            if ((inst.isGoto() || inst.isConditionalBranch()) && labels.containsKey(inst.getLastArgument())) {
+                successors.add(labels.get(inst.getLastArgument()));
+            }
+            if (!inst.isGoto() && !inst.isReturn() && index + 1 < body.size()) {
+                successors.add(index + 1);
+            }
+
+            for (var succ : successors) {
+                // The JVM requires the same depth on every path, so the first one is enough
+                if (depthAt[succ] == null) {
+                    depthAt[succ] = depth;
+                    worklist.push(succ);
+                }
+            }
+        }
+
+        return max;
+    }
+}
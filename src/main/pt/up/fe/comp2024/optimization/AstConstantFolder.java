@@ -0,0 +1,146 @@
+package pt.up.fe.comp2024.optimization;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp2024.ast.AstNode;
+import pt.up.fe.comp2024.ast.Kind;
+
+import java.util.ArrayList;
+import java.util.Optional;
+
+/**
+ * Replaces, in the AST, expressions whose value is known at compile time by a literal, before any OLLIR is generated.
+ * <p>
+ * Integer operations on literals follow Java semantics: they wrap around on overflow, and divisions by zero are kept
+ * so that they still throw at run time. Comparisons of integer literals, negations of boolean literals and
+ * conditional operators with a literal on the left also fold, as do the parentheses around a literal. The right operand
+ * of a conditional operator is dropped when it never runs, as in {@code false && x} and {@code true || x}. The left
+ * operand is never removed, since it always runs and may call a method, so {@code x && false} is kept.
+ */
+public class AstConstantFolder {
+
+    private int folded;
+
+    /**
+     * @return the number of expressions that were replaced
+     */
+    public int fold(JmmNode root) {
+        folded = 0;
+        visit(root);
+        return folded;
+    }
+
+    private void visit(JmmNode node) {
+        for (var child : node.getChildren()) {
+            visit(child);
+        }
+
+        if (node.getParent() == null) {
+            return;
+        }
+
+        var result = Kind.PAREN.check(node) ? unwrap(node)
+                : Kind.BINARY_OP.check(node) ? foldBinary(node)
+                : Kind.NEGATION.check(node) ? foldNegation(node)
+                : Optional.<JmmNode>empty();
+
+        result.ifPresent(replacement -> {
+            node.replace(replacement);
+            folded++;
+        });
+    }
+
+    private static Optional<JmmNode> unwrap(JmmNode paren) {
+        var expr = paren.getChild(0);
+        if (!Kind.check(expr, Kind.INTEGER_LITERAL, Kind.BOOLEAN_LITERAL)) {
+            return Optional.empty();
+        }
+        return Optional.of(expr.detach());
+    }
+
+    private static Optional<JmmNode> foldNegation(JmmNode negation) {
+        return getBoolean(negation.getChild(0)).map(value -> newLiteral(Kind.BOOLEAN_LITERAL, !value, negation));
+    }
+
+    private static Optional<JmmNode> foldBinary(JmmNode binaryOp) {
+        var op = binaryOp.get("op");
+        var left = binaryOp.getChild(0);
+        var right = binaryOp.getChild(1);
+
+        if (op.equals("&&") || op.equals("||")) {
+            // true && x and false || x are x, false && x and true || x do not evaluate x
+            return getBoolean(left).map(value -> value == op.equals("&&")
+                    ? right.detach()
+                    : newLiteral(Kind.BOOLEAN_LITERAL, value, binaryOp));
+        }
+
+        var leftValue = getInteger(left);
+        var rightValue = getInteger(right);
+        if (leftValue.isEmpty() || rightValue.isEmpty()) {
+            return Optional.empty();
+        }
+
+        int a = leftValue.get();
+        int b = rightValue.get();
+        Object value = switch (op) {
+            case "+" -> a + b;
+            case "-" -> a - b;
+            case "*" -> a * b;
+            case "/" -> b != 0 ? a / b : null;
+            case "<" -> a < b;
+            case ">" -> a > b;
+            default -> null;
+        };
+
+        if (value == null) {
+            return Optional.empty();
+        }
+
+        var kind = value instanceof Boolean ? Kind.BOOLEAN_LITERAL : Kind.INTEGER_LITERAL;
+        return Optional.of(newLiteral(kind, value, binaryOp));
+    }
+
+    private static Optional<Integer> getInteger(JmmNode node) {
+        if (!Kind.INTEGER_LITERAL.check(node)) {
+            return Optional.empty();
+        }
+
+        if (node instanceof AstNode literal) {
+            return literal.getIntValue();
+        }
+
+        try {
+            return Optional.of(Integer.parseInt(node.get("value")));
+        } catch (NumberFormatException e) {
+            // out of range, which the literal reports elsewhere
+            return Optional.empty();
+        }
+    }
+
+    private static Optional<Boolean> getBoolean(JmmNode node) {
+        if (!Kind.BOOLEAN_LITERAL.check(node)) {
+            return Optional.empty();
+        }
+        return Optional.of(Boolean.parseBoolean(node.get("value")));
+    }
+
+    /**
+     * @return a literal with the position of the expression it replaces
+     */
+    private static JmmNode newLiteral(Kind kind, Object value, JmmNode replaced) {
+        var literal = new JmmNodeImpl(kind.getNodeName());
+
+        var hierarchy = new ArrayList<>(replaced.getHierarchy());
+        hierarchy.set(0, kind.getNodeName());
+        literal.setHierarchy(hierarchy);
+
+        for (var attribute : replaced.getAttributes()) {
+            if (attribute.startsWith("line") || attribute.startsWith("col")) {
+                literal.put(attribute, replaced.get(attribute));
+            }
+        }
+        literal.put("value", value.toString());
+
+        return literal;
+    }
+}
@@ -0,0 +1,56 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.Instruction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A maximal sequence of OLLIR instructions with a single entry and a single exit.
+ */
+public class BasicBlock {
+
+    private final int id;
+    private final List<Instruction> instructions;
+    private final List<BasicBlock> successors;
+    private final List<BasicBlock> predecessors;
+
+    public BasicBlock(int id) {
+        this.id = id;
+        this.instructions = new ArrayList<>();
+        this.successors = new ArrayList<>();
+        this.predecessors = new ArrayList<>();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    public Instruction getLast() {
+        return instructions.get(instructions.size() - 1);
+    }
+
+    public List<BasicBlock> getSuccessors() {
+        return successors;
+    }
+
+    public List<BasicBlock> getPredecessors() {
+        return predecessors;
+    }
+
+    void addSuccessor(BasicBlock block) {
+        if (!successors.contains(block)) {
+            successors.add(block);
+            block.predecessors.add(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BB" + id;
+    }
+}
@@ -0,0 +1,137 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Control-flow graph of basic blocks, built from the instruction list and labels of an OLLIR method.
+ * <p>
+ * Unlike {@link Method#buildCFG()}, it can be rebuilt any number of times, so passes that change the instruction list
+ * only need to create a new one.
+ */
+public class ControlFlowGraph {
+
+    private final Method method;
+    private final List<BasicBlock> blocks;
+    private final Map<Instruction, BasicBlock> blockOf;
+
+    public ControlFlowGraph(Method method) {
+        this.method = method;
+        this.blocks = new ArrayList<>();
+        this.blockOf = new IdentityHashMap<>();
+
+        build();
+    }
+
+    private void build() {
+        var instructions = method.getInstructions();
+        var labelled = Collections.newSetFromMap(new IdentityHashMap<Instruction, Boolean>());
+        labelled.addAll(method.getLabels().values());
+
+        BasicBlock current = null;
+        for (var inst : instructions) {
+            if (current == null || labelled.contains(inst)) {
+                current = new BasicBlock(blocks.size());
+                blocks.add(current);
+            }
+
+            current.getInstructions().add(inst);
+            blockOf.put(inst, current);
+
+            if (endsBlock(inst)) {
+                current = null;
+            }
+        }
+
+        for (int i = 0; i < blocks.size(); i++) {
+            var block = blocks.get(i);
+            var last = block.getLast();
+            var next = i + 1 < blocks.size() ? blocks.get(i + 1) : null;
+
+            switch (last.getInstType()) {
+                case GOTO -> block.addSuccessor(getTarget(((GotoInstruction) last).getLabel()));
+                case BRANCH -> {
+                    block.addSuccessor(getTarget(((CondBranchInstruction) last).getLabel()));
+                    if (next != null) {
+                        block.addSuccessor(next);
+                    }
+                }
+                case RETURN -> {
+                }
+                default -> {
+                    if (next != null) {
+                        block.addSuccessor(next);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean endsBlock(Instruction inst) {
+        var type = inst.getInstType();
+        return type == InstructionType.GOTO || type == InstructionType.BRANCH || type == InstructionType.RETURN;
+    }
+
+    private BasicBlock getTarget(String label) {
+        var target = method.getLabels().get(label);
+        if (target == null || !blockOf.containsKey(target)) {
+            throw new RuntimeException("Label " + label + " of method " + method.getMethodName()
+                    + " is not associated with an instruction");
+        }
+
+        return blockOf.get(target);
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public List<BasicBlock> getBlocks() {
+        return blocks;
+    }
+
+    public BasicBlock getEntry() {
+        return blocks.isEmpty() ? null : blocks.get(0);
+    }
+
+    public BasicBlock getBlock(Instruction inst) {
+        return blockOf.get(inst);
+    }
+
+    /**
+     * @return the blocks reachable from the entry, in reverse post-order
+     */
+    public List<BasicBlock> getReversePostOrder() {
+        var order = new ArrayList<BasicBlock>();
+        if (blocks.isEmpty()) {
+            return order;
+        }
+
+        var visited = new boolean[blocks.size()];
+        var stack = new ArrayDeque<Iterator<BasicBlock>>();
+        var path = new ArrayDeque<BasicBlock>();
+
+        visited[0] = true;
+        stack.push(getEntry().getSuccessors().iterator());
+        path.push(getEntry());
+
+        while (!stack.isEmpty()) {
+            var successors = stack.peek();
+            if (successors.hasNext()) {
+                var succ = successors.next();
+                if (!visited[succ.getId()]) {
+                    visited[succ.getId()] = true;
+                    stack.push(succ.getSuccessors().iterator());
+                    path.push(succ);
+                }
+            } else {
+                stack.pop();
+                order.add(path.pop());
+            }
+        }
+
+        Collections.reverse(order);
+        return order;
+    }
+}
@@ -0,0 +1,150 @@
+package pt.up.fe.comp2024.optimization;
+
+import java.util.*;
+
+/**
+ * Immediate dominators and dominance frontiers of the blocks of a control-flow graph that are reachable from its entry.
+ * <p>
+ * Dominators are computed with the iterative algorithm of Cooper, Harvey and Kennedy, which intersects the dominators
+ * of the predecessors of each block in reverse post-order until nothing changes.
+ */
+public class DominatorTree {
+
+    private final ControlFlowGraph cfg;
+    private final List<BasicBlock> order;
+    private final Map<BasicBlock, Integer> orderIndex;
+    private final Map<BasicBlock, BasicBlock> idom;
+    private final Map<BasicBlock, List<BasicBlock>> children;
+    private final Map<BasicBlock, Set<BasicBlock>> frontiers;
+
+    public DominatorTree(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        this.order = cfg.getReversePostOrder();
+        this.orderIndex = new HashMap<>();
+        this.idom = new HashMap<>();
+        this.children = new HashMap<>();
+        this.frontiers = new HashMap<>();
+
+        for (int i = 0; i < order.size(); i++) {
+            orderIndex.put(order.get(i), i);
+            children.put(order.get(i), new ArrayList<>());
+            frontiers.put(order.get(i), new LinkedHashSet<>());
+        }
+
+        if (!order.isEmpty()) {
+            computeDominators();
+            computeFrontiers();
+        }
+    }
+
+    private void computeDominators() {
+        var entry = cfg.getEntry();
+        idom.put(entry, entry);
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (var block : order.subList(1, order.size())) {
+                BasicBlock newIdom = null;
+                for (var pred : block.getPredecessors()) {
+                    if (!idom.containsKey(pred)) {
+                        continue;
+                    }
+                    newIdom = newIdom == null ? pred : intersect(pred, newIdom);
+                }
+
+                if (newIdom != null && newIdom != idom.get(block)) {
+                    idom.put(block, newIdom);
+                    changed = true;
+                }
+            }
+        }
+
+        for (var block : order.subList(1, order.size())) {
+            children.get(idom.get(block)).add(block);
+        }
+    }
+
+    private BasicBlock intersect(BasicBlock first, BasicBlock second) {
+        while (first != second) {
+            while (orderIndex.get(first) > orderIndex.get(second)) {
+                first = idom.get(first);
+            }
+            while (orderIndex.get(second) > orderIndex.get(first)) {
+                second = idom.get(second);
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Walks up from each predecessor of a join until the immediate dominator of the join, adding the join to the
+     * frontier of every block on the way.
+     */
+    private void computeFrontiers() {
+        for (var block : order) {
+            var preds = block.getPredecessors().stream().filter(this::isReachable).toList();
+            if (preds.size() < 2) {
+                continue;
+            }
+
+            for (var pred : preds) {
+                var runner = pred;
+                while (runner != idom.get(block)) {
+                    frontiers.get(runner).add(block);
+                    runner = idom.get(runner);
+                }
+            }
+        }
+    }
+
+    public ControlFlowGraph getCfg() {
+        return cfg;
+    }
+
+    public boolean isReachable(BasicBlock block) {
+        return orderIndex.containsKey(block);
+    }
+
+    /**
+     * @return the reachable blocks in reverse post-order, where every block comes after its immediate dominator
+     */
+    public List<BasicBlock> getReversePostOrder() {
+        return order;
+    }
+
+    /**
+     * @return the immediate dominator of the block, or null for the entry and for unreachable blocks
+     */
+    public BasicBlock getIdom(BasicBlock block) {
+        var dominator = idom.get(block);
+        return dominator != block ? dominator : null;
+    }
+
+    public List<BasicBlock> getChildren(BasicBlock block) {
+        return children.getOrDefault(block, List.of());
+    }
+
+    public Set<BasicBlock> getFrontier(BasicBlock block) {
+        return frontiers.getOrDefault(block, Set.of());
+    }
+
+    /**
+     * @return whether every path from the entry to the second block goes through the first one
+     */
+    public boolean dominates(BasicBlock dominator, BasicBlock block) {
+        if (!isReachable(dominator) || !isReachable(block)) {
+            return false;
+        }
+
+        var current = block;
+        while (current != dominator) {
+            var parent = getIdom(current);
+            if (parent == null) {
+                return false;
+            }
+            current = parent;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,111 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * The basic induction variables of a loop: int variables whose only assignment in the loop adds a constant to them,
+ * either directly, "i := i + 1", or through a temporary, "t := i + 1; i := t".
+ */
+public class InductionVariables {
+
+    /**
+     * @param update the instruction after which the variable has its new value
+     */
+    public record BasicInductionVariable(String name, int step, Instruction update) {
+    }
+
+    private final NaturalLoop loop;
+    private final Map<String, Integer> assignments;
+    private final Map<String, AssignInstruction> definitions;
+    private final Map<String, BasicInductionVariable> basic;
+
+    public InductionVariables(NaturalLoop loop) {
+        this.loop = loop;
+        this.assignments = new HashMap<>();
+        this.definitions = new HashMap<>();
+        this.basic = new LinkedHashMap<>();
+
+        for (var block : loop.getBlocks()) {
+            for (var inst : block.getInstructions()) {
+                InstUtils.getDest(inst).ifPresent(dest -> {
+                    assignments.merge(dest.getName(), 1, Integer::sum);
+                    definitions.put(dest.getName(), (AssignInstruction) inst);
+                });
+            }
+        }
+
+        for (var name : definitions.keySet()) {
+            findStep(name, name, 0).ifPresent(step ->
+                    basic.put(name, new BasicInductionVariable(name, step, definitions.get(name))));
+        }
+    }
+
+    /**
+     * @return the constant added to the variable by its assignment, if it is "name := variable + step" or a copy of a
+     * temporary assigned like that
+     */
+    private Optional<Integer> findStep(String variable, String name, int depth) {
+        if (assignments.getOrDefault(name, 0) != 1 || depth > 1) {
+            return Optional.empty();
+        }
+
+        var assign = definitions.get(name);
+        if (assign.getTypeOfAssign().getTypeOfElement() != ElementType.INT32) {
+            return Optional.empty();
+        }
+
+        var rhs = assign.getRhs();
+        if (rhs instanceof SingleOpInstruction singleOp && singleOp.getSingleOperand() instanceof Operand source
+                && !(source instanceof ArrayOperand)) {
+            return findStep(variable, source.getName(), depth + 1);
+        }
+
+        if (!(rhs instanceof BinaryOpInstruction binaryOp)) {
+            return Optional.empty();
+        }
+
+        var left = binaryOp.getLeftOperand();
+        var right = binaryOp.getRightOperand();
+        return switch (binaryOp.getOperation().getOpType()) {
+            case ADD -> isVariable(left, variable) ? InstUtils.getIntLiteral(right)
+                    : isVariable(right, variable) ? InstUtils.getIntLiteral(left)
+                    : Optional.empty();
+            case SUB -> isVariable(left, variable)
+                    ? InstUtils.getIntLiteral(right).map(step -> -step)
+                    : Optional.empty();
+            default -> Optional.empty();
+        };
+    }
+
+    private static boolean isVariable(Element element, String name) {
+        return element instanceof Operand operand && !(operand instanceof ArrayOperand)
+                && operand.getName().equals(name);
+    }
+
+    public NaturalLoop getLoop() {
+        return loop;
+    }
+
+    public Collection<BasicInductionVariable> getBasic() {
+        return basic.values();
+    }
+
+    public Optional<BasicInductionVariable> getBasic(String name) {
+        return Optional.ofNullable(basic.get(name));
+    }
+
+    /**
+     * @return whether the element has the same value in every iteration: a literal or a variable that the loop does not
+     * assign
+     */
+    public boolean isInvariant(Element element) {
+        if (element instanceof LiteralElement) {
+            return true;
+        }
+
+        return element instanceof Operand operand && !(operand instanceof ArrayOperand)
+                && !assignments.containsKey(operand.getName());
+    }
+}
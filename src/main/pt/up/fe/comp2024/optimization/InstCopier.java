@@ -0,0 +1,101 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.ArrayList;
+
+/**
+ * Copies OLLIR instructions and their elements, so that the passes that rewrite instructions in place leave the
+ * originals as they were.
+ * <p>
+ * Subclasses can give the variables and labels of the copies other names, as the inliner does.
+ */
+public class InstCopier {
+
+    /**
+     * @return the name of the variable in the copy, by default the same
+     */
+    protected String renameVariable(Operand operand) {
+        return operand.getName();
+    }
+
+    /**
+     * @return the name of the label in the copy, by default the same
+     */
+    protected String renameLabel(String label) {
+        return label;
+    }
+
+    public Instruction copy(Instruction inst) {
+        return switch (inst.getInstType()) {
+            case ASSIGN -> {
+                var assign = (AssignInstruction) inst;
+                yield new AssignInstruction(copy(assign.getDest()), assign.getTypeOfAssign(), copy(assign.getRhs()));
+            }
+            case CALL -> {
+                var call = (CallInstruction) inst;
+                var arguments = new ArrayList<Element>();
+                call.getArguments().forEach(argument -> arguments.add(copy(argument)));
+                yield new CallInstruction(call.getInvocationType(), copy(call.getCaller()),
+                        call.getMethodNameTry().map(this::copy).orElse(null), arguments, call.getReturnType());
+            }
+            case GOTO -> new GotoInstruction(renameLabel(((GotoInstruction) inst).getLabel()));
+            case BRANCH -> {
+                var branch = (CondBranchInstruction) inst;
+                var condition = copy(branch.getCondition());
+                CondBranchInstruction copy = condition instanceof SingleOpInstruction singleOp
+                        ? new SingleOpCondInstruction(singleOp)
+                        : new OpCondInstruction((OpInstruction) condition);
+                copy.setLabel(renameLabel(branch.getLabel()));
+                yield copy;
+            }
+            case RETURN -> {
+                var ret = (ReturnInstruction) inst;
+                var copy = ret.hasReturnValue() ? new ReturnInstruction(copy(ret.getOperand()))
+                        : new ReturnInstruction();
+                copy.setReturnType(ret.getReturnType());
+                yield copy;
+            }
+            case PUTFIELD -> {
+                var putField = (PutFieldInstruction) inst;
+                yield new PutFieldInstruction((Operand) copy(putField.getObject()), putField.getField(),
+                        copy(putField.getValue()), putField.getFieldType());
+            }
+            case GETFIELD -> {
+                var getField = (GetFieldInstruction) inst;
+                yield new GetFieldInstruction((Operand) copy(getField.getObject()), getField.getField(),
+                        getField.getFieldType());
+            }
+            case UNARYOPER -> {
+                var unaryOp = (UnaryOpInstruction) inst;
+                yield new UnaryOpInstruction(copy(unaryOp.getOperation()), copy(unaryOp.getOperand()));
+            }
+            case BINARYOPER -> {
+                var binaryOp = (BinaryOpInstruction) inst;
+                yield new BinaryOpInstruction(copy(binaryOp.getLeftOperand()), copy(binaryOp.getOperation()),
+                        copy(binaryOp.getRightOperand()));
+            }
+            case NOPER -> new SingleOpInstruction(copy(((SingleOpInstruction) inst).getSingleOperand()));
+        };
+    }
+
+    private static Operation copy(Operation operation) {
+        return new Operation(operation.getOpType(), operation.getTypeInfo());
+    }
+
+    public Element copy(Element element) {
+        if (element instanceof LiteralElement literal) {
+            return new LiteralElement(literal.getLiteral(), literal.getType());
+        }
+
+        var operand = (Operand) element;
+        var name = renameVariable(operand);
+
+        if (operand instanceof ArrayOperand arrayOperand) {
+            var indexes = new ArrayList<Element>();
+            arrayOperand.getIndexOperands().forEach(index -> indexes.add(copy(index)));
+            return new ArrayOperand(name, operand.getType(), indexes);
+        }
+        return new Operand(name, operand.getType());
+    }
+}
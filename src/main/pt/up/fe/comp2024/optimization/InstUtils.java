@@ -0,0 +1,316 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Helper methods to query and rewrite OLLIR instructions in place.
+ */
+public class InstUtils {
+
+    /**
+     * @return the scalar variable written by the instruction, if any (array element stores do not count)
+     */
+    public static Optional<Operand> getDest(Instruction inst) {
+        if (inst instanceof AssignInstruction assign
+                && assign.getDest() instanceof Operand dest
+                && !(dest instanceof ArrayOperand)) {
+            return Optional.of(dest);
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * @return every operand that is read by the instruction, including array bases and indexes
+     */
+    public static List<Operand> getUses(Instruction inst) {
+        var uses = new ArrayList<Operand>();
+        addUses(inst, uses);
+        return uses;
+    }
+
+    private static void addUses(Instruction inst, List<Operand> uses) {
+        switch (inst.getInstType()) {
+            case ASSIGN -> {
+                var assign = (AssignInstruction) inst;
+                if (assign.getDest() instanceof ArrayOperand arrayDest) {
+                    addElementUses(arrayDest, uses);
+                }
+                addUses(assign.getRhs(), uses);
+            }
+            case CALL -> {
+                var call = (CallInstruction) inst;
+                if (call.getInvocationType() != CallType.NEW) {
+                    addElementUses(call.getCaller(), uses);
+                }
+                for (var arg : call.getArguments()) {
+                    addElementUses(arg, uses);
+                }
+            }
+            case BRANCH -> {
+                for (var operand : ((CondBranchInstruction) inst).getOperands()) {
+                    addElementUses(operand, uses);
+                }
+            }
+            case RETURN -> {
+                var ret = (ReturnInstruction) inst;
+                if (ret.hasReturnValue()) {
+                    addElementUses(ret.getOperand(), uses);
+                }
+            }
+            case PUTFIELD -> {
+                var putField = (PutFieldInstruction) inst;
+                addElementUses(putField.getObject(), uses);
+                addElementUses(putField.getValue(), uses);
+            }
+            case GETFIELD -> addElementUses(((GetFieldInstruction) inst).getObject(), uses);
+            case UNARYOPER -> addElementUses(((UnaryOpInstruction) inst).getOperand(), uses);
+            case BINARYOPER -> {
+                var binaryOp = (BinaryOpInstruction) inst;
+                addElementUses(binaryOp.getLeftOperand(), uses);
+                addElementUses(binaryOp.getRightOperand(), uses);
+            }
+            case NOPER -> addElementUses(((SingleOpInstruction) inst).getSingleOperand(), uses);
+            default -> {
+            }
+        }
+    }
+
+    private static void addElementUses(Element element, List<Operand> uses) {
+        if (!(element instanceof Operand operand)) {
+            return;
+        }
+
+        uses.add(operand);
+
+        if (operand instanceof ArrayOperand arrayOperand) {
+            for (var index : arrayOperand.getIndexOperands()) {
+                addElementUses(index, uses);
+            }
+        }
+    }
+
+    /**
+     * Replaces, in place, the scalar operands read by the instruction. Array bases, call targets and
+     * destinations are never replaced.
+     *
+     * @param inst     the instruction to rewrite
+     * @param replacer receives a read operand and returns its replacement, or the operand itself to keep it
+     * @return true if at least one operand was replaced
+     */
+    public static boolean replaceUses(Instruction inst, Function<Operand, Element> replacer) {
+        return switch (inst.getInstType()) {
+            case ASSIGN -> {
+                var assign = (AssignInstruction) inst;
+                boolean changed = false;
+                if (assign.getDest() instanceof ArrayOperand arrayDest) {
+                    changed = replaceIndexes(arrayDest, replacer);
+                }
+                yield replaceUses(assign.getRhs(), replacer) || changed;
+            }
+            case CALL -> replaceAll(((CallInstruction) inst).getArguments(), replacer);
+            case BRANCH -> {
+                var condition = ((CondBranchInstruction) inst).getCondition();
+                yield replaceUses(condition, replacer);
+            }
+            case RETURN -> {
+                var ret = (ReturnInstruction) inst;
+                if (!ret.hasReturnValue()) {
+                    yield false;
+                }
+                var newOperand = replaceElement(ret.getOperand(), replacer);
+                if (newOperand == ret.getOperand()) {
+                    yield false;
+                }
+                ret.setOperand(newOperand);
+                yield true;
+            }
+            case PUTFIELD -> {
+                var putField = (PutFieldInstruction) inst;
+                var operands = new ArrayList<>(putField.getOperands());
+                var newValue = replaceElement(operands.get(2), replacer);
+                if (newValue == operands.get(2)) {
+                    yield false;
+                }
+                operands.set(2, newValue);
+                putField.setOperands(operands);
+                yield true;
+            }
+            case UNARYOPER, BINARYOPER -> {
+                var opInst = (OpInstruction) inst;
+                var operands = new ArrayList<>(opInst.getOperands());
+                if (!replaceAll(operands, replacer)) {
+                    yield false;
+                }
+                opInst.setOperands(operands);
+                yield true;
+            }
+            case NOPER -> {
+                var singleOp = (SingleOpInstruction) inst;
+                var newOperand = replaceElement(singleOp.getSingleOperand(), replacer);
+                if (newOperand == singleOp.getSingleOperand()) {
+                    yield false;
+                }
+                singleOp.setSingleOperand(newOperand);
+                yield true;
+            }
+            default -> false;
+        };
+    }
+
+    private static boolean replaceAll(List<Element> elements, Function<Operand, Element> replacer) {
+        boolean changed = false;
+        for (int i = 0; i < elements.size(); i++) {
+            var newElement = replaceElement(elements.get(i), replacer);
+            if (newElement != elements.get(i)) {
+                elements.set(i, newElement);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static Element replaceElement(Element element, Function<Operand, Element> replacer) {
+        if (element instanceof ArrayOperand arrayOperand) {
+            replaceIndexes(arrayOperand, replacer);
+            return element;
+        }
+
+        if (element instanceof Operand operand) {
+            var replacement = replacer.apply(operand);
+            return replacement != null ? replacement : element;
+        }
+
+        return element;
+    }
+
+    private static boolean replaceIndexes(ArrayOperand arrayOperand, Function<Operand, Element> replacer) {
+        return replaceAll(arrayOperand.getIndexOperands(), replacer);
+    }
+
+    /**
+     * @return true if the value computed by the right-hand side of an assignment can be discarded without changing
+     * the behaviour of the program (no calls, stores or possible exceptions)
+     */
+    public static boolean isPure(Instruction rhs) {
+        return switch (rhs.getInstType()) {
+            case NOPER -> !(((SingleOpInstruction) rhs).getSingleOperand() instanceof ArrayOperand);
+            case UNARYOPER -> true;
+            case BINARYOPER -> {
+                var binaryOp = (BinaryOpInstruction) rhs;
+                if (binaryOp.getOperation().getOpType() != OperationType.DIV) {
+                    yield true;
+                }
+                // Integer division may throw, unless the divisor is a non-zero constant
+                yield getIntLiteral(binaryOp.getRightOperand()).map(value -> value != 0).orElse(false);
+            }
+            case GETFIELD -> "this".equals(((GetFieldInstruction) rhs).getObject().getName());
+            default -> false;
+        };
+    }
+
+    /**
+     * @return true if the type is stored in an int-sized JVM local (int or boolean)
+     */
+    public static boolean isScalar(Type type) {
+        var elementType = type.getTypeOfElement();
+        return elementType == ElementType.INT32 || elementType == ElementType.BOOLEAN;
+    }
+
+    public static Optional<Integer> getIntLiteral(Element element) {
+        if (!(element instanceof LiteralElement literal) || !isScalar(literal.getType())) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(Integer.parseInt(literal.getLiteral()));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    public static LiteralElement newLiteral(int value, Type type) {
+        if (type.getTypeOfElement() == ElementType.BOOLEAN) {
+            return new LiteralElement(value != 0 ? "1" : "0", new Type(ElementType.BOOLEAN));
+        }
+
+        return new LiteralElement(String.valueOf(value), new Type(ElementType.INT32));
+    }
+
+    public static Operand newOperand(Operand model) {
+        return new Operand(model.getName(), model.getType());
+    }
+
+    /**
+     * Replaces the instruction at the given index, moving any labels that pointed to the old instruction.
+     */
+    public static void replaceInstruction(Method method, int index, Instruction newInst) {
+        var oldInst = method.getInstructions().set(index, newInst);
+        retargetLabels(method, oldInst, newInst);
+    }
+
+    /**
+     * Removes the instruction at the given index. Labels that pointed to it are moved to the next instruction.
+     *
+     * @return false if the instruction could not be removed (it is labelled and is the last instruction)
+     */
+    public static boolean removeInstruction(Method method, int index) {
+        var instructions = method.getInstructions();
+        var inst = instructions.get(index);
+
+        if (method.getLabels().containsValue(inst)) {
+            if (index + 1 >= instructions.size()) {
+                return false;
+            }
+            retargetLabels(method, inst, instructions.get(index + 1));
+        }
+
+        instructions.remove(index);
+        return true;
+    }
+
+    private static void retargetLabels(Method method, Instruction oldInst, Instruction newInst) {
+        for (Map.Entry<String, Instruction> label : method.getLabels().entrySet()) {
+            if (label.getValue() == oldInst) {
+                label.setValue(newInst);
+            }
+        }
+    }
+
+    /**
+     * @return a source of names for new temporary variables, following the "tmp" names of the OLLIR generator, which
+     * are not used anywhere in the method and are all different
+     */
+    public static Supplier<String> newTemporaries(Method method) {
+        var names = new HashSet<>(method.getVarTable().keySet());
+        for (var inst : method.getInstructions()) {
+            getDest(inst).ifPresent(dest -> names.add(dest.getName()));
+            getUses(inst).forEach(use -> names.add(use.getName()));
+        }
+
+        return () -> {
+            int number = 0;
+            while (names.contains("tmp" + number)) {
+                number++;
+            }
+            names.add("tmp" + number);
+            return "tmp" + number;
+        };
+    }
+
+    /**
+     * Recomputes the table of variables of the method, dropping variables that are no longer referenced.
+     */
+    public static void rebuildVarTable(Method method) {
+        method.getVarTable().clear();
+        method.buildVarTable();
+    }
+}
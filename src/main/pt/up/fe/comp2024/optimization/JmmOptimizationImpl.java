@@ -3,11 +3,39 @@ package pt.up.fe.comp2024.optimization;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
 import pt.up.fe.comp.jmm.ollir.JmmOptimization;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.utils.Metrics;
 
 import java.util.Collections;
 
 public class JmmOptimizationImpl implements JmmOptimization {
 
+    private Metrics metrics = Metrics.DISABLED;
+
+    /**
+     * Sets where the time of each optimization is recorded.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public JmmSemanticsResult optimize(JmmSemanticsResult semanticsResult) {
+
+        if (CompilerConfig.getOptimize(semanticsResult.getConfig())) {
+            var folder = new AstConstantFolder();
+            int folded = metrics.measure("optimization/ast/constantFolding",
+                    () -> folder.fold(semanticsResult.getRootNode()));
+            metrics.addCount("astFoldedExpressions", folded);
+            semanticsResult.getReports().add(Report.newLog(Stage.OPTIMIZATION, -1, -1,
+                    "AstConstantFolder folded " + folded + " expression(s)", null));
+        }
+
+        return semanticsResult;
+    }
+
     @Override
     public OllirResult toOllir(JmmSemanticsResult semanticsResult) {
 
@@ -20,7 +48,26 @@ public class JmmOptimizationImpl implements JmmOptimization {
     @Override
     public OllirResult optimize(OllirResult ollirResult) {
 
-        //TODO: Do your OLLIR-based optimizations here
+        var config = ollirResult.getConfig();
+
+        if (CompilerConfig.getOptimize(config)) {
+            var optimizer = new OllirOptimizer();
+            optimizer.setMetrics(metrics);
+            int inline = CompilerConfig.getInline(config);
+            if (inline > 0) {
+                optimizer.setInliner(new MethodInliner(inline));
+            }
+            optimizer.optimize(ollirResult.getOllirClass());
+            ollirResult.getReports().addAll(optimizer.getReports());
+        }
+
+        int registers = CompilerConfig.getRegisterAllocation(config);
+        if (registers >= 0) {
+            var allocator = new RegisterAllocator(registers);
+            metrics.measure("optimization/ollir/registerAllocation",
+                    () -> allocator.allocate(ollirResult.getOllirClass()));
+            ollirResult.getReports().addAll(allocator.getReports());
+        }
 
         return ollirResult;
     }
@@ -0,0 +1,106 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.Instruction;
+
+import java.util.*;
+
+/**
+ * Computes, for every instruction of a method, the variables that are live right before and right after it.
+ * <p>
+ * The analysis converges on the variables live at the start of each block. The sets of each instruction are only built,
+ * in one more pass, the first time one of them is asked for.
+ */
+public class LivenessAnalysis {
+
+    private final ControlFlowGraph cfg;
+    private final Map<BasicBlock, Set<String>> blockIn;
+    private Map<Instruction, Set<String>> liveIn;
+    private Map<Instruction, Set<String>> liveOut;
+
+    public LivenessAnalysis(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        this.blockIn = new HashMap<>();
+
+        analyse();
+    }
+
+    private void analyse() {
+        var blocks = cfg.getBlocks();
+
+        // Iterating backwards makes the backward analysis converge faster
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = blocks.size() - 1; i >= 0; i--) {
+                var block = blocks.get(i);
+
+                var live = getLiveOut(block);
+                var instructions = block.getInstructions();
+                for (int j = instructions.size() - 1; j >= 0; j--) {
+                    transfer(instructions.get(j), live);
+                }
+
+                if (!live.equals(blockIn.get(block))) {
+                    blockIn.put(block, live);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private void analyseInstructions() {
+        liveIn = new IdentityHashMap<>();
+        liveOut = new IdentityHashMap<>();
+
+        for (var block : cfg.getBlocks()) {
+            var live = getLiveOut(block);
+            var instructions = block.getInstructions();
+            for (int j = instructions.size() - 1; j >= 0; j--) {
+                var inst = instructions.get(j);
+                liveOut.put(inst, new HashSet<>(live));
+                transfer(inst, live);
+                liveIn.put(inst, new HashSet<>(live));
+            }
+        }
+    }
+
+    private Set<String> getLiveOut(BasicBlock block) {
+        var live = new HashSet<String>();
+        for (var succ : block.getSuccessors()) {
+            live.addAll(blockIn.getOrDefault(succ, Set.of()));
+        }
+        return live;
+    }
+
+    private static void transfer(Instruction inst, Set<String> live) {
+        InstUtils.getDest(inst).ifPresent(dest -> live.remove(dest.getName()));
+        for (var use : InstUtils.getUses(inst)) {
+            live.add(use.getName());
+        }
+    }
+
+    public ControlFlowGraph getCfg() {
+        return cfg;
+    }
+
+    /**
+     * @return the variables live at the start of the block, without building the sets of each instruction
+     */
+    public Set<String> getLiveIn(BasicBlock block) {
+        return blockIn.getOrDefault(block, Set.of());
+    }
+
+    public Set<String> getLiveIn(Instruction inst) {
+        if (liveIn == null) {
+            analyseInstructions();
+        }
+        return liveIn.getOrDefault(inst, Set.of());
+    }
+
+    public Set<String> getLiveOut(Instruction inst) {
+        if (liveOut == null) {
+            analyseInstructions();
+        }
+        return liveOut.getOrDefault(inst, Set.of());
+    }
+}
@@ -0,0 +1,364 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Replaces calls to small methods of the class by a copy of their body.
+ * <p>
+ * Java-- has no private or final methods and only main is static, so every call is virtual and the class may be
+ * extended by another that overrides the callee. Calls are therefore only inlined when the exact class of the object is
+ * known: on a variable that only ever holds objects of this class created with "new" in the caller. Calls on "this"
+ * are kept, since "this" may be an instance of a subclass.
+ * <p>
+ * Methods are visited callees first, so a callee is copied after its own calls were inlined, and methods that can
+ * reach themselves through the call graph are never inlined. The variables and labels of the copy get a prefix made
+ * of the callee name and a number, parameters become copies of the arguments, and each return becomes a copy to the
+ * variable that received the result followed by a jump to the instruction after the call.
+ */
+public class MethodInliner {
+
+    private final int maxInstructions;
+    private int inlinedCalls;
+
+    private ClassUnit ollirClass;
+    private Map<String, Method> methods;
+
+    /**
+     * @param maxInstructions the largest number of instructions of a method that is inlined
+     */
+    public MethodInliner(int maxInstructions) {
+        this.maxInstructions = maxInstructions;
+        this.inlinedCalls = 0;
+    }
+
+    public int getInlinedCalls() {
+        return inlinedCalls;
+    }
+
+    public void inline(ClassUnit ollirClass) {
+        this.ollirClass = ollirClass;
+        this.methods = new HashMap<>();
+
+        // overloaded methods could not be told apart by name
+        var overloaded = new HashSet<String>();
+        for (var method : ollirClass.getMethods()) {
+            if (!method.isConstructMethod() && methods.put(method.getMethodName(), method) != null) {
+                overloaded.add(method.getMethodName());
+            }
+        }
+        overloaded.forEach(methods::remove);
+
+        var calls = new HashMap<Method, Set<Method>>();
+        for (var method : ollirClass.getMethods()) {
+            var callees = new LinkedHashSet<Method>();
+            for (var inst : method.getInstructions()) {
+                getCall(inst).map(this::getCallee).ifPresent(callee -> callee.ifPresent(callees::add));
+            }
+            calls.put(method, callees);
+        }
+
+        var recursive = new HashSet<Method>();
+        for (var method : calls.keySet()) {
+            if (reaches(method, method, calls, new HashSet<>())) {
+                recursive.add(method);
+            }
+        }
+
+        var visited = new HashSet<Method>();
+        for (var method : ollirClass.getMethods()) {
+            visit(method, calls, recursive, visited);
+        }
+    }
+
+    private static boolean reaches(Method from, Method to, Map<Method, Set<Method>> calls, Set<Method> visited) {
+        for (var callee : calls.get(from)) {
+            if (callee == to || visited.add(callee) && reaches(callee, to, calls, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void visit(Method method, Map<Method, Set<Method>> calls, Set<Method> recursive, Set<Method> visited) {
+        if (!visited.add(method)) {
+            return;
+        }
+
+        for (var callee : calls.get(method)) {
+            visit(callee, calls, recursive, visited);
+        }
+
+        if (!method.isConstructMethod() && inlineCalls(method, recursive)) {
+            InstUtils.rebuildVarTable(method);
+        }
+    }
+
+    private boolean inlineCalls(Method method, Set<Method> recursive) {
+        boolean changed = false;
+        var instructions = method.getInstructions();
+
+        // the last instruction has nowhere to return to, and is a return anyway
+        for (int i = 0; i < instructions.size() - 1; i++) {
+            var inst = instructions.get(i);
+            var call = getCall(inst);
+            if (call.isEmpty()) {
+                continue;
+            }
+
+            var callee = getCallee(call.get());
+            if (callee.isEmpty() || callee.get() == method || recursive.contains(callee.get())
+                    || callee.get().isVarargs() || callee.get().getInstructions().size() > maxInstructions
+                    || !matchesParams(call.get(), callee.get())) {
+                continue;
+            }
+
+            var receiver = getReceiver(method, call.get());
+            if (receiver.isEmpty()) {
+                continue;
+            }
+
+            // results stored in array elements are left alone, since every return would need the same index
+            var dest = inst instanceof AssignInstruction assign ? assign : null;
+            if (dest != null && InstUtils.getDest(dest).isEmpty()) {
+                continue;
+            }
+
+            i += inline(method, i, call.get(), dest, callee.get(), receiver.get()) - 1;
+            inlinedCalls++;
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    /**
+     * Calls to methods with variable arguments may not pass exactly one argument of the right type for each parameter.
+     */
+    private static boolean matchesParams(CallInstruction call, Method callee) {
+        var arguments = call.getArguments();
+        var params = callee.getParams();
+        if (arguments.size() != params.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < arguments.size(); i++) {
+            if (arguments.get(i).getType().getTypeOfElement() != params.get(i).getType().getTypeOfElement()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Optional<CallInstruction> getCall(Instruction inst) {
+        if (inst instanceof CallInstruction call) {
+            return Optional.of(call);
+        }
+        if (inst instanceof AssignInstruction assign && assign.getRhs() instanceof CallInstruction call) {
+            return Optional.of(call);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return the method of this class that is called, if it is an instance method called by name
+     */
+    private Optional<Method> getCallee(CallInstruction call) {
+        if (call.getInvocationType() != CallType.invokevirtual
+                || !(call.getMethodName() instanceof LiteralElement methodName)) {
+            return Optional.empty();
+        }
+
+        var callerType = call.getCaller().getType();
+        boolean sameClass = callerType.getTypeOfElement() == ElementType.THIS
+                || callerType instanceof ClassType classType
+                && classType.getName().equals(ollirClass.getClassName());
+        if (!sameClass) {
+            return Optional.empty();
+        }
+
+        return Optional.ofNullable(methods.get(methodName.getLiteral().replace("\"", "")));
+    }
+
+    /**
+     * @return the object the callee runs on, if its class is known to be exactly this one and it cannot be null
+     */
+    private static Optional<Operand> getReceiver(Method method, CallInstruction call) {
+        var receiver = (Operand) call.getCaller();
+        if (receiver.getType().getTypeOfElement() == ElementType.THIS) {
+            return Optional.empty();
+        }
+
+        boolean isParam = method.getParams().stream()
+                .anyMatch(param -> ((Operand) param).getName().equals(receiver.getName()));
+        if (isParam) {
+            return Optional.empty();
+        }
+
+        boolean assigned = false;
+        for (var inst : method.getInstructions()) {
+            var dest = InstUtils.getDest(inst);
+            if (dest.isEmpty() || !dest.get().getName().equals(receiver.getName())) {
+                continue;
+            }
+
+            var rhs = ((AssignInstruction) inst).getRhs();
+            if (!(rhs instanceof CallInstruction newCall) || newCall.getInvocationType() != CallType.NEW
+                    || !(newCall.getReturnType() instanceof ClassType classType)
+                    || !classType.getName().equals(((ClassType) receiver.getType()).getName())) {
+                return Optional.empty();
+            }
+            assigned = true;
+        }
+
+        return assigned ? Optional.of(receiver) : Optional.empty();
+    }
+
+    /**
+     * Replaces the call at the given index by the body of the callee.
+     *
+     * @return the number of instructions that replaced the call
+     */
+    private int inline(Method method, int index, CallInstruction call, AssignInstruction dest, Method callee,
+                       Operand receiver) {
+        var copier = new Copier(method, callee, receiver);
+        var body = new ArrayList<Instruction>();
+
+        // the arguments belong to the caller, so they keep their names even if the callee has variables named alike
+        for (int i = 0; i < callee.getParams().size(); i++) {
+            var param = (Operand) callee.getParams().get(i);
+            body.add(new AssignInstruction(copier.copy(param), param.getType(),
+                    new SingleOpInstruction(new InstCopier().copy(call.getArguments().get(i)))));
+        }
+
+        var calleeInstructions = callee.getInstructions();
+        boolean jumpsToEnd = false;
+        for (int i = 0; i < calleeInstructions.size(); i++) {
+            var inst = calleeInstructions.get(i);
+            copier.addPendingLabels(inst);
+
+            if (!(inst instanceof ReturnInstruction ret)) {
+                copier.add(body, copier.copy(inst));
+                continue;
+            }
+
+            if (dest != null && ret.hasReturnValue()) {
+                copier.add(body, new AssignInstruction(InstUtils.newOperand((Operand) dest.getDest()),
+                        dest.getTypeOfAssign(),
+                        new SingleOpInstruction(copier.copy(ret.getOperand()))));
+            }
+            if (i < calleeInstructions.size() - 1) {
+                copier.add(body, new GotoInstruction(copier.getEndLabel()));
+                jumpsToEnd = true;
+            }
+        }
+
+        var instructions = method.getInstructions();
+        var next = instructions.get(index + 1);
+        copier.movePendingLabels(next);
+        if (jumpsToEnd) {
+            method.getLabels().put(copier.getEndLabel(), next);
+        }
+
+        if (body.isEmpty()) {
+            InstUtils.removeInstruction(method, index);
+            return 0;
+        }
+
+        InstUtils.replaceInstruction(method, index, body.get(0));
+        instructions.addAll(index + 1, body.subList(1, body.size()));
+        return body.size();
+    }
+
+    /**
+     * Copies the instructions of a callee into a caller, renaming its variables and labels.
+     */
+    private static class Copier extends InstCopier {
+
+        private final Method method;
+        private final Method callee;
+        private final Operand receiver;
+        private final String prefix;
+        private final List<String> pendingLabels;
+
+        private Copier(Method method, Method callee, Operand receiver) {
+            this.method = method;
+            this.callee = callee;
+            this.receiver = receiver;
+            this.prefix = newPrefix(method, callee);
+            this.pendingLabels = new ArrayList<>();
+        }
+
+        private static String newPrefix(Method method, Method callee) {
+            var names = new HashSet<>(method.getVarTable().keySet());
+            names.addAll(method.getLabels().keySet());
+            for (var inst : method.getInstructions()) {
+                InstUtils.getDest(inst).ifPresent(dest -> names.add(dest.getName()));
+                InstUtils.getUses(inst).forEach(use -> names.add(use.getName()));
+            }
+
+            var calleeNames = new ArrayList<String>(callee.getVarTable().keySet());
+            calleeNames.addAll(callee.getLabels().keySet());
+            calleeNames.add("end");
+
+            int number = 0;
+            while (true) {
+                var prefix = callee.getMethodName() + number + "_";
+                if (calleeNames.stream().noneMatch(name -> names.contains(prefix + name))) {
+                    return prefix;
+                }
+                number++;
+            }
+        }
+
+        private String getEndLabel() {
+            return prefix + "end";
+        }
+
+        /**
+         * Labels of the callee are given to the next instruction that is copied, since its returns may be dropped.
+         */
+        private void addPendingLabels(Instruction inst) {
+            for (var label : callee.getLabels().entrySet()) {
+                if (label.getValue() == inst) {
+                    pendingLabels.add(prefix + label.getKey());
+                }
+            }
+        }
+
+        private void movePendingLabels(Instruction target) {
+            for (var label : pendingLabels) {
+                method.getLabels().put(label, target);
+            }
+            pendingLabels.clear();
+        }
+
+        private void add(List<Instruction> body, Instruction inst) {
+            movePendingLabels(inst);
+            body.add(inst);
+        }
+
+        @Override
+        protected String renameVariable(Operand operand) {
+            // class names, as in static calls, are not variables of the callee
+            var descriptor = callee.getVarTable().get(operand.getName());
+            return descriptor != null && descriptor.getScope() != VarScope.FIELD
+                    ? prefix + operand.getName()
+                    : operand.getName();
+        }
+
+        @Override
+        protected String renameLabel(String label) {
+            return prefix + label;
+        }
+
+        @Override
+        public Element copy(Element element) {
+            if (element instanceof Operand operand && operand.getType().getTypeOfElement() == ElementType.THIS) {
+                return InstUtils.newOperand(receiver);
+            }
+            return super.copy(element);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package pt.up.fe.comp2024.optimization;
+
+/**
+ * Generates the names of the temporaries and labels of a single OLLIR generation.
+ * <p>
+ * Each compilation uses its own instance, so concurrent compilations do not share counters.
+ */
+public class NameGenerator {
+
+    private int tempNumber;
+    private int ifNumber;
+    private int whileNumber;
+    private int condNumber;
+
+    public NameGenerator() {
+        this.tempNumber = -1;
+        this.ifNumber = 0;
+        this.whileNumber = 0;
+        this.condNumber = 0;
+    }
+
+    public String getIf() {
+        return "if" + ifNumber++;
+    }
+
+    public String getWhile() {
+        return "while" + whileNumber++;
+    }
+
+    /**
+     * @return a label inside a condition, where the evaluation continues once an operand of && or || is known
+     */
+    public String getCond() {
+        return "cond" + condNumber++;
+    }
+
+    public String getTemp() {
+
+        return getTemp("tmp");
+    }
+
+    public String getTemp(String prefix) {
+
+        return prefix + getNextTempNum();
+    }
+
+    public int getNextTempNum() {
+
+        tempNumber += 1;
+        return tempNumber;
+    }
+}
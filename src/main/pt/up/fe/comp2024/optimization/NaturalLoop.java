@@ -0,0 +1,205 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * A natural loop of a control-flow graph: a header that dominates the source of at least one edge back to it, plus
+ * every block that can reach the source of one of those edges without going through the header.
+ */
+public class NaturalLoop {
+
+    private final BasicBlock header;
+    private final Set<BasicBlock> blocks;
+    private final List<BasicBlock> latches;
+
+    private NaturalLoop(BasicBlock header) {
+        this.header = header;
+        this.blocks = new HashSet<>();
+        this.latches = new ArrayList<>();
+
+        blocks.add(header);
+    }
+
+    /**
+     * Loops with the same header are merged into one.
+     *
+     * @return the loops of the reachable blocks, inner loops before the loops that contain them
+     */
+    public static List<NaturalLoop> find(DominatorTree dominators) {
+        var loops = new LinkedHashMap<BasicBlock, NaturalLoop>();
+
+        for (var block : dominators.getReversePostOrder()) {
+            for (var succ : block.getSuccessors()) {
+                if (dominators.dominates(succ, block)) {
+                    loops.computeIfAbsent(succ, NaturalLoop::new).addLatch(block, dominators);
+                }
+            }
+        }
+
+        var result = new ArrayList<>(loops.values());
+        result.sort(Comparator.comparingInt(loop -> loop.blocks.size()));
+        return result;
+    }
+
+    private void addLatch(BasicBlock latch, DominatorTree dominators) {
+        latches.add(latch);
+
+        var worklist = new ArrayDeque<BasicBlock>();
+        if (blocks.add(latch)) {
+            worklist.push(latch);
+        }
+
+        while (!worklist.isEmpty()) {
+            for (var pred : worklist.pop().getPredecessors()) {
+                // unreachable blocks may also jump into the loop
+                if (dominators.dominates(header, pred) && blocks.add(pred)) {
+                    worklist.push(pred);
+                }
+            }
+        }
+    }
+
+    public BasicBlock getHeader() {
+        return header;
+    }
+
+    public Set<BasicBlock> getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * @return the blocks with an edge back to the header
+     */
+    public List<BasicBlock> getLatches() {
+        return latches;
+    }
+
+    public boolean contains(BasicBlock block) {
+        return blocks.contains(block);
+    }
+
+    /**
+     * @return the reachable blocks outside the loop that jump or fall through to the header
+     */
+    public List<BasicBlock> getEntries(DominatorTree dominators) {
+        return header.getPredecessors().stream()
+                .filter(pred -> !contains(pred) && dominators.isReachable(pred))
+                .toList();
+    }
+
+    /**
+     * @return the blocks outside the loop that the loop can leave to
+     */
+    public Set<BasicBlock> getExits() {
+        var exits = new LinkedHashSet<BasicBlock>();
+        for (var block : blocks) {
+            for (var succ : block.getSuccessors()) {
+                if (!contains(succ)) {
+                    exits.add(succ);
+                }
+            }
+        }
+        return exits;
+    }
+
+    /**
+     * Adds instructions that run once, right before the loop is entered. Instructions that are already in the method
+     * are moved.
+     * <p>
+     * They go to the end of the only block that enters the loop, if it always enters it, or else to a new block just
+     * before the header, which every entry is redirected to.
+     *
+     * @return false if the loop has no place for a preheader, in which case the method is not changed
+     */
+    public boolean insertPreheader(Method method, DominatorTree dominators, List<Instruction> preheader) {
+        var entries = getEntries(dominators);
+        if (entries.isEmpty() || preheader.isEmpty()) {
+            return false;
+        }
+
+        var instructions = method.getInstructions();
+        var headerLabels = getLabels(method, header.getInstructions().get(0));
+
+        var entry = entries.get(0);
+        boolean reuseEntry = entries.size() == 1 && entry.getSuccessors().size() == 1
+                && entry.getLast().getInstType() != InstructionType.BRANCH;
+
+        if (!reuseEntry) {
+            // a block of the loop that falls through to the header would also run the preheader
+            boolean latchFallsThrough = header.getPredecessors().stream()
+                    .anyMatch(pred -> contains(pred) && pred.getId() == header.getId() - 1
+                            && pred.getLast().getInstType() != InstructionType.GOTO);
+            if (headerLabels.isEmpty() || latchFallsThrough) {
+                return false;
+            }
+        }
+
+        for (var inst : preheader) {
+            int index = indexOf(instructions, inst);
+            if (index >= 0 && !InstUtils.removeInstruction(method, index)) {
+                throw new RuntimeException("Could not move instruction " + inst + " out of a loop");
+            }
+        }
+
+        if (reuseEntry) {
+            var last = entry.getLast();
+            int index = indexOf(instructions, last);
+            if (last.getInstType() == InstructionType.GOTO) {
+                instructions.addAll(index, preheader);
+                // branches to the goto must now run the preheader too
+                for (var label : getLabels(method, last)) {
+                    method.getLabels().put(label, preheader.get(0));
+                }
+            } else {
+                instructions.addAll(index + 1, preheader);
+            }
+            return true;
+        }
+
+        var label = newLabel(method);
+        for (var pred : entries) {
+            var last = pred.getLast();
+            if (last instanceof GotoInstruction jump && headerLabels.contains(jump.getLabel())) {
+                jump.setLabel(label);
+            } else if (last instanceof CondBranchInstruction branch && headerLabels.contains(branch.getLabel())) {
+                branch.setLabel(label);
+            }
+        }
+
+        instructions.addAll(indexOf(instructions, method.getLabels().get(headerLabels.get(0))), preheader);
+        method.getLabels().put(label, preheader.get(0));
+        return true;
+    }
+
+    private static List<String> getLabels(Method method, Instruction inst) {
+        return method.getLabels().entrySet().stream()
+                .filter(label -> label.getValue() == inst)
+                .map(Map.Entry::getKey)
+                .sorted()
+                .toList();
+    }
+
+    private static int indexOf(List<Instruction> instructions, Instruction inst) {
+        for (int i = 0; i < instructions.size(); i++) {
+            if (instructions.get(i) == inst) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String newLabel(Method method) {
+        int number = 0;
+        while (method.getLabels().containsKey("preheader" + number)) {
+            number++;
+        }
+        return "preheader" + number;
+    }
+
+    @Override
+    public String toString() {
+        return "Loop" + header + blocks;
+    }
+}
@@ -7,6 +7,8 @@ import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.ast.PreorderJmmVisitor;
 import pt.up.fe.comp2024.ast.TypeUtils;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
+import pt.up.fe.comp2024.symboltable.ResolvedSymbol;
 
 import java.security.PrivateKey;
 import java.util.Objects;
@@ -23,10 +25,12 @@ public class OllirExprGeneratorVisitor extends PreorderJmmVisitor<Void, OllirExp
     private final String END_STMT = ";\n";
 
     private final SymbolTable table;
+    private final NameGenerator names;
     public boolean flag = false;
 
-    public OllirExprGeneratorVisitor(SymbolTable table) {
+    public OllirExprGeneratorVisitor(SymbolTable table, NameGenerator names) {
         this.table = table;
+        this.names = names;
     }
 
     @Override
@@ -54,7 +58,7 @@ public class OllirExprGeneratorVisitor extends PreorderJmmVisitor<Void, OllirExp
 
         JmmNode left = node.getChild(0);
         if(Objects.equals(left.getKind(), "VarRefExpr")){
-            if(Objects.equals(getActualTypeVarRef(left).getKind(), "ClassType")){
+            if(Objects.equals(TypeUtils.getDeclaredType(left, table).getKind(), "ClassType")){
                 isStatic = false;
             }
         }
@@ -78,28 +82,19 @@ public class OllirExprGeneratorVisitor extends PreorderJmmVisitor<Void, OllirExp
             for(int i = 1; i < node.getNumChildren(); i++){
                 code.append(", ");
                 code.append(node.getChild(i).get("name"));
-                code.append(OptUtils.toOllirType(getActualTypeVarRef(node.getChild(i))));
+                code.append(OptUtils.toOllirType(TypeUtils.getDeclaredType(node.getChild(i), table)));
             }
             if(node.getNumChildren() > 2)
                 code.append(visit(node.getChild(1)).getCode());
             code.append(")");
             String varName = node.getParent().get("var"); // assume type of variable
 
-            JmmNode methodNode = node;
-            JmmNode n = methodNode;
-            while(!Objects.equals(methodNode.getKind(), "MethodDecl")){
-                if(Objects.equals(n.getKind(), "MethodDecl"))
-                    methodNode = n;
-                else
-                    n = n.getParent();
-            }
-            JmmNode type = null;
-            for(JmmNode l : methodNode.getDescendants()){
-                if(l.getKind().equals("VarDecl") && l.get("name").equals(varName)){
-                    type = l.getChild(0);
-                    break;
-                }
-            }
+            String methodName = node.getAncestor(METHOD_DECL).map(method -> method.get("name")).orElseThrow();
+            JmmNode type = JmmSymbolTable.of(table).resolve(methodName, varName)
+                    .filter(symbol -> symbol.getScope() == ResolvedSymbol.Scope.LOCAL)
+                    .flatMap(ResolvedSymbol::getDeclaration)
+                    .map(varDecl -> varDecl.getChild(0))
+                    .orElse(null);
             code.append(OptUtils.toOllirType(type));
             //code.append(END_STMT);
             String stringCode = code.toString();
@@ -121,7 +116,7 @@ public class OllirExprGeneratorVisitor extends PreorderJmmVisitor<Void, OllirExp
                     nodeHelp = node.getChild(0);
                 code.append(", ");
                 code.append(nodeHelp.getChild(i).get("name"));
-                code.append(OptUtils.toOllirType(getActualTypeVarRef(nodeHelp.getChild(i))));
+                code.append(OptUtils.toOllirType(TypeUtils.getDeclaredType(nodeHelp.getChild(i), table)));
             }
             if(Objects.equals(node.getChild(0).getKind(), "Paren")){
                 JmmNode nodeHelp = node.getChild(0);
@@ -152,7 +147,7 @@ public class OllirExprGeneratorVisitor extends PreorderJmmVisitor<Void, OllirExp
             else{
                 code.append(node.getChild(0).get("name"));
                 code.append(".");
-                code.append(getActualTypeVarRef(node.getChild(0)).get("name"));
+                code.append(TypeUtils.getDeclaredType(node.getChild(0), table).get("name"));
             }
             code.append(", ");
             code.append("\"" + node.get("name") + "\"");
@@ -169,7 +164,7 @@ public class OllirExprGeneratorVisitor extends PreorderJmmVisitor<Void, OllirExp
                     code.append(".i32");
                 }
                 else{
-                    code.append(OptUtils.toOllirType(getActualTypeVarRef(node.getChild(i))));
+                    code.append(OptUtils.toOllirType(TypeUtils.getDeclaredType(node.getChild(i), table)));
 
                 }
             }
@@ -196,7 +191,9 @@ public class OllirExprGeneratorVisitor extends PreorderJmmVisitor<Void, OllirExp
     private OllirExprResult visitBool(JmmNode node, Void unused){
         var bool = new Type(TypeUtils.getBoolTypeName(), false);
         String ollirBoolType = OptUtils.toOllirType(bool);
-        String code = node.get("value") + ollirBoolType;
+        // OLLIR has no boolean literals, only 1 and 0 with the boolean type
+        String value = Boolean.parseBoolean(node.get("value")) ? "1" : "0";
+        String code = value + ollirBoolType;
         return new OllirExprResult(code);
 
     }
@@ -237,26 +234,17 @@ public class OllirExprGeneratorVisitor extends PreorderJmmVisitor<Void, OllirExp
           //  lhs.setCode("a.bool");
         //}
 
-            if(node.getChild(0).getKind().equals("BooleanLiteral")){
-            if(lhs.getCode().equals("true.bool") ){
-                lhs.setCode("1.bool");
-
-            }
-            else{
-                lhs.setCode("0.bool");
-            }
-        }
         var rhs = visit(node.getJmmChild(1));
 
         if(Objects.equals(node.getChild(1).getKind(), "FunctionCall")){
             String resOllirType = OptUtils.toOllirType(resType);
-            String code = OptUtils.getTemp() + resOllirType;
+            String code = names.getTemp() + resOllirType;
             rhs = new OllirExprResult(code, code + " :=" + resOllirType + " " + rhs.getCode() + ";\n");
         }
 
         if(Objects.equals(node.getChild(0).getKind(), "FunctionCall")){
             String resOllirType = OptUtils.toOllirType(resType);
-            String code = OptUtils.getTemp() + resOllirType;
+            String code = names.getTemp() + resOllirType;
             lhs = new OllirExprResult(code, code + " :=" + resOllirType + " " + lhs.getCode() + ";\n");
         }
         StringBuilder computation = new StringBuilder();
@@ -273,7 +261,7 @@ public class OllirExprGeneratorVisitor extends PreorderJmmVisitor<Void, OllirExp
             f=true;
 
         if(f)
-            code = OptUtils.getTemp() + resOllirType;
+            code = names.getTemp() + resOllirType;
         else
             code = lhs.getCode() + " " + node.get("op") + resOllirType + " " + rhs.getCode();
 
@@ -315,26 +303,4 @@ public class OllirExprGeneratorVisitor extends PreorderJmmVisitor<Void, OllirExp
 
         return OllirExprResult.EMPTY;
     }
-
-    private JmmNode getActualTypeVarRef(JmmNode varRefExpr){
-        JmmNode ret = varRefExpr;
-        JmmNode classDecl = varRefExpr;
-        while (!Objects.equals(classDecl.getKind(), "ClassDecl")) {
-            classDecl = classDecl.getParent();
-        }
-
-        for(JmmNode node : classDecl.getDescendants()) {
-            if(Objects.equals(node.getKind(), "Param") || Objects.equals(node.getKind(), "VarDecl")) {
-                if(Objects.equals(node.get("name"), varRefExpr.get("name"))) {
-                    ret = node.getChild(0);
-                    break;
-                }
-            }
-        }
-
-
-        return ret;
-    }
-
-
 }
@@ -6,6 +6,8 @@ import pt.up.fe.comp.jmm.ast.AJmmVisitor;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp2024.ast.NodeUtils;
 import pt.up.fe.comp2024.ast.TypeUtils;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
+import pt.up.fe.comp2024.symboltable.ResolvedSymbol;
 
 import java.util.Objects;
 import static pt.up.fe.comp2024.ast.Kind.*;
@@ -24,6 +26,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
 
 
     private final SymbolTable table;
+    private final NameGenerator names;
 
     private final OllirExprGeneratorVisitor exprVisitor;
     private int counter = 0;
@@ -33,7 +36,8 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
 
     public OllirGeneratorVisitor(SymbolTable table) {
         this.table = table;
-        exprVisitor = new OllirExprGeneratorVisitor(table);
+        this.names = new NameGenerator();
+        exprVisitor = new OllirExprGeneratorVisitor(table, names);
         this.buildVisitor();
     }
 
@@ -59,48 +63,94 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
     private String visitWhile(JmmNode node, Void unused) {
         StringBuilder code = new StringBuilder();
 
-        JmmNode binOpExpr = node.getChild(0);
+        JmmNode condition = node.getChild(0);
+        String whileLabel = names.getWhile();
 
-        var assigns = exprVisitor.visit(binOpExpr);
-        code.append(assigns.getComputation());
+        // skip the loop if the condition starts false
+        code.append(generateCondition(condition, "end" + whileLabel, false)).append(NL);
 
-        //same que o if basicamente so q com o while assigns
-        code.append("if(").append(assigns.getCode()).append(") goto ").append(OptUtils.getWhile()).append(END_STMT).append(NL);
-
-        code.append("goto ").append("end").append(OptUtils.getWhile()).append(END_STMT).append(NL);
-
-        code.append(OptUtils.getWhile()).append(":").append(NL); // hard coded disto tudo ?
+        code.append(whileLabel).append(":").append(NL);
 
         for (var aux : node.getChild(1).getChildren())  // ver o que esta no nested while
             code.append(visit(aux));
 
-
-        code.append("if(").append(assigns.getCode()).append(") goto ").append(OptUtils.getWhile()).append(END_STMT).append(NL);
-        code.append("end").append(OptUtils.getWhile()).append(":").append(NL);
+        // the condition has to be evaluated again before jumping back
+        code.append(generateCondition(condition, whileLabel, true)).append(NL);
+        code.append("end").append(whileLabel).append(":").append(NL);
 
         return code.toString();
     }
     private String visitIfElse(JmmNode node, Void unused) {
         StringBuilder code = new StringBuilder();
 
-        var assigns = exprVisitor.visit(node.getChild(0)); // sacar os .bools e assigns todos (a expressao basicamente)
-        code.append(assigns.getComputation()).append("if(");
-
-        if(assigns.getCode().equals("a.i32"))
-            assigns.setCode("a.bool");
-
-        code.append(assigns.getCode()).append(") goto ").append(OptUtils.getIf()).append(END_STMT); // fim do inicio da avaliação dos ifs (debug)
+        String ifLabel = names.getIf();
+        code.append(generateCondition(node.getChild(0), ifLabel, true)); // fim do inicio da avaliação dos ifs (debug)
 
         for (var fields : node.getChild(2).getChildren()) // correr
             code.append(visit(fields));
 
-        code.append("goto ").append("end" + OptUtils.getIf()).append(END_STMT).append(NL).append(OptUtils.getIf()).append(":").append(NL);
+        code.append("goto ").append("end" + ifLabel).append(END_STMT).append(NL).append(ifLabel).append(":").append(NL);
 
         for (var i : node.getChild(1).getChildren())
             code.append(visit(i));
 
-        code.append("end").append(OptUtils.getIf()).append(":").append(NL);
+        code.append("end").append(ifLabel).append(":").append(NL);
+
+        return code.toString();
+    }
+
+    /**
+     * Generates the code that jumps to the label when the condition has the given value, and falls through otherwise.
+     * <p>
+     * Operators && and || become jumps, so their right operand is only evaluated when the left one does not decide the
+     * result, and no boolean is stored for them.
+     */
+    private String generateCondition(JmmNode condition, String label, boolean jumpIfTrue) {
+        while (PAREN.check(condition))
+            condition = condition.getChild(0);
+
+        if (NEGATION.check(condition))
+            return generateCondition(condition.getChild(0), label, !jumpIfTrue);
+
+        if (BINARY_OP.check(condition) && (condition.get("op").equals("&&") || condition.get("op").equals("||"))) {
+            JmmNode left = condition.getChild(0);
+            JmmNode right = condition.getChild(1);
+
+            // a && b is false when either operand is, and a || b is true when either operand is
+            if (condition.get("op").equals("&&") != jumpIfTrue)
+                return generateCondition(left, label, jumpIfTrue) + generateCondition(right, label, jumpIfTrue);
+
+            // otherwise, the left operand having the other value already decides it
+            String decided = names.getCond();
+            return generateCondition(left, decided, !jumpIfTrue) + generateCondition(right, label, jumpIfTrue)
+                    + decided + ":" + NL;
+        }
+
+        StringBuilder code = new StringBuilder();
+        var result = exprVisitor.visit(condition);
+        code.append(result.getComputation());
+
+        String operand = result.getCode();
+        if (FUNCTION_CALL.check(condition)) {
+            operand = names.getTemp() + ".bool";
+            code.append(operand).append(SPACE).append(ASSIGN).append(".bool ").append(result.getCode()).append(END_STMT);
+        } else if (VAR_REF_EXPR.check(condition)) {
+            // expressions of variables are typed as int
+            operand = condition.get("name") + OptUtils.toOllirType(TypeUtils.getDeclaredType(condition, table));
+        }
+
+        String test = operand;
+        if (!jumpIfTrue) {
+            if (BINARY_OP.check(condition)) {
+                String op = condition.get("op");
+                String inverse = op.equals("<") ? ">=" : "<=";
+                test = operand.replace(SPACE + op + ".bool ", SPACE + inverse + ".bool ");
+            } else {
+                test = "!.bool " + operand;
+            }
+        }
 
+        code.append("if(").append(test).append(") goto ").append(label).append(END_STMT);
         return code.toString();
     }
 
@@ -114,7 +164,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
         if(node.getChild(0).getNumChildren()>1) {
             if (node.getChild(0).getChild(1).getKind().equals("Length")) {
                 String resOllirType = OptUtils.toOllirType(node.getChild(0).getChild(1));
-                String type = OptUtils.getTemp() + resOllirType;
+                String type = names.getTemp() + resOllirType;
                 var a = node.getParent().getChild(0).get("name");
                 code.append(type).append(ASSIGN).append(".i32 ").append("arraylength(").append(a).append(".array.i32).i32").append(";");
                 code.append("\n");
@@ -142,7 +192,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
                 for(JmmNode methodDecl : classDecl.getChildren(METHOD_DECL)){
                     if(methodDecl.get("name").equals(node.getChild(0).get("name"))){
                         for(JmmNode ret : methodDecl.getChildren(RETURN_STMT)){
-                            virtualRetType = OptUtils.toOllirType(ret.getChild(0));
+                            virtualRetType = OptUtils.toOllirType(ret.getChild(0), table);
                         }
                         if(methodDecl.get("isStatic").equals("true")){
                              isStatic2 = true;
@@ -175,20 +225,20 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
             }
             else if (node.getChild(0).getChild(i).getKind().equals("Length")) {
                 String resOllirType = OptUtils.toOllirType(node.getChild(0).getChild(1));
-                String type = OptUtils.getTemp() + resOllirType;
+                String type = names.getTemp() + resOllirType;
                 this.counter++;
                 code.append(type);
             } else if(node.getChild(0).getChild(i).getKind().equals("ArrayAccess")) {
                 boolean createdAtLeastOneTemp = false;
                 if(node.getChild(0).getChild(i).getChild(1).getKind().equals("FunctionCall")) {
-                    arrayAccessCode.append(OptUtils.getTemp()).append(".i32 ").append(ASSIGN).append(".i32 ");
+                    arrayAccessCode.append(names.getTemp()).append(".i32 ").append(ASSIGN).append(".i32 ");
                     this.counter++;
 
                     if(isStatic){
                         arrayAccessCode.append("invokevirtual(").append(node.getChild(0).getChild(i).getChild(1).getChild(0).get("name"));
                         JmmNode typeNode = node.getChild(0).getChild(i).getChild(1).getChild(0);
                         if(typeNode.getKind().equals("VarRefExpr"))
-                            typeNode = getActualTypeVarRef(typeNode);
+                            typeNode = TypeUtils.getDeclaredType(typeNode, table);
                         arrayAccessCode.append(OptUtils.toOllirType(typeNode)).append(", ");
                         arrayAccessCode.append("\"");
                         arrayAccessCode.append(node.getChild(0).getChild(i).getChild(1).get("name")).append("\"");
@@ -206,7 +256,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
                                 arrayAccessCode.append(".i32");
                             }
                             else{
-                                arrayAccessCode.append(OptUtils.toOllirType(getActualTypeVarRef(func.getChild(k))));
+                                arrayAccessCode.append(OptUtils.toOllirType(TypeUtils.getDeclaredType(func.getChild(k), table)));
 
                             }
                             arrayAccessCode.append(").i32").append(END_STMT);
@@ -216,7 +266,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
 
                 } else if(node.getChild(0).getChild(1).getChild(1).getKind().equals("BinaryOp")) {
                     arrayAccessCode.append(NL);
-                    arrayAccessCode.append(OptUtils.getTemp()).append(".i32 ").append(ASSIGN);
+                    arrayAccessCode.append(names.getTemp()).append(".i32 ").append(ASSIGN);
                     this.counter++;
                     if(node.getChild(0).getChild(1).getChild(1).getChild(0).hasAttribute("value"))
                         arrayAccessCode.append(".i32 ").append(node.getChild(0).getChild(1).getChild(1).getChild(0).get("value"));
@@ -226,7 +276,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
                     arrayAccessCode.append(node.getChild(0).getChild(1).getChild(1).getChild(1).get("value")).append(".i32").append(END_STMT);
                 } else if(node.getChild(0).getChild(1).getChild(1).getKind().equals("ArrayAccess")){ //arrayaccess
                     arrayAccessCode.append(NL);
-                    arrayAccessCode.append(OptUtils.getTemp()).append(".i32 ").append(ASSIGN).append(".i32 ");
+                    arrayAccessCode.append(names.getTemp()).append(".i32 ").append(ASSIGN).append(".i32 ");
                     this.counter++;
                     arrayAccessCode.append(node.getChild(0).getChild(1).getChild(0).get("name"));
                     arrayAccessCode.append("[");
@@ -234,7 +284,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
                     arrayAccessCode.append("].i32");
                     arrayAccessCode.append(END_STMT);
                 }
-                arrayAccessCode.append(OptUtils.getTemp()).append(".i32 ").append(ASSIGN);
+                arrayAccessCode.append(names.getTemp()).append(".i32 ").append(ASSIGN);
                 arrayAccessCode.append(".i32 ").append(node.getChild(0).getChild(1).getChild(0).get("name"));
                 arrayAccessCode.append("[");
                 if(createdAtLeastOneTemp)
@@ -242,6 +292,8 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
                 else{
                     if(node.getChild(0).getChild(1).getChild(1).getKind().equals("VarRefExpr")) {
                         arrayAccessCode.append(node.getChild(0).getChild(1).getChild(1).get("name")).append(".i32");
+                    } else if(node.getChild(0).getChild(1).getChild(1).getKind().equals("IntegerLiteral")) {
+                        arrayAccessCode.append(node.getChild(0).getChild(1).getChild(1).get("value")).append(".i32");
                     } else if(node.getChild(0).getChild(1).getChild(1).getKind().equals("BinaryOp") || node.getChild(0).getChild(1).getChild(1).getKind().equals("ArrayAccess")) {
                         arrayAccessCode.append("tmp").append(this.counter-1).append(".i32");
                     }
@@ -252,7 +304,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
             }
             else if(node.getChild(0).getChild(i).getKind().equals("FunctionCall")){
                 var hello = exprVisitor.visit(node.getChild(0).getChild(i));
-                funcCallCode.append(OptUtils.getTemp()).append(".i32 :=.i32 ");
+                funcCallCode.append(names.getTemp()).append(".i32 :=.i32 ");
                 funcCallCode.append(hello.getCode()).append(END_STMT);
                 this.counter++;
                 code.append("tmp").append(this.counter).append(".i32");
@@ -261,7 +313,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
                 if(exprVisitor.getFlag())
                     code.append("$1.");
                 code.append(node.getChild(0).getChild(i).get("name"));
-                code.append(OptUtils.toOllirType(getActualTypeVarRef(node.getChild(0).getChild(i))));
+                code.append(OptUtils.toOllirType(TypeUtils.getDeclaredType(node.getChild(0).getChild(i), table)));
 
 
             }
@@ -324,7 +376,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
             String op = binaryOp.getChild(0).get("op");
             String type = getBinaryOpType(help);
 
-            code.append(OptUtils.getTemp()).append(type).append(" ");
+            code.append(names.getTemp()).append(type).append(" ");
             code.append(ASSIGN).append(type).append(" ");
             code.append("tmp").append(this.counter-2).append(type).append(" ");
             code.append(op).append(type).append(" ").append("tmp").append(this.counter-1);
@@ -353,7 +405,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
             String left = help.getChild(0).getKind().equals("BinaryOp") ? "tmp" + (this.counter - 1) : help.getChild(0).get("value");
             String right = help.getChild(1).getKind().equals("BinaryOp") ? "tmp" + (this.counter - 1) : help.getChild(1).get("value");
 
-            code.append(OptUtils.getTemp()).append(type).append(" ");
+            code.append(names.getTemp()).append(type).append(" ");
             code.append(ASSIGN).append(type).append(" ");
             code.append(left).append(type).append(" ");
             code.append(op).append(type).append(" ").append(right).append(type).append(END_STMT);
@@ -369,7 +421,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
         StringBuilder code = new StringBuilder();
 
         //initialize variable
-        code.append(OptUtils.getTemp()).append(".array.i32 ");
+        code.append(names.getTemp()).append(".array.i32 ");
         code.append(ASSIGN).append(".array.i32 ");
         code.append("new(array, ");
         code.append(arrayInit.getNumChildren()).append(".i32).array.i32").append(END_STMT);
@@ -405,14 +457,13 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
         }
         String methodName = node.getAncestor(METHOD_DECL).map(method -> method.get("name")).orElseThrow();
         Type type10 = null;
-        for (int i = 0; i < table.getLocalVariables(methodName).size(); i++) {
-            if(!Objects.equals(node.getChild(0).getKind(), "BinaryOp")) {
-                if (table.getLocalVariables(methodName).get(i).getName().equals(node.get("var"))) {
-                    code.append(table.getLocalVariables(methodName).get(i).getName());
-                    code.append(OptUtils.toOllirType(table.getLocalVariables(methodName).get(i).getType()));
-                    type10 = table.getLocalVariables(methodName).get(i).getType();
-                }
-            }
+        var local = JmmSymbolTable.of(table).resolve(methodName, node.get("var"))
+                .filter(symbol -> symbol.getScope() == ResolvedSymbol.Scope.LOCAL)
+                .map(ResolvedSymbol::getSymbol);
+        if(local.isPresent() && !Objects.equals(node.getChild(0).getKind(), "BinaryOp")) {
+            code.append(local.get().getName());
+            code.append(OptUtils.toOllirType(local.get().getType()));
+            type10 = local.get().getType();
         }
         //StringBuilder aux = new StringBuilder();
         StringBuilder aux = new StringBuilder();
@@ -459,13 +510,9 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
             typeString = ".i32";
         if(typeString.equals(".array.IntegerLiteral")) typeString = ".array.i32";
 
-        if(Objects.equals(node.getChild(0).getKind(), "BinaryOp")){
-            for (int i = 0; i < table.getLocalVariables(methodName).size(); i++) {
-                if (table.getLocalVariables(methodName).get(i).getName().equals(node.get("var"))) {
-                    code.append(table.getLocalVariables(methodName).get(i).getName());
-                    code.append(OptUtils.toOllirType(table.getLocalVariables(methodName).get(i).getType()));
-                }
-            }
+        if(local.isPresent() && Objects.equals(node.getChild(0).getKind(), "BinaryOp")){
+            code.append(local.get().getName());
+            code.append(OptUtils.toOllirType(local.get().getType()));
         }
         if(t){
             code.append(SPACE);
@@ -504,7 +551,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
 
             code.append(") goto ");
             code.append("true_").append(this.labelNum).append(END_STMT);
-            code.append(OptUtils.getTemp()).append(".bool ");
+            code.append(names.getTemp()).append(".bool ");
 
             this.counter++;
             code.append(ASSIGN).append(".bool 0.bool").append(END_STMT);
@@ -671,7 +718,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
             }
 
             else
-                code.append("ret").append(OptUtils.toOllirType(node.getChild(0).getChild(0))).append(" ").append(returnStmt.getChild(0).get("name")).append(OptUtils.toOllirType(returnStmt.getChild(0))).append(";").append(NL);
+                code.append("ret").append(OptUtils.toOllirType(node.getChild(0).getChild(0))).append(" ").append(returnStmt.getChild(0).get("name")).append(OptUtils.toOllirType(returnStmt.getChild(0), table)).append(";").append(NL);
         }
 
         code.append(R_BRACKET);
@@ -686,22 +733,8 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
 
         StringBuilder code = new StringBuilder();
         String teste = "null";
-        var imports = table.getImports();
-        if (!imports.isEmpty()) {
-            for (var import1 : imports) {
-                code.append("import ");
-                String[] parts = import1.substring(1, import1.length() - 1).split(",");
-
-                for (int i = 0; i < parts.length; i++) {
-                    String trimmedPart = parts[i].trim();
-                    code.append(trimmedPart);
-                    if (i < parts.length - 1) {
-                        code.append(".");
-                    }
-                }
-
-                code.append(";").append(NL);
-            }
+        for (var importPath : JmmSymbolTable.of(table).getImportPaths()) {
+            code.append("import ").append(String.join(".", importPath)).append(";").append(NL);
         }
         code.append(table.getClassName());
         code.append(" extends ");
@@ -793,24 +826,4 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
 
         return "";
     }
-
-    private JmmNode getActualTypeVarRef(JmmNode varRefExpr){
-        JmmNode ret = varRefExpr;
-        JmmNode classDecl = varRefExpr;
-        while (!Objects.equals(classDecl.getKind(), "ClassDecl")) {
-            classDecl = classDecl.getParent();
-        }
-
-        for(JmmNode node : classDecl.getDescendants()) {
-            if(Objects.equals(node.getKind(), "Param") || Objects.equals(node.getKind(), "VarDecl")) {
-                if(Objects.equals(node.get("name"), varRefExpr.get("name"))) {
-                    ret = node.getChild(0);
-                    break;
-                }
-            }
-        }
-
-
-        return ret;
-    }
 }
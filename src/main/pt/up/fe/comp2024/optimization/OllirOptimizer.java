@@ -0,0 +1,189 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.ClassUnit;
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.Method;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.optimization.passes.CommonSubexpressionElimination;
+import pt.up.fe.comp2024.optimization.passes.ConstantFolding;
+import pt.up.fe.comp2024.optimization.passes.ConstantPropagation;
+import pt.up.fe.comp2024.optimization.passes.ControlFlowSimplification;
+import pt.up.fe.comp2024.optimization.passes.CopyPropagation;
+import pt.up.fe.comp2024.optimization.passes.DeadCodeElimination;
+import pt.up.fe.comp2024.optimization.passes.LoopInvariantCodeMotion;
+import pt.up.fe.comp2024.optimization.passes.SsaOptimization;
+import pt.up.fe.comp2024.optimization.passes.StrengthReduction;
+import pt.up.fe.comp2024.utils.Metrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a sequence of OLLIR passes over every method of a class until none of them changes the code anymore.
+ * <p>
+ * For each pass, keeps track of how many instructions it removed, which is reported at the end. Calls to small methods
+ * can be inlined first, so the passes also optimize the inlined code in the context of each call.
+ */
+public class OllirOptimizer {
+
+    private static final int MAX_ITERATIONS = 32;
+
+    private final List<OllirPass> passes;
+    private final Map<String, Integer> removedInstructions;
+    private final List<Report> reports;
+    private Metrics metrics;
+    private MethodInliner inliner;
+
+    public OllirOptimizer(List<OllirPass> passes) {
+        this.passes = passes;
+        this.removedInstructions = new LinkedHashMap<>();
+        this.reports = new ArrayList<>();
+        this.metrics = Metrics.DISABLED;
+
+        for (var pass : passes) {
+            removedInstructions.put(pass.getName(), 0);
+        }
+    }
+
+    public OllirOptimizer() {
+        this(List.of(
+                new SsaOptimization(),
+                new ConstantPropagation(),
+                new ConstantFolding(),
+                new CopyPropagation(),
+                new CommonSubexpressionElimination(),
+                new DeadCodeElimination(),
+                new ControlFlowSimplification(),
+                new LoopInvariantCodeMotion(),
+                new StrengthReduction()
+        ));
+    }
+
+    public List<Report> getReports() {
+        return reports;
+    }
+
+    /**
+     * Sets where the time of each pass is recorded.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the inliner that runs before the passes, if any.
+     */
+    public void setInliner(MethodInliner inliner) {
+        this.inliner = inliner;
+    }
+
+    public void optimize(ClassUnit ollirClass) {
+        if (inliner != null) {
+            inline(ollirClass);
+        }
+
+        for (var method : ollirClass.getMethods()) {
+            if (method.isConstructMethod()) {
+                continue;
+            }
+
+            var original = MethodCode.of(method);
+            try {
+                optimize(method);
+            } catch (RuntimeException | StackOverflowError e) {
+                // passes that recurse over the method can run out of stack on very long ones
+                original.restore(method);
+                reports.add(Report.newWarn(Stage.OPTIMIZATION, -1, -1, "Could not optimize method '"
+                        + method.getMethodName() + "', which is left unoptimized: " + getMessage(e), asException(e)));
+            }
+
+            InstUtils.rebuildVarTable(method);
+        }
+
+        int total = 0;
+        for (var entry : removedInstructions.entrySet()) {
+            total += entry.getValue();
+            reports.add(Report.newLog(Stage.OPTIMIZATION, -1, -1,
+                    entry.getKey() + " removed " + entry.getValue() + " instruction(s)", null));
+        }
+        reports.add(Report.newLog(Stage.OPTIMIZATION, -1, -1,
+                "OLLIR optimizations removed " + total + " instruction(s)", null));
+    }
+
+    private void inline(ClassUnit ollirClass) {
+        var originals = new LinkedHashMap<Method, MethodCode>();
+        for (var method : ollirClass.getMethods()) {
+            originals.put(method, MethodCode.of(method));
+        }
+
+        try {
+            metrics.measure("optimization/ollir/" + inliner.getClass().getSimpleName(),
+                    () -> inliner.inline(ollirClass));
+        } catch (RuntimeException | StackOverflowError e) {
+            originals.forEach((method, original) -> {
+                original.restore(method);
+                InstUtils.rebuildVarTable(method);
+            });
+            reports.add(Report.newWarn(Stage.OPTIMIZATION, -1, -1, "Could not inline methods of class '"
+                    + ollirClass.getClassName() + "', where no call is inlined: " + getMessage(e), asException(e)));
+        }
+
+        metrics.addCount("inlinedCalls", inliner.getInlinedCalls());
+        reports.add(Report.newLog(Stage.OPTIMIZATION, -1, -1,
+                "MethodInliner inlined " + inliner.getInlinedCalls() + " call(s)", null));
+    }
+
+    private static String getMessage(Throwable e) {
+        return e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+
+    private static Exception asException(Throwable e) {
+        return e instanceof Exception exception ? exception : new RuntimeException(e);
+    }
+
+    private void optimize(Method method) {
+        boolean changed = true;
+        for (int iteration = 0; changed && iteration < MAX_ITERATIONS; iteration++) {
+            changed = false;
+            for (var pass : passes) {
+                int before = method.getInstructions().size();
+                changed |= metrics.measure("optimization/ollir/" + pass.getName(), () -> pass.optimize(method));
+                removedInstructions.merge(pass.getName(), before - method.getInstructions().size(), Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * A copy of the instructions and labels of a method, to put back when a pass fails halfway, since the passes
+     * rewrite instructions in place.
+     */
+    private record MethodCode(List<Instruction> instructions, Map<String, Instruction> labels) {
+
+        static MethodCode of(Method method) {
+            var copier = new InstCopier();
+            var copies = new IdentityHashMap<Instruction, Instruction>();
+            var instructions = new ArrayList<Instruction>();
+            for (var inst : method.getInstructions()) {
+                var copy = copier.copy(inst);
+                copies.put(inst, copy);
+                instructions.add(copy);
+            }
+
+            var labels = new HashMap<String, Instruction>();
+            method.getLabels().forEach((label, inst) -> labels.put(label, copies.get(inst)));
+            return new MethodCode(instructions, labels);
+        }
+
+        void restore(Method method) {
+            method.getInstructions().clear();
+            method.getInstructions().addAll(instructions);
+            method.getLabels().clear();
+            method.getLabels().putAll(labels);
+        }
+    }
+}
@@ -6,6 +6,8 @@ import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
+import pt.up.fe.comp2024.ast.TypeUtils;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
 import pt.up.fe.specs.util.exceptions.NotImplementedException;
 
 import java.util.List;
@@ -15,40 +17,18 @@ import java.util.Optional;
 import static pt.up.fe.comp2024.ast.Kind.TYPE;
 
 public class OptUtils {
-    private static int tempNumber = -1;
-    private static int ifNumber = 0;
-    private static int whileNumber = 0;
 
+    /**
+     * Same as {@link #toOllirType(JmmNode)}, but variable references are replaced by the type of their declaration.
+     */
+    public static String toOllirType(JmmNode node, SymbolTable table) {
+        if(Objects.equals(node.getKind(), "VarRefExpr"))
+            node = TypeUtils.getDeclaredType(node, table);
 
-
-    public static String getIf() {
-        return "if" + ifNumber++;
-    }
-
-    public static String getWhile() {
-        return "while" + whileNumber++;
-    }
-
-    public static String getTemp() {
-
-        return getTemp("tmp");
-    }
-
-    public static String getTemp(String prefix) {
-
-        return prefix + getNextTempNum();
-    }
-
-    public static int getNextTempNum() {
-
-        tempNumber += 1;
-        return tempNumber;
+        return toOllirType(node);
     }
 
     public static String toOllirType(JmmNode typeNode) {
-        if(Objects.equals(typeNode.getKind(), "VarRefExpr"))
-            typeNode = getActualTypeVarRef(typeNode);
-
         if(Objects.equals(typeNode.getKind(),"Array")){
             return ".array.i32";
         }
@@ -96,36 +76,8 @@ public class OptUtils {
         return type;
     }
 
-    public static JmmNode getActualTypeVarRef(JmmNode varRefExpr){
-        JmmNode ret = varRefExpr;
-        JmmNode classDecl = varRefExpr;
-        while (!Objects.equals(classDecl.getKind(), "ClassDecl")) {
-            classDecl = classDecl.getParent();
-        }
-
-        for(JmmNode node : classDecl.getDescendants()) {
-            if(Objects.equals(node.getKind(), "Param") || Objects.equals(node.getKind(), "VarDecl")) {
-                if(Objects.equals(node.get("name"), varRefExpr.get("name"))) {
-                    ret = node.getChild(0);
-                    break;
-                }
-            }
-        }
-
-
-        return ret;
-    }
-
     public static boolean checkIfInImports(String name, SymbolTable table){
-        boolean inImports = false;
-        for(String imprt : table.getImports()){
-            String[] elements = imprt.substring(1, imprt.length() - 1).split(", ");
-            String lastElement = elements[elements.length - 1];
-            if(Objects.equals(lastElement, name))
-                inImports = true;
-        }
-
-        return inImports;
+        return JmmSymbolTable.of(table).isImported(name);
     }
 
 
@@ -0,0 +1,167 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.ClassUnit;
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.VarScope;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+
+import java.util.*;
+
+/**
+ * Assigns JVM local variables to the local variables of each method by coloring their interference graph.
+ * <p>
+ * 'this' and the parameters keep their registers; the remaining variables share registers whenever they are never live
+ * at the same time.
+ */
+public class RegisterAllocator {
+
+    private final int maxRegisters;
+    private final List<Report> reports;
+
+    /**
+     * @param maxRegisters maximum number of JVM local variables per method, or 0 to use as few as possible
+     */
+    public RegisterAllocator(int maxRegisters) {
+        this.maxRegisters = maxRegisters;
+        this.reports = new ArrayList<>();
+    }
+
+    public List<Report> getReports() {
+        return reports;
+    }
+
+    public void allocate(ClassUnit ollirClass) {
+        for (var method : ollirClass.getMethods()) {
+            if (!method.isConstructMethod()) {
+                allocate(method);
+            }
+        }
+    }
+
+    private void allocate(Method method) {
+        var graph = buildInterferenceGraph(method);
+        int firstLocal = (method.isStaticMethod() ? 0 : 1) + method.getParams().size();
+
+        var coloring = maxRegisters > 0 ? color(graph, maxRegisters - firstLocal) : null;
+        if (coloring == null) {
+            // Find the smallest number of colors our heuristic manages to use
+            for (int colors = 0; coloring == null; colors++) {
+                coloring = color(graph, colors);
+            }
+        }
+
+        int needed = firstLocal + (int) coloring.values().stream().distinct().count();
+        if (maxRegisters > 0 && needed > maxRegisters) {
+            reports.add(Report.newError(Stage.OPTIMIZATION, -1, -1,
+                    "Method '" + method.getMethodName() + "' needs at least " + needed
+                            + " registers, but register allocation was limited to " + maxRegisters, null));
+            return;
+        }
+
+        var varTable = method.getVarTable();
+        for (var entry : coloring.entrySet()) {
+            varTable.get(entry.getKey()).setVirtualReg(firstLocal + entry.getValue());
+        }
+
+        reports.add(Report.newLog(Stage.OPTIMIZATION, -1, -1,
+                "Method '" + method.getMethodName() + "' uses " + needed + " registers", null));
+    }
+
+    private static Map<String, Set<String>> buildInterferenceGraph(Method method) {
+        var graph = new LinkedHashMap<String, Set<String>>();
+        for (var entry : method.getVarTable().entrySet()) {
+            if (entry.getValue().getScope() == VarScope.LOCAL && !entry.getKey().equals("this")) {
+                graph.put(entry.getKey(), new LinkedHashSet<>());
+            }
+        }
+
+        if (method.getInstructions().isEmpty()) {
+            return graph;
+        }
+
+        var liveness = new LivenessAnalysis(new ControlFlowGraph(method));
+
+        // Variables read before being written are live together at the start of the method
+        var entryLive = liveness.getLiveIn(method.getInstructions().get(0));
+        for (var var : entryLive) {
+            addEdges(graph, var, entryLive);
+        }
+
+        for (var inst : method.getInstructions()) {
+            var dest = InstUtils.getDest(inst);
+            if (dest.isPresent()) {
+                addEdges(graph, dest.get().getName(), liveness.getLiveOut(inst));
+            }
+        }
+
+        return graph;
+    }
+
+    private static void addEdges(Map<String, Set<String>> graph, String var, Set<String> others) {
+        if (!graph.containsKey(var)) {
+            return;
+        }
+
+        for (var other : others) {
+            if (!other.equals(var) && graph.containsKey(other)) {
+                graph.get(var).add(other);
+                graph.get(other).add(var);
+            }
+        }
+    }
+
+    /**
+     * Colors the graph with the simplify/select heuristic.
+     *
+     * @return the color of each variable, or null if the heuristic could not use at most the given number of colors
+     */
+    private static Map<String, Integer> color(Map<String, Set<String>> graph, int colors) {
+        if (colors < 0) {
+            return null;
+        }
+
+        var degrees = new HashMap<String, Integer>();
+        graph.forEach((var, neighbours) -> degrees.put(var, neighbours.size()));
+
+        var stack = new ArrayDeque<String>();
+        var remaining = new LinkedHashSet<>(graph.keySet());
+        while (!remaining.isEmpty()) {
+            // Prefer trivially colorable nodes, otherwise optimistically push the one with most neighbours
+            var next = remaining.stream()
+                    .filter(var -> degrees.get(var) < colors)
+                    .findFirst()
+                    .orElseGet(() -> Collections.max(remaining, Comparator.comparing(degrees::get)));
+
+            remaining.remove(next);
+            stack.push(next);
+            for (var neighbour : graph.get(next)) {
+                degrees.merge(neighbour, -1, Integer::sum);
+            }
+        }
+
+        var coloring = new HashMap<String, Integer>();
+        while (!stack.isEmpty()) {
+            var var = stack.pop();
+
+            var used = new HashSet<Integer>();
+            for (var neighbour : graph.get(var)) {
+                if (coloring.containsKey(neighbour)) {
+                    used.add(coloring.get(neighbour));
+                }
+            }
+
+            int color = 0;
+            while (used.contains(color)) {
+                color++;
+            }
+            if (color >= colors) {
+                return null;
+            }
+
+            coloring.put(var, color);
+        }
+
+        return coloring;
+    }
+}
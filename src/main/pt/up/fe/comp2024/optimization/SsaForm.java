@@ -0,0 +1,696 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Static single assignment form of the int and boolean variables of an OLLIR method.
+ * <p>
+ * Each definition of a variable gets its own name, e.g. "i#2", while the value the variable has when the method starts
+ * (a parameter, or an uninitialized local) keeps the original name. OLLIR cannot represent phi functions, so they are
+ * kept next to the blocks, and are only placed where the variable is live.
+ * <p>
+ * Instructions are renamed in place. Passes may then rewrite them through this class, and {@link #destruct()} brings
+ * the method back to normal form, replacing phis by copies and coalescing copies between variables that do not
+ * interfere. A method that was not rewritten only needs {@link #restore()}.
+ */
+public class SsaForm {
+
+    public static final String VERSION_SEPARATOR = "#";
+
+    /**
+     * A phi function at the start of a block, which picks the argument of the predecessor the block was entered from.
+     */
+    public static class Phi {
+        private final String variable;
+        private final Operand dest;
+        private final Map<BasicBlock, Element> arguments;
+
+        private Phi(String variable, Operand dest) {
+            this.variable = variable;
+            this.dest = dest;
+            this.arguments = new LinkedHashMap<>();
+        }
+
+        /**
+         * @return the name of the variable before renaming
+         */
+        public String getVariable() {
+            return variable;
+        }
+
+        public Operand getDest() {
+            return dest;
+        }
+
+        /**
+         * @return the value coming from each predecessor, either an operand or a literal
+         */
+        public Map<BasicBlock, Element> getArguments() {
+            return arguments;
+        }
+
+        @Override
+        public String toString() {
+            return dest.getName() + " = phi" + arguments;
+        }
+    }
+
+    private final Method method;
+    private final ControlFlowGraph cfg;
+    private final DominatorTree dominators;
+    private final Map<BasicBlock, List<Phi>> phis;
+    private final Map<String, String> variables;
+    private final Map<String, Type> types;
+    private final Map<String, Integer> versions;
+    private final Map<Instruction, BasicBlock> blockOf;
+    private final Set<BasicBlock> removedBlocks;
+    private final Set<Instruction> removedInstructions;
+    private final Map<BasicBlock, Set<BasicBlock>> removedEdges;
+
+    public SsaForm(Method method) {
+        this.method = method;
+        this.cfg = new ControlFlowGraph(method);
+        this.dominators = new DominatorTree(cfg);
+        this.phis = new HashMap<>();
+        this.variables = new LinkedHashMap<>();
+        this.types = new HashMap<>();
+        this.versions = new HashMap<>();
+        this.blockOf = new IdentityHashMap<>();
+        this.removedBlocks = new HashSet<>();
+        this.removedInstructions = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.removedEdges = new HashMap<>();
+
+        for (var block : cfg.getBlocks()) {
+            phis.put(block, new ArrayList<>());
+            for (var inst : block.getInstructions()) {
+                blockOf.put(inst, block);
+            }
+        }
+
+        collectVariables();
+        if (cfg.getEntry() != null) {
+            placePhis();
+            rename(cfg.getEntry());
+        }
+    }
+
+    /**
+     * Split edges are added at the end of the method, so it must not fall off its last instruction.
+     */
+    public static boolean canConvert(Method method) {
+        var instructions = method.getInstructions();
+        if (instructions.isEmpty()) {
+            return false;
+        }
+
+        var last = instructions.get(instructions.size() - 1).getInstType();
+        return last == InstructionType.RETURN || last == InstructionType.GOTO;
+    }
+
+    private void collectVariables() {
+        for (var param : method.getParams()) {
+            if (param instanceof Operand operand) {
+                addVariable(operand);
+            }
+        }
+
+        for (var inst : method.getInstructions()) {
+            InstUtils.getDest(inst).ifPresent(this::addVariable);
+            InstUtils.getUses(inst).forEach(this::addVariable);
+        }
+    }
+
+    private void addVariable(Operand operand) {
+        if (operand instanceof ArrayOperand || !InstUtils.isScalar(operand.getType())) {
+            return;
+        }
+
+        variables.put(operand.getName(), operand.getName());
+        types.putIfAbsent(operand.getName(), operand.getType());
+    }
+
+    /**
+     * Places phis on the iterated dominance frontier of the definitions of each variable, where the variable is live.
+     */
+    private void placePhis() {
+        var liveness = new LivenessAnalysis(cfg);
+
+        var definitions = new HashMap<String, Set<BasicBlock>>();
+        for (var block : dominators.getReversePostOrder()) {
+            for (var inst : block.getInstructions()) {
+                InstUtils.getDest(inst)
+                        .filter(dest -> isVariable(dest.getName()))
+                        .ifPresent(dest -> definitions.computeIfAbsent(dest.getName(), name -> new LinkedHashSet<>())
+                                .add(block));
+            }
+        }
+
+        for (var entry : definitions.entrySet()) {
+            var variable = entry.getKey();
+            var worklist = new ArrayDeque<>(entry.getValue());
+            var placed = new HashSet<BasicBlock>();
+
+            while (!worklist.isEmpty()) {
+                var block = worklist.pop();
+                for (var join : dominators.getFrontier(block)) {
+                    if (!placed.add(join) || !liveness.getLiveIn(join.getInstructions().get(0)).contains(variable)) {
+                        continue;
+                    }
+
+                    phis.get(join).add(new Phi(variable, new Operand(variable, types.get(variable))));
+                    worklist.push(join);
+                }
+            }
+        }
+    }
+
+    /**
+     * A step of the walk of the dominator tree: entering a block, or leaving it once its children were renamed, which
+     * takes back the versions it defined.
+     *
+     * @param defined the variables the block defined, or null when entering it
+     */
+    private record RenameStep(BasicBlock block, List<String> defined) {
+    }
+
+    /**
+     * Renames the blocks in a preorder walk of the dominator tree, with a stack of its own, since the tree is as deep
+     * as the method is long.
+     */
+    private void rename(BasicBlock entry) {
+        var current = new HashMap<String, Deque<String>>();
+        var steps = new ArrayDeque<RenameStep>();
+        steps.push(new RenameStep(entry, null));
+
+        while (!steps.isEmpty()) {
+            var step = steps.pop();
+            if (step.defined() != null) {
+                for (var variable : step.defined()) {
+                    current.get(variable).pop();
+                }
+                continue;
+            }
+
+            steps.push(new RenameStep(step.block(), rename(step.block(), current)));
+
+            // children are pushed last to first, so they are renamed in order
+            var children = new ArrayList<>(dominators.getChildren(step.block()));
+            Collections.reverse(children);
+            for (var child : children) {
+                steps.push(new RenameStep(child, null));
+            }
+        }
+    }
+
+    /**
+     * @return the variables defined by the block, once for each definition
+     */
+    private List<String> rename(BasicBlock block, Map<String, Deque<String>> current) {
+        var defined = new ArrayList<String>();
+
+        for (var phi : phis.get(block)) {
+            var version = newVersion(phi.getVariable());
+            phi.getDest().setName(version);
+            current.computeIfAbsent(phi.getVariable(), variable -> new ArrayDeque<>()).push(version);
+            defined.add(phi.getVariable());
+        }
+
+        for (var inst : block.getInstructions()) {
+            InstUtils.replaceUses(inst, operand -> isVariable(operand.getName())
+                    ? new Operand(getCurrent(current, operand.getName()), operand.getType())
+                    : operand);
+
+            var dest = InstUtils.getDest(inst);
+            if (dest.isPresent() && isVariable(dest.get().getName())) {
+                var variable = dest.get().getName();
+                var version = newVersion(variable);
+                dest.get().setName(version);
+                current.computeIfAbsent(variable, name -> new ArrayDeque<>()).push(version);
+                defined.add(variable);
+            }
+        }
+
+        for (var succ : block.getSuccessors()) {
+            for (var phi : phis.get(succ)) {
+                var variable = phi.getVariable();
+                phi.getArguments().put(block, new Operand(getCurrent(current, variable), types.get(variable)));
+            }
+        }
+
+        return defined;
+    }
+
+    private static String getCurrent(Map<String, Deque<String>> current, String variable) {
+        var versions = current.get(variable);
+        return versions == null || versions.isEmpty() ? variable : versions.peek();
+    }
+
+    /**
+     * @return a new name for the variable, which has not been used before
+     */
+    public String newVersion(String variable) {
+        String name;
+        do {
+            name = variable + VERSION_SEPARATOR + versions.merge(variable, 1, Integer::sum);
+        } while (variables.containsKey(name));
+
+        variables.put(name, variable);
+        types.put(name, types.get(variable));
+        return name;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public ControlFlowGraph getCfg() {
+        return cfg;
+    }
+
+    public DominatorTree getDominators() {
+        return dominators;
+    }
+
+    public List<Phi> getPhis(BasicBlock block) {
+        return phis.get(block);
+    }
+
+    /**
+     * @return whether the name is one of the names of a variable in SSA form
+     */
+    public boolean isVariable(String name) {
+        return variables.containsKey(name);
+    }
+
+    /**
+     * @return the name of the variable before renaming
+     */
+    public String getVariable(String name) {
+        return variables.get(name);
+    }
+
+    public BasicBlock getBlock(Instruction inst) {
+        return blockOf.get(inst);
+    }
+
+    /**
+     * @return the block a branch jumps to
+     */
+    public BasicBlock getTarget(String label) {
+        return blockOf.get(method.getLabels().get(label));
+    }
+
+    /**
+     * @return the block that follows the given one in the method, which is where it falls through to
+     */
+    public BasicBlock getNext(BasicBlock block) {
+        int next = block.getId() + 1;
+        return next < cfg.getBlocks().size() ? cfg.getBlocks().get(next) : null;
+    }
+
+    public void replaceInstruction(Instruction oldInst, Instruction newInst) {
+        var block = blockOf.remove(oldInst);
+        var instructions = block.getInstructions();
+        for (int i = 0; i < instructions.size(); i++) {
+            if (instructions.get(i) == oldInst) {
+                instructions.set(i, newInst);
+            }
+        }
+        blockOf.put(newInst, block);
+
+        for (var label : method.getLabels().entrySet()) {
+            if (label.getValue() == oldInst) {
+                label.setValue(newInst);
+            }
+        }
+    }
+
+    /**
+     * Removes the last instruction of a block, which must not be needed anymore to leave the block, e.g. a branch that
+     * is never taken.
+     */
+    public void removeInstruction(Instruction inst) {
+        removedInstructions.add(inst);
+    }
+
+    /**
+     * Removes a block that is never executed, together with its outgoing edges.
+     */
+    public void removeBlock(BasicBlock block) {
+        removedBlocks.add(block);
+        for (var succ : block.getSuccessors()) {
+            removeEdge(block, succ);
+        }
+    }
+
+    /**
+     * Removes an edge that is never taken, together with the arguments of phis that come from it.
+     */
+    public void removeEdge(BasicBlock from, BasicBlock to) {
+        removedEdges.computeIfAbsent(from, block -> new HashSet<>()).add(to);
+        for (var phi : phis.get(to)) {
+            phi.getArguments().remove(from);
+        }
+    }
+
+    public boolean isRemoved(BasicBlock block) {
+        return removedBlocks.contains(block) || !dominators.isReachable(block);
+    }
+
+    private boolean isRemoved(BasicBlock from, BasicBlock to) {
+        return isRemoved(from) || isRemoved(to) || removedEdges.getOrDefault(from, Set.of()).contains(to);
+    }
+
+    /**
+     * Gives every variable its original name again. Only valid if no instruction was rewritten since the method was
+     * converted.
+     */
+    public void restore() {
+        renameAll(variables);
+    }
+
+    /**
+     * Brings the method back to normal form, with copies at the end of the predecessors of each block with phis.
+     * <p>
+     * Edges from blocks with more than one successor get a block of their own, so the copies are only executed on that
+     * edge, and copies are ordered so that none overwrites a variable another one still has to read.
+     */
+    public void destruct() {
+        var labelsOf = new IdentityHashMap<Instruction, List<String>>();
+        for (var label : method.getLabels().entrySet()) {
+            labelsOf.computeIfAbsent(label.getValue(), inst -> new ArrayList<>()).add(label.getKey());
+        }
+
+        var output = new ArrayList<Instruction>();
+        var splitEdges = new ArrayList<Instruction>();
+        var splitBranches = new HashMap<String, CondBranchInstruction>();
+        var pendingLabels = new ArrayList<String>();
+
+        for (var block : cfg.getBlocks()) {
+            var instructions = block.getInstructions();
+
+            if (isRemoved(block)) {
+                for (var inst : instructions) {
+                    labelsOf.getOrDefault(inst, List.of()).forEach(method.getLabels()::remove);
+                }
+                continue;
+            }
+
+            for (var inst : instructions.subList(0, instructions.size() - 1)) {
+                emit(inst, output, labelsOf, pendingLabels);
+            }
+
+            var last = block.getLast();
+            var next = getNext(block);
+
+            if (removedInstructions.contains(last)) {
+                // a branch that is never taken only falls through
+                pendingLabels.addAll(labelsOf.getOrDefault(last, List.of()));
+                emitCopies(getCopies(block, next), output, labelsOf, pendingLabels);
+                continue;
+            }
+
+            switch (last.getInstType()) {
+                case GOTO -> {
+                    var target = getTarget(((GotoInstruction) last).getLabel());
+                    var copies = getCopies(block, target);
+                    if (instructions.size() == 1 && !copies.isEmpty()) {
+                        // a block with only the jump starts at its copies
+                        pendingLabels.addAll(labelsOf.getOrDefault(last, List.of()));
+                        labelsOf.remove(last);
+                    }
+                    emitCopies(copies, output, labelsOf, pendingLabels);
+                    emit(last, output, labelsOf, pendingLabels);
+                }
+                case BRANCH -> {
+                    var branch = (CondBranchInstruction) last;
+                    var target = getTarget(branch.getLabel());
+                    var copies = getCopies(block, target);
+                    if (!copies.isEmpty()) {
+                        var splitLabel = newLabel();
+                        method.getLabels().put(splitLabel, copies.get(0));
+                        splitEdges.addAll(copies);
+                        splitEdges.add(new GotoInstruction(branch.getLabel()));
+                        splitBranches.put(splitLabel, branch);
+                        branch.setLabel(splitLabel);
+                    }
+
+                    emit(last, output, labelsOf, pendingLabels);
+                    emitCopies(getCopies(block, next), output, labelsOf, pendingLabels);
+                }
+                case RETURN -> emit(last, output, labelsOf, pendingLabels);
+                default -> {
+                    emit(last, output, labelsOf, pendingLabels);
+                    emitCopies(getCopies(block, next), output, labelsOf, pendingLabels);
+                }
+            }
+        }
+
+        if (!pendingLabels.isEmpty()) {
+            throw new RuntimeException("Labels " + pendingLabels + " of method " + method.getMethodName()
+                    + " are not associated with an instruction");
+        }
+
+        output.addAll(splitEdges);
+        method.getInstructions().clear();
+        method.getInstructions().addAll(output);
+
+        coalesce();
+
+        // edges whose copies were all coalesced do not need a block of their own
+        for (var split : splitBranches.entrySet()) {
+            var inst = method.getLabels().get(split.getKey());
+            if (inst instanceof GotoInstruction jump) {
+                split.getValue().setLabel(jump.getLabel());
+                method.getLabels().remove(split.getKey());
+                method.getInstructions().removeIf(other -> other == inst);
+            }
+        }
+    }
+
+    private void emit(Instruction inst, List<Instruction> output, Map<Instruction, List<String>> labelsOf,
+                      List<String> pendingLabels) {
+        output.add(inst);
+        // labels of removed instructions move to the instruction that is executed in their place
+        for (var label : pendingLabels) {
+            labelsOf.computeIfAbsent(inst, key -> new ArrayList<>()).add(label);
+            method.getLabels().put(label, inst);
+        }
+        pendingLabels.clear();
+    }
+
+    private void emitCopies(List<Instruction> copies, List<Instruction> output,
+                            Map<Instruction, List<String>> labelsOf, List<String> pendingLabels) {
+        for (var copy : copies) {
+            for (var label : pendingLabels) {
+                method.getLabels().put(label, copy);
+            }
+            emit(copy, output, labelsOf, pendingLabels);
+        }
+    }
+
+    /**
+     * @return the copies that implement the phis of a block for the edge from one of its predecessors, in an order
+     * where no copy overwrites a variable that is read by a later one
+     */
+    private List<Instruction> getCopies(BasicBlock from, BasicBlock to) {
+        var copies = new ArrayList<Instruction>();
+        if (to == null || isRemoved(from, to)) {
+            return copies;
+        }
+
+        var pending = new LinkedHashMap<String, Element>();
+        for (var phi : phis.get(to)) {
+            var argument = phi.getArguments().get(from);
+            if (argument == null || isOperand(argument, phi.getDest().getName())) {
+                continue;
+            }
+            pending.put(phi.getDest().getName(), argument);
+        }
+
+        while (!pending.isEmpty()) {
+            var ready = pending.keySet().stream()
+                    .filter(dest -> pending.values().stream().noneMatch(source -> isOperand(source, dest)))
+                    .findFirst();
+
+            if (ready.isPresent()) {
+                var dest = ready.get();
+                copies.add(newCopy(dest, pending.remove(dest)));
+                continue;
+            }
+
+            // every destination is still read by another copy, so one of them is saved in a temporary first
+            var dest = pending.keySet().iterator().next();
+            var temporary = newVersion(getVariable(dest));
+            copies.add(newCopy(temporary, new Operand(dest, types.get(dest))));
+            pending.replaceAll((name, source) -> isOperand(source, dest)
+                    ? new Operand(temporary, types.get(temporary))
+                    : source);
+        }
+
+        return copies;
+    }
+
+    private static boolean isOperand(Element element, String name) {
+        return element instanceof Operand operand && operand.getName().equals(name);
+    }
+
+    private Instruction newCopy(String dest, Element source) {
+        var type = types.get(dest);
+        var value = source instanceof Operand operand ? new Operand(operand.getName(), operand.getType()) : source;
+        return new AssignInstruction(new Operand(dest, type), type, new SingleOpInstruction(value));
+    }
+
+    private String newLabel() {
+        int number = 0;
+        while (method.getLabels().containsKey("split" + number)) {
+            number++;
+        }
+        return "split" + number;
+    }
+
+    /**
+     * Merges the variables of each copy into a single one, unless they are live at the same time, and then removes
+     * the copies that became self-copies.
+     */
+    private void coalesce() {
+        var liveness = new LivenessAnalysis(new ControlFlowGraph(method));
+        var instructions = method.getInstructions();
+
+        var interference = new HashMap<String, Set<String>>();
+        for (var name : variables.keySet()) {
+            interference.put(name, new HashSet<>());
+        }
+
+        var entryLive = liveness.getLiveIn(instructions.get(0));
+        for (var name : entryLive) {
+            addInterference(interference, name, entryLive, null);
+        }
+
+        for (var inst : instructions) {
+            var dest = InstUtils.getDest(inst);
+            if (dest.isPresent()) {
+                // a copy does not make its destination interfere with its source, since both hold the same value
+                var source = getCopySource(inst).orElse(null);
+                addInterference(interference, dest.get().getName(), liveness.getLiveOut(inst), source);
+            }
+        }
+
+        var parent = new HashMap<String, String>();
+        for (var name : variables.keySet()) {
+            parent.put(name, name);
+        }
+
+        var params = new HashSet<String>();
+        for (var param : method.getParams()) {
+            if (param instanceof Operand operand && isVariable(operand.getName())) {
+                params.add(operand.getName());
+            }
+        }
+
+        for (var inst : instructions) {
+            var source = getCopySource(inst);
+            var dest = InstUtils.getDest(inst);
+            if (source.isEmpty() || !isVariable(source.get()) || !isVariable(dest.get().getName())) {
+                continue;
+            }
+
+            var destRoot = find(parent, dest.get().getName());
+            var sourceRoot = find(parent, source.get());
+            if (destRoot.equals(sourceRoot)) {
+                continue;
+            }
+
+            boolean interferes = interference.get(destRoot).stream()
+                    .anyMatch(name -> find(parent, name).equals(sourceRoot));
+            // a parameter cannot be renamed, so two of them are never merged
+            if (interferes || params.contains(destRoot) && params.contains(sourceRoot)) {
+                continue;
+            }
+
+            // parameters are kept as the root, so they name their class
+            var root = params.contains(sourceRoot) || !params.contains(destRoot) && isOriginal(sourceRoot)
+                    ? sourceRoot
+                    : destRoot;
+            var child = root.equals(sourceRoot) ? destRoot : sourceRoot;
+            parent.put(child, root);
+            interference.get(root).addAll(interference.get(child));
+        }
+
+        var names = new HashMap<String, String>();
+        for (var name : variables.keySet()) {
+            names.put(name, find(parent, name));
+        }
+        renameAll(names);
+
+        for (int i = instructions.size() - 1; i >= 0; i--) {
+            var inst = instructions.get(i);
+            var source = getCopySource(inst);
+            if (source.isPresent() && source.get().equals(InstUtils.getDest(inst).get().getName())) {
+                InstUtils.removeInstruction(method, i);
+            }
+        }
+    }
+
+    private boolean isOriginal(String name) {
+        return name.equals(variables.get(name));
+    }
+
+    private static String find(Map<String, String> parent, String name) {
+        var root = name;
+        while (!parent.get(root).equals(root)) {
+            root = parent.get(root);
+        }
+        parent.put(name, root);
+        return root;
+    }
+
+    private void addInterference(Map<String, Set<String>> interference, String name, Set<String> live,
+                                 String except) {
+        if (!isVariable(name)) {
+            return;
+        }
+
+        for (var other : live) {
+            if (!other.equals(name) && !other.equals(except) && isVariable(other)) {
+                interference.get(name).add(other);
+                interference.get(other).add(name);
+            }
+        }
+    }
+
+    /**
+     * @return the variable copied by an assignment "x := y" between scalar variables
+     */
+    private static Optional<String> getCopySource(Instruction inst) {
+        if (InstUtils.getDest(inst).isPresent()
+                && ((AssignInstruction) inst).getRhs() instanceof SingleOpInstruction singleOp
+                && singleOp.getSingleOperand() instanceof Operand source
+                && !(source instanceof ArrayOperand)) {
+            return Optional.of(source.getName());
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * Renames, in every instruction of the method, the variables that are keys of the map.
+     */
+    private void renameAll(Map<String, String> names) {
+        for (var inst : method.getInstructions()) {
+            InstUtils.replaceUses(inst, operand -> {
+                var name = names.get(operand.getName());
+                return name != null && !name.equals(operand.getName())
+                        ? new Operand(name, operand.getType())
+                        : operand;
+            });
+
+            var dest = InstUtils.getDest(inst);
+            if (dest.isPresent() && names.containsKey(dest.get().getName())) {
+                dest.get().setName(names.get(dest.get().getName()));
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package pt.up.fe.comp2024.optimization;
+
+/**
+ * Represents an optimization pass over a method in SSA form.
+ */
+public interface SsaPass {
+
+    /**
+     * Optimizes the given method in place, through the given SSA form.
+     *
+     * @param ssa the method in SSA form
+     * @return true if the method was changed
+     */
+    boolean optimize(SsaForm ssa);
+
+    default String getName() {
+        return getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,298 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.BasicBlock;
+import pt.up.fe.comp2024.optimization.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.InstUtils;
+import pt.up.fe.comp2024.optimization.OllirPass;
+
+import java.util.*;
+
+/**
+ * Removes computations of an expression whose value is already available, both in the same block and across blocks.
+ * <p>
+ * Uses a forward "available expressions" analysis: an expression is available at a point if it was computed along
+ * every path to it, and none of the variables it reads was assigned since. Array loads are also made unavailable by
+ * any array store, since arrays may alias, and loads of fields by stores to the same field; calls make both
+ * unavailable. The sets of available expressions are bit sets, indexed by a number given to each expression of the
+ * method. Each expression with a redundant computation gets a new variable, which every computation of the expression
+ * assigns and the redundant ones copy. Copy propagation then removes the extra copies.
+ * <p>
+ * Unlike {@link GlobalValueNumbering}, this also reuses loads, and values computed on every path into a block without
+ * being computed in a block that dominates it.
+ */
+public class CommonSubexpressionElimination implements OllirPass {
+
+    private static final Set<OperationType> COMMUTATIVE = EnumSet.of(OperationType.ADD, OperationType.MUL,
+            OperationType.AND, OperationType.ANDB, OperationType.OR, OperationType.ORB, OperationType.XOR,
+            OperationType.EQ, OperationType.NEQ);
+
+    /**
+     * An expression that can be reused, with what makes its value change.
+     *
+     * @param key        identifies the expression, with the operands of commutative operations in a fixed order
+     * @param variables  the variables it reads
+     * @param readsArray whether it loads an array element
+     * @param field      the field it loads, if any
+     */
+    private record Expression(String key, Set<String> variables, boolean readsArray, String field) {
+    }
+
+    private List<Expression> expressions;
+    private Map<Instruction, Integer> computed;
+    private Map<String, BitSet> readers;
+    private Map<String, BitSet> fieldLoads;
+    private BitSet arrayLoads;
+    private BitSet memoryLoads;
+
+    @Override
+    public boolean optimize(Method method) {
+        var cfg = new ControlFlowGraph(method);
+        if (cfg.getEntry() == null) {
+            return false;
+        }
+
+        var order = cfg.getReversePostOrder();
+        numberExpressions(order);
+
+        // Missing entries are still unknown (every expression), so they do not restrict the intersection
+        var out = new HashMap<BasicBlock, BitSet>();
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (var block : order) {
+                var state = getIn(block, cfg, out);
+                for (var inst : block.getInstructions()) {
+                    transfer(inst, state);
+                }
+
+                if (!state.equals(out.get(block))) {
+                    out.put(block, state);
+                    changed = true;
+                }
+            }
+        }
+
+        var redundant = Collections.newSetFromMap(new IdentityHashMap<Instruction, Boolean>());
+        var reused = new HashSet<String>();
+        for (var block : order) {
+            var state = getIn(block, cfg, out);
+            for (var inst : block.getInstructions()) {
+                var number = computed.get(inst);
+                if (number != null && state.get(number)) {
+                    redundant.add(inst);
+                    reused.add(getExpression(inst).key());
+                }
+                transfer(inst, state);
+            }
+        }
+
+        if (redundant.isEmpty()) {
+            return false;
+        }
+
+        var temporaries = InstUtils.newTemporaries(method);
+        var names = new HashMap<String, String>();
+        var instructions = method.getInstructions();
+        for (int i = 0; i < instructions.size(); i++) {
+            var inst = instructions.get(i);
+            var expression = getExpression(inst);
+            if (expression == null || !reused.contains(expression.key())) {
+                continue;
+            }
+
+            var assign = (AssignInstruction) inst;
+            var type = assign.getTypeOfAssign();
+            var name = names.computeIfAbsent(expression.key(), key -> temporaries.get());
+            var copy = new AssignInstruction(assign.getDest(), type, new SingleOpInstruction(new Operand(name, type)));
+
+            if (redundant.contains(inst)) {
+                InstUtils.replaceInstruction(method, i, copy);
+            } else {
+                InstUtils.replaceInstruction(method, i, new AssignInstruction(new Operand(name, type), type,
+                        assign.getRhs()));
+                instructions.add(++i, copy);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gives each expression computed in the blocks a number, its bit in the sets of available expressions, and groups
+     * the numbers by what makes those expressions unavailable.
+     */
+    private void numberExpressions(List<BasicBlock> order) {
+        this.expressions = new ArrayList<>();
+        this.computed = new IdentityHashMap<>();
+        this.readers = new HashMap<>();
+        this.fieldLoads = new HashMap<>();
+        this.arrayLoads = new BitSet();
+        this.memoryLoads = new BitSet();
+
+        var numbers = new HashMap<String, Integer>();
+        for (var block : order) {
+            for (var inst : block.getInstructions()) {
+                var expression = getExpression(inst);
+                if (expression == null) {
+                    continue;
+                }
+
+                var number = numbers.get(expression.key());
+                if (number == null) {
+                    number = expressions.size();
+                    numbers.put(expression.key(), number);
+                    expressions.add(expression);
+                    for (var variable : expression.variables()) {
+                        readers.computeIfAbsent(variable, name -> new BitSet()).set(number);
+                    }
+                    if (expression.readsArray()) {
+                        arrayLoads.set(number);
+                        memoryLoads.set(number);
+                    }
+                    if (expression.field() != null) {
+                        fieldLoads.computeIfAbsent(expression.field(), name -> new BitSet()).set(number);
+                        memoryLoads.set(number);
+                    }
+                }
+                computed.put(inst, number);
+            }
+        }
+    }
+
+    private static BitSet getIn(BasicBlock block, ControlFlowGraph cfg, Map<BasicBlock, BitSet> out) {
+        if (block == cfg.getEntry()) {
+            return new BitSet();
+        }
+
+        BitSet state = null;
+        for (var pred : block.getPredecessors()) {
+            var predOut = out.get(pred);
+            if (predOut == null) {
+                continue;
+            }
+            if (state == null) {
+                state = (BitSet) predOut.clone();
+            } else {
+                state.and(predOut);
+            }
+        }
+
+        return state != null ? state : new BitSet();
+    }
+
+    private void transfer(Instruction inst, BitSet state) {
+        if (inst instanceof AssignInstruction assign && assign.getDest() instanceof ArrayOperand) {
+            state.andNot(arrayLoads);
+        }
+
+        if (inst instanceof PutFieldInstruction putField) {
+            var loads = fieldLoads.get(putField.getField().getName());
+            if (loads != null) {
+                state.andNot(loads);
+            }
+        }
+
+        if (mayWriteMemory(inst)) {
+            state.andNot(memoryLoads);
+        }
+
+        var dest = InstUtils.getDest(inst);
+        if (dest.isPresent() && readers.containsKey(dest.get().getName())) {
+            state.andNot(readers.get(dest.get().getName()));
+        }
+
+        var number = computed.get(inst);
+        if (number != null && !expressions.get(number).variables().contains(dest.get().getName())) {
+            state.set(number);
+        }
+    }
+
+    private static boolean mayWriteMemory(Instruction inst) {
+        var call = inst instanceof CallInstruction callInst ? callInst
+                : inst instanceof AssignInstruction assign && assign.getRhs() instanceof CallInstruction callInst
+                ? callInst : null;
+
+        return call != null && call.getInvocationType() != CallType.arraylength
+                && call.getInvocationType() != CallType.NEW;
+    }
+
+    /**
+     * @return the expression computed by an assignment to a variable, if it can be reused
+     */
+    private static Expression getExpression(Instruction inst) {
+        if (InstUtils.getDest(inst).isEmpty()) {
+            return null;
+        }
+
+        var rhs = ((AssignInstruction) inst).getRhs();
+        var type = ((AssignInstruction) inst).getTypeOfAssign();
+        var variables = new HashSet<String>();
+
+        String key;
+        boolean readsArray = false;
+        String field = null;
+        if (rhs instanceof BinaryOpInstruction binaryOp) {
+            var op = binaryOp.getOperation().getOpType();
+            var left = getKey(binaryOp.getLeftOperand(), variables);
+            var right = getKey(binaryOp.getRightOperand(), variables);
+            if (left == null || right == null) {
+                return null;
+            }
+            if (COMMUTATIVE.contains(op) && left.compareTo(right) > 0) {
+                var swap = left;
+                left = right;
+                right = swap;
+            }
+            key = op + "." + type + " " + left + " " + right;
+        } else if (rhs instanceof UnaryOpInstruction unaryOp) {
+            var operand = getKey(unaryOp.getOperand(), variables);
+            if (operand == null) {
+                return null;
+            }
+            key = unaryOp.getOperation().getOpType() + "." + type + " " + operand;
+        } else if (rhs instanceof SingleOpInstruction singleOp
+                && singleOp.getSingleOperand() instanceof ArrayOperand array) {
+            var indexes = new ArrayList<String>();
+            for (var index : array.getIndexOperands()) {
+                indexes.add(getKey(index, variables));
+            }
+            if (indexes.contains(null)) {
+                return null;
+            }
+            variables.add(array.getName());
+            key = "load." + type + " " + array.getName() + " " + indexes;
+            readsArray = true;
+        } else if (rhs instanceof GetFieldInstruction getField) {
+            var object = getKey(getField.getObject(), variables);
+            field = getField.getField().getName();
+            key = "getfield." + type + " " + object + " " + field;
+        } else if (rhs instanceof CallInstruction call && call.getInvocationType() == CallType.arraylength) {
+            key = "arraylength " + getKey(call.getCaller(), variables);
+        } else {
+            return null;
+        }
+
+        return new Expression(key, variables, readsArray, field);
+    }
+
+    /**
+     * @return the literal or variable name of an operand, adding variables to the given set, or null if the operand is
+     * itself an array element
+     */
+    private static String getKey(Element element, Set<String> variables) {
+        if (element instanceof LiteralElement literal) {
+            return literal.getLiteral() + "." + literal.getType();
+        }
+        if (element instanceof ArrayOperand) {
+            return null;
+        }
+
+        var operand = (Operand) element;
+        if (operand.getType().getTypeOfElement() != ElementType.THIS) {
+            variables.add(operand.getName());
+        }
+        return operand.getName();
+    }
+}
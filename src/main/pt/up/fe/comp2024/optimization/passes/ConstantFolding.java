@@ -0,0 +1,96 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.InstUtils;
+import pt.up.fe.comp2024.optimization.OllirPass;
+
+import java.util.Optional;
+
+/**
+ * Evaluates, at compile time, unary and binary operations whose operands are all literals.
+ */
+public class ConstantFolding implements OllirPass {
+
+    @Override
+    public boolean optimize(Method method) {
+        boolean changed = false;
+        var instructions = method.getInstructions();
+
+        for (int i = 0; i < instructions.size(); i++) {
+            if (!(instructions.get(i) instanceof AssignInstruction assign)) {
+                continue;
+            }
+
+            var value = fold(assign.getRhs());
+            if (value.isEmpty()) {
+                continue;
+            }
+
+            var literal = InstUtils.newLiteral(value.get(), assign.getDest().getType());
+            var folded = new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                    new SingleOpInstruction(literal));
+            InstUtils.replaceInstruction(method, i, folded);
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    /**
+     * @return the value of the operation, if it only has literal operands and can be safely evaluated
+     */
+    public static Optional<Integer> fold(Instruction inst) {
+        if (inst instanceof UnaryOpInstruction unaryOp) {
+            return InstUtils.getIntLiteral(unaryOp.getOperand())
+                    .flatMap(operand -> evaluate(unaryOp.getOperation().getOpType(), operand));
+        }
+
+        if (inst instanceof BinaryOpInstruction binaryOp) {
+            var left = InstUtils.getIntLiteral(binaryOp.getLeftOperand());
+            var right = InstUtils.getIntLiteral(binaryOp.getRightOperand());
+            if (left.isEmpty() || right.isEmpty()) {
+                return Optional.empty();
+            }
+            return evaluate(binaryOp.getOperation().getOpType(), left.get(), right.get());
+        }
+
+        return Optional.empty();
+    }
+
+    static Optional<Integer> evaluate(OperationType op, int operand) {
+        return switch (op) {
+            case NOT, NOTB -> Optional.of(operand == 0 ? 1 : 0);
+            case SUB -> Optional.of(-operand);
+            default -> Optional.empty();
+        };
+    }
+
+    static Optional<Integer> evaluate(OperationType op, int left, int right) {
+        Integer value = switch (op) {
+            case ADD -> left + right;
+            case SUB -> left - right;
+            case MUL -> left * right;
+            // Division by zero must still throw at run time
+            case DIV -> right != 0 ? left / right : null;
+            case SHL -> left << right;
+            case SHR -> left >> right;
+            case SHRR -> left >>> right;
+            case AND, ANDB -> left & right;
+            case OR, ORB -> left | right;
+            case XOR -> left ^ right;
+            case LTH -> toInt(left < right);
+            case GTH -> toInt(left > right);
+            case LTE -> toInt(left <= right);
+            case GTE -> toInt(left >= right);
+            case EQ -> toInt(left == right);
+            case NEQ -> toInt(left != right);
+            default -> null;
+        };
+
+        return Optional.ofNullable(value);
+    }
+
+    private static int toInt(boolean value) {
+        return value ? 1 : 0;
+    }
+}
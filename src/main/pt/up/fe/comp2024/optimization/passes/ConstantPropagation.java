@@ -0,0 +1,201 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.BasicBlock;
+import pt.up.fe.comp2024.optimization.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.InstUtils;
+import pt.up.fe.comp2024.optimization.OllirPass;
+
+import java.util.*;
+
+/**
+ * Replaces reads of int and boolean variables that hold a known constant by the constant itself.
+ * <p>
+ * Uses a forward data-flow analysis over the CFG. A variable missing from a state has not been assigned yet, and a
+ * variable mapped to null is not a constant.
+ * <p>
+ * Most variables, such as temporaries, are assigned only once, so they hold the same value wherever they are read.
+ * Their values are kept in a single map for the whole method, and only the parameters and the variables assigned more
+ * than once are kept in the state of each block. Blocks are visited from a worklist, in reverse post-order, and only
+ * when the state of a predecessor or the value of a variable they copy changed.
+ */
+public class ConstantPropagation implements OllirPass {
+
+    private List<BasicBlock> order;
+    private int[] orderIndexes;
+    private Set<String> singleDefs;
+    private Map<String, Integer> singleValues;
+    private Map<String, List<Integer>> copiers;
+    private BitSet worklist;
+
+    @Override
+    public boolean optimize(Method method) {
+        var cfg = new ControlFlowGraph(method);
+        if (cfg.getEntry() == null) {
+            return false;
+        }
+
+        this.order = cfg.getReversePostOrder();
+        this.orderIndexes = new int[cfg.getBlocks().size()];
+        this.singleValues = new HashMap<>();
+        this.copiers = new HashMap<>();
+        this.worklist = new BitSet(order.size());
+
+        var entryState = new HashMap<String, Integer>();
+        for (var param : method.getParams()) {
+            if (param instanceof Operand operand) {
+                entryState.put(operand.getName(), null);
+            }
+        }
+        collectSingleDefs(entryState.keySet());
+
+        Arrays.fill(orderIndexes, -1);
+        for (int i = 0; i < order.size(); i++) {
+            int index = i;
+            orderIndexes[order.get(index).getId()] = index;
+            for (var inst : order.get(index).getInstructions()) {
+                getCopySource(inst).filter(source -> singleDefs.contains(source.getName()))
+                        .ifPresent(source -> copiers.computeIfAbsent(source.getName(), name -> new ArrayList<>())
+                                .add(index));
+            }
+        }
+        worklist.set(0, order.size());
+
+        var out = new HashMap<BasicBlock, Map<String, Integer>>();
+        for (int index = worklist.nextSetBit(0); index >= 0; index = worklist.nextSetBit(0)) {
+            worklist.clear(index);
+            var block = order.get(index);
+            var state = getIn(block, cfg, entryState, out);
+            for (var inst : block.getInstructions()) {
+                transfer(inst, state);
+            }
+
+            if (!state.equals(out.get(block))) {
+                out.put(block, state);
+                for (var succ : block.getSuccessors()) {
+                    worklist.set(orderIndexes[succ.getId()]);
+                }
+            }
+        }
+
+        boolean rewritten = false;
+        for (var block : order) {
+            var state = getIn(block, cfg, entryState, out);
+            for (var inst : block.getInstructions()) {
+                rewritten |= InstUtils.replaceUses(inst, operand -> {
+                    if (!InstUtils.isScalar(operand.getType()) || operand instanceof ArrayOperand) {
+                        return operand;
+                    }
+                    var value = getValue(operand.getName(), state);
+                    return value != null ? InstUtils.newLiteral(value, operand.getType()) : operand;
+                });
+                transfer(inst, state);
+            }
+        }
+
+        return rewritten;
+    }
+
+    /**
+     * Finds the variables assigned exactly once, leaving out the parameters, which are also assigned on entry.
+     */
+    private void collectSingleDefs(Set<String> params) {
+        var defs = new HashMap<String, Integer>();
+        for (var block : order) {
+            for (var inst : block.getInstructions()) {
+                InstUtils.getDest(inst).ifPresent(dest -> defs.merge(dest.getName(), 1, Integer::sum));
+            }
+        }
+
+        singleDefs = new HashSet<>();
+        defs.forEach((name, count) -> {
+            if (count == 1 && !params.contains(name)) {
+                singleDefs.add(name);
+            }
+        });
+    }
+
+    private static Map<String, Integer> getIn(BasicBlock block, ControlFlowGraph cfg, Map<String, Integer> entryState,
+                                              Map<BasicBlock, Map<String, Integer>> out) {
+        var state = block == cfg.getEntry() ? new HashMap<>(entryState) : new HashMap<String, Integer>();
+        for (var pred : block.getPredecessors()) {
+            var predOut = out.get(pred);
+            if (predOut != null) {
+                meet(state, predOut);
+            }
+        }
+        return state;
+    }
+
+    private static void meet(Map<String, Integer> state, Map<String, Integer> other) {
+        for (var entry : other.entrySet()) {
+            var name = entry.getKey();
+            if (!state.containsKey(name)) {
+                state.put(name, entry.getValue());
+            } else if (!Objects.equals(state.get(name), entry.getValue())) {
+                state.put(name, null);
+            }
+        }
+    }
+
+    private boolean isKnown(String name, Map<String, Integer> state) {
+        return singleDefs.contains(name) ? singleValues.containsKey(name) : state.containsKey(name);
+    }
+
+    private Integer getValue(String name, Map<String, Integer> state) {
+        return singleDefs.contains(name) ? singleValues.get(name) : state.get(name);
+    }
+
+    private static Optional<Operand> getCopySource(Instruction inst) {
+        if (InstUtils.getDest(inst).isPresent()
+                && ((AssignInstruction) inst).getRhs() instanceof SingleOpInstruction singleOp
+                && singleOp.getSingleOperand() instanceof Operand source
+                && !(source instanceof ArrayOperand)) {
+            return Optional.of(source);
+        }
+        return Optional.empty();
+    }
+
+    private void transfer(Instruction inst, Map<String, Integer> state) {
+        var dest = InstUtils.getDest(inst);
+        if (dest.isEmpty()) {
+            return;
+        }
+
+        var name = dest.get().getName();
+        var rhs = ((AssignInstruction) inst).getRhs();
+        Integer value = null;
+
+        if (InstUtils.isScalar(dest.get().getType()) && rhs instanceof SingleOpInstruction singleOp) {
+            var literal = InstUtils.getIntLiteral(singleOp.getSingleOperand());
+            var source = getCopySource(inst);
+            if (literal.isPresent()) {
+                value = literal.get();
+            } else if (source.isPresent() && !isKnown(source.get().getName(), state)) {
+                // copies a variable that is not assigned yet on any path seen so far
+                if (!singleDefs.contains(name)) {
+                    state.remove(name);
+                }
+                return;
+            } else if (source.isPresent()) {
+                value = getValue(source.get().getName(), state);
+            }
+        }
+
+        if (!singleDefs.contains(name)) {
+            state.put(name, value);
+            return;
+        }
+
+        if (!singleValues.containsKey(name)) {
+            singleValues.put(name, value);
+        } else if (Objects.equals(singleValues.get(name), value)) {
+            return;
+        } else {
+            singleValues.put(name, null);
+        }
+        for (var index : copiers.getOrDefault(name, List.of())) {
+            worklist.set(index);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.InstUtils;
+import pt.up.fe.comp2024.optimization.OllirPass;
+
+import java.util.*;
+
+/**
+ * Simplifies the control flow of a method without SSA form:
+ * <ul>
+ *     <li>branches on constant conditions become a goto, or are removed if never taken;</li>
+ *     <li>jumps to a block that only jumps elsewhere go directly to the final target;</li>
+ *     <li>jumps to the next instruction are removed;</li>
+ *     <li>blocks that cannot be reached from the entry are removed, with their labels;</li>
+ *     <li>labels that no jump refers to are removed, which merges the blocks they separated.</li>
+ * </ul>
+ */
+public class ControlFlowSimplification implements OllirPass {
+
+    @Override
+    public boolean optimize(Method method) {
+        if (method.getInstructions().isEmpty()) {
+            return false;
+        }
+
+        boolean changed = foldBranches(method);
+        changed |= threadJumps(method);
+        changed |= removeJumpsToNext(method);
+        changed |= removeUnreachable(method);
+        changed |= removeUnusedLabels(method);
+        return changed;
+    }
+
+    private static boolean foldBranches(Method method) {
+        boolean changed = false;
+        var instructions = method.getInstructions();
+
+        for (int i = 0; i < instructions.size(); i++) {
+            if (!(instructions.get(i) instanceof CondBranchInstruction branch)) {
+                continue;
+            }
+
+            var condition = branch.getCondition();
+            var value = condition instanceof SingleOpInstruction singleOp
+                    ? InstUtils.getIntLiteral(singleOp.getSingleOperand())
+                    : ConstantFolding.fold(condition);
+            if (value.isEmpty()) {
+                continue;
+            }
+
+            if (value.get() != 0) {
+                InstUtils.replaceInstruction(method, i, new GotoInstruction(branch.getLabel()));
+                changed = true;
+            } else if (InstUtils.removeInstruction(method, i)) {
+                i--;
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    private static boolean threadJumps(Method method) {
+        boolean changed = false;
+
+        for (var inst : method.getInstructions()) {
+            if (inst instanceof GotoInstruction jump) {
+                var target = getFinalLabel(method, jump.getLabel());
+                if (!target.equals(jump.getLabel())) {
+                    jump.setLabel(target);
+                    changed = true;
+                }
+            } else if (inst instanceof CondBranchInstruction branch) {
+                var target = getFinalLabel(method, branch.getLabel());
+                if (!target.equals(branch.getLabel())) {
+                    branch.setLabel(target);
+                    changed = true;
+                }
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * @return the label reached by following jumps from the given one, stopping at loops of jumps
+     */
+    private static String getFinalLabel(Method method, String label) {
+        var visited = new HashSet<String>();
+        while (visited.add(label) && method.getLabels().get(label) instanceof GotoInstruction jump) {
+            if (visited.contains(jump.getLabel())) {
+                break;
+            }
+            label = jump.getLabel();
+        }
+        return label;
+    }
+
+    private static boolean removeJumpsToNext(Method method) {
+        boolean changed = false;
+        var instructions = method.getInstructions();
+
+        for (int i = 0; i < instructions.size() - 1; i++) {
+            var inst = instructions.get(i);
+            var next = instructions.get(i + 1);
+
+            // conditions are comparisons of variables and literals, which have no side effects
+            boolean jumpsToNext = inst instanceof GotoInstruction jump
+                    && method.getLabels().get(jump.getLabel()) == next
+                    || inst instanceof CondBranchInstruction branch
+                    && method.getLabels().get(branch.getLabel()) == next
+                    && InstUtils.isPure(branch.getCondition());
+
+            if (jumpsToNext && InstUtils.removeInstruction(method, i)) {
+                i--;
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    private static boolean removeUnreachable(Method method) {
+        var cfg = new ControlFlowGraph(method);
+        var reachable = new HashSet<>(cfg.getReversePostOrder());
+        if (reachable.size() == cfg.getBlocks().size()) {
+            return false;
+        }
+
+        var removed = Collections.newSetFromMap(new IdentityHashMap<Instruction, Boolean>());
+        for (var block : cfg.getBlocks()) {
+            if (!reachable.contains(block)) {
+                removed.addAll(block.getInstructions());
+            }
+        }
+
+        method.getInstructions().removeIf(removed::contains);
+        method.getLabels().values().removeIf(removed::contains);
+        return true;
+    }
+
+    private static boolean removeUnusedLabels(Method method) {
+        var used = new HashSet<String>();
+        for (var inst : method.getInstructions()) {
+            if (inst instanceof GotoInstruction jump) {
+                used.add(jump.getLabel());
+            } else if (inst instanceof CondBranchInstruction branch) {
+                used.add(branch.getLabel());
+            }
+        }
+
+        return method.getLabels().keySet().removeIf(label -> !used.contains(label));
+    }
+}
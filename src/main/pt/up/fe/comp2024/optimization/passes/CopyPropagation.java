@@ -0,0 +1,122 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.BasicBlock;
+import pt.up.fe.comp2024.optimization.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.InstUtils;
+import pt.up.fe.comp2024.optimization.OllirPass;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replaces reads of a variable that is a copy of another int or boolean variable (x := y) by reads of the original.
+ * <p>
+ * Uses a forward "available copies" analysis: a copy reaches a point only if it reaches it along every path and
+ * neither side was redefined since.
+ */
+public class CopyPropagation implements OllirPass {
+
+    @Override
+    public boolean optimize(Method method) {
+        var cfg = new ControlFlowGraph(method);
+        if (cfg.getEntry() == null) {
+            return false;
+        }
+
+        var order = cfg.getReversePostOrder();
+        // Missing entries are still unknown (top), so they do not restrict the intersection
+        var out = new HashMap<BasicBlock, Map<String, Operand>>();
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (var block : order) {
+                var state = getIn(block, cfg, out);
+                for (var inst : block.getInstructions()) {
+                    transfer(inst, state);
+                }
+
+                if (!sameCopies(state, out.get(block))) {
+                    out.put(block, state);
+                    changed = true;
+                }
+            }
+        }
+
+        boolean rewritten = false;
+        for (var block : order) {
+            var state = getIn(block, cfg, out);
+            for (var inst : block.getInstructions()) {
+                rewritten |= InstUtils.replaceUses(inst, operand -> {
+                    if (operand instanceof ArrayOperand) {
+                        return operand;
+                    }
+                    var source = state.get(operand.getName());
+                    return source != null ? InstUtils.newOperand(source) : operand;
+                });
+                transfer(inst, state);
+            }
+        }
+
+        return rewritten;
+    }
+
+    private static Map<String, Operand> getIn(BasicBlock block, ControlFlowGraph cfg,
+                                              Map<BasicBlock, Map<String, Operand>> out) {
+        if (block == cfg.getEntry()) {
+            return new HashMap<>();
+        }
+
+        Map<String, Operand> state = null;
+        for (var pred : block.getPredecessors()) {
+            var predOut = out.get(pred);
+            if (predOut == null) {
+                continue;
+            }
+            if (state == null) {
+                state = new HashMap<>(predOut);
+            } else {
+                state.entrySet().removeIf(copy -> !isSameCopy(copy.getValue(), predOut.get(copy.getKey())));
+            }
+        }
+
+        return state != null ? state : new HashMap<>();
+    }
+
+    private static void transfer(Instruction inst, Map<String, Operand> state) {
+        var dest = InstUtils.getDest(inst);
+        if (dest.isEmpty()) {
+            return;
+        }
+
+        var name = dest.get().getName();
+        state.remove(name);
+        state.values().removeIf(source -> source.getName().equals(name));
+
+        if (!InstUtils.isScalar(dest.get().getType())) {
+            return;
+        }
+
+        var rhs = ((AssignInstruction) inst).getRhs();
+        if (rhs instanceof SingleOpInstruction singleOp
+                && singleOp.getSingleOperand() instanceof Operand source
+                && !(source instanceof ArrayOperand)
+                && !source.getName().equals(name)
+                && InstUtils.isScalar(source.getType())) {
+            state.put(name, source);
+        }
+    }
+
+    private static boolean sameCopies(Map<String, Operand> state, Map<String, Operand> other) {
+        if (other == null || state.size() != other.size()) {
+            return false;
+        }
+
+        return state.entrySet().stream().allMatch(copy -> isSameCopy(copy.getValue(), other.get(copy.getKey())));
+    }
+
+    private static boolean isSameCopy(Operand source, Operand other) {
+        return other != null && source.getName().equals(other.getName());
+    }
+}
@@ -0,0 +1,61 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.InstUtils;
+import pt.up.fe.comp2024.optimization.LivenessAnalysis;
+import pt.up.fe.comp2024.optimization.OllirPass;
+
+/**
+ * Removes assignments whose result is not live afterwards and whose right-hand side has no side effects, as well as
+ * self-copies (x := x).
+ * <p>
+ * Liveness also finds assignments that are overwritten before being read, even if the variable is read elsewhere.
+ * Removing an assignment can make the ones that computed its operands dead too, so the analysis is repeated until no
+ * assignment is removed.
+ */
+public class DeadCodeElimination implements OllirPass {
+
+    @Override
+    public boolean optimize(Method method) {
+        boolean changed = false;
+
+        boolean removed = true;
+        while (removed) {
+            removed = false;
+
+            var cfg = new ControlFlowGraph(method);
+            if (cfg.getEntry() == null) {
+                break;
+            }
+
+            var liveness = new LivenessAnalysis(cfg);
+            var instructions = method.getInstructions();
+            for (int i = instructions.size() - 1; i >= 0; i--) {
+                var inst = instructions.get(i);
+                var dest = InstUtils.getDest(inst);
+                if (dest.isEmpty()) {
+                    continue;
+                }
+
+                var rhs = ((AssignInstruction) inst).getRhs();
+                var name = dest.get().getName();
+                boolean isDead = !liveness.getLiveOut(inst).contains(name) && InstUtils.isPure(rhs);
+
+                // the liveness of the remaining instructions can only shrink, so it stays safe to use
+                if ((isDead || isSelfCopy(name, rhs)) && InstUtils.removeInstruction(method, i)) {
+                    removed = changed = true;
+                }
+            }
+        }
+
+        return changed;
+    }
+
+    private static boolean isSelfCopy(String name, Instruction rhs) {
+        return rhs instanceof SingleOpInstruction singleOp
+                && singleOp.getSingleOperand() instanceof Operand source
+                && !(source instanceof ArrayOperand)
+                && source.getName().equals(name);
+    }
+}
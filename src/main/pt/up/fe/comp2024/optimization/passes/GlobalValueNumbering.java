@@ -0,0 +1,191 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.BasicBlock;
+import pt.up.fe.comp2024.optimization.InstUtils;
+import pt.up.fe.comp2024.optimization.SsaForm;
+import pt.up.fe.comp2024.optimization.SsaPass;
+
+import java.util.*;
+
+/**
+ * Removes computations of a value that was already computed, using a hash-based value numbering over the dominator
+ * tree.
+ * <p>
+ * In SSA form, an expression computed in a block has the same value in every block it dominates, so the dominator
+ * tree is walked keeping a table from expressions to the variable that first computed them. A computation found in the
+ * table becomes a copy of that variable, and its uses read the variable directly. Phis whose arguments are all the
+ * same value, or that repeat another phi of the same block, are handled the same way.
+ */
+public class GlobalValueNumbering implements SsaPass {
+
+    private static final Set<OperationType> COMMUTATIVE = EnumSet.of(OperationType.ADD, OperationType.MUL,
+            OperationType.AND, OperationType.ANDB, OperationType.OR, OperationType.ORB, OperationType.XOR,
+            OperationType.EQ, OperationType.NEQ);
+
+    private SsaForm ssa;
+    private Map<String, String> expressions;
+    private Map<String, String> leaders;
+    private boolean changed;
+
+    @Override
+    public boolean optimize(SsaForm ssa) {
+        var entry = ssa.getCfg().getEntry();
+        if (entry == null) {
+            return false;
+        }
+
+        this.ssa = ssa;
+        this.expressions = new HashMap<>();
+        this.leaders = new HashMap<>();
+        this.changed = false;
+
+        visit(entry);
+
+        // arguments of phis can come from blocks visited after the phi
+        for (var block : ssa.getDominators().getReversePostOrder()) {
+            for (var phi : ssa.getPhis(block)) {
+                phi.getArguments().replaceAll((pred, argument) -> argument instanceof Operand operand
+                        && leaders.containsKey(operand.getName())
+                        ? new Operand(getLeader(operand.getName()), operand.getType())
+                        : argument);
+            }
+        }
+
+        return changed;
+    }
+
+    private void visit(BasicBlock block) {
+        var added = new ArrayList<String>();
+
+        for (var phi : ssa.getPhis(block)) {
+            visitPhi(phi, block, added);
+        }
+
+        for (var inst : List.copyOf(block.getInstructions())) {
+            InstUtils.replaceUses(inst, operand -> leaders.containsKey(operand.getName())
+                    ? new Operand(getLeader(operand.getName()), operand.getType())
+                    : operand);
+            visitInstruction(inst, added);
+        }
+
+        for (var child : ssa.getDominators().getChildren(block)) {
+            visit(child);
+        }
+
+        added.forEach(expressions::remove);
+    }
+
+    private void visitPhi(SsaForm.Phi phi, BasicBlock block, List<String> added) {
+        var dest = phi.getDest().getName();
+
+        var arguments = new ArrayList<String>();
+        for (var argument : phi.getArguments().values()) {
+            var key = getKey(argument);
+            if (!key.equals(getKey(phi.getDest()))) {
+                arguments.add(key);
+            }
+        }
+
+        // every argument is the same variable, so the phi is a copy of it
+        var distinct = new HashSet<>(arguments);
+        if (distinct.size() == 1 && phi.getArguments().values().stream()
+                .allMatch(argument -> argument instanceof Operand)) {
+            var argument = phi.getArguments().values().stream()
+                    .map(Operand.class::cast)
+                    .filter(operand -> !getLeader(operand.getName()).equals(dest))
+                    .findFirst();
+            if (argument.isPresent()) {
+                leaders.put(dest, getLeader(argument.get().getName()));
+                changed = true;
+                return;
+            }
+        }
+
+        var key = "phi " + block.getId() + " " + phi.getArguments().entrySet().stream()
+                .map(argument -> argument.getKey().getId() + ":" + getKey(argument.getValue()))
+                .toList();
+        addExpression(dest, key, added);
+    }
+
+    private void visitInstruction(Instruction inst, List<String> added) {
+        var dest = InstUtils.getDest(inst);
+        if (dest.isEmpty() || !ssa.isVariable(dest.get().getName())) {
+            return;
+        }
+
+        var assign = (AssignInstruction) inst;
+        var rhs = assign.getRhs();
+        var operands = rhs instanceof UnaryOpInstruction unaryOp ? List.of(unaryOp.getOperand())
+                : rhs instanceof BinaryOpInstruction binaryOp
+                ? List.of(binaryOp.getLeftOperand(), binaryOp.getRightOperand())
+                : List.<Element>of();
+        if (operands.isEmpty() || !InstUtils.isPure(rhs) || !operands.stream().allMatch(this::isValue)) {
+            return;
+        }
+
+        var key = getKey(rhs, assign.getTypeOfAssign());
+        if (addExpression(dest.get().getName(), key, added)) {
+            var leader = new Operand(getLeader(dest.get().getName()), dest.get().getType());
+            ssa.replaceInstruction(inst, new AssignInstruction(dest.get(), assign.getTypeOfAssign(),
+                    new SingleOpInstruction(leader)));
+        }
+    }
+
+    /**
+     * @return true if the expression was already computed, in which case the variable becomes a copy of the variable
+     * that computed it
+     */
+    private boolean addExpression(String name, String key, List<String> added) {
+        var leader = expressions.get(key);
+        if (leader != null) {
+            leaders.put(name, leader);
+            changed = true;
+            return true;
+        }
+
+        expressions.put(key, name);
+        added.add(key);
+        return false;
+    }
+
+    /**
+     * @return whether the element is a literal or a variable in SSA form, whose value cannot change
+     */
+    private boolean isValue(Element element) {
+        return element instanceof LiteralElement
+                || element instanceof Operand operand && !(operand instanceof ArrayOperand)
+                && ssa.isVariable(operand.getName());
+    }
+
+    private String getLeader(String name) {
+        return leaders.getOrDefault(name, name);
+    }
+
+    private String getKey(Element element) {
+        if (element instanceof LiteralElement literal) {
+            return literal.getLiteral() + "." + literal.getType();
+        }
+
+        var operand = (Operand) element;
+        return getLeader(operand.getName());
+    }
+
+    private String getKey(Instruction rhs, Type type) {
+        if (rhs instanceof UnaryOpInstruction unaryOp) {
+            return unaryOp.getOperation().getOpType() + "." + type + " " + getKey(unaryOp.getOperand());
+        }
+
+        var binaryOp = (BinaryOpInstruction) rhs;
+        var op = binaryOp.getOperation().getOpType();
+        var left = getKey(binaryOp.getLeftOperand());
+        var right = getKey(binaryOp.getRightOperand());
+        if (COMMUTATIVE.contains(op) && left.compareTo(right) > 0) {
+            var swap = left;
+            left = right;
+            right = swap;
+        }
+
+        return op + "." + type + " " + left + " " + right;
+    }
+}
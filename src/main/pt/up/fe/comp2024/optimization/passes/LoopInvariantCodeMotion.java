@@ -0,0 +1,239 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.*;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Moves computations whose value does not change between iterations of a loop to a preheader, a block that runs once
+ * before the loop is entered.
+ * <p>
+ * Only computations without side effects are moved: arithmetic, copies, loads of fields of "this" that the loop does
+ * not write, and lengths of arrays that were already accessed before the loop. A computation is invariant if each of
+ * its operands is either not assigned in the loop, or only assigned by another invariant computation. Its variable must
+ * be assigned only once in the loop and not be read before that assignment, and, unless its block runs on every
+ * iteration, must not be read after the loop.
+ */
+public class LoopInvariantCodeMotion implements OllirPass {
+
+    @Override
+    public boolean optimize(Method method) {
+        boolean changed = false;
+
+        // hoisting changes the blocks, so a loop next to one that changed waits until the CFG is built again
+        boolean hoisted = true;
+        while (hoisted) {
+            hoisted = false;
+
+            var cfg = new ControlFlowGraph(method);
+            if (cfg.getEntry() == null) {
+                break;
+            }
+
+            var dominators = new DominatorTree(cfg);
+            var loops = NaturalLoop.find(dominators);
+            if (loops.isEmpty()) {
+                break;
+            }
+
+            var liveness = new LivenessAnalysis(cfg);
+            var changedBlocks = new HashSet<BasicBlock>();
+            for (var loop : loops) {
+                var entries = loop.getEntries(dominators);
+                if (Stream.of(loop.getBlocks(), entries, loop.getExits()).flatMap(Collection::stream)
+                        .anyMatch(changedBlocks::contains)) {
+                    continue;
+                }
+
+                if (hoist(method, loop, entries, dominators, liveness)) {
+                    hoisted = changed = true;
+                    changedBlocks.addAll(loop.getBlocks());
+                    changedBlocks.addAll(entries);
+                }
+            }
+        }
+
+        return changed;
+    }
+
+    private boolean hoist(Method method, NaturalLoop loop, List<BasicBlock> entries, DominatorTree dominators,
+                          LivenessAnalysis liveness) {
+        if (entries.isEmpty()) {
+            return false;
+        }
+
+        var blocks = dominators.getReversePostOrder().stream().filter(loop::contains).toList();
+        var assignments = new HashMap<String, Integer>();
+        var writtenFields = new HashSet<String>();
+        boolean writesFields = false;
+        for (var block : blocks) {
+            for (var inst : block.getInstructions()) {
+                getAssigned(inst).ifPresent(name -> assignments.merge(name, 1, Integer::sum));
+                if (inst instanceof PutFieldInstruction putField) {
+                    writtenFields.add(putField.getField().getName());
+                }
+                writesFields |= mayWriteFields(method, inst);
+            }
+        }
+
+        var liveAtHeader = liveness.getLiveIn(loop.getHeader());
+        var liveAfterLoop = new HashSet<String>();
+        for (var exit : loop.getExits()) {
+            liveAfterLoop.addAll(liveness.getLiveIn(exit));
+        }
+        var exiting = blocks.stream()
+                .filter(block -> block.getSuccessors().stream().anyMatch(succ -> !loop.contains(succ)))
+                .toList();
+
+        var invariant = new HashSet<String>();
+        var hoisted = new ArrayList<Instruction>();
+        var isHoisted = Collections.newSetFromMap(new IdentityHashMap<Instruction, Boolean>());
+        boolean found = true;
+        while (found) {
+            found = false;
+            for (var block : blocks) {
+                for (var inst : block.getInstructions()) {
+                    if (isHoisted.contains(inst) || !(inst instanceof AssignInstruction assign)) {
+                        continue;
+                    }
+
+                    var name = getAssigned(inst);
+                    if (name.isEmpty() || assignments.get(name.get()) != 1 || liveAtHeader.contains(name.get())) {
+                        continue;
+                    }
+
+                    // a computation that may be skipped in the loop must not change what is read after it
+                    boolean alwaysRuns = exiting.stream().allMatch(exit -> dominators.dominates(block, exit));
+                    if (!alwaysRuns && liveAfterLoop.contains(name.get())) {
+                        continue;
+                    }
+
+                    var operands = getOperands(assign.getRhs());
+                    if (operands.isEmpty() || !operands.get().stream()
+                            .allMatch(operand -> !assignments.containsKey(operand) || invariant.contains(operand))) {
+                        continue;
+                    }
+
+                    if (!canHoist(assign.getRhs(), entries, writtenFields, writesFields)) {
+                        continue;
+                    }
+
+                    hoisted.add(inst);
+                    isHoisted.add(inst);
+                    invariant.add(name.get());
+                    found = true;
+                }
+            }
+        }
+
+        return !hoisted.isEmpty() && loop.insertPreheader(method, dominators, hoisted);
+    }
+
+    private static boolean canHoist(Instruction rhs, List<BasicBlock> entries, Set<String> writtenFields,
+                                    boolean writesFields) {
+        if (rhs instanceof GetFieldInstruction getField) {
+            return InstUtils.isPure(rhs) && !writesFields && !writtenFields.contains(getField.getField().getName());
+        }
+
+        if (rhs instanceof CallInstruction call) {
+            // the length of a null array throws, so it is only safe if the loop is entered after an access to it
+            return call.getInvocationType() == CallType.arraylength && entries.size() == 1
+                    && isAccessed(((Operand) call.getCaller()).getName(), entries.get(0));
+        }
+
+        return InstUtils.isPure(rhs);
+    }
+
+    /**
+     * @return whether the array is accessed in the block after its last assignment, so it cannot be null at the end
+     */
+    private static boolean isAccessed(String array, BasicBlock block) {
+        var instructions = block.getInstructions();
+        for (int i = instructions.size() - 1; i >= 0; i--) {
+            var inst = instructions.get(i);
+            if (getAssigned(inst).filter(array::equals).isPresent()) {
+                return false;
+            }
+
+            if (inst instanceof AssignInstruction assign) {
+                if (assign.getDest() instanceof ArrayOperand dest && dest.getName().equals(array)) {
+                    return true;
+                }
+
+                var rhs = assign.getRhs();
+                if (rhs instanceof SingleOpInstruction singleOp
+                        && singleOp.getSingleOperand() instanceof ArrayOperand source
+                        && source.getName().equals(array)) {
+                    return true;
+                }
+                if (rhs instanceof CallInstruction call && call.getInvocationType() == CallType.arraylength
+                        && ((Operand) call.getCaller()).getName().equals(array)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Static calls to other classes cannot reach the fields of this object, unless given a reference to it.
+     */
+    private static boolean mayWriteFields(Method method, Instruction inst) {
+        var call = inst instanceof CallInstruction callInst ? callInst
+                : inst instanceof AssignInstruction assign && assign.getRhs() instanceof CallInstruction callInst
+                ? callInst : null;
+        if (call == null) {
+            return false;
+        }
+
+        return switch (call.getInvocationType()) {
+            case arraylength, NEW -> false;
+            case invokestatic -> ((Operand) call.getCaller()).getName().equals(method.getOllirClass().getClassName())
+                    || call.getArguments().stream().anyMatch(argument -> isReference(argument.getType()));
+            default -> true;
+        };
+    }
+
+    private static boolean isReference(Type type) {
+        var elementType = type.getTypeOfElement();
+        return elementType == ElementType.OBJECTREF || elementType == ElementType.CLASS
+                || elementType == ElementType.THIS;
+    }
+
+    private static Optional<String> getAssigned(Instruction inst) {
+        return InstUtils.getDest(inst).map(Operand::getName);
+    }
+
+    /**
+     * @return the variables read by a computation that can be moved, or empty if it cannot be moved
+     */
+    private static Optional<List<String>> getOperands(Instruction rhs) {
+        List<Element> elements = switch (rhs.getInstType()) {
+            case NOPER -> List.of(((SingleOpInstruction) rhs).getSingleOperand());
+            case UNARYOPER -> List.of(((UnaryOpInstruction) rhs).getOperand());
+            case BINARYOPER -> List.of(((BinaryOpInstruction) rhs).getLeftOperand(),
+                    ((BinaryOpInstruction) rhs).getRightOperand());
+            case GETFIELD -> List.of();
+            case CALL -> List.of(((CallInstruction) rhs).getCaller());
+            default -> null;
+        };
+
+        if (elements == null) {
+            return Optional.empty();
+        }
+
+        var names = new ArrayList<String>();
+        for (var element : elements) {
+            if (element instanceof ArrayOperand) {
+                return Optional.empty();
+            }
+            if (element instanceof Operand operand) {
+                names.add(operand.getName());
+            }
+        }
+        return Optional.of(names);
+    }
+}
@@ -0,0 +1,306 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.BasicBlock;
+import pt.up.fe.comp2024.optimization.InstUtils;
+import pt.up.fe.comp2024.optimization.SsaForm;
+import pt.up.fe.comp2024.optimization.SsaPass;
+
+import java.util.*;
+
+/**
+ * Finds the variables that hold a constant and the edges that can be taken, using the sparse conditional constant
+ * propagation algorithm of Wegman and Zadeck.
+ * <p>
+ * Unlike {@link ConstantPropagation}, the values that reach a block through an edge that is never taken are ignored,
+ * so a constant assigned in a loop or in a branch that is never executed does not hide other constants. Uses of
+ * constants are replaced by literals, branches with a constant condition become gotos or are removed, and blocks that
+ * are never executed are removed.
+ */
+public class SparseConditionalConstantPropagation implements SsaPass {
+
+    /**
+     * A value of the lattice: unknown yet (top), a constant, or not a constant (bottom).
+     */
+    private record Value(boolean isTop, Integer constant) {
+        static final Value TOP = new Value(true, null);
+        static final Value BOTTOM = new Value(false, null);
+
+        static Value of(int constant) {
+            return new Value(false, constant);
+        }
+
+        static Value of(Optional<Integer> constant) {
+            return constant.map(Value::of).orElse(BOTTOM);
+        }
+
+        boolean isConstant() {
+            return constant != null;
+        }
+
+        Value meet(Value other) {
+            if (isTop) {
+                return other;
+            }
+            if (other.isTop || equals(other)) {
+                return this;
+            }
+            return BOTTOM;
+        }
+    }
+
+    private SsaForm ssa;
+    private Map<String, Value> values;
+    private Map<String, List<Object>> users;
+    private Map<SsaForm.Phi, BasicBlock> phiBlocks;
+    private Set<BasicBlock> executableBlocks;
+    private Map<BasicBlock, Set<BasicBlock>> executableEdges;
+    private Deque<BasicBlock[]> edgeWorklist;
+    private Deque<String> variableWorklist;
+
+    @Override
+    public boolean optimize(SsaForm ssa) {
+        var entry = ssa.getCfg().getEntry();
+        if (entry == null) {
+            return false;
+        }
+
+        this.ssa = ssa;
+        this.values = new HashMap<>();
+        this.users = new HashMap<>();
+        this.phiBlocks = new IdentityHashMap<>();
+        this.executableBlocks = new HashSet<>();
+        this.executableEdges = new HashMap<>();
+        this.edgeWorklist = new ArrayDeque<>();
+        this.variableWorklist = new ArrayDeque<>();
+
+        collectUsers();
+        edgeWorklist.add(new BasicBlock[]{null, entry});
+
+        while (!edgeWorklist.isEmpty() || !variableWorklist.isEmpty()) {
+            if (!edgeWorklist.isEmpty()) {
+                var edge = edgeWorklist.pop();
+                visitEdge(edge[0], edge[1]);
+                continue;
+            }
+
+            for (var user : users.getOrDefault(variableWorklist.pop(), List.of())) {
+                if (user instanceof SsaForm.Phi phi) {
+                    visitPhi(phi, phiBlocks.get(phi));
+                } else {
+                    var inst = (Instruction) user;
+                    if (executableBlocks.contains(ssa.getBlock(inst))) {
+                        visitInstruction(inst, ssa.getBlock(inst));
+                    }
+                }
+            }
+        }
+
+        return rewrite();
+    }
+
+    private void collectUsers() {
+        for (var block : ssa.getDominators().getReversePostOrder()) {
+            for (var phi : ssa.getPhis(block)) {
+                phiBlocks.put(phi, block);
+                for (var argument : phi.getArguments().values()) {
+                    if (argument instanceof Operand operand) {
+                        addUser(operand.getName(), phi);
+                    }
+                }
+            }
+
+            for (var inst : block.getInstructions()) {
+                for (var operand : InstUtils.getUses(inst)) {
+                    addUser(operand.getName(), inst);
+                }
+            }
+        }
+    }
+
+    private void addUser(String name, Object user) {
+        if (ssa.isVariable(name)) {
+            users.computeIfAbsent(name, key -> new ArrayList<>()).add(user);
+        }
+    }
+
+    private void visitEdge(BasicBlock from, BasicBlock to) {
+        if (from != null && !executableEdges.computeIfAbsent(from, block -> new HashSet<>()).add(to)) {
+            return;
+        }
+
+        for (var phi : ssa.getPhis(to)) {
+            visitPhi(phi, to);
+        }
+
+        if (executableBlocks.add(to)) {
+            for (var inst : to.getInstructions()) {
+                visitInstruction(inst, to);
+            }
+        }
+    }
+
+    private void visitPhi(SsaForm.Phi phi, BasicBlock block) {
+        var value = Value.TOP;
+        for (var argument : phi.getArguments().entrySet()) {
+            if (isExecutable(argument.getKey(), block)) {
+                value = value.meet(getValue(argument.getValue()));
+            }
+        }
+        setValue(phi.getDest().getName(), value);
+    }
+
+    private void visitInstruction(Instruction inst, BasicBlock block) {
+        var dest = InstUtils.getDest(inst);
+        if (dest.isPresent() && ssa.isVariable(dest.get().getName())) {
+            setValue(dest.get().getName(), evaluate(((AssignInstruction) inst).getRhs()));
+        }
+
+        if (inst != block.getLast()) {
+            return;
+        }
+
+        if (inst instanceof CondBranchInstruction branch) {
+            var condition = evaluate(branch.getCondition());
+            if (condition.isTop()) {
+                return;
+            }
+
+            if (!condition.isConstant() || condition.constant() != 0) {
+                addEdge(block, ssa.getTarget(branch.getLabel()));
+            }
+            if (!condition.isConstant() || condition.constant() == 0) {
+                addEdge(block, ssa.getNext(block));
+            }
+            return;
+        }
+
+        for (var succ : block.getSuccessors()) {
+            addEdge(block, succ);
+        }
+    }
+
+    private void addEdge(BasicBlock from, BasicBlock to) {
+        if (to != null && !isExecutable(from, to)) {
+            edgeWorklist.add(new BasicBlock[]{from, to});
+        }
+    }
+
+    private boolean isExecutable(BasicBlock from, BasicBlock to) {
+        return executableEdges.getOrDefault(from, Set.of()).contains(to);
+    }
+
+    private void setValue(String name, Value value) {
+        var oldValue = values.getOrDefault(name, Value.TOP);
+        var newValue = oldValue.meet(value);
+        if (!newValue.equals(oldValue)) {
+            values.put(name, newValue);
+            variableWorklist.add(name);
+        }
+    }
+
+    private Value getValue(Element element) {
+        var literal = InstUtils.getIntLiteral(element);
+        if (literal.isPresent()) {
+            return Value.of(literal.get());
+        }
+
+        if (!(element instanceof Operand operand) || element instanceof ArrayOperand
+                || !ssa.isVariable(operand.getName())) {
+            return Value.BOTTOM;
+        }
+
+        // the value a variable has when the method starts is not known
+        if (operand.getName().equals(ssa.getVariable(operand.getName()))) {
+            return Value.BOTTOM;
+        }
+
+        return values.getOrDefault(operand.getName(), Value.TOP);
+    }
+
+    private Value evaluate(Instruction rhs) {
+        if (rhs instanceof SingleOpInstruction singleOp) {
+            return getValue(singleOp.getSingleOperand());
+        }
+
+        if (rhs instanceof UnaryOpInstruction unaryOp) {
+            var operand = getValue(unaryOp.getOperand());
+            if (!operand.isConstant()) {
+                return operand;
+            }
+            return Value.of(ConstantFolding.evaluate(unaryOp.getOperation().getOpType(), operand.constant()));
+        }
+
+        if (rhs instanceof BinaryOpInstruction binaryOp) {
+            var left = getValue(binaryOp.getLeftOperand());
+            var right = getValue(binaryOp.getRightOperand());
+            if (left.equals(Value.BOTTOM) || right.equals(Value.BOTTOM)) {
+                return Value.BOTTOM;
+            }
+            if (left.isTop() || right.isTop()) {
+                return Value.TOP;
+            }
+            return Value.of(ConstantFolding.evaluate(binaryOp.getOperation().getOpType(), left.constant(),
+                    right.constant()));
+        }
+
+        return Value.BOTTOM;
+    }
+
+    private boolean rewrite() {
+        boolean changed = false;
+
+        for (var block : ssa.getDominators().getReversePostOrder()) {
+            if (!executableBlocks.contains(block)) {
+                ssa.removeBlock(block);
+                changed = true;
+            }
+        }
+
+        for (var block : ssa.getDominators().getReversePostOrder()) {
+            if (!executableBlocks.contains(block)) {
+                continue;
+            }
+
+            for (var inst : List.copyOf(block.getInstructions())) {
+                changed |= InstUtils.replaceUses(inst, operand -> {
+                    var value = getValue(operand);
+                    return value.isConstant() ? InstUtils.newLiteral(value.constant(), operand.getType()) : operand;
+                });
+
+                if (inst instanceof CondBranchInstruction branch) {
+                    changed |= rewriteBranch(branch, block);
+                }
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Replaces a branch that is always taken by a goto, and removes a branch that is never taken.
+     */
+    private boolean rewriteBranch(CondBranchInstruction branch, BasicBlock block) {
+        var condition = evaluate(branch.getCondition());
+        if (!condition.isConstant()) {
+            return false;
+        }
+
+        var target = ssa.getTarget(branch.getLabel());
+        var next = ssa.getNext(block);
+
+        if (condition.constant() != 0) {
+            ssa.replaceInstruction(branch, new GotoInstruction(branch.getLabel()));
+            if (next != null && next != target) {
+                ssa.removeEdge(block, next);
+            }
+        } else {
+            ssa.removeInstruction(branch);
+            if (next != target) {
+                ssa.removeEdge(block, target);
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,52 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.Method;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.optimization.SsaForm;
+import pt.up.fe.comp2024.optimization.SsaPass;
+
+import java.util.List;
+
+/**
+ * Converts a method to SSA form, runs the SSA passes over it, and converts it back.
+ * <p>
+ * The copies that replace the phis are coalesced when converting back, so the register allocator usually sees the
+ * same variables as before the conversion.
+ */
+public class SsaOptimization implements OllirPass {
+
+    private final List<SsaPass> passes;
+
+    public SsaOptimization(List<SsaPass> passes) {
+        this.passes = passes;
+    }
+
+    public SsaOptimization() {
+        this(List.of(
+                new SparseConditionalConstantPropagation(),
+                new GlobalValueNumbering()
+        ));
+    }
+
+    @Override
+    public boolean optimize(Method method) {
+        if (!SsaForm.canConvert(method)) {
+            return false;
+        }
+
+        var ssa = new SsaForm(method);
+
+        boolean changed = false;
+        for (var pass : passes) {
+            changed |= pass.optimize(ssa);
+        }
+
+        if (changed) {
+            ssa.destruct();
+        } else {
+            ssa.restore();
+        }
+
+        return changed;
+    }
+}
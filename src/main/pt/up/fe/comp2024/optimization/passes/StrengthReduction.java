@@ -0,0 +1,243 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Replaces expensive operations by cheaper ones.
+ * <p>
+ * In loops, a product "j := i * k" of a basic induction variable i and an invariant k is replaced by a new variable
+ * that starts as i * k before the loop and is incremented by step * k right after i is, so the multiplication becomes an
+ * addition, usually an iinc. Elsewhere, multiplications by powers of two become shifts, and so do divisions, with a
+ * correction that rounds negative dividends towards zero as idiv does.
+ */
+public class StrengthReduction implements OllirPass {
+
+    private static final Type INT = new Type(ElementType.INT32);
+
+    @Override
+    public boolean optimize(Method method) {
+        boolean changed = false;
+
+        // the new variables change the blocks, so the loops are found again after each loop that changes
+        boolean reduced = true;
+        while (reduced) {
+            reduced = false;
+
+            var cfg = new ControlFlowGraph(method);
+            if (cfg.getEntry() == null) {
+                break;
+            }
+
+            var dominators = new DominatorTree(cfg);
+            for (var loop : NaturalLoop.find(dominators)) {
+                if (reduceInductionVariables(method, new InductionVariables(loop), dominators)) {
+                    reduced = changed = true;
+                    break;
+                }
+            }
+        }
+
+        return replacePowersOfTwo(method) || changed;
+    }
+
+    private boolean reduceInductionVariables(Method method, InductionVariables inductionVariables,
+                                             DominatorTree dominators) {
+        var loop = inductionVariables.getLoop();
+
+        for (var block : dominators.getReversePostOrder()) {
+            if (!loop.contains(block)) {
+                continue;
+            }
+
+            for (var inst : block.getInstructions()) {
+                if (!(inst instanceof AssignInstruction assign)
+                        || !(assign.getRhs() instanceof BinaryOpInstruction binaryOp)
+                        || binaryOp.getOperation().getOpType() != OperationType.MUL
+                        || InstUtils.getDest(inst).isEmpty()) {
+                    continue;
+                }
+
+                var left = binaryOp.getLeftOperand();
+                var right = binaryOp.getRightOperand();
+                var variable = getInductionVariable(inductionVariables, left, right);
+                var factor = right;
+                if (variable == null) {
+                    variable = getInductionVariable(inductionVariables, right, left);
+                    factor = left;
+                }
+
+                if (variable != null && variable.update() != inst
+                        && reduce(method, loop, dominators, assign, variable, factor)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static InductionVariables.BasicInductionVariable getInductionVariable(
+            InductionVariables inductionVariables, Element variable, Element factor) {
+        if (!(variable instanceof Operand operand) || !inductionVariables.isInvariant(factor)) {
+            return null;
+        }
+        return inductionVariables.getBasic(operand.getName()).orElse(null);
+    }
+
+    /**
+     * Replaces "j := i * k" by a copy of a new variable that is kept equal to i * k in the whole loop.
+     */
+    private boolean reduce(Method method, NaturalLoop loop, DominatorTree dominators, AssignInstruction product,
+                           InductionVariables.BasicInductionVariable variable, Element factor) {
+        var temporaries = InstUtils.newTemporaries(method);
+        var reduced = temporaries.get();
+
+        var preheader = new ArrayList<Instruction>();
+        preheader.add(assign(reduced, new BinaryOpInstruction(new Operand(variable.name(), INT),
+                new Operation(OperationType.MUL, INT), copy(factor))));
+
+        // steps of 1 and -1 only need the factor itself
+        var increment = copy(factor);
+        var operation = variable.step() < 0 ? OperationType.SUB : OperationType.ADD;
+        var constantFactor = InstUtils.getIntLiteral(factor);
+        if (constantFactor.isPresent()) {
+            increment = InstUtils.newLiteral(variable.step() * constantFactor.get(), INT);
+            operation = OperationType.ADD;
+        } else if (Math.abs(variable.step()) != 1) {
+            var name = temporaries.get();
+            preheader.add(assign(name, new BinaryOpInstruction(copy(factor), new Operation(OperationType.MUL, INT),
+                    InstUtils.newLiteral(variable.step(), INT))));
+            increment = new Operand(name, INT);
+            operation = OperationType.ADD;
+        }
+
+        if (!loop.insertPreheader(method, dominators, preheader)) {
+            return false;
+        }
+
+        var instructions = method.getInstructions();
+        instructions.add(indexOf(instructions, variable.update()) + 1, assign(reduced,
+                new BinaryOpInstruction(new Operand(reduced, INT), new Operation(operation, INT), increment)));
+
+        InstUtils.replaceInstruction(method, indexOf(instructions, product), new AssignInstruction(product.getDest(),
+                product.getTypeOfAssign(), new SingleOpInstruction(new Operand(reduced, INT))));
+        return true;
+    }
+
+    private boolean replacePowersOfTwo(Method method) {
+        boolean changed = false;
+        var instructions = method.getInstructions();
+        Supplier<String> temporaries = null;
+
+        for (int i = 0; i < instructions.size(); i++) {
+            if (!(instructions.get(i) instanceof AssignInstruction assign)
+                    || !(assign.getRhs() instanceof BinaryOpInstruction binaryOp)
+                    || assign.getTypeOfAssign().getTypeOfElement() != ElementType.INT32) {
+                continue;
+            }
+
+            var left = binaryOp.getLeftOperand();
+            var right = binaryOp.getRightOperand();
+
+            switch (binaryOp.getOperation().getOpType()) {
+                case MUL -> {
+                    int shift = getShift(right);
+                    var operand = left;
+                    if (shift < 0) {
+                        shift = getShift(left);
+                        operand = right;
+                    }
+                    if (shift < 0) {
+                        continue;
+                    }
+
+                    InstUtils.replaceInstruction(method, i, new AssignInstruction(assign.getDest(),
+                            assign.getTypeOfAssign(), shift(operand, OperationType.SHL, shift)));
+                    changed = true;
+                }
+                case DIV -> {
+                    int shift = getShift(right);
+                    if (shift < 0) {
+                        continue;
+                    }
+
+                    if (temporaries == null) {
+                        temporaries = InstUtils.newTemporaries(method);
+                    }
+                    var division = divide(assign, left, shift, temporaries);
+                    InstUtils.replaceInstruction(method, i, division.get(0));
+                    instructions.addAll(i + 1, division.subList(1, division.size()));
+                    i += division.size() - 1;
+                    changed = true;
+                }
+                default -> {
+                }
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * @return n if the element is the literal 2^n, with n at least 1, or -1 otherwise
+     */
+    private static int getShift(Element element) {
+        var value = InstUtils.getIntLiteral(element).orElse(0);
+        if (value < 2 || Integer.bitCount(value) != 1) {
+            return -1;
+        }
+        return Integer.numberOfTrailingZeros(value);
+    }
+
+    /**
+     * An arithmetic shift rounds towards negative infinity, so 2^n - 1 is added to negative dividends first.
+     */
+    private static List<Instruction> divide(AssignInstruction division, Element dividend, int shift,
+                                            Supplier<String> temporaries) {
+        var instructions = new ArrayList<Instruction>();
+
+        // the sign bit, or 2^n - 1 copies of it
+        var bias = temporaries.get();
+        if (shift == 1) {
+            instructions.add(assign(bias, shift(dividend, OperationType.SHRR, 31)));
+        } else {
+            var sign = temporaries.get();
+            instructions.add(assign(sign, shift(dividend, OperationType.SHR, 31)));
+            instructions.add(assign(bias, shift(new Operand(sign, INT), OperationType.SHRR, 32 - shift)));
+        }
+
+        var biased = temporaries.get();
+        instructions.add(assign(biased, new BinaryOpInstruction(copy(dividend), new Operation(OperationType.ADD, INT),
+                new Operand(bias, INT))));
+        instructions.add(new AssignInstruction(division.getDest(), division.getTypeOfAssign(),
+                shift(new Operand(biased, INT), OperationType.SHR, shift)));
+
+        return instructions;
+    }
+
+    private static BinaryOpInstruction shift(Element operand, OperationType op, int amount) {
+        return new BinaryOpInstruction(copy(operand), new Operation(op, INT), InstUtils.newLiteral(amount, INT));
+    }
+
+    private static AssignInstruction assign(String name, Instruction rhs) {
+        return new AssignInstruction(new Operand(name, INT), INT, rhs);
+    }
+
+    private static Element copy(Element element) {
+        return element instanceof Operand operand ? InstUtils.newOperand(operand) : element;
+    }
+
+    private static int indexOf(List<Instruction> instructions, Instruction inst) {
+        for (int i = 0; i < instructions.size(); i++) {
+            if (instructions.get(i) == inst) {
+                return i;
+            }
+        }
+        throw new RuntimeException("Instruction " + inst + " is not in the method");
+    }
+}
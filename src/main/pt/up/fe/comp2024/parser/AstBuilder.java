@@ -0,0 +1,130 @@
+package pt.up.fe.comp2024.parser;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.ast.AstNode;
+import pt.up.fe.comp2024.ast.Kind;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the AST of a parse tree as {@link AstNode}s, with the same kinds, hierarchies and attributes as the ANTLR
+ * converter of the course library, in a single pass.
+ * <p>
+ * As in the converter, the kind of a node is the name of its context class, the hierarchy adds the names of its
+ * superclasses, and the attributes are the public fields of those classes: tokens become their text, lists of tokens
+ * lists of texts, and contexts the node built from them. What the converter works out for every node, from the
+ * kinds to the fields to read, is worked out once per context class. Texts are interned, so equal names are the same
+ * string.
+ */
+public class AstBuilder {
+
+    private static final ClassValue<NodeShape> SHAPES = new ClassValue<>() {
+        @Override
+        protected NodeShape computeValue(Class<?> contextClass) {
+            return NodeShape.of(contextClass);
+        }
+    };
+
+    /**
+     * What all the contexts of a class have in common.
+     *
+     * @param kind      the kind of the nodes
+     * @param hierarchy the kind and the kinds of the superclasses, up to the one of the rule
+     * @param names     the names of the attributes, shared by all the nodes
+     * @param fields    the fields the attributes are read from, in the same order
+     */
+    private record NodeShape(Kind kind, List<String> hierarchy, String[] names, Field[] fields) {
+
+        static NodeShape of(Class<?> contextClass) {
+            var hierarchy = new ArrayList<String>();
+            var fields = new ArrayList<Field>();
+
+            for (var current = contextClass; current != ParserRuleContext.class; current = current.getSuperclass()) {
+                var className = current.getSimpleName();
+                if (!className.endsWith("Context")) {
+                    throw new RuntimeException("Expected classname to end with 'Context' " + className);
+                }
+                hierarchy.add(className.substring(0, className.length() - "Context".length()).intern());
+
+                for (var field : current.getDeclaredFields()) {
+                    if (Modifier.isPublic(field.getModifiers())) {
+                        fields.add(field);
+                    }
+                }
+            }
+
+            var names = fields.stream().map(field -> field.getName().intern()).toArray(String[]::new);
+            return new NodeShape(Kind.fromString(hierarchy.get(0)), List.copyOf(hierarchy), names,
+                    fields.toArray(Field[]::new));
+        }
+    }
+
+    public static AstNode build(ParserRuleContext context) {
+        var shape = SHAPES.get(context.getClass());
+
+        // tokens that are not attributes, such as keywords and punctuation, are not nodes
+        int numChildren = 0;
+        for (int i = 0; i < context.getChildCount(); i++) {
+            if (context.getChild(i) instanceof ParserRuleContext) {
+                numChildren++;
+            }
+        }
+
+        var children = new JmmNode[numChildren];
+        for (int i = 0, index = 0; i < context.getChildCount(); i++) {
+            if (context.getChild(i) instanceof ParserRuleContext child) {
+                children[index++] = build(child);
+            }
+        }
+
+        var values = new Object[shape.fields().length];
+        for (int i = 0; i < values.length; i++) {
+            try {
+                values[i] = toValue(shape.fields()[i].get(context), context, children);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException("Could not access field '" + shape.names()[i] + "' from node " + context);
+            }
+        }
+
+        var start = context.getStart();
+        var stop = context.getStop();
+        var node = new AstNode(shape.kind(), shape.hierarchy(), start.getLine(), start.getCharPositionInLine(),
+                stop.getLine(), stop.getCharPositionInLine(), shape.names(), values);
+        node.initChildren(children);
+
+        return node;
+    }
+
+    private static Object toValue(Object value, ParserRuleContext context, JmmNode[] children) {
+        if (value instanceof Token token) {
+            return token.getText().intern();
+        }
+
+        if (value instanceof List<?> list) {
+            return list.stream()
+                    .map(element -> toValue(element, context, children))
+                    .toList();
+        }
+
+        // a labeled rule, which is always one of the children
+        if (value instanceof ParserRuleContext labeled) {
+            for (int i = 0, index = 0; i < context.getChildCount(); i++) {
+                var child = context.getChild(i);
+                if (child == labeled) {
+                    return children[index];
+                }
+                if (child instanceof ParserRuleContext) {
+                    index++;
+                }
+            }
+            throw new RuntimeException("Could not find the node of the labeled context " + labeled);
+        }
+
+        return value;
+    }
+}
@@ -1,15 +1,34 @@
 package pt.up.fe.comp2024.parser;
 
 import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CommonTokenStream;
-import pt.up.fe.comp.jmm.ast.antlr.AntlrParser;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import pt.up.fe.comp.jmm.ast.antlr.JmmErrorListener;
 import pt.up.fe.comp.jmm.parser.JmmParser;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
 import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.JavammFastLexer;
+import pt.up.fe.comp2024.JavammFastParser;
+import pt.up.fe.comp2024.JavammLexer;
+import pt.up.fe.comp2024.JavammParser;
+import pt.up.fe.specs.util.SpecsSystem;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 /**
  * Copyright 2022 SPeCS.
@@ -24,33 +43,180 @@ import java.util.Map;
  * specific language governing permissions and limitations under the License. under the License.
  */
 
+/**
+ * Parses in two stages: first with SLL prediction, which is faster but gives up on the first syntax error, and only if
+ * that fails again with full LL prediction, which reports the errors. A program that SLL parses has the same tree under
+ * LL, so only programs with errors, or the rare ones SLL cannot decide, are parsed twice.
+ * <p>
+ * Each thread keeps its own lexer and parser, which are reset for every parse. The DFA that prediction builds is a
+ * static cache of the generated parser, so it is shared by all threads and kept from one compilation to the next.
+ * <p>
+ * The JavammFast grammar, chosen with {@link CompilerConfig#getFastGrammar(Map)}, is the one the profile of
+ * {@link CompilerConfig#getProfileParser(Map)} pointed to: Javamm without the ambiguous alternative that made calls
+ * fall back to LL.
+ * <p>
+ * The parse tree is turned into {@link pt.up.fe.comp2024.ast.AstNode}s by {@link AstBuilder}, instead of the
+ * JmmNodeImpls of the converter of the course library, which gives the same trees.
+ */
 public class JmmParserImpl implements JmmParser {
 
+    /**
+     * Rules whose method is already in the reflection cache of SpecsSystem, which is a plain HashMap, by parser class.
+     */
+    private static final Set<String> RESOLVED_RULES = new HashSet<>();
+
+    /**
+     * Number of decisions in the profile, from the one that took the longest to predict.
+     */
+    private static final int PROFILE_DECISIONS = 15;
+
+    /**
+     * The grammars the parser can use, with the lexer and parser of each thread.
+     */
+    private enum Grammar {
+        JAVAMM(JavammLexer::new, JavammParser::new, JavammParser.class),
+        FAST(JavammFastLexer::new, JavammFastParser::new, JavammFastParser.class);
+
+        private final Function<CharStream, Lexer> newLexer;
+        private final Function<TokenStream, Parser> newParser;
+        private final Class<? extends Parser> parserClass;
+        private final ThreadLocal<Lexer> lexer;
+        private final ThreadLocal<Parser> parser;
+
+        Grammar(Function<CharStream, Lexer> newLexer, Function<TokenStream, Parser> newParser,
+                Class<? extends Parser> parserClass) {
+            this.newLexer = newLexer;
+            this.newParser = newParser;
+            this.parserClass = parserClass;
+            this.lexer = ThreadLocal.withInitial(() -> newLexer.apply(null));
+            this.parser = ThreadLocal.withInitial(() -> newParser.apply(null));
+        }
+
+        static Grammar of(Map<String, String> config) {
+            return CompilerConfig.getFastGrammar(config) ? FAST : JAVAMM;
+        }
+    }
+
     @Override
     public String getDefaultRule() {
         return "program";
     }
 
+    /**
+     * Fills the reflection cache for the rule while no other thread can write to it, so that parsers running in
+     * parallel only read from it.
+     */
+    private static void resolveRule(Class<? extends Parser> parserClass, String rule) {
+        synchronized (RESOLVED_RULES) {
+            if (RESOLVED_RULES.add(parserClass.getName() + "." + rule)) {
+                SpecsSystem.getMethod(parserClass, rule);
+            }
+        }
+    }
+
     @Override
     public JmmParserResult parse(String jmmCode, String startingRule, Map<String, String> config) {
 
         try {
-            // Convert code string into a character stream
-            var input = new ANTLRInputStream(jmmCode);
-            // Transform characters into tokens using the lexer
-            var lex = new pt.up.fe.comp2024.JavammLexer(input);
-            // Wrap lexer around a token stream
-            var tokens = new CommonTokenStream(lex);
-            // Transforms tokens into a parse tree
-            var parser = new pt.up.fe.comp2024.JavammParser(tokens);
+            var grammar = Grammar.of(config);
+            resolveRule(grammar.parserClass, startingRule);
+
+            if (CompilerConfig.getProfileParser(config)) {
+                return parseProfiled(grammar, jmmCode, startingRule, config);
+            }
+
+            var lex = grammar.lexer.get();
+            var parser = grammar.parser.get();
+
+            try {
+                reset(jmmCode, lex, parser, PredictionMode.SLL);
+                parser.setErrorHandler(new BailErrorStrategy());
 
+                // Convert ANTLR CST to JmmNode AST
+                return parse(lex, parser, startingRule, config);
+            } catch (RuntimeException e) {
+                if (!isCancelled(e)) {
+                    throw e;
+                }
+            }
 
-            // Convert ANTLR CST to JmmNode AST
-            return AntlrParser.parse(lex, parser, startingRule, config);
+            // SLL could not parse the code, either because it has errors or because it needs full LL
+            reset(jmmCode, lex, parser, PredictionMode.LL);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+
+            return parse(lex, parser, startingRule, config);
 
         } catch (Exception e) {
             // There was an uncaught exception during parsing, create an error JmmParserResult without root node
             return JmmParserResult.newError(Report.newError(Stage.SYNTATIC, -1, -1, "Exception during parsing", e), config);
         }
     }
+
+    /**
+     * Parses with full LL prediction only, so that the profile shows where SLL falls back to it, and adds the profile
+     * to the reports as a log. The parser is not reused, since profiling replaces its prediction.
+     */
+    private static JmmParserResult parseProfiled(Grammar grammar, String jmmCode, String startingRule,
+                                                 Map<String, String> config) {
+        var lex = grammar.newLexer.apply(new ANTLRInputStream(jmmCode));
+        var parser = grammar.newParser.apply(new CommonTokenStream(lex));
+        parser.setProfile(true);
+
+        var result = parse(lex, parser, startingRule, config);
+
+        var profile = new ParserProfile(parser);
+        result.getReports().add(Report.newLog(Stage.SYNTATIC, -1, -1, profile.format(PROFILE_DECISIONS), null));
+
+        return result;
+    }
+
+    /**
+     * Same as the AntlrParser of the course library, except for the nodes of the AST: collects the lexical and syntactic
+     * errors as reports, and only builds the AST if there are none. The grammar has no ignore list, so no nodes are
+     * removed after.
+     */
+    private static JmmParserResult parse(Lexer lex, Parser parser, String startingRule, Map<String, String> config) {
+        lex.removeErrorListeners();
+        var lexerListener = new JmmErrorListener(Stage.LEXICAL);
+        lex.addErrorListener(lexerListener);
+
+        parser.removeErrorListeners();
+        var parserListener = new JmmErrorListener(Stage.SYNTATIC);
+        parser.addErrorListener(parserListener);
+
+        var tree = (ParserRuleContext) SpecsSystem.invoke(parser, startingRule);
+
+        var reports = new ArrayList<Report>();
+        reports.addAll(lexerListener.getReports());
+        reports.addAll(parserListener.getReports());
+
+        if (reports.stream().anyMatch(report -> report.getType() == ReportType.ERROR)) {
+            return new JmmParserResult(null, reports, config);
+        }
+
+        return new JmmParserResult(AstBuilder.build(tree), reports, config);
+    }
+
+    /**
+     * Points the lexer and the parser to the start of the code, as if they were new.
+     */
+    private static void reset(String jmmCode, Lexer lex, Parser parser, PredictionMode mode) {
+        // Convert code string into a character stream, which the lexer transforms into tokens
+        lex.setInputStream(new ANTLRInputStream(jmmCode));
+        // Wrap lexer around a token stream, which the parser transforms into a parse tree
+        parser.setTokenStream(new CommonTokenStream(lex));
+        parser.getInterpreter().setPredictionMode(mode);
+    }
+
+    /**
+     * @return true if the exception comes from the bail out strategy, which the rule invocation wraps
+     */
+    private static boolean isCancelled(Throwable e) {
+        for (var cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ParseCancellationException) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
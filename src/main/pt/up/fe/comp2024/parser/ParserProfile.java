@@ -0,0 +1,94 @@
+package pt.up.fe.comp2024.parser;
+
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.atn.DecisionInfo;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Prediction statistics of the decisions of the grammar, taken from a parser that ran with profiling enabled.
+ * <p>
+ * A decision is a point where the parser chooses between alternatives, such as which alternative of a rule to take or
+ * whether to loop again. SLL prediction looks ahead only as far as it needs to, and falls back to full LL, which also
+ * considers the rules the decision was called from, when SLL finds a conflict. Both fallbacks and long lookaheads are
+ * costly, and ambiguities are where the grammar allows more than one tree for the same input.
+ */
+public class ParserProfile {
+
+    private final List<DecisionInfo> decisions;
+    private final String[] ruleNames;
+    private final int[] decisionRules;
+
+    public ParserProfile(Parser parser) {
+        var parseInfo = parser.getParseInfo();
+        if (parseInfo == null) {
+            throw new IllegalArgumentException("Expected a parser with profiling enabled");
+        }
+
+        var atn = parser.getATN();
+        this.ruleNames = parser.getRuleNames();
+        this.decisionRules = new int[atn.getNumberOfDecisions()];
+        for (int i = 0; i < decisionRules.length; i++) {
+            decisionRules[i] = atn.getDecisionState(i).ruleIndex;
+        }
+
+        this.decisions = Arrays.stream(parseInfo.getDecisionInfo())
+                .filter(decision -> decision.invocations > 0)
+                .sorted(Comparator.comparingLong((DecisionInfo decision) -> decision.timeInPrediction).reversed())
+                .toList();
+    }
+
+    /**
+     * @return the decisions that were invoked, from the one that took the longest to predict
+     */
+    public List<DecisionInfo> getDecisions() {
+        return decisions;
+    }
+
+    /**
+     * @return the name of the rule the decision belongs to
+     */
+    public String getRule(DecisionInfo decision) {
+        return ruleNames[decisionRules[decision.decision]];
+    }
+
+    public long getTotalTimeNanos() {
+        return decisions.stream().mapToLong(decision -> decision.timeInPrediction).sum();
+    }
+
+    public long getLlFallbacks() {
+        return decisions.stream().mapToLong(decision -> decision.LL_Fallback).sum();
+    }
+
+    public int getAmbiguities() {
+        return decisions.stream().mapToInt(decision -> decision.ambiguities.size()).sum();
+    }
+
+    /**
+     * @return a table with the given number of decisions that took the longest to predict
+     */
+    public String format(int limit) {
+        var table = new StringBuilder();
+        table.append(String.format("Parser prediction took %.3f ms in %d decision(s), with %d LL fallback(s) and %d"
+                        + " ambiguit%s%n", getTotalTimeNanos() / 1e6, decisions.size(), getLlFallbacks(),
+                getAmbiguities(), getAmbiguities() == 1 ? "y" : "ies"));
+        table.append(String.format("%8s  %-12s %11s %10s %9s %8s %9s %8s %10s%n", "decision", "rule", "invocations",
+                "time (ms)", "SLL avg", "SLL max", "fallbacks", "LL max", "ambiguous"));
+
+        for (var decision : decisions.subList(0, Math.min(limit, decisions.size()))) {
+            table.append(String.format("%8d  %-12s %11d %10.3f %9.2f %8d %9d %8d %10d%n", decision.decision,
+                    getRule(decision), decision.invocations, decision.timeInPrediction / 1e6,
+                    (double) decision.SLL_TotalLook / decision.invocations, decision.SLL_MaxLook,
+                    decision.LL_Fallback, decision.LL_MaxLook, decision.ambiguities.size()));
+        }
+
+        return table.toString();
+    }
+
+    @Override
+    public String toString() {
+        return format(decisions.size());
+    }
+}
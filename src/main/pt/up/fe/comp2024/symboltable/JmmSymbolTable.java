@@ -3,13 +3,15 @@ package pt.up.fe.comp2024.symboltable;
 import pt.up.fe.comp.jmm.analysis.table.Symbol;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.analysis.table.Type;
-import pt.up.fe.comp2024.ast.TypeUtils;
-import pt.up.fe.specs.util.exceptions.NotImplementedException;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.symboltable.ResolvedSymbol.Scope;
+import pt.up.fe.specs.util.SpecsCheck;
 
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
+/**
+ * Symbol table that also indexes every name by method, so that a name is resolved with a few hash lookups.
+ */
 public class JmmSymbolTable implements SymbolTable {
 
     private final String className;
@@ -22,6 +24,12 @@ public class JmmSymbolTable implements SymbolTable {
     private final List<String> imports;
     private final List<Symbol> fields;
 
+    private final Map<String, Map<String, ResolvedSymbol>> localIndex;
+    private final Map<String, Map<String, ResolvedSymbol>> paramIndex;
+    private final Map<String, ResolvedSymbol> fieldIndex;
+    private final Map<String, ResolvedSymbol> importIndex;
+    private final List<List<String>> importPaths;
+
     public JmmSymbolTable(String className,
                           String superClass,
                           List<String> methods,
@@ -38,6 +46,50 @@ public class JmmSymbolTable implements SymbolTable {
         this.locals = locals;
         this.imports = imports;
         this.fields = fields;
+
+        this.localIndex = new HashMap<>();
+        locals.forEach((method, symbols) -> localIndex.put(method, index(symbols, Scope.LOCAL)));
+        this.paramIndex = new HashMap<>();
+        params.forEach((method, symbols) -> paramIndex.put(method, index(symbols, Scope.PARAMETER)));
+        this.fieldIndex = index(fields, Scope.FIELD);
+
+        this.importPaths = imports.stream().map(JmmSymbolTable::parseImport).toList();
+        this.importIndex = new HashMap<>();
+        for (var path : importPaths) {
+            var importedClass = path.get(path.size() - 1);
+            importIndex.putIfAbsent(importedClass,
+                    new ResolvedSymbol(new Symbol(new Type(importedClass, false), importedClass), Scope.IMPORT));
+        }
+    }
+
+    /**
+     * Other tables are not accepted, since a copy of them would not know the nodes that declare each symbol, and the
+     * checks that read those nodes would silently find nothing.
+     *
+     * @return the given table, which must have been built by {@link JmmSymbolTableBuilder}
+     */
+    public static JmmSymbolTable of(SymbolTable table) {
+        SpecsCheck.checkArgument(table instanceof JmmSymbolTable,
+                () -> "Expected a symbol table built by JmmSymbolTableBuilder, got " + table.getClass().getName());
+        return (JmmSymbolTable) table;
+    }
+
+    private static Map<String, ResolvedSymbol> index(List<Symbol> symbols, Scope scope) {
+        var index = new HashMap<String, ResolvedSymbol>();
+        for (var symbol : symbols) {
+            // When a name is declared twice, the first declaration wins
+            index.putIfAbsent(symbol.getName(), new ResolvedSymbol(symbol, scope));
+        }
+        return index;
+    }
+
+    /**
+     * Imports are stored as the list of their parts, e.g. "[java, util, List]".
+     */
+    private static List<String> parseImport(String importValue) {
+        return Arrays.stream(importValue.substring(1, importValue.length() - 1).split(","))
+                .map(String::trim)
+                .toList();
     }
 
     @Override
@@ -80,4 +132,62 @@ public class JmmSymbolTable implements SymbolTable {
         return Collections.unmodifiableList(locals.get(methodSignature));
     }
 
+    /**
+     * Finds what a name refers to inside the given method, looking first at its local variables, then at its
+     * parameters, then at the fields of the class and finally at the imported classes.
+     *
+     * @param methodSignature the method where the name is used, or null if it is used outside of methods
+     */
+    public Optional<ResolvedSymbol> resolve(String methodSignature, String name) {
+        if (methodSignature != null) {
+            var local = localIndex.getOrDefault(methodSignature, Map.of()).get(name);
+            if (local != null) {
+                return Optional.of(local);
+            }
+
+            var param = paramIndex.getOrDefault(methodSignature, Map.of()).get(name);
+            if (param != null) {
+                return Optional.of(param);
+            }
+        }
+
+        var field = fieldIndex.get(name);
+        if (field != null) {
+            return Optional.of(field);
+        }
+
+        return Optional.ofNullable(importIndex.get(name));
+    }
+
+    /**
+     * @return true if a class with the given name is imported
+     */
+    public boolean isImported(String className) {
+        return importIndex.containsKey(className);
+    }
+
+    /**
+     * @return the parts of each import, in the order they are declared
+     */
+    public List<List<String>> getImportPaths() {
+        return importPaths;
+    }
+
+    /**
+     * Records the node that declares a local variable, parameter or field.
+     *
+     * @param methodSignature the method of the declaration, or null for fields
+     */
+    void setDeclaration(String methodSignature, Scope scope, JmmNode declaration) {
+        var symbol = switch (scope) {
+            case LOCAL -> localIndex.getOrDefault(methodSignature, Map.of()).get(declaration.get("name"));
+            case PARAMETER -> paramIndex.getOrDefault(methodSignature, Map.of()).get(declaration.get("name"));
+            case FIELD -> fieldIndex.get(declaration.get("name"));
+            case IMPORT -> null;
+        };
+
+        if (symbol != null && symbol.getDeclaration().isEmpty()) {
+            symbol.setDeclaration(declaration);
+        }
+    }
 }
@@ -40,7 +40,26 @@ public class JmmSymbolTableBuilder {
         var locals = buildLocals(classDecl);
         var imports = buildImports(classDecl);
 
-        return new JmmSymbolTable(className, superClass, methods, fields, imports, returnTypes, params, locals);
+        var table = new JmmSymbolTable(className, superClass, methods, fields, imports, returnTypes, params, locals);
+        addDeclarations(table, classDecl);
+
+        return table;
+    }
+
+    private static void addDeclarations(JmmSymbolTable table, JmmNode classDecl) {
+        for (JmmNode field : classDecl.getChildren(VAR_DECL)) {
+            table.setDeclaration(null, ResolvedSymbol.Scope.FIELD, field);
+        }
+
+        for (JmmNode methodDecl : classDecl.getChildren(METHOD_DECL)) {
+            var methodName = methodDecl.get("name");
+            for (JmmNode param : methodDecl.getChildren(PARAM)) {
+                table.setDeclaration(methodName, ResolvedSymbol.Scope.PARAMETER, param);
+            }
+            for (JmmNode local : methodDecl.getChildren(VAR_DECL)) {
+                table.setDeclaration(methodName, ResolvedSymbol.Scope.LOCAL, local);
+            }
+        }
     }
 
     private static List<Symbol> buildFields(JmmNode classDecl) {
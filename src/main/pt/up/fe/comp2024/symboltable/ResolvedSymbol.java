@@ -0,0 +1,48 @@
+package pt.up.fe.comp2024.symboltable;
+
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+
+import java.util.Optional;
+
+/**
+ * A name found by {@link JmmSymbolTable#resolve(String, String)}, together with where it was declared.
+ */
+public class ResolvedSymbol {
+
+    public enum Scope {
+        LOCAL,
+        PARAMETER,
+        FIELD,
+        IMPORT
+    }
+
+    private final Symbol symbol;
+    private final Scope scope;
+    private JmmNode declaration;
+
+    public ResolvedSymbol(Symbol symbol, Scope scope) {
+        this.symbol = symbol;
+        this.scope = scope;
+        this.declaration = null;
+    }
+
+    public Symbol getSymbol() {
+        return symbol;
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * @return the VarDecl or Param node that declares the symbol, if it is known
+     */
+    public Optional<JmmNode> getDeclaration() {
+        return Optional.ofNullable(declaration);
+    }
+
+    void setDeclaration(JmmNode declaration) {
+        this.declaration = declaration;
+    }
+}
@@ -0,0 +1,194 @@
+package pt.up.fe.comp2024.utils;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Wall time, CPU time and allocated bytes of each phase of a compilation, plus counters such as the number of AST
+ * nodes.
+ * <p>
+ * Phases are named by their path, e.g. "optimization/ollir/ConstantFolding", and a phase measured more than once
+ * accumulates its values. CPU time and allocations are those of the current thread, so a compilation must run on a
+ * single thread.
+ */
+public class Metrics {
+
+    /**
+     * Metrics that measure nothing, for when instrumentation is off.
+     */
+    public static final Metrics DISABLED = new Metrics(false);
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final boolean enabled;
+    private final Map<String, Phase> phases;
+    private final Map<String, Long> counts;
+
+    private Metrics(boolean enabled) {
+        this.enabled = enabled;
+        this.phases = new LinkedHashMap<>();
+        this.counts = new LinkedHashMap<>();
+    }
+
+    public Metrics() {
+        this(true);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * A running measurement, created by {@link #start()} and finished by {@link #stop(String, Measurement)}.
+     */
+    public static class Measurement {
+        private final long wallNanos;
+        private final long cpuNanos;
+        private final long allocatedBytes;
+
+        private Measurement(long wallNanos, long cpuNanos, long allocatedBytes) {
+            this.wallNanos = wallNanos;
+            this.cpuNanos = cpuNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    private static class Phase {
+        private long calls;
+        private long wallNanos;
+        private long cpuNanos;
+        private long allocatedBytes;
+    }
+
+    public Measurement start() {
+        if (!enabled) {
+            return null;
+        }
+
+        return new Measurement(System.nanoTime(), THREADS.getCurrentThreadCpuTime(),
+                THREADS.getCurrentThreadAllocatedBytes());
+    }
+
+    public void stop(String phaseName, Measurement start) {
+        if (!enabled) {
+            return;
+        }
+
+        long wallNanos = System.nanoTime();
+        long cpuNanos = THREADS.getCurrentThreadCpuTime();
+        long allocatedBytes = THREADS.getCurrentThreadAllocatedBytes();
+
+        var phase = phases.computeIfAbsent(phaseName, name -> new Phase());
+        phase.calls++;
+        phase.wallNanos += wallNanos - start.wallNanos;
+        phase.cpuNanos += cpuNanos - start.cpuNanos;
+        phase.allocatedBytes += allocatedBytes - start.allocatedBytes;
+    }
+
+    public <T> T measure(String phaseName, Supplier<T> action) {
+        var start = start();
+        try {
+            return action.get();
+        } finally {
+            stop(phaseName, start);
+        }
+    }
+
+    public void measure(String phaseName, Runnable action) {
+        var start = start();
+        try {
+            action.run();
+        } finally {
+            stop(phaseName, start);
+        }
+    }
+
+    public void addCount(String countName, long value) {
+        if (enabled) {
+            counts.merge(countName, value, Long::sum);
+        }
+    }
+
+    /**
+     * Writes the metrics of each compiled file, as CSV if the output file ends with ".csv" and as JSON otherwise.
+     */
+    public static void write(Map<File, Metrics> metrics, File outputFile) {
+        var contents = outputFile.getName().endsWith(".csv") ? toCsv(metrics) : toJson(metrics);
+
+        try {
+            Files.writeString(outputFile.toPath(), contents);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write metrics file '" + outputFile + "'", e);
+        }
+    }
+
+    public static String toJson(Map<File, Metrics> metrics) {
+        var json = new JsonArray();
+
+        for (var entry : metrics.entrySet()) {
+            var phases = new JsonArray();
+            for (var phase : entry.getValue().phases.entrySet()) {
+                var values = phase.getValue();
+                var phaseJson = new JsonObject();
+                phaseJson.addProperty("name", phase.getKey());
+                phaseJson.addProperty("calls", values.calls);
+                phaseJson.addProperty("wallNanos", values.wallNanos);
+                phaseJson.addProperty("cpuNanos", values.cpuNanos);
+                phaseJson.addProperty("allocatedBytes", values.allocatedBytes);
+                phases.add(phaseJson);
+            }
+
+            var counts = new JsonObject();
+            entry.getValue().counts.forEach(counts::addProperty);
+
+            var fileJson = new JsonObject();
+            fileJson.addProperty("file", entry.getKey().getPath());
+            fileJson.add("phases", phases);
+            fileJson.add("counts", counts);
+            json.add(fileJson);
+        }
+
+        return new GsonBuilder().setPrettyPrinting().create().toJson(json) + "\n";
+    }
+
+    public static String toCsv(Map<File, Metrics> metrics) {
+        var csv = new StringBuilder("file,name,calls,wall_ns,cpu_ns,allocated_bytes,count\n");
+
+        for (var entry : metrics.entrySet()) {
+            var file = quoteCsv(entry.getKey().getPath());
+
+            for (var phase : entry.getValue().phases.entrySet()) {
+                var values = phase.getValue();
+                csv.append(file).append(',').append(quoteCsv(phase.getKey())).append(',')
+                        .append(values.calls).append(',')
+                        .append(values.wallNanos).append(',')
+                        .append(values.cpuNanos).append(',')
+                        .append(values.allocatedBytes).append(",\n");
+            }
+
+            for (var count : entry.getValue().counts.entrySet()) {
+                csv.append(file).append(',').append(quoteCsv(count.getKey())).append(",,,,,")
+                        .append(count.getValue()).append('\n');
+            }
+        }
+
+        return csv.toString();
+    }
+
+    private static String quoteCsv(String value) {
+        if (value.contains(",") || value.contains("\"")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
@@ -0,0 +1,411 @@
+package pt.up.fe.comp2024.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates random Java-- programs of a chosen size, for stress tests and for measuring how each stage of the compiler
+ * scales with its input.
+ * <p>
+ * The same seed and settings always give the same program. Every program runs to completion: the methods call each
+ * other as a tree, so there is no recursion, loops count up to a literal, divisions are by non-zero literals and
+ * arrays are indexed by literals within their length. Its output is the values printed with io.println, and the result
+ * of the first method, which main prints last.
+ * <p>
+ * The defaults only use what this compiler accepts end to end: expressions need no parentheses and have at most three
+ * levels of operators, parameters are only read to initialize the locals, calls are statements of their own at the top
+ * level of a method, and array elements are only read into and written from locals and literals. Fields and varargs
+ * calls are valid Java-- that the analysis does not handle yet, so they are off until {@link #fields(int)} and
+ * {@link #varargsDensity(double)} turn them on.
+ */
+public class ProgramGenerator {
+
+    private static final int ARRAY_LENGTH = 8;
+    private static final int MAX_LOOP_COUNT = 4;
+    private static final int MAX_BLOCK_STATEMENTS = 4;
+    private static final String VARARGS_METHOD = "sum";
+
+    private final long seed;
+
+    private int methods = 4;
+    private int fields = 0;
+    private int locals = 4;
+    private int statements = 20;
+    private int expressionDepth = 3;
+    private int loopNesting = 2;
+    private double arrayDensity = 0.1;
+    private double callDensity = 0.1;
+    private double varargsDensity = 0;
+    private boolean inlinableLeaves = false;
+
+    private String className;
+    private Random random;
+    private StringBuilder code;
+    private int indentation;
+    private List<String> leaves;
+
+    public ProgramGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Number of instance methods besides main, at least one.
+     */
+    public ProgramGenerator methods(int methods) {
+        this.methods = checkAtLeast(methods, 1, "methods");
+        return this;
+    }
+
+    /**
+     * Number of int fields, which the methods read and write.
+     */
+    public ProgramGenerator fields(int fields) {
+        this.fields = checkAtLeast(fields, 0, "fields");
+        return this;
+    }
+
+    /**
+     * Number of int locals of each method, at least one, not counting loop counters and arrays.
+     */
+    public ProgramGenerator locals(int locals) {
+        this.locals = checkAtLeast(locals, 1, "locals");
+        return this;
+    }
+
+    /**
+     * Number of statements of each method, counting those inside if and while statements.
+     */
+    public ProgramGenerator statements(int statements) {
+        this.statements = checkAtLeast(statements, 0, "statements");
+        return this;
+    }
+
+    /**
+     * Maximum levels of binary operators in an expression, with 0 for a single variable or literal.
+     */
+    public ProgramGenerator expressionDepth(int expressionDepth) {
+        this.expressionDepth = checkAtLeast(expressionDepth, 0, "expressionDepth");
+        return this;
+    }
+
+    /**
+     * Maximum number of while statements inside each other.
+     */
+    public ProgramGenerator loopNesting(int loopNesting) {
+        this.loopNesting = checkAtLeast(loopNesting, 0, "loopNesting");
+        return this;
+    }
+
+    /**
+     * Probability of a statement reading or writing an array element, with 0 for methods without arrays.
+     */
+    public ProgramGenerator arrayDensity(double arrayDensity) {
+        this.arrayDensity = checkProbability(arrayDensity, "arrayDensity");
+        return this;
+    }
+
+    /**
+     * Probability of a statement calling the imported io.println, or the varargs method.
+     */
+    public ProgramGenerator callDensity(double callDensity) {
+        this.callDensity = checkProbability(callDensity, "callDensity");
+        return this;
+    }
+
+    /**
+     * Probability of a call being to a method with varargs instead of io.println, with 0 for no such method.
+     */
+    public ProgramGenerator varargsDensity(double varargsDensity) {
+        this.varargsDensity = checkProbability(varargsDensity, "varargsDensity");
+        return this;
+    }
+
+    /**
+     * Whether the methods that call no other method are small enough to be inlined, with a single local and no
+     * statements. Their local has the same name as the first local of their callers, which can be passed to them.
+     * Calls are then made on a new object of the class instead of on "this", since only calls on objects of a known
+     * class are inlined.
+     */
+    public ProgramGenerator inlinableLeaves(boolean inlinableLeaves) {
+        this.inlinableLeaves = inlinableLeaves;
+        return this;
+    }
+
+    /**
+     * @return the source code of a program with a class of the given name
+     */
+    public String generate(String className) {
+        this.className = className;
+        random = new Random(seed);
+        code = new StringBuilder();
+        indentation = 0;
+
+        line("import io;");
+        line("");
+        line("class " + className + " {");
+        indentation++;
+
+        for (int i = 0; i < fields; i++) {
+            line("int f" + i + ";");
+        }
+
+        // method 0 is the root of the call tree, and each other method is called once by an earlier one
+        var callees = new ArrayList<List<Integer>>();
+        for (int i = 0; i < methods; i++) {
+            callees.add(new ArrayList<>());
+            if (i > 0) {
+                callees.get(random.nextInt(i)).add(i);
+            }
+        }
+
+        for (int i = 0; i < methods; i++) {
+            line("");
+            method(i, callees.get(i));
+        }
+
+        if (varargsDensity > 0) {
+            line("");
+            line("public int " + VARARGS_METHOD + "(int... values) {");
+            indentation++;
+            line("return values.length;");
+            indentation--;
+            line("}");
+        }
+
+        line("");
+        main(className);
+
+        indentation--;
+        line("}");
+
+        return code.toString();
+    }
+
+    private void method(int index, List<Integer> callees) {
+        line("public int m" + index + "(int p0, int p1) {");
+        indentation++;
+
+        if (inlinableLeaves && callees.isEmpty()) {
+            leafMethod();
+            return;
+        }
+
+        boolean hasArray = arrayDensity > 0;
+        for (int i = 0; i < locals; i++) {
+            line("int v" + i + ";");
+        }
+        for (int i = 0; i < loopNesting; i++) {
+            line("int i" + i + ";");
+        }
+        if (hasArray) {
+            line("int[] a;");
+        }
+        if (inlinableLeaves) {
+            line(className + " o;");
+        }
+
+        // parameters are only read by the initializations, since the analysis rejects assigning one to a local
+        leaves = new ArrayList<>();
+        for (int i = 0; i < fields; i++) {
+            leaves.add("f" + i);
+        }
+
+        for (int i = 0; i < locals; i++) {
+            line("v" + i + " = p" + (i % 2) + " + " + random.nextInt(10) + ";");
+            leaves.add("v" + i);
+        }
+        if (hasArray) {
+            line("a = new int[" + ARRAY_LENGTH + "];");
+        }
+        if (inlinableLeaves) {
+            line("o = new " + className + "();");
+        }
+
+        // calls go between the top level statements, since the analysis rejects them inside blocks
+        int remaining = statements;
+        int nextCallee = 0;
+        while (remaining > 0) {
+            if (nextCallee < callees.size() && random.nextInt(remaining + 1) < callees.size() - nextCallee) {
+                call(callees.get(nextCallee++));
+            }
+            remaining -= statement(remaining, 0, hasArray);
+        }
+        while (nextCallee < callees.size()) {
+            call(callees.get(nextCallee++));
+        }
+
+        line("return " + additive(expressionDepth) + ";");
+
+        indentation--;
+        line("}");
+    }
+
+    private void leafMethod() {
+        line("int v0;");
+
+        leaves = new ArrayList<>();
+        for (int i = 0; i < fields; i++) {
+            leaves.add("f" + i);
+        }
+        leaves.add("v0");
+
+        line("v0 = p" + random.nextInt(2) + " + " + random.nextInt(10) + ";");
+        line("return " + additive(Math.min(expressionDepth, 1)) + ";");
+
+        indentation--;
+        line("}");
+    }
+
+    private void call(int callee) {
+        var receiver = inlinableLeaves ? "o" : "this";
+        line(target() + " = " + receiver + ".m" + callee + "(" + leaf() + ", " + leaf() + ");");
+    }
+
+    /**
+     * @return the number of statements generated, at most the given maximum
+     */
+    private int statement(int maximum, int loopDepth, boolean hasArray) {
+        double kind = random.nextDouble();
+
+        if (kind < callDensity) {
+            if (random.nextDouble() < varargsDensity) {
+                var arguments = new ArrayList<String>();
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    arguments.add(leaf());
+                }
+                line(target() + " = this." + VARARGS_METHOD + "(" + String.join(", ", arguments) + ");");
+            } else {
+                line("io.println(" + local() + ");");
+            }
+            return 1;
+        }
+
+        if (hasArray && kind < callDensity + arrayDensity) {
+            var element = "a[" + random.nextInt(ARRAY_LENGTH) + "]";
+            if (random.nextBoolean()) {
+                line(element + " = " + random.nextInt(100) + ";");
+            } else {
+                line(local() + " = " + element + ";");
+            }
+            return 1;
+        }
+
+        // an if or a while needs at least one statement in each block, besides its own
+        if (maximum >= 3 && loopDepth < loopNesting && random.nextDouble() < 0.2) {
+            var counter = "i" + loopDepth;
+            line(counter + " = 0;");
+            line("while (" + counter + " < " + (1 + random.nextInt(MAX_LOOP_COUNT)) + ") {");
+            indentation++;
+            int used = block(maximum - 2, loopDepth + 1, hasArray);
+            line(counter + " = " + counter + " + 1;");
+            indentation--;
+            line("}");
+            return 2 + used;
+        }
+
+        if (maximum >= 3 && random.nextDouble() < 0.2) {
+            line("if (" + condition() + ") {");
+            indentation++;
+            int used = block((maximum - 1) / 2, loopDepth, hasArray);
+            indentation--;
+            line("} else {");
+            indentation++;
+            used += block(maximum - 1 - used, loopDepth, hasArray);
+            indentation--;
+            line("}");
+            return 1 + used;
+        }
+
+        line(target() + " = " + additive(expressionDepth) + ";");
+        return 1;
+    }
+
+    private int block(int maximum, int loopDepth, boolean hasArray) {
+        int count = 1 + random.nextInt(Math.min(maximum, MAX_BLOCK_STATEMENTS));
+        int used = 0;
+        while (used < count) {
+            used += statement(count - used, loopDepth, hasArray);
+        }
+        return used;
+    }
+
+    private String condition() {
+        int depth = Math.max(expressionDepth - 1, 0);
+        var op = random.nextBoolean() ? " < " : " > ";
+        return additive(depth) + op + additive(depth);
+    }
+
+    /**
+     * Operands are generated so that no parentheses are needed: the right operand of an operator always has a higher
+     * precedence than it.
+     */
+    private String additive(int depth) {
+        if (depth == 0 || random.nextInt(3) == 0) {
+            return multiplicative(depth);
+        }
+        var op = random.nextBoolean() ? " + " : " - ";
+        return additive(depth - 1) + op + multiplicative(depth - 1);
+    }
+
+    private String multiplicative(int depth) {
+        if (depth == 0 || random.nextInt(3) == 0) {
+            return leaf();
+        }
+        if (random.nextBoolean()) {
+            return multiplicative(depth - 1) + " * " + leaf();
+        }
+        return multiplicative(depth - 1) + " / " + (1 + random.nextInt(9));
+    }
+
+    private String leaf() {
+        if (random.nextInt(4) == 0) {
+            return Integer.toString(random.nextInt(10));
+        }
+        return leaves.get(random.nextInt(leaves.size()));
+    }
+
+    private String local() {
+        return "v" + random.nextInt(locals);
+    }
+
+    private String target() {
+        if (fields > 0 && random.nextInt(4) == 0) {
+            return "f" + random.nextInt(fields);
+        }
+        return local();
+    }
+
+    private void main(String className) {
+        line("public static void main(String[] args) {");
+        indentation++;
+        line(className + " program;");
+        line("int result;");
+        line("program = new " + className + "();");
+        line("result = program.m0(" + random.nextInt(10) + ", " + random.nextInt(10) + ");");
+        line("io.println(result);");
+        indentation--;
+        line("}");
+    }
+
+    private void line(String line) {
+        if (!line.isEmpty()) {
+            code.append("    ".repeat(indentation)).append(line);
+        }
+        code.append("\n");
+    }
+
+    private static int checkAtLeast(int value, int minimum, String name) {
+        if (value < minimum) {
+            throw new IllegalArgumentException("Expected " + name + " to be at least " + minimum + ", got " + value);
+        }
+        return value;
+    }
+
+    private static double checkProbability(double value, String name) {
+        if (value < 0 || value > 1) {
+            throw new IllegalArgumentException("Expected " + name + " to be between 0 and 1, got " + value);
+        }
+        return value;
+    }
+}
@@ -3,9 +3,18 @@ package pt.up.fe.comp.cp1;
 import org.junit.Test;
 import pt.up.fe.comp.TestUtils;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTableBuilder;
+import pt.up.fe.comp2024.symboltable.ResolvedSymbol.Scope;
 import pt.up.fe.specs.util.SpecsIo;
 
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test variable lookup.
@@ -130,4 +139,97 @@ public class SymbolTableTest {
         assertEquals("Parameter 2", "boolean", parameters.get(1).getType().getName());
         assertEquals("Parameter 3", "Parameters", parameters.get(2).getType().getName());
     }
+
+    static JmmSymbolTable getResolveTable() {
+        var parserResult = TestUtils.parse(SpecsIo.getResource("pt/up/fe/comp/cp1/symboltable/Resolve.jmm"));
+        TestUtils.noErrors(parserResult.getReports());
+        return JmmSymbolTableBuilder.build(parserResult.getRootNode());
+    }
+
+    static void assertResolves(JmmSymbolTable table, String method, String name, Scope scope, Type type) {
+        var symbol = table.resolve(method, name).orElseThrow(() -> new AssertionError(name + " in " + method));
+        assertEquals(name + " in " + method, scope, symbol.getScope());
+        assertEquals(name + " in " + method, type, symbol.getSymbol().getType());
+        assertEquals(name + " in " + method, scope != Scope.IMPORT, symbol.getDeclaration().isPresent());
+    }
+
+    /**
+     * Test if names are looked up in the locals, then the parameters, then the fields and then the imports.
+     */
+    @Test
+    public void ResolveOrder() {
+        var table = getResolveTable();
+        var intType = new Type("int", false);
+        var intArray = new Type("int", true);
+
+        assertResolves(table, "local", "x", Scope.LOCAL, intType);
+        assertResolves(table, "local", "y", Scope.PARAMETER, intType);
+        assertResolves(table, "param", "x", Scope.PARAMETER, intArray);
+        assertResolves(table, "param", "y", Scope.FIELD, new Type("Resolve", false));
+        assertResolves(table, "field", "x", Scope.FIELD, new Type("boolean", false));
+        assertResolves(table, null, "x", Scope.FIELD, new Type("boolean", false));
+        assertResolves(table, "field", "z", Scope.IMPORT, new Type("z", false));
+        assertTrue(table.resolve("field", "none").isEmpty());
+    }
+
+    /**
+     * Test if the same names declared in different methods are only seen from their own method.
+     */
+    @Test
+    public void ResolveSameNamesInDifferentMethods() {
+        var table = getResolveTable();
+
+        assertResolves(table, "first", "v", Scope.PARAMETER, new Type("int", false));
+        assertResolves(table, "first", "w", Scope.LOCAL, new Type("Resolve", false));
+        assertResolves(table, "second", "v", Scope.LOCAL, new Type("int", true));
+        assertResolves(table, "second", "w", Scope.PARAMETER, new Type("boolean", false));
+        assertTrue(table.resolve("field", "v").isEmpty());
+        assertTrue(table.resolve("field", "w").isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ResolveRequiresBuiltTable() {
+        var table = getResolveTable();
+        JmmSymbolTable.of(new SymbolTable() {
+            @Override
+            public List<String> getImports() {
+                return table.getImports();
+            }
+
+            @Override
+            public String getClassName() {
+                return table.getClassName();
+            }
+
+            @Override
+            public String getSuper() {
+                return table.getSuper();
+            }
+
+            @Override
+            public List<Symbol> getFields() {
+                return table.getFields();
+            }
+
+            @Override
+            public List<String> getMethods() {
+                return table.getMethods();
+            }
+
+            @Override
+            public Type getReturnType(String methodSignature) {
+                return table.getReturnType(methodSignature);
+            }
+
+            @Override
+            public List<Symbol> getParameters(String methodSignature) {
+                return table.getParameters(methodSignature);
+            }
+
+            @Override
+            public List<Symbol> getLocalVariables(String methodSignature) {
+                return table.getLocalVariables(methodSignature);
+            }
+        });
+    }
 }
@@ -13,13 +13,26 @@
 
 package pt.up.fe.comp.cpf;
 
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.Assert;
 import org.junit.Test;
 import pt.up.fe.comp.CpUtils;
 import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.antlr.AntlrParser;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp2024.JavammLexer;
+import pt.up.fe.comp2024.JavammParser;
+import pt.up.fe.comp2024.utils.ProgramGenerator;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsStrings;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 public class Cpf1_ParserAndTree {
 
     static JasminResult getJmmResult(String filename) {
@@ -34,4 +47,123 @@ public class Cpf1_ParserAndTree {
                 result);
     }
 
+    /**
+     * Test if a large generated program, with every construct of the generator, parses, and is the same for the same
+     * seed
+     */
+    @Test
+    public void section2_Generated_LargeProgram() {
+        var generator = new ProgramGenerator(7)
+                .methods(64)
+                .fields(4)
+                .statements(128)
+                .expressionDepth(6)
+                .loopNesting(3)
+                .arrayDensity(0.2)
+                .callDensity(0.2)
+                .varargsDensity(0.5);
+
+        var code = generator.generate("Generated");
+        Assert.assertEquals("Expected the same program for the same seed", code, generator.generate("Generated"));
+        TestUtils.noErrors(TestUtils.parse(code));
+    }
+
+    /**
+     * Test if the parser, which each thread reuses, gives the same tree before and after a program with syntax errors
+     */
+    @Test
+    public void section3_Parser_ReusedAfterErrors() {
+        String code = SpecsIo.getResource("pt/up/fe/comp/cpf/1_parser_and_tree/AddMultConstants.jmm");
+
+        var first = TestUtils.parse(code);
+        TestUtils.noErrors(first);
+        TestUtils.mustFail(TestUtils.parse(code.replace(";", "")));
+        var second = TestUtils.parse(code);
+        TestUtils.noErrors(second);
+
+        Assert.assertEquals("Expected the same tree", first.getRootNode().toTree(), second.getRootNode().toTree());
+    }
+
+    /**
+     * Test if the JavammFast grammar gives the same trees as Javamm, for the program of this section and for generated
+     * ones
+     */
+    @Test
+    public void section4_FastGrammar_SameTree() {
+        var fastGrammar = Map.of("fastGrammar", "true");
+
+        var codes = new ArrayList<String>();
+        codes.add(SpecsIo.getResource("pt/up/fe/comp/cpf/1_parser_and_tree/AddMultConstants.jmm"));
+        for (int seed = 0; seed < 8; seed++) {
+            codes.add(new ProgramGenerator(seed).fields(seed % 3).callDensity(0.3).varargsDensity(0.5).generate("G"));
+        }
+
+        for (var code : codes) {
+            var expected = TestUtils.parse(code);
+            var actual = TestUtils.parse(code, fastGrammar);
+            TestUtils.noErrors(expected);
+            TestUtils.noErrors(actual);
+            Assert.assertEquals("Expected the same tree", expected.getRootNode().toTree(),
+                    actual.getRootNode().toTree());
+        }
+    }
+
+    /**
+     * Test if profiling the parser gives the same tree and adds the profile as a log
+     */
+    @Test
+    public void section5_ProfileParser_Log() {
+        String code = SpecsIo.getResource("pt/up/fe/comp/cpf/1_parser_and_tree/AddMultConstants.jmm");
+
+        var expected = TestUtils.parse(code);
+        var profiled = TestUtils.parse(code, Map.of("profileParser", "true"));
+        TestUtils.noErrors(profiled);
+        Assert.assertEquals("Expected the same tree", expected.getRootNode().toTree(),
+                profiled.getRootNode().toTree());
+
+        var logs = profiled.getReports().stream()
+                .filter(report -> report.getType() == ReportType.LOG)
+                .toList();
+        Assert.assertEquals("Expected one log with the profile", 1, logs.size());
+        Assert.assertTrue("Expected the profile in the log, got " + logs.get(0).getMessage(),
+                logs.get(0).getMessage().startsWith("Parser prediction took"));
+    }
+
+    /**
+     * Test if the AST of the parser has the same nodes, with the same attributes and positions, as the one of the
+     * ANTLR converter of the course library
+     */
+    @Test
+    public void section6_Ast_SameAsConverter() {
+        var codes = new ArrayList<String>();
+        codes.add(SpecsIo.getResource("pt/up/fe/comp/cpf/1_parser_and_tree/AddMultConstants.jmm"));
+        codes.add(new ProgramGenerator(3).fields(2).arrayDensity(0.3).callDensity(0.3).varargsDensity(0.5)
+                .generate("G"));
+
+        for (var code : codes) {
+            var lexer = new JavammLexer(new ANTLRInputStream(code));
+            var expected = AntlrParser.parse(lexer, new JavammParser(new CommonTokenStream(lexer)), "program");
+            var actual = TestUtils.parse(code);
+            TestUtils.noErrors(actual);
+
+            Assert.assertEquals("Expected the same tree", expected.getRootNode().toTree(),
+                    actual.getRootNode().toTree());
+
+            List<JmmNode> expectedNodes = expected.getRootNode().getDescendantsAndSelfStream().toList();
+            List<JmmNode> actualNodes = actual.getRootNode().getDescendantsAndSelfStream().toList();
+            for (int i = 0; i < expectedNodes.size(); i++) {
+                var expectedNode = expectedNodes.get(i);
+                var actualNode = actualNodes.get(i);
+                Assert.assertEquals("Expected the same hierarchy", List.copyOf(expectedNode.getHierarchy()),
+                        List.copyOf(actualNode.getHierarchy()));
+                Assert.assertEquals("Expected the same attributes", List.copyOf(expectedNode.getAttributes()),
+                        List.copyOf(actualNode.getAttributes()));
+                for (var attribute : expectedNode.getAttributes()) {
+                    Assert.assertEquals("Expected the same value of '" + attribute + "' in " + expectedNode,
+                            expectedNode.get(attribute), actualNode.get(attribute));
+                }
+            }
+        }
+    }
+
 }
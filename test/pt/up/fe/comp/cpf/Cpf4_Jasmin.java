@@ -18,12 +18,23 @@ import pt.up.fe.comp.CpUtils;
 import pt.up.fe.comp.TestUtils;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.backend.ClassFileGenerator;
+import pt.up.fe.comp2024.backend.JasminInstruction;
+import pt.up.fe.comp2024.backend.StackCalculator;
+import pt.up.fe.comp2024.utils.ProgramGenerator;
 import pt.up.fe.specs.util.SpecsCheck;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsStrings;
+import pt.up.fe.specs.util.exceptions.NotImplementedException;
 import utils.ProjectTestUtils;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -303,4 +314,119 @@ public class Cpf4_Jasmin {
         // Make sure the code compiles
         jasminResult.compile();
     }
+
+    static int getLimitStack(JasminResult jasminResult, String methodName) {
+        var methodCode = CpUtils.getJasminMethod(jasminResult, methodName);
+        return Integer.parseInt(SpecsStrings.getRegexGroup(methodCode, CpUtils.getLimitStackRegex(), 1));
+    }
+
+    /*checks if the .limits stack is the deepest of the arms of a branch */
+    @Test
+    public void section6_Limits_Stack_Branches() {
+        var jasminResult = getJasminResult("limits/StackBranches.ollir");
+
+        assertEquals(4, getLimitStack(jasminResult, "branch"));
+        ProjectTestUtils.runJasmin(jasminResult, "1\n2");
+    }
+
+    /*checks if the .limits stack counts the receiver, arguments and result of calls */
+    @Test
+    public void section6_Limits_Stack_Calls() {
+        var jasminResult = getJasminResult("limits/StackCalls.ollir");
+
+        assertEquals(2, getLimitStack(jasminResult, "sum"));
+        assertEquals(4, getLimitStack(jasminResult, "calls"));
+        ProjectTestUtils.runJasmin(jasminResult, "7");
+    }
+
+    @Test
+    public void section6_Limits_Stack_Opcodes() {
+        assertEquals(1, StackCalculator.getStackEffect(JasminInstruction.newInstruction("aconst_null")));
+        assertEquals(1, StackCalculator.getStackEffect(JasminInstruction.newInstruction("iconst_m1")));
+        assertEquals(1, StackCalculator.getStackEffect(JasminInstruction.newInstruction("aload_3")));
+        assertEquals(-1, StackCalculator.getStackEffect(JasminInstruction.newInstruction("istore_0")));
+        assertEquals(-2, StackCalculator.getStackEffect(JasminInstruction.newInstruction("if_icmplt", "end")));
+    }
+
+    @Test(expected = NotImplementedException.class)
+    public void section6_Limits_Stack_UnknownOpcode() {
+        StackCalculator.getStackEffect(JasminInstruction.newInstruction("lload_1"));
+    }
+
+    /**
+     * Writes the class file of the class file backend to a new folder and runs it.
+     *
+     * @return what the program printed, or the exit code if it failed
+     */
+    static String runClassFile(OllirResult ollirResult) throws IOException, InterruptedException {
+        var folder = Files.createTempDirectory("classfile");
+        var className = ollirResult.getOllirClass().getClassName();
+        Files.write(folder.resolve(className + ".class"), new ClassFileGenerator(ollirResult).build());
+
+        var classpath = folder + File.pathSeparator + TestUtils.getLibsClasspath();
+        var process = new ProcessBuilder("java", "-cp", classpath, className)
+                .directory(SpecsIo.getWorkingDir())
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        var output = new String(process.getInputStream().readAllBytes());
+        int exitCode = process.waitFor();
+
+        SpecsIo.deleteFolder(folder.toFile());
+        return exitCode == 0 ? output : output + "exit code " + exitCode;
+    }
+
+    static String runJasmin(JasminResult jasminResult) {
+        var output = jasminResult.runWithFullOutput(Collections.emptyList(),
+                List.of(TestUtils.getLibsClasspath()), null);
+        return output.getReturnValue() == 0
+                ? output.getStdOut()
+                : output.getStdOut() + "exit code " + output.getReturnValue();
+    }
+
+    /**
+     * Test if the class files of the class file backend print the same as the Jasmin backend, for the OLLIR of the
+     * Jasmin tests and for generated programs
+     */
+    @Test
+    public void section7_ClassFile_SameOutputAsJasmin() throws IOException, InterruptedException {
+        var ollirResults = new ArrayList<OllirResult>();
+        for (var file : SpecsIo.getFilesRecursive(new File("test/pt/up/fe/comp/cpf/4_jasmin"), "ollir")) {
+            ollirResults.add(new OllirResult(SpecsIo.read(file), Collections.emptyMap()));
+        }
+        for (int seed = 0; seed < 4; seed++) {
+            var code = new ProgramGenerator(seed).generate("Generated" + seed);
+            ollirResults.add(TestUtils.optimize(code, Map.of("optimize", "true")));
+        }
+
+        for (var ollirResult : ollirResults) {
+            TestUtils.noErrors(ollirResult);
+            var jasminResult = TestUtils.backend(ollirResult);
+            assertEquals("Output of class " + ollirResult.getOllirClass().getClassName(),
+                    SpecsStrings.normalizeFileContents(runJasmin(jasminResult), true),
+                    SpecsStrings.normalizeFileContents(runClassFile(ollirResult), true));
+        }
+    }
+
+    /**
+     * Test if branches over more than 32KB of code are written with goto_w
+     */
+    @Test
+    public void section7_ClassFile_LongBranches() throws IOException, InterruptedException {
+        var code = new StringBuilder();
+        code.append("import io;\nLongBranches {\n");
+        code.append(".construct LongBranches().V {\ninvokespecial(this, \"<init>\").V;\n}\n");
+        code.append(".method public static main(args.array.String).V {\n");
+        code.append("x.i32 :=.i32 0.i32;\ny.i32 :=.i32 1.i32;\ni.i32 :=.i32 0.i32;\n");
+        code.append("loop:\nif (i.i32 >=.bool 3.i32) goto end;\n");
+
+        // each sum takes 4 bytes, so the loop is about 40KB long
+        for (int i = 0; i < 10000; i++) {
+            code.append("x.i32 :=.i32 x.i32 +.i32 y.i32;\n");
+        }
+        code.append("i.i32 :=.i32 i.i32 +.i32 1.i32;\ngoto loop;\n");
+        code.append("end:\ninvokestatic(io, \"println\", x.i32).V;\nret.V;\n}\n}\n");
+
+        var ollirResult = new OllirResult(code.toString(), Collections.emptyMap());
+        assertEquals("30000", SpecsStrings.normalizeFileContents(runClassFile(ollirResult), true));
+    }
 }
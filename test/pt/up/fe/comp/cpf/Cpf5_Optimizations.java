@@ -14,14 +14,32 @@
 package pt.up.fe.comp.cpf;
 
 import org.junit.Test;
+import org.specs.comp.ollir.ArrayOperand;
+import org.specs.comp.ollir.AssignInstruction;
+import org.specs.comp.ollir.BinaryOpInstruction;
+import org.specs.comp.ollir.InstructionType;
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.OperationType;
 import pt.up.fe.comp.CpUtils;
 import pt.up.fe.comp.TestUtils;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp2024.optimization.InstUtils;
+import pt.up.fe.comp2024.optimization.OllirOptimizer;
+import pt.up.fe.comp2024.optimization.OllirPass;
+import pt.up.fe.comp2024.optimization.passes.DeadCodeElimination;
+import pt.up.fe.comp2024.optimization.passes.GlobalValueNumbering;
+import pt.up.fe.comp2024.optimization.passes.LoopInvariantCodeMotion;
+import pt.up.fe.comp2024.optimization.passes.SparseConditionalConstantPropagation;
+import pt.up.fe.comp2024.optimization.passes.SsaOptimization;
+import pt.up.fe.comp2024.utils.ProgramGenerator;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsStrings;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -32,6 +50,12 @@ public class Cpf5_Optimizations {
         return TestUtils.optimize(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename));
     }
 
+    static OllirResult getOllirResultOpt(String filename) {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "true");
+        return TestUtils.optimize(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename), config);
+    }
+
     static JasminResult getJasminResult(String filename) {
         String resource = SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename);
         return TestUtils.backend(resource);
@@ -43,12 +67,69 @@ public class Cpf5_Optimizations {
         return TestUtils.backend(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename), config);
     }
 
+    static JasminResult getJasminResultFromOllir(String filename) {
+        var ollirResult = new OllirResult(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename),
+                Collections.emptyMap());
+        return TestUtils.backend(ollirResult);
+    }
+
+    static JasminResult getJasminResultFromOllirOpt(String filename) {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "true");
+        var ollirResult = new OllirResult(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename),
+                config);
+        return TestUtils.backend(TestUtils.getJmmOptimization().optimize(ollirResult));
+    }
+
     static JasminResult getJasminResultReg(String filename, int numReg) {
         Map<String, String> config = new HashMap<>();
         config.put("registerAllocation", String.valueOf(numReg));
         return TestUtils.backend(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename), config);
     }
 
+    /**
+     * Runs only the given passes over the OLLIR in the file.
+     */
+    static OllirResult getOllirResultFromOllir(String filename, OllirPass... passes) {
+        var ollirResult = new OllirResult(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename),
+                Collections.emptyMap());
+        new OllirOptimizer(List.of(passes)).optimize(ollirResult.getOllirClass());
+        return ollirResult;
+    }
+
+    static Method getMethod(OllirResult ollirResult, String methodName) {
+        return ollirResult.getOllirClass().getMethods().stream()
+                .filter(method -> method.getMethodName().equals(methodName))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    static long countInstructions(Method method, InstructionType type) {
+        return method.getInstructions().stream().filter(inst -> inst.getInstType() == type).count();
+    }
+
+    static long countOperations(Method method, OperationType type) {
+        return method.getInstructions().stream()
+                .map(inst -> inst instanceof AssignInstruction assign ? assign.getRhs() : inst)
+                .filter(inst -> inst instanceof BinaryOpInstruction binaryOp
+                        && binaryOp.getOperation().getOpType() == type)
+                .count();
+    }
+
+    /**
+     * @return the index of the last instruction that assigns the variable, or -1
+     */
+    static int indexOfAssign(Method method, String name) {
+        var instructions = method.getInstructions();
+        for (int i = instructions.size() - 1; i >= 0; i--) {
+            var dest = InstUtils.getDest(instructions.get(i));
+            if (dest.isPresent() && dest.get().getName().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Test if small integers are loaded with iconst
      */
@@ -163,6 +244,54 @@ public class Cpf5_Optimizations {
     }
 
 
+    static int getLimitLocals(JasminResult jasminResult, String methodName) {
+        var method = CpUtils.getJasminMethod(jasminResult, methodName);
+        var matcher = Pattern.compile("\\.limit\\s+locals\\s+(\\d+)\\s+").matcher(method);
+        CpUtils.assertTrue("Expected to find .limit locals in method '" + methodName + "'", matcher.find(),
+                jasminResult);
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    /**
+     * Test if -r=0 uses the fewest registers, where locals that are not live at the same time share one
+     */
+    @Test
+    public void section2_RegAlloc_MinimumRegisters() {
+        JasminResult chain = getJasminResultReg("reg_alloc/regalloc.jmm", 0);
+        CpUtils.assertEquals("Expected 'this', 'arg' and one register for a, b, c and d", 3,
+                getLimitLocals(chain, "soManyRegisters"), chain);
+
+        JasminResult interference = getJasminResultReg("reg_alloc/RegAlloc_Interference.jmm", 0);
+        CpUtils.assertEquals("Expected 'this', 'x' and one register for each of a and b", 4,
+                getLimitLocals(interference, "sum"), interference);
+        CpUtils.runJasmin(interference, "18");
+    }
+
+    /**
+     * Test if -r=n reports an error when a method needs more than n registers
+     */
+    @Test
+    public void section2_RegAlloc_TooFewRegisters() {
+        var code = SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/reg_alloc/RegAlloc_Interference.jmm");
+        var chainCode = SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/reg_alloc/regalloc.jmm");
+
+        var enough = TestUtils.optimize(code, Map.of("registerAllocation", "4"));
+        TestUtils.noErrors(enough);
+
+        var tooFew = TestUtils.optimize(code, Map.of("registerAllocation", "3"));
+        var errors = tooFew.getReports().stream()
+                .filter(report -> report.getType() == ReportType.ERROR)
+                .toList();
+        CpUtils.assertEquals("Expected one error", 1, errors.size(), tooFew);
+        CpUtils.assertTrue("Expected 'sum' to need 4 registers",
+                errors.get(0).getMessage().contains("'sum' needs at least 4 registers"), tooFew);
+
+        var chain = TestUtils.optimize(chainCode, Map.of("registerAllocation", "2"));
+        CpUtils.assertTrue("Expected 'soManyRegisters' to need 3 registers", chain.getReports().stream()
+                .anyMatch(report -> report.getType() == ReportType.ERROR
+                        && report.getMessage().contains("'soManyRegisters' needs at least 3 registers")), chain);
+    }
+
     @Test
     public void section3_ConstProp_Simple() {
 
@@ -195,4 +324,427 @@ public class Cpf5_Optimizations {
     }
 
 
+    /**
+     * Test if temporaries that are stored and loaded right away stay on the stack
+     */
+    @Test
+    public void section4_Peephole_StoreLoad() {
+        JasminResult jasminResult = getJasminResult("peephole/Peephole_StoreLoad.jmm");
+        CpUtils.matches(jasminResult, "imul\\s+iconst_1\\s+iadd");
+        CpUtils.runJasmin(jasminResult, "7");
+    }
+
+    /**
+     * Test if a goto to the label that follows it is removed
+     */
+    @Test
+    public void section4_Peephole_BranchToNext() {
+        JasminResult jasminResult = getJasminResult("peephole/Peephole_BranchToNext.jmm");
+        CpUtils.assertEquals("Expected no goto", 0, CpUtils.countOccurences(jasminResult, "goto"), jasminResult);
+        CpUtils.runJasmin(jasminResult, "2");
+    }
+
+    /**
+     * Test if a conditional branch over a goto is negated
+     */
+    @Test
+    public void section4_Peephole_BranchOverGoto() {
+        JasminResult jasminResult = getJasminResult("peephole/Peephole_BranchOverGoto.jmm");
+        CpUtils.matches(jasminResult, "if_icmpge");
+        CpUtils.assertEquals("Expected no goto", 0, CpUtils.countOccurences(jasminResult, "goto"), jasminResult);
+        CpUtils.runJasmin(jasminResult, "1");
+    }
+
+    /**
+     * Test if no branch targets a label that is followed by a goto
+     */
+    @Test
+    public void section4_Peephole_BranchChaining() {
+        JasminResult jasminResult = getJasminResult("peephole/Peephole_BranchChaining.jmm");
+
+        Matcher gotoLabels = Pattern.compile("(\\w+):\\s+goto").matcher(jasminResult.getJasminCode());
+        while (gotoLabels.find()) {
+            var label = gotoLabels.group(1);
+            CpUtils.assertEquals("Expected no branch to label " + label, 0,
+                    CpUtils.countOccurrencesRegex(jasminResult, "(goto|if\\w*)\\s+" + label + "\\s"), jasminResult);
+        }
+
+        CpUtils.runJasmin(jasminResult, "5");
+    }
+
+    /**
+     * Test if iinc is used when decrementing a variable
+     */
+    @Test
+    public void section4_Peephole_IincSub() {
+        JasminResult jasminResult = getJasminResult("peephole/Peephole_IincSub.jmm");
+        CpUtils.matches(jasminResult, "iinc\\s+\\w+\\s+-1");
+        CpUtils.runJasmin(jasminResult, "0");
+    }
+
+    /**
+     * Test if comparisons with 0 use the single operand branches
+     */
+    @Test
+    public void section4_Peephole_CompareWithZero() {
+        JasminResult jasminResult = getJasminResult("peephole/Peephole_CompareWithZero.jmm");
+        CpUtils.matches(jasminResult, "ifgt");
+        CpUtils.runJasmin(jasminResult, "1");
+    }
+
+    /**
+     * Test if a branch on a negated boolean does not compute the negation
+     */
+    @Test
+    public void section4_Peephole_Not() {
+        JasminResult jasminResult = getJasminResultFromOllir("peephole/Peephole_Not.ollir");
+        CpUtils.matches(jasminResult, "ifeq");
+        CpUtils.assertEquals("Expected no ixor", 0, CpUtils.countOccurences(jasminResult, "ixor"), jasminResult);
+        CpUtils.runJasmin(jasminResult, "1");
+    }
+
+    /**
+     * Test if values that are pushed and then popped are never pushed
+     */
+    @Test
+    public void section4_Peephole_DupPop() {
+        JasminResult jasminResult = getJasminResult("peephole/Peephole_DupPop.jmm");
+        CpUtils.assertEquals("Expected no pop", 0, CpUtils.countOccurrencesRegex(jasminResult, "\\bpop2?\\b"),
+                jasminResult);
+        CpUtils.runJasmin(jasminResult, "2");
+    }
+
+    /**
+     * Test if multiplications by powers of two become shifts
+     */
+    @Test
+    public void section5_StrengthReduction_MulPowerOfTwo() {
+        JasminResult jasminResult = getJasminResultOpt("strength_reduction/StrengthReduction_MulPowerOfTwo.jmm");
+        String method = CpUtils.getJasminMethod(jasminResult, "times8");
+        CpUtils.assertTrue("Expected ishl in method times8", method.contains("ishl"), jasminResult);
+        CpUtils.assertTrue("Expected no imul in method times8", !method.contains("imul"), jasminResult);
+        CpUtils.runJasmin(jasminResult, "40");
+    }
+
+    /**
+     * Test if divisions by powers of two become shifts that still round towards zero
+     */
+    @Test
+    public void section5_StrengthReduction_DivPowerOfTwo() {
+        JasminResult jasminResult = getJasminResultOpt("strength_reduction/StrengthReduction_DivPowerOfTwo.jmm");
+        String method = CpUtils.getJasminMethod(jasminResult, "div4");
+        CpUtils.assertTrue("Expected ishr in method div4", method.contains("ishr"), jasminResult);
+        CpUtils.assertTrue("Expected no idiv in method div4", !method.contains("idiv"), jasminResult);
+        CpUtils.runJasmin(jasminResult, "3\n-3");
+    }
+
+    /**
+     * Test if a product of the loop counter in a loop becomes an addition
+     */
+    @Test
+    public void section5_StrengthReduction_InductionVariable() {
+        JasminResult jasminResult = getJasminResultOpt("strength_reduction/StrengthReduction_InductionVariable.jmm");
+        String method = CpUtils.getJasminMethod(jasminResult, "sum");
+        Matcher loop = Pattern.compile("(while\\w*):(.*?)\\bif\\w*\\s+\\1\\b", Pattern.DOTALL).matcher(method);
+        CpUtils.assertTrue("Expected a loop in method sum", loop.find(), jasminResult);
+        CpUtils.assertTrue("Expected no imul in the loop", !loop.group(2).contains("imul"), jasminResult);
+        CpUtils.matches(jasminResult, "iinc");
+        CpUtils.runJasmin(jasminResult, "30");
+    }
+
+    /**
+     * Test if calls to small methods of the class are inlined, and recursive calls are not
+     */
+    @Test
+    public void section6_Inlining_SmallMethods() {
+        JasminResult jasminResult = getJasminResultFromOllirOpt("inlining/Inlining_SmallMethods.ollir");
+        String method = CpUtils.getJasminMethod(jasminResult, "run");
+        CpUtils.assertTrue("Expected getValue, setValue and twice to be inlined in method run",
+                !method.contains("getValue") && !method.contains("setValue") && !method.contains("twice("),
+                jasminResult);
+        CpUtils.assertTrue("Expected the recursive call to fact to be kept in method run",
+                method.contains("invokevirtual Inlining_SmallMethods/fact"), jasminResult);
+        CpUtils.runJasmin(jasminResult, "160");
+    }
+
+    /**
+     * Test if inlined calls pass their arguments right when they have the names of the parameters of the callee
+     */
+    @Test
+    public void section6_Inlining_SharedNames() {
+        JasminResult jasminResult = getJasminResultOpt("inlining/Inlining_SharedNames.jmm");
+        String method = CpUtils.getJasminMethod(jasminResult, "run");
+        CpUtils.assertTrue("Expected sub to be inlined in method run", !method.contains("invokevirtual"),
+                jasminResult);
+        CpUtils.runJasmin(jasminResult, "-7\n7");
+    }
+
+    /**
+     * Test if calls on "this" are kept, since a subclass can override the callee, and the subclass sees its override
+     */
+    @Test
+    public void section6_Inlining_OverriddenMethod() {
+        JasminResult superclass = getJasminResultOpt("inlining/Inlining_Overridden.jmm");
+        String method = CpUtils.getJasminMethod(superclass, "show");
+        CpUtils.assertTrue("Expected the call to value on this to be kept in method show",
+                method.contains("invokevirtual Inlining_Overridden/value"), superclass);
+        CpUtils.runJasmin(superclass, "1");
+
+        var folder = SpecsIo.getTempFolder("inlining_overridden");
+        SpecsIo.deleteFolderContents(folder);
+        superclass.compile(folder);
+
+        JasminResult subclass = getJasminResultFromOllirOpt("inlining/Inlining_OverriddenSub.ollir");
+        var output = subclass.run(Collections.emptyList(),
+                List.of(folder.getAbsolutePath(), TestUtils.getLibsClasspath()), null);
+        CpUtils.assertEquals("Expected show to call the override of the subclass", "2",
+                SpecsStrings.normalizeFileContents(output, true), subclass);
+    }
+
+    /**
+     * Test if repeated loads and products are reused, also after a join, but not loads after an array store
+     */
+    @Test
+    public void section7_Cse_Kernel() {
+        JasminResult jasminResult = getJasminResultFromOllirOpt("cse/Cse_Kernel.ollir");
+        CpUtils.assertEquals("Expected one product in each branch of method kernel", 2,
+                CpUtils.countOccurences(jasminResult, "imul"), jasminResult);
+        CpUtils.assertEquals("Expected one load before and two after the store in method kernel", 3,
+                CpUtils.countOccurences(jasminResult, "iaload"), jasminResult);
+        CpUtils.runJasmin(jasminResult, "12\n22\n7\n45");
+    }
+
+    /**
+     * Test if overwritten and unread assignments, constant branches and unreachable code are removed
+     */
+    @Test
+    public void section8_Dce_DeadStoresAndBlocks() {
+        JasminResult jasminResult = getJasminResultFromOllirOpt("dce/Dce_DeadStoresAndBlocks.ollir");
+        CpUtils.assertEquals("Expected no imul", 0, CpUtils.countOccurences(jasminResult, "imul"), jasminResult);
+        CpUtils.assertEquals("Expected only the reachable call in method compute, and the one in main", 2,
+                CpUtils.countOccurrencesRegex(jasminResult, "invokestatic\\s+io/println"), jasminResult);
+        CpUtils.assertEquals("Expected no jumps", 0,
+                CpUtils.countOccurrencesRegex(jasminResult, "\\b(goto|if\\w*)\\s"), jasminResult);
+        CpUtils.runJasmin(jasminResult, "5\n5");
+    }
+
+    /**
+     * Test if a method is left as it was when a pass fails after rewriting some of its instructions in place
+     */
+    @Test
+    public void section8_Optimizer_FailedPassRestoresMethod() {
+        OllirPass failingPass = method -> {
+            var instructions = method.getInstructions();
+            instructions.forEach(inst -> InstUtils.replaceUses(inst,
+                    operand -> InstUtils.newLiteral(0, operand.getType())));
+            instructions.remove(instructions.size() - 1);
+            throw new RuntimeException("failed halfway");
+        };
+        var optimizer = new OllirOptimizer(List.of(new DeadCodeElimination(), failingPass));
+
+        var ollirResult = new OllirResult(SpecsIo.getResource(
+                "pt/up/fe/comp/cpf/5_optimizations/dce/Dce_DeadStoresAndBlocks.ollir"), Collections.emptyMap());
+        optimizer.optimize(ollirResult.getOllirClass());
+        CpUtils.assertTrue("Expected a warning for each method that could not be optimized",
+                optimizer.getReports().stream().filter(report -> report.getType() == ReportType.WARNING).count() == 2,
+                ollirResult);
+
+        JasminResult jasminResult = TestUtils.backend(ollirResult);
+        CpUtils.assertEquals("Expected the products that dead code elimination removed to be back", 2,
+                CpUtils.countOccurences(jasminResult, "imul"), jasminResult);
+        CpUtils.runJasmin(jasminResult, "5\n5");
+    }
+
+    /**
+     * Test if constant expressions are folded in the AST, before any OLLIR is generated, with int overflow
+     */
+    @Test
+    public void section9_AstFolding_Arithmetic() {
+        String filename = "ast_folding/AstFolding_Arithmetic.jmm";
+
+        // the OLLIR passes change the class, not the generated code
+        OllirResult ollirResult = getOllirResultOpt(filename);
+        String ollirCode = ollirResult.getOllirCode();
+        CpUtils.assertTrue("Expected no products or divisions in the OLLIR code",
+                !ollirCode.contains("*.i32") && !ollirCode.contains("/.i32"), ollirResult);
+        CpUtils.assertTrue("Expected the sum that overflows to be folded",
+                ollirCode.contains("-2147483648.i32"), ollirResult);
+
+        CpUtils.runJasmin(getJasminResultOpt(filename), "20\n-2147483648");
+    }
+
+    /**
+     * Test if && and || in conditions become jumps, so calls on their right are skipped when the left decides
+     */
+    @Test
+    public void section10_ShortCircuit_Conditions() {
+        JasminResult jasminResult = getJasminResult("short_circuit/ShortCircuit_Conditions.jmm");
+        CpUtils.assertEquals("Expected no boolean operations", 0,
+                CpUtils.countOccurrencesRegex(jasminResult, "\\b(iand|ior|ixor)\\b"), jasminResult);
+        CpUtils.runJasmin(jasminResult, "125");
+    }
+
+    /**
+     * Test if generated programs print the same with and without optimizations
+     */
+    @Test
+    public void section11_Generated_SameOutput() {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "true");
+
+        // seed 10 ends a branch of a nested if with a block that only jumps, where SSA places copies
+        for (int seed = 0; seed < 12; seed++) {
+            String code = new ProgramGenerator(seed).generate("Generated");
+
+            JasminResult expected = TestUtils.backend(code);
+            TestUtils.noErrors(expected);
+            JasminResult optimized = TestUtils.backend(code, config);
+            TestUtils.noErrors(optimized);
+
+            CpUtils.assertEquals("Wrong output for seed " + seed, expected.run(), optimized.run(), optimized);
+        }
+    }
+
+    /**
+     * Test if generated programs with methods small enough to be inlined print the same with and without
+     * optimizations, where the arguments of the inlined calls share names with the locals of the callees
+     */
+    @Test
+    public void section11_Generated_InlinedSameOutput() {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "true");
+
+        for (int seed = 0; seed < 12; seed++) {
+            String code = new ProgramGenerator(seed).methods(6).statements(6).inlinableLeaves(true)
+                    .generate("Generated");
+
+            JasminResult expected = TestUtils.backend(code);
+            TestUtils.noErrors(expected);
+            JasminResult optimized = TestUtils.backend(code, config);
+            TestUtils.noErrors(optimized);
+            CpUtils.assertTrue("Expected calls to be inlined for seed " + seed,
+                    optimized.getReports().stream().anyMatch(report -> report.getMessage().matches(
+                            "MethodInliner inlined [1-9]\\d* call\\(s\\)")), optimized);
+
+            CpUtils.assertEquals("Wrong output for seed " + seed, expected.run(), optimized.run(), optimized);
+        }
+    }
+
+    /**
+     * Test if SCCP finds that a variable keeps its value around a loop, removing the branch on it and the dead arm
+     */
+    @Test
+    public void section12_Ssa_SccpBranchOnConstant() {
+        OllirResult ollirResult = getOllirResultFromOllir("ssa/Ssa_Sccp.ollir",
+                new SsaOptimization(List.of(new SparseConditionalConstantPropagation())));
+        Method method = getMethod(ollirResult, "count");
+        CpUtils.assertEquals("Expected only the branch of the loop", 1,
+                countInstructions(method, InstructionType.BRANCH), ollirResult);
+        CpUtils.assertEquals("Expected no call, since the arm that calls println never runs", 0,
+                countInstructions(method, InstructionType.CALL), ollirResult);
+        CpUtils.assertTrue("Expected the label of the dead arm to be removed",
+                !method.getLabels().containsKey("change"), ollirResult);
+
+        CpUtils.runJasmin(TestUtils.backend(ollirResult), "4");
+    }
+
+    /**
+     * Test if GVN reuses a product computed before a branch in both arms and after the join, and merges two phis of
+     * the same values
+     */
+    @Test
+    public void section12_Ssa_GvnAcrossJoin() {
+        OllirResult ollirResult = getOllirResultFromOllir("ssa/Ssa_Gvn.ollir",
+                new SsaOptimization(List.of(new GlobalValueNumbering())));
+        Method method = getMethod(ollirResult, "gvn");
+        CpUtils.assertEquals("Expected a single product", 1, countOperations(method, OperationType.MUL),
+                ollirResult);
+        CpUtils.assertEquals("Expected one sum in the first arm, and one for each of u and w", 3,
+                countOperations(method, OperationType.ADD), ollirResult);
+        CpUtils.assertEquals("Expected one subtraction in the second arm", 1,
+                countOperations(method, OperationType.SUB), ollirResult);
+
+        CpUtils.runJasmin(TestUtils.backend(ollirResult), "46\n50");
+    }
+
+    /**
+     * Test if variables swapped in a loop keep their values when the phis at the loop header become copies
+     */
+    @Test
+    public void section12_Ssa_SwapInLoop() {
+        OllirResult ollirResult = getOllirResultFromOllir("ssa/Ssa_SwapInLoop.ollir", new SsaOptimization());
+        Method method = getMethod(ollirResult, "swap");
+        CpUtils.assertTrue("Expected the method to be converted out of SSA form, with the constant propagated",
+                method.getInstructions().stream().flatMap(inst -> InstUtils.getUses(inst).stream())
+                        .noneMatch(operand -> operand.getName().equals("one")), ollirResult);
+        CpUtils.assertTrue("Expected the loop to be kept", method.getLabels().containsKey("loop"), ollirResult);
+
+        CpUtils.runJasmin(TestUtils.backend(ollirResult), "12\n21\n12\n21");
+    }
+
+    /**
+     * Test if a method with thousands of branches in sequence, whose dominator tree is as deep, is converted to and
+     * out of SSA form without running out of stack
+     */
+    @Test
+    public void section12_Ssa_DeepCfg() {
+        int branches = 3000;
+        var code = new StringBuilder("import io;\nDeep {\n.construct Deep().V {\ninvokespecial(this, \"<init>\").V;\n}\n"
+                + ".method public deep(x.i32).i32 {\n");
+        int expected = 0;
+        for (int k = 0; k < branches; k++) {
+            code.append("if (x.i32 <.bool ").append(k % 7).append(".i32) goto t").append(k).append(";\n")
+                    .append("x.i32 :=.i32 x.i32 +.i32 2.i32;\ngoto e").append(k).append(";\n")
+                    .append("t").append(k).append(":\nx.i32 :=.i32 x.i32 +.i32 1.i32;\n")
+                    .append("e").append(k).append(":\n");
+            expected += expected < k % 7 ? 1 : 2;
+        }
+        code.append("ret.i32 x.i32;\n}\n.method public static main(args.array.String).V {\n"
+                + "d.Deep :=.Deep new(Deep).Deep;\ninvokespecial(d.Deep, \"<init>\").V;\n"
+                + "r.i32 :=.i32 invokevirtual(d.Deep, \"deep\", 0.i32).i32;\n"
+                + "invokestatic(io, \"println\", r.i32).V;\nret.V;\n}\n}\n");
+
+        var ollirResult = new OllirResult(code.toString(), Collections.emptyMap());
+        var optimizer = new OllirOptimizer(List.of(new SsaOptimization()));
+        optimizer.optimize(ollirResult.getOllirClass());
+        CpUtils.assertTrue("Expected every method to be optimized, but got " + optimizer.getReports(),
+                optimizer.getReports().stream().noneMatch(report -> report.getType() == ReportType.WARNING),
+                ollirResult);
+
+        CpUtils.runJasmin(TestUtils.backend(ollirResult), Integer.toString(expected));
+    }
+
+    /**
+     * Test if an invariant product in a while loop moves before the loop, while a store, computations that depend on
+     * variables written in the loop, and a variable read after a loop that may not run stay in it
+     */
+    @Test
+    public void section13_Licm_WhileLoop() {
+        OllirResult ollirResult = getOllirResultFromOllir("licm/Licm_WhileLoop.ollir",
+                new LoopInvariantCodeMotion());
+        Method method = getMethod(ollirResult, "licm");
+        var instructions = method.getInstructions();
+        int loopStart = instructions.indexOf(method.getLabels().get("loop"));
+        int loopEnd = instructions.indexOf(method.getLabels().get("done"));
+
+        int store = -1;
+        for (int i = 0; i < instructions.size(); i++) {
+            if (instructions.get(i) instanceof AssignInstruction assign && assign.getDest() instanceof ArrayOperand) {
+                store = i;
+            }
+        }
+
+        CpUtils.assertTrue("Expected x * y to move before the loop", indexOfAssign(method, "p") < loopStart,
+                ollirResult);
+        CpUtils.assertTrue("Expected i * x, which depends on the counter, to stay in the loop",
+                indexOfAssign(method, "q") > loopStart && indexOfAssign(method, "q") < loopEnd, ollirResult);
+        CpUtils.assertTrue("Expected the array store to stay in the loop", store > loopStart && store < loopEnd,
+                ollirResult);
+        CpUtils.assertTrue("Expected k, which is read after the loop, to stay in the loop",
+                indexOfAssign(method, "k") > loopStart, ollirResult);
+
+        // the first call does not enter the loop, so neither stores nor changes k
+        CpUtils.runJasmin(TestUtils.backend(ollirResult), "0\n0\n81\n4");
+    }
+
 }
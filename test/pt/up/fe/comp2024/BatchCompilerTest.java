@@ -0,0 +1,101 @@
+package pt.up.fe.comp2024;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BatchCompilerTest {
+
+    private File folder;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("batch").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        SpecsIo.deleteFolder(folder);
+    }
+
+    private File write(String path, String code) {
+        var file = new File(folder, path);
+        SpecsIo.write(file, code);
+        return file;
+    }
+
+    private static String program(String className, int value) {
+        return "import io;\nclass " + className + " {\n    public static void main(String[] args) {\n"
+                + "        io.println(" + value + ");\n    }\n}\n";
+    }
+
+    private BatchCompiler classFileCompiler() {
+        return new BatchCompiler(CompilerConfig.parseArgs(new String[]{"-b=.", "-c"}), folder);
+    }
+
+    @Test
+    public void reportsInInputOrder() {
+        var inputs = new ArrayList<File>();
+        for (int i = 9; i >= 0; i--) {
+            inputs.add(write("Class" + i + ".jmm", i % 3 == 0 ? "class Class" + i + " {" : program("Class" + i, i)));
+        }
+
+        var results = classFileCompiler().compile(inputs, 4);
+
+        assertEquals(inputs, new ArrayList<>(results.keySet()));
+        for (int i = 0; i < inputs.size(); i++) {
+            boolean broken = (9 - i) % 3 == 0;
+            assertEquals(inputs.get(i).toString(), broken, JmmCompiler.hasErrors(results.get(inputs.get(i))));
+        }
+    }
+
+    @Test
+    public void failingFileDoesNotStopOthers() {
+        var before = write("Before.jmm", program("Before", 1));
+        var missing = new File(folder, "Missing.jmm");
+        var broken = write("Broken.jmm", "class Broken { int a; int a; }");
+        var after = write("After.jmm", program("After", 2));
+
+        var results = classFileCompiler().compile(List.of(before, missing, broken, after), 2);
+
+        var lines = new ArrayList<String>();
+        assertEquals(2, BatchCompiler.printReports(results, lines::add));
+        assertEquals("Compiled 4 file(s), 2 failed", lines.get(lines.size() - 1));
+        assertTrue(new File(folder, "Before.class").isFile());
+        assertTrue(new File(folder, "After.class").isFile());
+        assertFalse(new File(folder, "Broken.class").exists());
+    }
+
+    @Test
+    public void sameClassNameReported() throws IOException {
+        var first = write("a/Same.jmm", program("Same", 1));
+        var second = write("b/Same.jmm", program("Same", 2));
+        var other = write("c/Other.jmm", program("Other", 3));
+
+        var results = classFileCompiler().compile(BatchCompiler.collectInputs(".", folder), 3);
+
+        assertEquals(List.of(first, second, other), new ArrayList<>(results.keySet()));
+        assertFalse(JmmCompiler.hasErrors(results.get(first)));
+        assertTrue(JmmCompiler.hasErrors(results.get(second)));
+        assertFalse(JmmCompiler.hasErrors(results.get(other)));
+
+        var message = results.get(second).get(results.get(second).size() - 1).getMessage();
+        assertTrue(message, message.contains("'Same'") && message.contains(first.toString()));
+
+        // the class file of the first one is kept, whichever finished last
+        var expected = new BatchCompiler(CompilerConfig.parseArgs(new String[]{"-b=.", "-c"}), new File(folder, "a"))
+                .compile(List.of(first), 1);
+        assertFalse(JmmCompiler.hasErrors(expected.get(first)));
+        assertArrayEquals(Files.readAllBytes(new File(folder, "a/Same.class").toPath()),
+                Files.readAllBytes(new File(folder, "Same.class").toPath()));
+    }
+}
@@ -0,0 +1,105 @@
+package pt.up.fe.comp2024;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CompileServerTest {
+
+    private static final String INPUT = "pt/up/fe/comp/cpf/4_jasmin/control_flow/SimpleWhileStat.jmm";
+
+    private File folder;
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("server").toFile();
+        root = new File(folder, "root");
+        SpecsIo.mkdir(root);
+        SpecsIo.write(new File(root, "SimpleWhileStat.jmm"), SpecsIo.getResource(INPUT));
+    }
+
+    @After
+    public void tearDown() {
+        SpecsIo.deleteFolder(folder);
+    }
+
+    /**
+     * Sends the requests, one per line, to a server started in the root folder.
+     *
+     * @return the lines of the answers
+     */
+    private List<String> send(String... requests) throws IOException {
+        var input = new ByteArrayInputStream((String.join("\n", requests) + "\n").getBytes(StandardCharsets.UTF_8));
+        var output = new ByteArrayOutputStream();
+
+        new CompileServer(root).serve(input, output);
+
+        return output.toString(StandardCharsets.UTF_8).lines().toList();
+    }
+
+    @Test
+    public void compileClassFile() throws IOException {
+        var answer = send(root + "\t-i=SimpleWhileStat.jmm\t-c");
+
+        assertEquals(List.of(CompileServer.EXIT + 0), answer);
+
+        var classFile = new File(root, "SimpleWhileStat.class");
+        assertTrue("Expected class file " + classFile, classFile.isFile());
+        var bytes = Files.readAllBytes(classFile.toPath());
+        assertEquals(0xCAFEBABE, (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8
+                | bytes[3] & 0xff);
+    }
+
+    @Test
+    public void compileErrorsAndNextRequest() throws IOException {
+        SpecsIo.write(new File(root, "Broken.jmm"), "class Broken { int a; int a; }");
+
+        var answer = send(root + "\t-i=Broken.jmm", root + "\t-i=SimpleWhileStat.jmm");
+
+        assertTrue(answer.toString(), answer.size() > 2);
+        assertEquals(CompileServer.EXIT + 1, answer.get(answer.size() - 2));
+        assertEquals(CompileServer.EXIT + 0, answer.get(answer.size() - 1));
+    }
+
+    @Test
+    public void workingDirOutsideRoot() throws IOException {
+        SpecsIo.write(new File(folder, "SimpleWhileStat.jmm"), SpecsIo.getResource(INPUT));
+
+        var answer = send(folder + "\t-i=SimpleWhileStat.jmm\t-c",
+                root + "/..\t-i=SimpleWhileStat.jmm\t-c");
+
+        assertEquals(4, answer.size());
+        assertTrue(answer.get(0), answer.get(0).startsWith("Working directory"));
+        assertEquals(CompileServer.EXIT + 1, answer.get(1));
+        assertEquals(CompileServer.EXIT + 1, answer.get(3));
+        assertFalse(new File(folder, "SimpleWhileStat.class").exists());
+    }
+
+    @Test
+    public void pathsOutsideRoot() throws IOException {
+        SpecsIo.write(new File(folder, "Outside.jmm"), SpecsIo.getResource(INPUT));
+
+        var answer = send(root + "\t-i=SimpleWhileStat.jmm\t-m=../metrics.json",
+                root + "\t-i=../Outside.jmm",
+                root + "\t-b=..");
+
+        assertEquals(6, answer.size());
+        assertTrue(answer.get(0), answer.get(0).startsWith("Metrics file"));
+        assertTrue(answer.get(2), answer.get(2).startsWith("Input file"));
+        assertTrue(answer.get(4), answer.get(4).startsWith("Input file"));
+        assertFalse(new File(folder, "metrics.json").exists());
+        assertFalse(new File(root, "SimpleWhileStat.class").exists());
+    }
+}
@@ -0,0 +1,125 @@
+package pt.up.fe.comp2024;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import pt.up.fe.comp2024.utils.Metrics;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    private static final String INPUT = "pt/up/fe/comp/cpf/4_jasmin/control_flow/SimpleWhileStat.jmm";
+
+    private File folder;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("metrics").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        SpecsIo.deleteFolder(folder);
+    }
+
+    private static Metrics sampleMetrics() {
+        var metrics = new Metrics();
+        metrics.measure("parsing", () -> {
+        });
+        metrics.measure("parsing", () -> {
+        });
+        metrics.measure("optimization/ast", () -> {
+        });
+        metrics.addCount("astNodes", 40);
+        metrics.addCount("astNodes", 2);
+        return metrics;
+    }
+
+    private static List<String> getPhaseNames(JsonObject file) {
+        var names = new ArrayList<String>();
+        for (var phase : file.getAsJsonArray("phases")) {
+            names.add(phase.getAsJsonObject().get("name").getAsString());
+        }
+        return names;
+    }
+
+    @Test
+    public void json() {
+        var metrics = new LinkedHashMap<File, Metrics>();
+        metrics.put(new File("dir", "Quote\"And\\Slash.jmm"), sampleMetrics());
+        metrics.put(new File("Empty.jmm"), new Metrics());
+
+        JsonArray json = JsonParser.parseString(Metrics.toJson(metrics)).getAsJsonArray();
+
+        assertEquals(2, json.size());
+        var first = json.get(0).getAsJsonObject();
+        assertEquals(new File("dir", "Quote\"And\\Slash.jmm").getPath(), first.get("file").getAsString());
+        assertEquals(List.of("parsing", "optimization/ast"), getPhaseNames(first));
+
+        var parsing = first.getAsJsonArray("phases").get(0).getAsJsonObject();
+        assertEquals(2, parsing.get("calls").getAsLong());
+        assertTrue(parsing.get("wallNanos").getAsLong() >= 0);
+        assertTrue(parsing.get("cpuNanos").getAsLong() >= 0);
+        assertTrue(parsing.get("allocatedBytes").getAsLong() >= 0);
+        assertEquals(42, first.getAsJsonObject("counts").get("astNodes").getAsLong());
+
+        var second = json.get(1).getAsJsonObject();
+        assertEquals("Empty.jmm", second.get("file").getAsString());
+        assertEquals(0, second.getAsJsonArray("phases").size());
+        assertEquals(0, second.getAsJsonObject("counts").size());
+    }
+
+    @Test
+    public void csv() {
+        var file = new File("a,b.jmm");
+        var lines = Metrics.toCsv(Map.of(file, sampleMetrics())).lines().toList();
+
+        assertEquals(4, lines.size());
+        assertEquals("file,name,calls,wall_ns,cpu_ns,allocated_bytes,count", lines.get(0));
+        assertTrue(lines.get(1), lines.get(1).matches("\"a,b\\.jmm\",parsing,2,\\d+,\\d+,\\d+,"));
+        assertTrue(lines.get(2), lines.get(2).matches("\"a,b\\.jmm\",optimization/ast,1,\\d+,\\d+,\\d+,"));
+        assertEquals("\"a,b.jmm\",astNodes,,,,,42", lines.get(3));
+    }
+
+    @Test
+    public void optimizationPhasesOfCompilation() throws IOException {
+        var input = new File(folder, "SimpleWhileStat.jmm");
+        SpecsIo.write(input, SpecsIo.getResource(INPUT));
+        var config = CompilerConfig.parseArgs(new String[]{"-i=" + input.getPath(), "-o", "-r=0",
+                "-m=metrics.json"});
+
+        var reports = new JmmCompiler().compile(config, folder);
+        assertFalse(reports.toString(), JmmCompiler.hasErrors(reports));
+
+        var json = JsonParser.parseString(Files.readString(new File(folder, "metrics.json").toPath()))
+                .getAsJsonArray();
+        assertEquals(1, json.size());
+        var phases = json.get(0).getAsJsonObject().getAsJsonArray("phases");
+        var names = getPhaseNames(json.get(0).getAsJsonObject());
+
+        // each stage runs once, so a name shared by two stages would count two calls
+        for (var stage : List.of("parsing", "analysis", "optimization/ast", "ollirGeneration", "optimization/ollir")) {
+            assertTrue(names.toString(), names.contains(stage));
+            var calls = phases.get(names.indexOf(stage)).getAsJsonObject().get("calls").getAsLong();
+            assertEquals(stage, 1, calls);
+        }
+        assertTrue(names.toString(), names.contains("optimization/ast/constantFolding"));
+        assertTrue(names.toString(), names.contains("optimization/ollir/ConstantPropagation"));
+        assertTrue(names.toString(), names.contains("optimization/ollir/registerAllocation"));
+        assertTrue(names.toString(), names.stream().allMatch(name -> !name.startsWith("optimization/")
+                || name.startsWith("optimization/ast") || name.startsWith("optimization/ollir")));
+    }
+}
@@ -0,0 +1,181 @@
+package pt.up.fe.comp2024.analysis;
+
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.analysis.passes.*;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTableBuilder;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class AnalysisEngineTest {
+
+    private static final String ONE_ERROR_PER_PASS = "pt/up/fe/comp/cp2/semanticanalysis/OneErrorPerPass.jmm";
+
+    /**
+     * The passes of {@link JmmAnalysisImpl}, in the order their reports are expected.
+     */
+    private static List<AnalysisVisitor> newPasses() {
+        return List.of(new UndeclaredVariable(), new DifferentTypeOp(), new ArrayIndexNotInt(),
+                new ArrayAccessOnInt(), new AssignIntToBool(), new ObjectAssignment(), new ArrayInitWrong(),
+                new IntInIfCondition(), new ArrayInWhileCondition(), new CallToUndeclaredMethod(), new VarArgs(),
+                new MemberAccessOnInt(), new IncompatibleReturn(), new IncompatibleArguments(),
+                new FieldInStaticInvalid(), new MissDuplicated(), new LengthHandle());
+    }
+
+    private static String describe(Report report) {
+        return report.getType() + "@" + report.getLine() + ":" + report.getColumn() + " " + report.getMessage();
+    }
+
+    private static List<String> describe(List<Report> reports) {
+        return reports.stream().map(AnalysisEngineTest::describe).toList();
+    }
+
+    /**
+     * Runs each pass on its own over the whole AST, one after the other, which is how the passes ran before the
+     * engine, and keeps the reports of each pass.
+     */
+    private static List<List<Report>> analyzeSeparately(String code) {
+        var root = TestUtils.parse(code).getRootNode();
+        SymbolTable table = JmmSymbolTableBuilder.build(root);
+        TypeAnnotator.annotate(root, table);
+
+        var reports = new ArrayList<List<Report>>();
+        for (var pass : newPasses()) {
+            reports.add(pass.analyze(root, table));
+        }
+        return reports;
+    }
+
+    @Test
+    public void everyPassReportsOnceInPassOrder() {
+        var code = SpecsIo.getResource(ONE_ERROR_PER_PASS);
+        var separate = analyzeSeparately(code);
+        for (int i = 0; i < separate.size(); i++) {
+            assertFalse("Expected an error for pass " + newPasses().get(i).getClass().getSimpleName(),
+                    separate.get(i).isEmpty());
+        }
+
+        var reports = TestUtils.analyse(code, Map.of("allReports", "true")).getReports();
+
+        var expected = separate.stream().flatMap(List::stream).toList();
+        assertEquals(describe(expected), describe(reports));
+        assertEquals("Expected no report twice", reports.size(), new HashSet<>(describe(reports)).size());
+    }
+
+    @Test
+    public void stopsAtFirstPassWithReports() {
+        var code = SpecsIo.getResource(ONE_ERROR_PER_PASS);
+
+        var reports = TestUtils.analyse(code).getReports();
+
+        assertEquals(describe(analyzeSeparately(code).get(0)), describe(reports));
+    }
+
+    @Test
+    public void allReportsOption() throws IOException {
+        var code = SpecsIo.getResource(ONE_ERROR_PER_PASS);
+        var input = Files.createTempFile("OneErrorPerPass", ".jmm").toFile();
+        try {
+            SpecsIo.write(input, code);
+            var config = CompilerConfig.parseArgs(new String[]{"-i=" + input.getPath(), "-a"});
+            assertTrue(CompilerConfig.getAllReports(config));
+
+            var reports = TestUtils.analyse(code, config).getReports();
+
+            assertEquals(analyzeSeparately(code).stream().mapToInt(List::size).sum(), reports.size());
+        } finally {
+            SpecsIo.delete(input);
+        }
+    }
+
+    /**
+     * Records the nodes it visits, and fails on the first node of the given kind, if any.
+     */
+    private static class RecordingPass extends AnalysisVisitor {
+
+        private final List<String> visitedKinds;
+        private final String failingKind;
+        private final List<JmmNode> visited;
+
+        RecordingPass(String failingKind, String... visitedKinds) {
+            this.visitedKinds = List.of(visitedKinds);
+            this.failingKind = failingKind;
+            this.visited = new ArrayList<>();
+
+            for (var kind : visitedKinds) {
+                addVisit(kind, this::record);
+            }
+        }
+
+        @Override
+        public void buildVisitor() {
+            // visits are added by the constructor, once the kinds are known
+        }
+
+        private Void record(JmmNode node, SymbolTable table) {
+            if (node.getKind().equals(failingKind)) {
+                throw new RuntimeException("Failed on " + node);
+            }
+            visited.add(node);
+            addReport(Report.newError(Stage.SEMANTIC, visited.size(), -1, visitedKinds + " " + node.getKind(), null));
+            return null;
+        }
+    }
+
+    @Test
+    public void visitsNodesInPreorderOfEachPass() {
+        var root = TestUtils.parse(SpecsIo.getResource(ONE_ERROR_PER_PASS)).getRootNode();
+        var table = JmmSymbolTableBuilder.build(root);
+
+        var alone = List.of(new RecordingPass(null, Kind.METHOD_DECL.getNodeName(), "ReturnStmt"),
+                new RecordingPass(null, "BinaryOp", Kind.VAR_REF_EXPR.getNodeName()));
+        for (var pass : alone) {
+            pass.analyze(root, table);
+        }
+
+        var together = List.of(new RecordingPass(null, Kind.METHOD_DECL.getNodeName(), "ReturnStmt"),
+                new RecordingPass(null, "BinaryOp", Kind.VAR_REF_EXPR.getNodeName()));
+        var reports = new AnalysisEngine(new ArrayList<>(together)).analyze(root, table, true);
+
+        for (int i = 0; i < alone.size(); i++) {
+            assertFalse(alone.get(i).visited.isEmpty());
+            assertEquals(alone.get(i).visited, together.get(i).visited);
+        }
+        assertEquals(describe(alone.stream().flatMap(pass -> pass.getReports().stream()).toList()),
+                describe(reports));
+    }
+
+    @Test
+    public void failedPassIsReportedInItsPlace() {
+        var root = TestUtils.parse(SpecsIo.getResource(ONE_ERROR_PER_PASS)).getRootNode();
+        var table = JmmSymbolTableBuilder.build(root);
+
+        var first = new RecordingPass(null, "ReturnStmt");
+        var failing = new RecordingPass("ReturnStmt", "ReturnStmt");
+        var last = new RecordingPass(null, Kind.VAR_REF_EXPR.getNodeName());
+
+        var reports = new AnalysisEngine(List.of(first, failing, last)).analyze(root, table, true);
+
+        // the failing pass gives a single error, and the others still see every node
+        assertTrue(failing.visited.isEmpty());
+        assertFalse(first.visited.isEmpty() || last.visited.isEmpty());
+        assertEquals(first.visited.size() + 1 + last.visited.size(), reports.size());
+        var error = reports.get(first.visited.size());
+        assertTrue(error.getMessage(), error.getMessage().contains(RecordingPass.class.getName()));
+        assertNotNull(error.getException().orElse(null));
+    }
+}
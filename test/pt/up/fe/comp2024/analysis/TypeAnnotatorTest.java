@@ -0,0 +1,104 @@
+package pt.up.fe.comp2024.analysis;
+
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.TypeUtils;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTableBuilder;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class TypeAnnotatorTest {
+
+    private static final String CODE = """
+            class Annotated {
+                int f;
+
+                public int run() {
+                    int[] arr;
+                    boolean ok;
+                    arr = new int[3];
+                    ok = this.later(arr[0] + 1);
+                    ok = !ok;
+                    return arr.length;
+                }
+
+                public boolean later(int a) {
+                    return a < 2;
+                }
+
+                public static void main(String[] args) {
+                }
+            }
+            """;
+
+    private static JmmNode annotate() {
+        var root = TestUtils.parse(CODE).getRootNode();
+        SymbolTable table = JmmSymbolTableBuilder.build(root);
+        TypeAnnotator.annotate(root, table);
+        return root;
+    }
+
+    private static List<JmmNode> getNodes(JmmNode root, String kind) {
+        return root.getDescendants(kind);
+    }
+
+    private static Optional<Type> getStoredType(JmmNode node) {
+        return node.getOptionalObject("type").map(Type.class::cast);
+    }
+
+    @Test
+    public void expressionsKeepTheTypeTheyWouldBeGiven() {
+        var root = annotate();
+
+        var kinds = List.of("BinaryOp", Kind.VAR_REF_EXPR.getNodeName(), Kind.INTEGER_LITERAL.getNodeName(),
+                "NewArray", "ArrayAccess");
+        for (var kind : kinds) {
+            var nodes = getNodes(root, kind);
+            assertFalse("Expected a node of kind " + kind, nodes.isEmpty());
+            for (var node : nodes) {
+                var type = getStoredType(node);
+                assertTrue("Expected a type in " + node, type.isPresent());
+                assertEquals(node.toString(), TypeUtils.computeExprType(node, null), type.get());
+            }
+        }
+    }
+
+    @Test
+    public void callsHaveTheReturnTypeOfLaterMethods() {
+        var root = annotate();
+
+        var call = getNodes(root, "FunctionCall").get(0);
+        var later = getNodes(root, Kind.METHOD_DECL.getNodeName()).stream()
+                .filter(method -> method.get("name").equals("later"))
+                .findFirst().orElseThrow();
+
+        assertEquals(Optional.of(TypeUtils.getReturnType(later)), getStoredType(call));
+    }
+
+    @Test
+    public void typeIsComputedOnce() {
+        var root = annotate();
+
+        for (var node : getNodes(root, "BinaryOp")) {
+            var stored = getStoredType(node).orElseThrow();
+            assertSame(stored, TypeUtils.getExprType(node, null));
+        }
+    }
+
+    @Test
+    public void expressionWithoutTypeIsLeftUntyped() {
+        var root = annotate();
+
+        var negation = getNodes(root, "Negation").get(0);
+
+        // the type of a negation is read from the value of a literal, which a variable does not have
+        assertEquals(Optional.empty(), getStoredType(negation));
+    }
+}